@@ -0,0 +1,74 @@
+package com.learnkafka.libraryeventsbenchmarks;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.learnkafka.libraryeventsproducer.domain.Book;
+import com.learnkafka.libraryeventsproducer.domain.LibraryEvent;
+import com.learnkafka.libraryeventsproducer.domain.LibraryEventType;
+import org.apache.kafka.clients.consumer.ConsumerRecord;
+import org.apache.kafka.common.header.internals.RecordHeaders;
+import org.apache.kafka.common.record.TimestampType;
+
+import java.nio.charset.StandardCharsets;
+
+/**
+ * Sample events as the producer sends them. payloadSize is the length of the book name, the only
+ * field whose size varies in practice.
+ */
+public final class BenchmarkEvents {
+
+    public static final String TOPIC = "library-events";
+
+    //ten digits, so any later id in [FIRST_BOOK_ID, Integer.MAX_VALUE] can be written over it in place
+    public static final int FIRST_BOOK_ID = 1_000_000_000;
+
+    private static final ObjectMapper OBJECT_MAPPER = new ObjectMapper();
+    private static final byte[] BOOK_ID_FIELD = ("\"bookId\":" + FIRST_BOOK_ID).getBytes(StandardCharsets.US_ASCII);
+
+    private BenchmarkEvents() {
+    }
+
+    public static LibraryEvent libraryEvent(Integer libraryEventId, int bookId, LibraryEventType libraryEventType, int payloadSize) {
+        return new LibraryEvent(libraryEventId, new Book(bookId, "x".repeat(payloadSize), "Jack London"), libraryEventType);
+    }
+
+    public static byte[] json(LibraryEvent libraryEvent) throws JsonProcessingException {
+        return OBJECT_MAPPER.writeValueAsBytes(libraryEvent);
+    }
+
+    /**
+     * NEW event whose book id can be replaced with {@link #writeBookId} before every send, so
+     * inserts never collide and the event is not encoded again.
+     */
+    public static byte[] newEventTemplate(int payloadSize) throws JsonProcessingException {
+        return json(libraryEvent(null, FIRST_BOOK_ID, LibraryEventType.NEW, payloadSize));
+    }
+
+    public static void writeBookId(byte[] template, int bookIdEnd, int bookId) {
+        for (int i = bookIdEnd - 1; i >= bookIdEnd - 10; i--) {
+            template[i] = (byte) ('0' + bookId % 10);
+            bookId /= 10;
+        }
+    }
+
+    public static ConsumerRecord<Integer, byte[]> consumerRecord(int partition, long offset, Integer key, byte[] value) {
+        return new ConsumerRecord<>(TOPIC, partition, offset, System.currentTimeMillis(), TimestampType.CREATE_TIME,
+                null, -1, value.length, key, value, new RecordHeaders());
+    }
+
+    /**
+     * Index just past the digits of the book id in a template.
+     */
+    public static int bookIdEnd(byte[] template) {
+        outer:
+        for (int i = 0; i <= template.length - BOOK_ID_FIELD.length; i++) {
+            for (int j = 0; j < BOOK_ID_FIELD.length; j++) {
+                //only the field name has to match, the digits are rewritten on every send
+                if (j < BOOK_ID_FIELD.length - 10 && template[i + j] != BOOK_ID_FIELD[j])
+                    continue outer;
+            }
+            return i + BOOK_ID_FIELD.length;
+        }
+        throw new IllegalArgumentException("No book id in template");
+    }
+}
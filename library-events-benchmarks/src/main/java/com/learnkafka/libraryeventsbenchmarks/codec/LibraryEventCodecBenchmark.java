@@ -0,0 +1,66 @@
+package com.learnkafka.libraryeventsbenchmarks.codec;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.learnkafka.libraryeventsbenchmarks.BenchmarkEvents;
+import com.learnkafka.libraryeventsconsumer.codec.LibraryEventDeserializer;
+import com.learnkafka.libraryeventsproducer.codec.LibraryEventSerializer;
+import com.learnkafka.libraryeventsproducer.domain.LibraryEvent;
+import com.learnkafka.libraryeventsproducer.domain.LibraryEventType;
+import com.learnkafka.libraryeventsproducer.producer.LibraryEventProducer.WireFormat;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Producer encoding and consumer decoding of a {@link LibraryEvent}, as done for every record.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Fork(1)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+public class LibraryEventCodecBenchmark {
+
+    @Param({"16", "256", "4096"})
+    int payloadSize;
+
+    @Param({"JSON", "BINARY"})
+    WireFormat wireFormat;
+
+    private final ObjectMapper objectMapper = new ObjectMapper();
+    private final LibraryEventSerializer libraryEventSerializer = new LibraryEventSerializer();
+    private final LibraryEventDeserializer libraryEventDeserializer = new LibraryEventDeserializer(objectMapper);
+
+    private LibraryEvent libraryEvent;
+    private byte[] encoded;
+
+    @Setup
+    public void setUp() throws JsonProcessingException {
+        libraryEvent = BenchmarkEvents.libraryEvent(42, 7, LibraryEventType.UPDATE, payloadSize);
+        encoded = encode();
+    }
+
+    @Benchmark
+    public byte[] encode() throws JsonProcessingException {
+        if (wireFormat == WireFormat.BINARY)
+            return libraryEventSerializer.serialize(BenchmarkEvents.TOPIC, libraryEvent);
+        return objectMapper.writeValueAsBytes(libraryEvent);
+    }
+
+    @Benchmark
+    public Object decode() {
+        return libraryEventDeserializer.deserialize(BenchmarkEvents.TOPIC, encoded);
+    }
+}
@@ -0,0 +1,54 @@
+package com.learnkafka.libraryeventsbenchmarks.config;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.learnkafka.libraryeventsconsumer.cache.LibraryEventCache;
+import com.learnkafka.libraryeventsconsumer.config.LibraryEventsCodecConfig;
+import com.learnkafka.libraryeventsconsumer.dedup.ProcessedOffsetIndex;
+import com.learnkafka.libraryeventsconsumer.jpa.FlatLibraryEventStore;
+import com.learnkafka.libraryeventsconsumer.jpa.TwoTableLibraryEventStore;
+import com.learnkafka.libraryeventsconsumer.metrics.LibraryEventMetrics;
+import com.learnkafka.libraryeventsconsumer.service.LibraryEventsRetryService;
+import com.learnkafka.libraryeventsconsumer.service.LibraryEventsService;
+import com.learnkafka.libraryeventsconsumer.throttle.AdaptiveDbThrottle;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.apache.kafka.clients.producer.ProducerConfig;
+import org.apache.kafka.common.serialization.ByteArraySerializer;
+import org.apache.kafka.common.serialization.IntegerSerializer;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.context.annotation.Import;
+import org.springframework.kafka.core.DefaultKafkaProducerFactory;
+import org.springframework.kafka.core.KafkaTemplate;
+
+import java.util.Map;
+
+/**
+ * The consumer's service layer without its listeners, so no broker is needed. The repository and
+ * the transaction manager come from the benchmark, the storage layout from its properties.
+ */
+@Configuration
+@Import({LibraryEventsService.class, LibraryEventsRetryService.class, LibraryEventCache.class,
+        ProcessedOffsetIndex.class, LibraryEventMetrics.class, LibraryEventsCodecConfig.class,
+        TwoTableLibraryEventStore.class, FlatLibraryEventStore.class, AdaptiveDbThrottle.class})
+public class ConsumerBenchmarkConfig {
+
+    @Bean
+    public ObjectMapper objectMapper() {
+        return new ObjectMapper();
+    }
+
+    @Bean
+    public MeterRegistry meterRegistry() {
+        return new SimpleMeterRegistry();
+    }
+
+    //benchmarks never produce a failing record, nothing is ever sent
+    @Bean
+    public KafkaTemplate<Integer, byte[]> kafkaTemplate() {
+        return new KafkaTemplate<>(new DefaultKafkaProducerFactory<>(Map.of(
+                ProducerConfig.BOOTSTRAP_SERVERS_CONFIG, "localhost:9092",
+                ProducerConfig.KEY_SERIALIZER_CLASS_CONFIG, IntegerSerializer.class,
+                ProducerConfig.VALUE_SERIALIZER_CLASS_CONFIG, ByteArraySerializer.class)));
+    }
+}
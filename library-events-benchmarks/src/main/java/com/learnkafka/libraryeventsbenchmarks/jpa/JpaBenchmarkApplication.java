@@ -0,0 +1,22 @@
+package com.learnkafka.libraryeventsbenchmarks.jpa;
+
+import com.learnkafka.libraryeventsbenchmarks.config.ConsumerBenchmarkConfig;
+import com.learnkafka.libraryeventsconsumer.entity.LibraryEvent;
+import com.learnkafka.libraryeventsconsumer.jpa.LibraryEventsRepository;
+import org.springframework.boot.SpringBootConfiguration;
+import org.springframework.boot.autoconfigure.EnableAutoConfiguration;
+import org.springframework.boot.autoconfigure.domain.EntityScan;
+import org.springframework.boot.autoconfigure.kafka.KafkaAutoConfiguration;
+import org.springframework.context.annotation.Import;
+import org.springframework.data.jpa.repository.config.EnableJpaRepositories;
+
+/**
+ * The consumer's service layer on JPA and an embedded H2 database, as configured in the consumer.
+ */
+@SpringBootConfiguration
+@EnableAutoConfiguration(exclude = KafkaAutoConfiguration.class)
+@EntityScan(basePackageClasses = LibraryEvent.class)
+@EnableJpaRepositories(basePackageClasses = LibraryEventsRepository.class)
+@Import(ConsumerBenchmarkConfig.class)
+public class JpaBenchmarkApplication {
+}
@@ -0,0 +1,142 @@
+package com.learnkafka.libraryeventsbenchmarks.jpa;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.learnkafka.libraryeventsbenchmarks.BenchmarkEvents;
+import com.learnkafka.libraryeventsconsumer.entity.Book;
+import com.learnkafka.libraryeventsconsumer.entity.LibraryEvent;
+import com.learnkafka.libraryeventsconsumer.entity.LibraryEventType;
+import com.learnkafka.libraryeventsconsumer.jpa.LibraryEventStore;
+import com.learnkafka.libraryeventsconsumer.service.LibraryEventsService;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.springframework.boot.WebApplicationType;
+import org.springframework.boot.builder.SpringApplicationBuilder;
+import org.springframework.context.ConfigurableApplicationContext;
+import org.springframework.jdbc.core.JdbcTemplate;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static com.learnkafka.libraryeventsbenchmarks.BenchmarkEvents.consumerRecord;
+
+/**
+ * NEW and UPDATE records through {@link LibraryEventsService#processLibraryEvent} against the
+ * embedded H2 datasource, i.e. the save and update paths including their transactions, for both
+ * storage layouts.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Fork(1)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+public class LibraryEventsJpaBenchmark {
+
+    private static final int UPDATED_EVENTS_PER_THREAD = 1_000;
+
+    //book names are VARCHAR(255) in the generated schema
+    @Param({"16", "200"})
+    int payloadSize;
+
+    @Param({"two-table", "flat"})
+    String storage;
+
+    private final AtomicInteger partitions = new AtomicInteger();
+
+    private ConfigurableApplicationContext context;
+    private LibraryEventsService libraryEventsService;
+    private LibraryEventStore libraryEventStore;
+    private JdbcTemplate jdbcTemplate;
+
+    @Setup
+    public void setUp() {
+        context = new SpringApplicationBuilder(JpaBenchmarkApplication.class)
+                .web(WebApplicationType.NONE)
+                .properties("spring.main.banner-mode=off",
+                        "spring.datasource.url=jdbc:h2:mem:benchmarks",
+                        "spring.jpa.open-in-view=false",
+                        "libraryevents.consumer.storage.layout=" + storage)
+                .run();
+        libraryEventsService = context.getBean(LibraryEventsService.class);
+        libraryEventStore = context.getBean(LibraryEventStore.class);
+        jdbcTemplate = context.getBean(JdbcTemplate.class);
+    }
+
+    @TearDown
+    public void tearDown() {
+        context.close();
+    }
+
+    /**
+     * Every thread reads its own partition and updates only its own events, so threads contend
+     * for the connection pool and the database but never for a row.
+     */
+    @State(Scope.Thread)
+    public static class Partition {
+
+        int partition;
+        long offset;
+        byte[] newEvent;
+        int newEventBookIdEnd;
+        int nextBookId;
+        Integer[] updatedIds;
+        byte[][] updateEvents;
+        int nextUpdate;
+
+        @Setup
+        public void setUp(LibraryEventsJpaBenchmark benchmark) throws JsonProcessingException {
+            partition = benchmark.partitions.getAndIncrement();
+            newEvent = BenchmarkEvents.newEventTemplate(benchmark.payloadSize);
+            newEventBookIdEnd = BenchmarkEvents.bookIdEnd(newEvent);
+            nextBookId = BenchmarkEvents.FIRST_BOOK_ID + partition * 10_000_000;
+            updatedIds = new Integer[UPDATED_EVENTS_PER_THREAD];
+            updateEvents = new byte[UPDATED_EVENTS_PER_THREAD][];
+            for (int i = 0; i < UPDATED_EVENTS_PER_THREAD; i++) {
+                int bookId = partition * 1_000_000 + i + 1;
+                LibraryEvent libraryEvent = new LibraryEvent(null, LibraryEventType.NEW, null);
+                libraryEvent.setBook(new Book(bookId, "x".repeat(benchmark.payloadSize), "Jack London", libraryEvent));
+                updatedIds[i] = benchmark.libraryEventStore.save(libraryEvent).getLibraryEventId();
+                updateEvents[i] = BenchmarkEvents.json(BenchmarkEvents.libraryEvent(updatedIds[i], bookId,
+                        com.learnkafka.libraryeventsproducer.domain.LibraryEventType.UPDATE, benchmark.payloadSize));
+            }
+        }
+    }
+
+    /**
+     * Removes the rows inserted by {@link #processNew} after every iteration, so the table does
+     * not keep growing during the run.
+     */
+    @State(Scope.Benchmark)
+    public static class InsertedRows {
+
+        @TearDown(Level.Iteration)
+        public void tearDown(LibraryEventsJpaBenchmark benchmark) {
+            benchmark.jdbcTemplate.update("DELETE FROM BOOK WHERE BOOK_ID >= ?", BenchmarkEvents.FIRST_BOOK_ID);
+            benchmark.jdbcTemplate.update("DELETE FROM LIBRARY_EVENT WHERE LIBRARY_EVENT_ID NOT IN (SELECT LIBRARY_EVENT_ID FROM BOOK)");
+            benchmark.jdbcTemplate.update("DELETE FROM LIBRARY_EVENT_FLAT WHERE BOOK_ID >= ?", BenchmarkEvents.FIRST_BOOK_ID);
+        }
+    }
+
+    @Benchmark
+    public void processNew(Partition partition, InsertedRows insertedRows) {
+        BenchmarkEvents.writeBookId(partition.newEvent, partition.newEventBookIdEnd, partition.nextBookId++);
+        libraryEventsService.processLibraryEvent(consumerRecord(partition.partition, partition.offset++, null, partition.newEvent));
+    }
+
+    @Benchmark
+    public void processUpdate(Partition partition) {
+        int i = partition.nextUpdate++ % UPDATED_EVENTS_PER_THREAD;
+        libraryEventsService.processLibraryEvent(consumerRecord(partition.partition, partition.offset++, partition.updatedIds[i], partition.updateEvents[i]));
+    }
+}
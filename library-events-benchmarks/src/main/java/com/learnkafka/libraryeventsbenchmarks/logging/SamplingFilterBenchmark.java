@@ -0,0 +1,63 @@
+package com.learnkafka.libraryeventsbenchmarks.logging;
+
+import ch.qos.logback.classic.Level;
+import ch.qos.logback.classic.spi.LoggingEvent;
+import ch.qos.logback.core.spi.FilterReply;
+import com.learnkafka.libraryeventslogging.SamplingFilter;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * {@link SamplingFilter} deciding on an info event of its category, as done for every such event
+ * before the async appender queues it. DISABLED is the filter at its defaults, as configured when
+ * no sample-rate or max-per-second is set.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Fork(1)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+public class SamplingFilterBenchmark {
+
+    public enum Sampling {
+        DISABLED, SAMPLED, CAPPED
+    }
+
+    @Param({"DISABLED", "SAMPLED", "CAPPED"})
+    Sampling sampling;
+
+    private final SamplingFilter samplingFilter = new SamplingFilter();
+    private final LoggingEvent event = new LoggingEvent();
+
+    @Setup
+    public void setUp() {
+        samplingFilter.setCategory("com.learnkafka.libraryeventsconsumer.consumer");
+        if (sampling == Sampling.SAMPLED) {
+            samplingFilter.setSampleRate(10);
+        } else if (sampling == Sampling.CAPPED) {
+            samplingFilter.setMaxPerSecond(100);
+        }
+        samplingFilter.start();
+
+        event.setLevel(Level.INFO);
+        event.setLoggerName("com.learnkafka.libraryeventsconsumer.consumer.LibraryEventsConsumer");
+        event.setTimeStamp(System.currentTimeMillis());
+    }
+
+    @Benchmark
+    public FilterReply decide() {
+        return samplingFilter.decide(event);
+    }
+}
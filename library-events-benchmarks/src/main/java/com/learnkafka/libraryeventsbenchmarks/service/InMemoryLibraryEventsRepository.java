@@ -0,0 +1,144 @@
+package com.learnkafka.libraryeventsbenchmarks.service;
+
+import com.learnkafka.libraryeventsconsumer.domain.LibraryEventView;
+import com.learnkafka.libraryeventsconsumer.entity.LibraryEvent;
+import com.learnkafka.libraryeventsconsumer.jpa.LibraryEventsRepository;
+import org.springframework.data.domain.Page;
+import org.springframework.data.domain.PageImpl;
+import org.springframework.data.domain.Pageable;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Optional;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Repository without a database, to measure the service on its own. Only the latest capacity
+ * inserted events are kept, so a long run does not end up measuring a full heap.
+ */
+class InMemoryLibraryEventsRepository implements LibraryEventsRepository {
+
+    private final int capacity;
+    private final Map<Integer, LibraryEvent> libraryEvents = new ConcurrentHashMap<>();
+    private final AtomicInteger sequence = new AtomicInteger();
+
+    InMemoryLibraryEventsRepository(int capacity) {
+        this.capacity = capacity;
+    }
+
+    @Override
+    public <S extends LibraryEvent> S save(S libraryEvent) {
+        if (libraryEvent.getLibraryEventId() == null) {
+            int libraryEventId = sequence.incrementAndGet();
+            libraryEvent.setLibraryEventId(libraryEventId);
+            libraryEvents.remove(libraryEventId - capacity);
+        }
+        libraryEvents.put(libraryEvent.getLibraryEventId(), libraryEvent);
+        return libraryEvent;
+    }
+
+    @Override
+    public <S extends LibraryEvent> Iterable<S> saveAll(Iterable<S> entities) {
+        List<S> saved = new ArrayList<>();
+        entities.forEach(libraryEvent -> saved.add(save(libraryEvent)));
+        return saved;
+    }
+
+    @Override
+    public Optional<LibraryEvent> findById(Integer libraryEventId) {
+        return Optional.ofNullable(libraryEvents.get(libraryEventId));
+    }
+
+    @Override
+    public boolean existsById(Integer libraryEventId) {
+        return libraryEvents.containsKey(libraryEventId);
+    }
+
+    @Override
+    public Iterable<LibraryEvent> findAll() {
+        return new ArrayList<>(libraryEvents.values());
+    }
+
+    @Override
+    public Iterable<LibraryEvent> findAllById(Iterable<Integer> libraryEventIds) {
+        List<LibraryEvent> found = new ArrayList<>();
+        libraryEventIds.forEach(libraryEventId -> findById(libraryEventId).ifPresent(found::add));
+        return found;
+    }
+
+    //the benchmarks do not list events, in no particular order
+    @Override
+    public Page<LibraryEventView> findAllViews(Pageable pageable) {
+        List<LibraryEventView> views = new ArrayList<>();
+        libraryEvents.values().stream()
+                .skip(pageable.getOffset())
+                .limit(pageable.getPageSize())
+                .forEach(libraryEvent -> views.add(LibraryEventView.of(libraryEvent)));
+        return new PageImpl<>(views, pageable, libraryEvents.size());
+    }
+
+    @Override
+    public List<LibraryEventView> findViewsAfter(Integer afterId, Pageable pageable) {
+        List<LibraryEventView> views = new ArrayList<>();
+        libraryEvents.values().stream()
+                .filter(libraryEvent -> libraryEvent.getLibraryEventId() > afterId)
+                .sorted(Comparator.comparing(LibraryEvent::getLibraryEventId))
+                .limit(pageable.getPageSize())
+                .forEach(libraryEvent -> views.add(LibraryEventView.of(libraryEvent)));
+        return views;
+    }
+
+    @Override
+    public List<LibraryEventView> findViewsByIds(Collection<Integer> ids) {
+        List<LibraryEventView> views = new ArrayList<>();
+        ids.stream()
+                .sorted()
+                .map(libraryEvents::get)
+                .filter(Objects::nonNull)
+                .forEach(libraryEvent -> views.add(LibraryEventView.of(libraryEvent)));
+        return views;
+    }
+
+    @Override
+    public long count() {
+        return libraryEvents.size();
+    }
+
+    @Override
+    public void deleteById(Integer libraryEventId) {
+        libraryEvents.remove(libraryEventId);
+    }
+
+    @Override
+    public void delete(LibraryEvent libraryEvent) {
+        deleteById(libraryEvent.getLibraryEventId());
+    }
+
+    @Override
+    public void deleteAll(Iterable<? extends LibraryEvent> entities) {
+        entities.forEach(this::delete);
+    }
+
+    @Override
+    public void deleteAll() {
+        libraryEvents.clear();
+    }
+
+    @Override
+    public int[] upsert(List<LibraryEvent> updatedLibraryEvents, boolean insertMissing) {
+        int[] updated = new int[updatedLibraryEvents.size()];
+        for (int i = 0; i < updated.length; i++) {
+            LibraryEvent libraryEvent = updatedLibraryEvents.get(i);
+            if (insertMissing || libraryEvents.containsKey(libraryEvent.getLibraryEventId())) {
+                libraryEvents.put(libraryEvent.getLibraryEventId(), libraryEvent);
+                updated[i] = 1;
+            }
+        }
+        return updated;
+    }
+}
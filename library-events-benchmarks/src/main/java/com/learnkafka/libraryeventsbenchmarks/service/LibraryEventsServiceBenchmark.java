@@ -0,0 +1,113 @@
+package com.learnkafka.libraryeventsbenchmarks.service;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.learnkafka.libraryeventsbenchmarks.BenchmarkEvents;
+import com.learnkafka.libraryeventsbenchmarks.config.ConsumerBenchmarkConfig;
+import com.learnkafka.libraryeventsconsumer.entity.Book;
+import com.learnkafka.libraryeventsconsumer.entity.LibraryEvent;
+import com.learnkafka.libraryeventsconsumer.entity.LibraryEventType;
+import com.learnkafka.libraryeventsconsumer.jpa.LibraryEventsRepository;
+import com.learnkafka.libraryeventsconsumer.service.LibraryEventsService;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.springframework.boot.convert.ApplicationConversionService;
+import org.springframework.context.annotation.AnnotationConfigApplicationContext;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static com.learnkafka.libraryeventsbenchmarks.BenchmarkEvents.consumerRecord;
+
+/**
+ * {@link LibraryEventsService#processLibraryEvent} with an in-memory repository: deduplication,
+ * decoding, the cache and metrics, without the cost of the database.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Fork(1)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+public class LibraryEventsServiceBenchmark {
+
+    private static final int UPDATED_EVENTS_PER_THREAD = 1_000;
+
+    @Param({"16", "256", "4096"})
+    int payloadSize;
+
+    private final AtomicInteger partitions = new AtomicInteger();
+
+    private AnnotationConfigApplicationContext context;
+    private LibraryEventsService libraryEventsService;
+    private LibraryEventsRepository libraryEventsRepository;
+
+    @Setup
+    public void setUp() {
+        context = new AnnotationConfigApplicationContext();
+        context.getBeanFactory().setConversionService(ApplicationConversionService.getSharedInstance());
+        context.register(ConsumerBenchmarkConfig.class);
+        context.registerBean(LibraryEventsRepository.class, () -> new InMemoryLibraryEventsRepository(100_000));
+        context.registerBean(TransactionTemplate.class, () -> new TransactionTemplate(new NoOpTransactionManager()));
+        context.refresh();
+        libraryEventsService = context.getBean(LibraryEventsService.class);
+        libraryEventsRepository = context.getBean(LibraryEventsRepository.class);
+    }
+
+    @TearDown
+    public void tearDown() {
+        context.close();
+    }
+
+    /**
+     * Every thread reads its own partition, so offsets never repeat and no record is skipped as a
+     * duplicate; updates go to events only this thread touches.
+     */
+    @State(Scope.Thread)
+    public static class Partition {
+
+        int partition;
+        long offset;
+        byte[] newEvent;
+        Integer[] updatedIds;
+        byte[][] updateEvents;
+        int nextUpdate;
+
+        @Setup
+        public void setUp(LibraryEventsServiceBenchmark benchmark) throws JsonProcessingException {
+            partition = benchmark.partitions.getAndIncrement();
+            newEvent = BenchmarkEvents.newEventTemplate(benchmark.payloadSize);
+            updatedIds = new Integer[UPDATED_EVENTS_PER_THREAD];
+            updateEvents = new byte[UPDATED_EVENTS_PER_THREAD][];
+            for (int i = 0; i < UPDATED_EVENTS_PER_THREAD; i++) {
+                int bookId = partition * 1_000_000 + i + 1;
+                LibraryEvent libraryEvent = new LibraryEvent(null, LibraryEventType.NEW, null);
+                libraryEvent.setBook(new Book(bookId, "x".repeat(benchmark.payloadSize), "Jack London", libraryEvent));
+                updatedIds[i] = benchmark.libraryEventsRepository.save(libraryEvent).getLibraryEventId();
+                updateEvents[i] = BenchmarkEvents.json(BenchmarkEvents.libraryEvent(updatedIds[i], bookId,
+                        com.learnkafka.libraryeventsproducer.domain.LibraryEventType.UPDATE, benchmark.payloadSize));
+            }
+        }
+    }
+
+    @Benchmark
+    public void processNew(Partition partition) {
+        libraryEventsService.processLibraryEvent(consumerRecord(partition.partition, partition.offset++, null, partition.newEvent));
+    }
+
+    @Benchmark
+    public void processUpdate(Partition partition) {
+        int i = partition.nextUpdate++ % UPDATED_EVENTS_PER_THREAD;
+        libraryEventsService.processLibraryEvent(consumerRecord(partition.partition, partition.offset++, partition.updatedIds[i], partition.updateEvents[i]));
+    }
+}
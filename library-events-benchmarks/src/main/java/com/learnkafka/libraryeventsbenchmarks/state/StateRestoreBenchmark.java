@@ -0,0 +1,105 @@
+package com.learnkafka.libraryeventsbenchmarks.state;
+
+import com.learnkafka.libraryeventsconsumer.codec.LibraryEventSerializer;
+import com.learnkafka.libraryeventsconsumer.entity.Book;
+import com.learnkafka.libraryeventsconsumer.entity.LibraryEvent;
+import com.learnkafka.libraryeventsconsumer.entity.LibraryEventType;
+import com.learnkafka.libraryeventsconsumer.state.OffHeapEventLog;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Restoring one state partition of the consumer, as a cold rebuild that applies every changelog
+ * record and as a warm start that loads a snapshot and applies the records written after it.
+ * Changelog records are held in memory, so only the cost on the consumer's side is measured.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Fork(1)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+public class StateRestoreBenchmark {
+
+    private static final String CHANGELOG_TOPIC = "library-events-state-changelog";
+
+    @Param({"10000", "100000"})
+    int events;
+
+    //percent of the changelog written after the snapshot
+    @Param({"1"})
+    int tailPercent;
+
+    private int[] ids;
+    private byte[][] values;
+    private int tailStart;
+    private Path directory;
+    private Path snapshot;
+
+    @Setup(Level.Trial)
+    public void setUp() throws IOException {
+        LibraryEventSerializer libraryEventSerializer = new LibraryEventSerializer();
+        //every id is written twice, as the NEW and as one UPDATE
+        int records = events * 2;
+        ids = new int[records];
+        values = new byte[records][];
+        for (int offset = 0; offset < records; offset++) {
+            int id = offset % events;
+            LibraryEventType libraryEventType = offset < events ? LibraryEventType.NEW : LibraryEventType.UPDATE;
+            LibraryEvent libraryEvent = new LibraryEvent(id, libraryEventType, null);
+            libraryEvent.setBook(new Book(id, "Book " + offset, "Jack London", libraryEvent));
+            ids[offset] = id;
+            values[offset] = libraryEventSerializer.serialize(CHANGELOG_TOPIC, libraryEvent);
+        }
+        tailStart = records - records * tailPercent / 100;
+
+        directory = Files.createTempDirectory("state-restore-benchmark");
+        snapshot = directory.resolve(CHANGELOG_TOPIC + "-0.snapshot");
+        OffHeapEventLog eventLog = new OffHeapEventLog();
+        replay(eventLog, 0, tailStart);
+        eventLog.writeSnapshot(snapshot);
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() throws IOException {
+        Files.deleteIfExists(snapshot);
+        Files.deleteIfExists(directory);
+    }
+
+    @Benchmark
+    public OffHeapEventLog coldRebuild() {
+        OffHeapEventLog eventLog = new OffHeapEventLog();
+        replay(eventLog, 0, ids.length);
+        return eventLog;
+    }
+
+    @Benchmark
+    public OffHeapEventLog warmStart() throws IOException {
+        OffHeapEventLog eventLog = OffHeapEventLog.readSnapshot(snapshot);
+        replay(eventLog, eventLog.position(), ids.length);
+        return eventLog;
+    }
+
+    private void replay(OffHeapEventLog eventLog, long from, int to) {
+        for (int offset = (int) from; offset < to; offset++) {
+            eventLog.put(ids[offset], values[offset], offset);
+        }
+        eventLog.position(to);
+    }
+}
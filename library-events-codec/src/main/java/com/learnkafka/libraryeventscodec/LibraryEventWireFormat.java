@@ -0,0 +1,96 @@
+package com.learnkafka.libraryeventscodec;
+
+import org.apache.kafka.common.errors.SerializationException;
+
+import java.nio.ByteBuffer;
+
+/**
+ * Binary layout of a library event, version 1:
+ * <pre>
+ * magic(1) version(1) field*
+ * field := tag(varint = number << 3 | wireType) value
+ * </pre>
+ * Wire type 0 is a zig-zag varint, wire type 2 is a varint length followed by that many bytes.
+ * Absent fields mean null. Readers skip unknown field numbers, so fields can be added without a
+ * version bump; the version only changes for incompatible layouts, so readers reject any other.
+ * <p>
+ * The producer's and the consumer's codecs both compile this source, so they cannot drift apart.
+ */
+public final class LibraryEventWireFormat {
+
+    public static final byte MAGIC_BYTE = (byte) 0xCA;
+    public static final byte VERSION = 1;
+
+    public static final int WIRE_VARINT = 0;
+    public static final int WIRE_LENGTH_DELIMITED = 2;
+
+    public static final int LIBRARY_EVENT_ID = 1;
+    public static final int LIBRARY_EVENT_TYPE = 2;
+    public static final int BOOK = 3;
+
+    public static final int BOOK_ID = 1;
+    public static final int BOOK_NAME = 2;
+    public static final int BOOK_AUTHOR = 3;
+
+    public static final int TYPE_NEW = 1;
+    public static final int TYPE_UPDATE = 2;
+
+    private LibraryEventWireFormat() {
+    }
+
+    public static boolean isBinary(byte[] data) {
+        return data != null && data.length > 1 && data[0] == MAGIC_BYTE;
+    }
+
+    public static int tag(int fieldNumber, int wireType) {
+        return (fieldNumber << 3) | wireType;
+    }
+
+    public static int zigZag(int value) {
+        return (value << 1) ^ (value >> 31);
+    }
+
+    public static int varintSize(int value) {
+        int size = 1;
+        while ((value & ~0x7F) != 0) {
+            value >>>= 7;
+            size++;
+        }
+        return size;
+    }
+
+    public static void writeVarint(ByteBuffer buffer, int value) {
+        while ((value & ~0x7F) != 0) {
+            buffer.put((byte) ((value & 0x7F) | 0x80));
+            value >>>= 7;
+        }
+        buffer.put((byte) value);
+    }
+
+    public static int readVarint(ByteBuffer buffer) {
+        int value = 0;
+        for (int shift = 0; shift < 35; shift += 7) {
+            byte b = buffer.get();
+            value |= (b & 0x7F) << shift;
+            if (b >= 0)
+                return value;
+        }
+        throw new SerializationException("Malformed varint in library event");
+    }
+
+    public static int readZigZag(ByteBuffer buffer) {
+        int value = readVarint(buffer);
+        return (value >>> 1) ^ -(value & 1);
+    }
+
+    public static void skip(ByteBuffer buffer, int wireType) {
+        if (wireType == WIRE_VARINT) {
+            readVarint(buffer);
+        } else if (wireType == WIRE_LENGTH_DELIMITED) {
+            int length = readVarint(buffer);
+            buffer.position(buffer.position() + length);
+        } else {
+            throw new SerializationException("Unknown wire type " + wireType + " in library event");
+        }
+    }
+}
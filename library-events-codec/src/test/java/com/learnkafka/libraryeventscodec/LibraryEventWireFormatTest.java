@@ -0,0 +1,57 @@
+package com.learnkafka.libraryeventscodec;
+
+import org.apache.kafka.common.errors.SerializationException;
+import org.junit.jupiter.api.Test;
+
+import java.nio.ByteBuffer;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class LibraryEventWireFormatTest {
+
+    @Test
+    void should_round_trip_zig_zag_varints() {
+        // given
+        int[] values = {0, 1, -1, 63, -64, 64, 300, -42, Integer.MAX_VALUE, Integer.MIN_VALUE};
+        ByteBuffer buffer = ByteBuffer.allocate(values.length * 5);
+
+        // when
+        int size = 0;
+        for (int value : values) {
+            LibraryEventWireFormat.writeVarint(buffer, LibraryEventWireFormat.zigZag(value));
+            size += LibraryEventWireFormat.varintSize(LibraryEventWireFormat.zigZag(value));
+        }
+        buffer.flip();
+
+        // then
+        assertEquals(size, buffer.remaining());
+        for (int value : values) {
+            assertEquals(value, LibraryEventWireFormat.readZigZag(buffer));
+        }
+    }
+
+    @Test
+    void should_skip_fields_of_known_wire_types() {
+        // given
+        ByteBuffer buffer = ByteBuffer.wrap(new byte[]{(byte) 0xAC, 0x02, 0x02, 'a', 'b', 0x07});
+
+        // when
+        LibraryEventWireFormat.skip(buffer, LibraryEventWireFormat.WIRE_VARINT);
+        LibraryEventWireFormat.skip(buffer, LibraryEventWireFormat.WIRE_LENGTH_DELIMITED);
+
+        // then
+        assertEquals(0x07, buffer.get());
+        assertThrows(SerializationException.class, () -> LibraryEventWireFormat.skip(ByteBuffer.allocate(1), 5));
+    }
+
+    @Test
+    void should_tell_binary_from_json_by_the_magic_byte() {
+        // when / then
+        assertTrue(LibraryEventWireFormat.isBinary(new byte[]{LibraryEventWireFormat.MAGIC_BYTE, LibraryEventWireFormat.VERSION}));
+        assertFalse(LibraryEventWireFormat.isBinary("{}".getBytes()));
+        assertFalse(LibraryEventWireFormat.isBinary(new byte[]{LibraryEventWireFormat.MAGIC_BYTE}));
+    }
+}
@@ -0,0 +1,195 @@
+package com.learnkafka.libraryeventsconsumer.cache;
+
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import com.learnkafka.libraryeventsconsumer.entity.Book;
+import com.learnkafka.libraryeventsconsumer.entity.LibraryEvent;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.cache.CaffeineCacheMetrics;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import java.time.Duration;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Bounded cache of committed {@link LibraryEvent} state keyed by libraryEventId. Entries are
+ * detached copies and callers always get their own copy, so listener threads never share a
+ * mutable entity.
+ * <p>
+ * Writes are published when their transaction completes. If two transactions write the same id
+ * at the same time the entry is invalidated instead, because commit order and completion order
+ * can differ. Events read from the database are only cached when no write of their id started or
+ * completed while they were read.
+ */
+@Component
+public class LibraryEventCache {
+
+    private static final Object ATTACHED_IDS_KEY = new Object();
+    private static final int WRITE_STAMP_STRIPES = 1024;
+
+    private final Cache<Integer, LibraryEvent> cache;
+    private final Map<Integer, Writers> writers = new ConcurrentHashMap<>();
+    //bumped whenever a write of an id in the stripe completes
+    private final AtomicLongArray writeStamps = new AtomicLongArray(WRITE_STAMP_STRIPES);
+    private final List<LibraryEventCommitListener> commitListeners = new CopyOnWriteArrayList<>();
+
+    public LibraryEventCache(@Value("${libraryevents.consumer.cache.maximum-size:10000}") long maximumSize,
+                             @Value("${libraryevents.consumer.cache.expire-after-write:10m}") Duration expireAfterWrite,
+                             MeterRegistry meterRegistry) {
+        this.cache = Caffeine.newBuilder()
+                .maximumSize(maximumSize)
+                .expireAfterWrite(expireAfterWrite)
+                .recordStats()
+                .build();
+        CaffeineCacheMetrics.monitor(meterRegistry, cache, "libraryEvents");
+    }
+
+    public LibraryEvent get(Integer libraryEventId) {
+        LibraryEvent cached = cache.getIfPresent(libraryEventId);
+        return cached != null ? copy(cached) : null;
+    }
+
+    /**
+     * Taken before reading an event from the database, and passed to {@link #loaded} with it.
+     */
+    public long readStamp(Integer libraryEventId) {
+        return writeStamps.get(stripe(libraryEventId));
+    }
+
+    /**
+     * Caches an event read from the database, unless a write of its id is running or completed
+     * after readStamp was taken; the row read may be stale then.
+     */
+    public void loaded(LibraryEvent libraryEvent, long readStamp) {
+        writers.compute(libraryEvent.getLibraryEventId(), (id, current) -> {
+            if (current == null && writeStamps.get(stripe(id)) == readStamp) {
+                cache.asMap().putIfAbsent(id, copy(libraryEvent));
+            }
+            return current;
+        });
+    }
+
+    public void written(LibraryEvent libraryEvent) {
+        Integer libraryEventId = libraryEvent.getLibraryEventId();
+        if (!TransactionSynchronizationManager.isSynchronizationActive()) {
+            begin(libraryEventId);
+            end(libraryEventId, libraryEvent, true);
+            return;
+        }
+
+        //the same managed instance is written again later in this transaction, publish it once
+        if (!attachedIds().add(libraryEventId))
+            return;
+
+        begin(libraryEventId);
+        TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+            @Override
+            public void afterCompletion(int status) {
+                end(libraryEventId, libraryEvent, status == STATUS_COMMITTED);
+            }
+        });
+    }
+
+    public void addCommitListener(LibraryEventCommitListener commitListener) {
+        commitListeners.add(commitListener);
+    }
+
+    public void invalidate(Integer libraryEventId) {
+        writeStamps.incrementAndGet(stripe(libraryEventId));
+        cache.invalidate(libraryEventId);
+    }
+
+    public void invalidateAll() {
+        for (int i = 0; i < WRITE_STAMP_STRIPES; i++) {
+            writeStamps.incrementAndGet(i);
+        }
+        cache.invalidateAll();
+    }
+
+    private void begin(Integer libraryEventId) {
+        writers.compute(libraryEventId, (id, current) -> {
+            Writers next = current != null ? current : new Writers();
+            next.active++;
+            next.contended |= next.active > 1;
+            return next;
+        });
+    }
+
+    private void end(Integer libraryEventId, LibraryEvent libraryEvent, boolean committed) {
+        boolean[] contended = {false};
+        long[] writeStamp = {0L};
+        writers.computeIfPresent(libraryEventId, (id, current) -> {
+            if (committed && !current.contended) {
+                cache.put(id, copy(libraryEvent));
+            } else {
+                cache.invalidate(id);
+            }
+            contended[0] = current.contended;
+            writeStamp[0] = writeStamps.incrementAndGet(stripe(id));
+            current.active--;
+            return current.active == 0 ? null : current;
+        });
+
+        //outside of compute, listeners may read the database
+        for (LibraryEventCommitListener commitListener : commitListeners) {
+            if (contended[0]) {
+                commitListener.invalidated(libraryEventId);
+            } else if (committed) {
+                commitListener.committed(libraryEvent, writeStamp[0]);
+            }
+        }
+    }
+
+    private Set<Integer> attachedIds() {
+        if (!TransactionSynchronizationManager.isSynchronizationActive())
+            return Set.of();
+
+        AttachedIds attachedIds = (AttachedIds) TransactionSynchronizationManager.getResource(ATTACHED_IDS_KEY);
+        if (attachedIds == null) {
+            AttachedIds ids = new AttachedIds();
+            TransactionSynchronizationManager.bindResource(ATTACHED_IDS_KEY, ids);
+            TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+                @Override
+                public void afterCompletion(int status) {
+                    TransactionSynchronizationManager.unbindResourceIfPossible(ATTACHED_IDS_KEY);
+                }
+            });
+            attachedIds = ids;
+        }
+        return attachedIds.ids;
+    }
+
+    private static int stripe(Integer libraryEventId) {
+        return libraryEventId & (WRITE_STAMP_STRIPES - 1);
+    }
+
+    static LibraryEvent copy(LibraryEvent libraryEvent) {
+        LibraryEvent copy = new LibraryEvent();
+        copy.setLibraryEventId(libraryEvent.getLibraryEventId());
+        copy.setLibraryEventType(libraryEvent.getLibraryEventType());
+        Book book = libraryEvent.getBook();
+        if (book != null) {
+            copy.setBook(new Book(book.getBookId(), book.getBookName(), book.getBookAuthor(), copy));
+        }
+        return copy;
+    }
+
+    //typed holder of the transaction resource, so reading it back needs no unchecked cast
+    private static class AttachedIds {
+        final Set<Integer> ids = new HashSet<>();
+    }
+
+    private static class Writers {
+        int active;
+        boolean contended;
+    }
+}
@@ -0,0 +1,23 @@
+package com.learnkafka.libraryeventsconsumer.cache;
+
+import com.learnkafka.libraryeventsconsumer.entity.LibraryEvent;
+
+/**
+ * Notified by {@link LibraryEventCache} once a write has completed, on the writing thread and
+ * after the cache itself was updated.
+ */
+public interface LibraryEventCommitListener {
+
+    /**
+     * The write committed and no other write of the same id overlapped it. The event must not be
+     * modified. Notifications of different writes may arrive out of order, the one with the
+     * higher writeStamp is the later write.
+     */
+    void committed(LibraryEvent libraryEvent, long writeStamp);
+
+    /**
+     * The committed state of the id is unknown, because overlapping writes may have committed in
+     * any order. It has to be read again.
+     */
+    void invalidated(Integer libraryEventId);
+}
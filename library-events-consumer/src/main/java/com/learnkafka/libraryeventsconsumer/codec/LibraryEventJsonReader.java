@@ -0,0 +1,114 @@
+package com.learnkafka.libraryeventsconsumer.codec;
+
+import com.fasterxml.jackson.core.JsonFactory;
+import com.fasterxml.jackson.core.JsonParseException;
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.JsonToken;
+import com.learnkafka.libraryeventsconsumer.entity.Book;
+import com.learnkafka.libraryeventsconsumer.entity.LibraryEvent;
+import com.learnkafka.libraryeventsconsumer.entity.LibraryEventType;
+
+import java.io.IOException;
+
+/**
+ * Streams a JSON payload straight into the JPA entities. The {@link JsonFactory} is shared and
+ * thread-safe; each call only creates a parser over the record's bytes, with no intermediate
+ * String or tree.
+ */
+public class LibraryEventJsonReader {
+
+    private final JsonFactory jsonFactory;
+
+    public LibraryEventJsonReader(JsonFactory jsonFactory) {
+        this.jsonFactory = jsonFactory;
+    }
+
+    public LibraryEvent read(byte[] data) throws IOException {
+        try (JsonParser parser = jsonFactory.createParser(data)) {
+            expect(parser, parser.nextToken(), JsonToken.START_OBJECT);
+            return readLibraryEvent(parser);
+        }
+    }
+
+    private LibraryEvent readLibraryEvent(JsonParser parser) throws IOException {
+        LibraryEvent libraryEvent = new LibraryEvent();
+        while (parser.nextToken() == JsonToken.FIELD_NAME) {
+            String fieldName = parser.getCurrentName();
+            JsonToken token = parser.nextToken();
+            switch (fieldName) {
+                case "libraryEventId":
+                    libraryEvent.setLibraryEventId(readInteger(parser, token));
+                    break;
+                case "libraryEventType":
+                    libraryEvent.setLibraryEventType(readLibraryEventType(parser, token));
+                    break;
+                case "book":
+                    libraryEvent.setBook(token == JsonToken.VALUE_NULL ? null : readBook(parser, token));
+                    break;
+                default:
+                    parser.skipChildren();
+            }
+        }
+        return libraryEvent;
+    }
+
+    private Book readBook(JsonParser parser, JsonToken token) throws IOException {
+        expect(parser, token, JsonToken.START_OBJECT);
+        Book book = new Book();
+        while (parser.nextToken() == JsonToken.FIELD_NAME) {
+            String fieldName = parser.getCurrentName();
+            JsonToken valueToken = parser.nextToken();
+            switch (fieldName) {
+                case "bookId":
+                    book.setBookId(readInteger(parser, valueToken));
+                    break;
+                case "bookName":
+                    book.setBookName(readString(parser, valueToken));
+                    break;
+                case "bookAuthor":
+                    book.setBookAuthor(readString(parser, valueToken));
+                    break;
+                default:
+                    parser.skipChildren();
+            }
+        }
+        return book;
+    }
+
+    private Integer readInteger(JsonParser parser, JsonToken token) throws IOException {
+        if (token == JsonToken.VALUE_NULL)
+            return null;
+        if (token == JsonToken.VALUE_NUMBER_INT)
+            return parser.getIntValue();
+        if (token == JsonToken.VALUE_STRING)
+            return Integer.valueOf(parser.getText());
+        throw new JsonParseException(parser, "Expected integer but was " + token);
+    }
+
+    private String readString(JsonParser parser, JsonToken token) throws IOException {
+        if (token == JsonToken.VALUE_NULL)
+            return null;
+        if (token.isScalarValue())
+            return parser.getText();
+        throw new JsonParseException(parser, "Expected string but was " + token);
+    }
+
+    private LibraryEventType readLibraryEventType(JsonParser parser, JsonToken token) throws IOException {
+        String type = readString(parser, token);
+        if (type == null)
+            return null;
+        switch (type) {
+            case "NEW":
+                return LibraryEventType.NEW;
+            case "UPDATE":
+                return LibraryEventType.UPDATE;
+            default:
+                throw new JsonParseException(parser, "Unknown library event type " + type);
+        }
+    }
+
+    private void expect(JsonParser parser, JsonToken actual, JsonToken expected) throws IOException {
+        if (actual != expected)
+            throw new JsonParseException(parser, "Expected " + expected + " but was " + actual);
+    }
+}
@@ -0,0 +1,75 @@
+package com.learnkafka.libraryeventsconsumer.codec;
+
+import com.learnkafka.libraryeventsconsumer.entity.Book;
+import com.learnkafka.libraryeventsconsumer.entity.LibraryEvent;
+import com.learnkafka.libraryeventsconsumer.entity.LibraryEventType;
+import org.apache.kafka.common.serialization.Serializer;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+
+import static com.learnkafka.libraryeventscodec.LibraryEventWireFormat.*;
+
+public class LibraryEventSerializer implements Serializer<LibraryEvent> {
+
+    @Override
+    public byte[] serialize(String topic, LibraryEvent libraryEvent) {
+        if (libraryEvent == null)
+            return null;
+
+        Book book = libraryEvent.getBook();
+        byte[] bookName = book != null && book.getBookName() != null ? book.getBookName().getBytes(StandardCharsets.UTF_8) : null;
+        byte[] bookAuthor = book != null && book.getBookAuthor() != null ? book.getBookAuthor().getBytes(StandardCharsets.UTF_8) : null;
+        int bookSize = book != null ? bookSize(book, bookName, bookAuthor) : 0;
+
+        int size = 2;
+        if (libraryEvent.getLibraryEventId() != null)
+            size += 1 + varintSize(zigZag(libraryEvent.getLibraryEventId()));
+        if (libraryEvent.getLibraryEventType() != null)
+            size += 2;
+        if (book != null)
+            size += 1 + varintSize(bookSize) + bookSize;
+
+        ByteBuffer buffer = ByteBuffer.allocate(size);
+        buffer.put(MAGIC_BYTE);
+        buffer.put(VERSION);
+        if (libraryEvent.getLibraryEventId() != null) {
+            writeVarint(buffer, tag(LIBRARY_EVENT_ID, WIRE_VARINT));
+            writeVarint(buffer, zigZag(libraryEvent.getLibraryEventId()));
+        }
+        if (libraryEvent.getLibraryEventType() != null) {
+            writeVarint(buffer, tag(LIBRARY_EVENT_TYPE, WIRE_VARINT));
+            writeVarint(buffer, libraryEvent.getLibraryEventType() == LibraryEventType.NEW ? TYPE_NEW : TYPE_UPDATE);
+        }
+        if (book != null) {
+            writeVarint(buffer, tag(BOOK, WIRE_LENGTH_DELIMITED));
+            writeVarint(buffer, bookSize);
+            if (book.getBookId() != null) {
+                writeVarint(buffer, tag(BOOK_ID, WIRE_VARINT));
+                writeVarint(buffer, zigZag(book.getBookId()));
+            }
+            writeBytes(buffer, BOOK_NAME, bookName);
+            writeBytes(buffer, BOOK_AUTHOR, bookAuthor);
+        }
+        return buffer.array();
+    }
+
+    private int bookSize(Book book, byte[] bookName, byte[] bookAuthor) {
+        int size = 0;
+        if (book.getBookId() != null)
+            size += 1 + varintSize(zigZag(book.getBookId()));
+        if (bookName != null)
+            size += 1 + varintSize(bookName.length) + bookName.length;
+        if (bookAuthor != null)
+            size += 1 + varintSize(bookAuthor.length) + bookAuthor.length;
+        return size;
+    }
+
+    private void writeBytes(ByteBuffer buffer, int fieldNumber, byte[] value) {
+        if (value == null)
+            return;
+        writeVarint(buffer, tag(fieldNumber, WIRE_LENGTH_DELIMITED));
+        writeVarint(buffer, value.length);
+        buffer.put(value);
+    }
+}
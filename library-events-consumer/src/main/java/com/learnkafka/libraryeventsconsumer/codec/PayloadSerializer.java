@@ -0,0 +1,24 @@
+package com.learnkafka.libraryeventsconsumer.codec;
+
+import org.apache.kafka.common.errors.SerializationException;
+import org.apache.kafka.common.serialization.Serializer;
+
+import java.nio.charset.StandardCharsets;
+
+/**
+ * Value serializer for the consumer's own {@code KafkaTemplate}. Republished records carry the
+ * original payload bytes untouched, whatever their wire format; Strings are written as UTF-8.
+ */
+public class PayloadSerializer implements Serializer<Object> {
+
+    @Override
+    public byte[] serialize(String topic, Object data) {
+        if (data == null)
+            return null;
+        if (data instanceof byte[])
+            return (byte[]) data;
+        if (data instanceof String)
+            return ((String) data).getBytes(StandardCharsets.UTF_8);
+        throw new SerializationException("Can't serialize payload of type " + data.getClass().getName());
+    }
+}
@@ -0,0 +1,15 @@
+package com.learnkafka.libraryeventsconsumer.config;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.learnkafka.libraryeventsconsumer.codec.LibraryEventDeserializer;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+
+@Configuration
+public class LibraryEventsCodecConfig {
+
+    @Bean
+    LibraryEventDeserializer libraryEventDeserializer(ObjectMapper objectMapper) {
+        return new LibraryEventDeserializer(objectMapper);
+    }
+}
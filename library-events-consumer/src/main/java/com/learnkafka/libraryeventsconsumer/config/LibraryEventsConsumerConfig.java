@@ -1,82 +1,197 @@
 package com.learnkafka.libraryeventsconsumer.config;
 
+import com.learnkafka.libraryeventsconsumer.consumer.KeyOrderedDispatcher;
+import com.learnkafka.libraryeventsconsumer.dedup.ProcessedOffsetIndex;
+import com.learnkafka.libraryeventsconsumer.service.LibraryEventsRetryService;
 import com.learnkafka.libraryeventsconsumer.service.LibraryEventsService;
+import com.learnkafka.libraryeventsconsumer.service.LibraryEventsTransactionalProducer;
+import com.learnkafka.libraryeventsconsumer.state.LibraryEventStateStore;
+import lombok.extern.slf4j.Slf4j;
+import org.apache.kafka.clients.consumer.Consumer;
+import org.apache.kafka.clients.consumer.ConsumerConfig;
 import org.apache.kafka.clients.consumer.ConsumerRecord;
+import org.apache.kafka.common.TopicPartition;
 import org.springframework.beans.factory.ObjectProvider;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
 import org.springframework.boot.autoconfigure.kafka.ConcurrentKafkaListenerContainerFactoryConfigurer;
 import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Configuration;
+import org.springframework.core.NestedExceptionUtils;
 import org.springframework.dao.RecoverableDataAccessException;
+import org.springframework.kafka.KafkaException;
 import org.springframework.kafka.annotation.EnableKafka;
 import org.springframework.kafka.config.ConcurrentKafkaListenerContainerFactory;
 import org.springframework.kafka.core.ConsumerFactory;
-import org.springframework.retry.RetryPolicy;
-import org.springframework.retry.backoff.FixedBackOffPolicy;
-import org.springframework.retry.policy.SimpleRetryPolicy;
-import org.springframework.retry.support.RetryTemplate;
+import org.springframework.kafka.listener.ConsumerAwareRebalanceListener;
+import org.springframework.kafka.listener.ContainerProperties;
+import org.springframework.kafka.listener.RecoveringBatchErrorHandler;
+import org.springframework.kafka.listener.SeekToCurrentErrorHandler;
+import org.springframework.util.backoff.FixedBackOff;
 
-import java.util.HashMap;
-import java.util.Map;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.Properties;
+import java.util.function.BiConsumer;
 
 @Configuration
 @EnableKafka
+@Slf4j
 public class LibraryEventsConsumerConfig {
 
     @Autowired
     LibraryEventsService libraryEventsService;
 
+    @Autowired
+    LibraryEventsRetryService libraryEventsRetryService;
+
+    @Autowired
+    ProcessedOffsetIndex processedOffsetIndex;
+
     @Bean
     ConcurrentKafkaListenerContainerFactory<?, ?> kafkaListenerContainerFactory(
+            ConcurrentKafkaListenerContainerFactoryConfigurer configurer,
+            ObjectProvider<ConsumerFactory<Object, Object>> kafkaConsumerFactory,
+            ObjectProvider<LibraryEventStateStore> libraryEventStateStore) {
+        ConcurrentKafkaListenerContainerFactory<Object, Object> factory = new ConcurrentKafkaListenerContainerFactory<>();
+        configurer.configure(factory, kafkaConsumerFactory.getObject());
+        factory.setConcurrency(3);
+        //no in-thread retries, recoverable failures back off on the retry topics
+        factory.setErrorHandler(new SeekToCurrentErrorHandler(recoverer(), new FixedBackOff(0L, 0L)));
+        //local state follows the partitions of the record listener
+        List<ConsumerAwareRebalanceListener> rebalanceListeners = new ArrayList<>();
+        libraryEventStateStore.ifAvailable(rebalanceListeners::add);
+        rebalanceListeners.add(processedOffsetIndex);
+        factory.getContainerProperties().setConsumerRebalanceListener(new RebalanceListeners(rebalanceListeners));
+        return factory;
+    }
+
+    @Bean
+    ConcurrentKafkaListenerContainerFactory<?, ?> batchKafkaListenerContainerFactory(
             ConcurrentKafkaListenerContainerFactoryConfigurer configurer,
             ObjectProvider<ConsumerFactory<Object, Object>> kafkaConsumerFactory) {
         ConcurrentKafkaListenerContainerFactory<Object, Object> factory = new ConcurrentKafkaListenerContainerFactory<>();
         configurer.configure(factory, kafkaConsumerFactory.getObject());
         factory.setConcurrency(3);
-        factory.setErrorHandler(((thrownException, data) -> {
-            System.out.println(thrownException.getMessage());
-            System.out.println(data);
-        }));
-
-        factory.setRetryTemplate(retryTemplate());
-        factory.setRecoveryCallback(context -> {
-            if (context.getLastThrowable().getCause() instanceof RecoverableDataAccessException) {
-                System.out.println("Inside recoverable logic");
-                ConsumerRecord<Integer, String> record = (ConsumerRecord<Integer, String>) context.getAttribute("record");
-                libraryEventsService.handleRecovery(record);
-            } else {
-                System.out.println("Inside non recoverable logic");
-                throw new RuntimeException(context.getLastThrowable().getMessage());
-            }
+        factory.setBatchListener(true);
+        factory.setBatchErrorHandler(new RecoveringBatchErrorHandler(recoverer(), new FixedBackOff(0L, 0L)));
+        factory.getContainerProperties().setConsumerRebalanceListener(processedOffsetIndex);
+        return factory;
+    }
+
+    @Bean
+    @ConditionalOnProperty(name = "libraryevents.consumer.mode", havingValue = "parallel")
+    KeyOrderedDispatcher<Integer, byte[]> keyOrderedDispatcher(
+            @Value("${libraryevents.consumer.parallel.workers:16}") int workers,
+            @Value("${libraryevents.consumer.parallel.max-in-flight:5000}") int maxInFlight,
+            @Value("${libraryevents.consumer.parallel.revoke-timeout:10s}") Duration revokeTimeout) {
+        return new KeyOrderedDispatcher<>(workers, maxInFlight, revokeTimeout, libraryEventsService::processLibraryEvent, recoverer());
+    }
+
+    @Bean
+    @ConditionalOnProperty(name = "libraryevents.consumer.mode", havingValue = "parallel")
+    ConcurrentKafkaListenerContainerFactory<?, ?> parallelKafkaListenerContainerFactory(
+            ConcurrentKafkaListenerContainerFactoryConfigurer configurer,
+            ObjectProvider<ConsumerFactory<Object, Object>> kafkaConsumerFactory,
+            KeyOrderedDispatcher<Integer, byte[]> keyOrderedDispatcher) {
+        ConcurrentKafkaListenerContainerFactory<Object, Object> factory = new ConcurrentKafkaListenerContainerFactory<>();
+        configurer.configure(factory, kafkaConsumerFactory.getObject());
+        factory.setConcurrency(3);
+        factory.setBatchListener(true);
+        //the dispatcher commits completed offsets itself, the container must not commit polled ones
+        factory.getContainerProperties().setAckMode(ContainerProperties.AckMode.MANUAL);
+        factory.getContainerProperties().setConsumerRebalanceListener(new RebalanceListeners(List.of(keyOrderedDispatcher, processedOffsetIndex)));
+        factory.getContainerProperties().setIdleEventInterval(500L);
+        return factory;
+    }
 
-            return null;
-        });
+    @Bean
+    @ConditionalOnProperty(name = "libraryevents.consumer.mode", havingValue = "transactional")
+    ConcurrentKafkaListenerContainerFactory<?, ?> transactionalKafkaListenerContainerFactory(
+            ConcurrentKafkaListenerContainerFactoryConfigurer configurer,
+            ObjectProvider<ConsumerFactory<Object, Object>> kafkaConsumerFactory,
+            LibraryEventsTransactionalProducer libraryEventsTransactionalProducer) {
+        ConcurrentKafkaListenerContainerFactory<Object, Object> factory = new ConcurrentKafkaListenerContainerFactory<>();
+        configurer.configure(factory, kafkaConsumerFactory.getObject());
+        factory.setConcurrency(3);
+        factory.setBatchListener(true);
+        //the offsets of a poll are sent to, and committed with, the transaction of its recovery sends
+        //after a rollback the whole poll is sought back, records already applied are then skipped as duplicates
+        factory.getContainerProperties().setTransactionManager(libraryEventsTransactionalProducer.getTransactionManager());
+        factory.getContainerProperties().setConsumerRebalanceListener(processedOffsetIndex);
         return factory;
     }
 
-    private RetryTemplate retryTemplate() {
-        RetryTemplate retryTemplate = new RetryTemplate();
-        retryTemplate.setRetryPolicy(simpleRetryPolicy());
-        retryTemplate.setBackOffPolicy(fixedBackOffPolicy());
-        return retryTemplate;
+    @Bean
+    ConcurrentKafkaListenerContainerFactory<?, ?> retryKafkaListenerContainerFactory(
+            ConcurrentKafkaListenerContainerFactoryConfigurer configurer,
+            ObjectProvider<ConsumerFactory<Object, Object>> kafkaConsumerFactory) {
+        ConcurrentKafkaListenerContainerFactory<Object, Object> factory = new ConcurrentKafkaListenerContainerFactory<>();
+        configurer.configure(factory, kafkaConsumerFactory.getObject());
+        factory.setConcurrency(3);
+        //idle events let paused partitions resume when nothing else arrives
+        factory.getContainerProperties().setIdleEventInterval(500L);
+        //retry records of an aborted transactional recovery must not be retried
+        Properties consumerProperties = new Properties();
+        consumerProperties.put(ConsumerConfig.ISOLATION_LEVEL_CONFIG, "read_committed");
+        factory.getContainerProperties().setKafkaConsumerProperties(consumerProperties);
+        factory.getContainerProperties().setConsumerRebalanceListener(processedOffsetIndex);
+
+        //records that are not due yet are sought back without sleeping the consumer thread
+        SeekToCurrentErrorHandler errorHandler = new SeekToCurrentErrorHandler(new FixedBackOff(0L, FixedBackOff.UNLIMITED_ATTEMPTS));
+        errorHandler.setLogLevel(KafkaException.Level.DEBUG);
+        factory.setErrorHandler(errorHandler);
+        return factory;
     }
 
-    private RetryPolicy simpleRetryPolicy() {
-       /* SimpleRetryPolicy simpleRetryPolicy = new SimpleRetryPolicy();
-        simpleRetryPolicy.setMaxAttempts(3);
-        */
+    /**
+     * Hands every rebalance callback to each listener, in order.
+     */
+    static class RebalanceListeners implements ConsumerAwareRebalanceListener {
+
+        private final List<ConsumerAwareRebalanceListener> listeners;
 
-        Map<Class<? extends Throwable>, Boolean> exceptionsMaps = new HashMap<>();
-        exceptionsMaps.put(RecoverableDataAccessException.class, true);
-        exceptionsMaps.put(IllegalArgumentException.class, false);
+        RebalanceListeners(List<ConsumerAwareRebalanceListener> listeners) {
+            this.listeners = List.copyOf(listeners);
+        }
 
-        SimpleRetryPolicy simpleRetryPolicy = new SimpleRetryPolicy(3, exceptionsMaps, true);
-        return simpleRetryPolicy;
+        @Override
+        public void onPartitionsRevokedBeforeCommit(Consumer<?, ?> consumer, Collection<TopicPartition> partitions) {
+            listeners.forEach(listener -> listener.onPartitionsRevokedBeforeCommit(consumer, partitions));
+        }
+
+        @Override
+        public void onPartitionsRevokedAfterCommit(Consumer<?, ?> consumer, Collection<TopicPartition> partitions) {
+            listeners.forEach(listener -> listener.onPartitionsRevokedAfterCommit(consumer, partitions));
+        }
+
+        @Override
+        public void onPartitionsLost(Consumer<?, ?> consumer, Collection<TopicPartition> partitions) {
+            listeners.forEach(listener -> listener.onPartitionsLost(consumer, partitions));
+        }
+
+        @Override
+        public void onPartitionsAssigned(Consumer<?, ?> consumer, Collection<TopicPartition> partitions) {
+            listeners.forEach(listener -> listener.onPartitionsAssigned(consumer, partitions));
+        }
     }
 
-    private FixedBackOffPolicy fixedBackOffPolicy() {
-        FixedBackOffPolicy fixedBackOffPolicy = new FixedBackOffPolicy();
-        fixedBackOffPolicy.setBackOffPeriod(1000);
-        return fixedBackOffPolicy;
+    private BiConsumer<ConsumerRecord<?, ?>, Exception> recoverer() {
+        return (record, exception) -> {
+            if (NestedExceptionUtils.getMostSpecificCause(exception) instanceof RecoverableDataAccessException) {
+                log.info("Recovering record topic={} partition={} offset={} key={}", record.topic(), record.partition(), record.offset(), record.key());
+                libraryEventsService.handleRecovery((ConsumerRecord<Integer, byte[]>) record, exception);
+            } else {
+                log.error("Dead-lettering non recoverable record topic={} partition={} offset={} key={} error={}",
+                        record.topic(), record.partition(), record.offset(), record.key(), exception.getMessage());
+                //a failed send fails the recovery, the error handler then seeks back to the record
+                libraryEventsRetryService.deadLetter((ConsumerRecord<Integer, byte[]>) record, exception);
+                //it would fail the same way when redelivered
+                processedOffsetIndex.processed(record);
+            }
+        };
     }
 }
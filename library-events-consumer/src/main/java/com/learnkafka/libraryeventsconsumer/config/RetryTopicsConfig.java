@@ -0,0 +1,40 @@
+package com.learnkafka.libraryeventsconsumer.config;
+
+import com.learnkafka.libraryeventsconsumer.service.RetryTopic;
+import org.apache.kafka.clients.admin.NewTopic;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.context.annotation.Profile;
+import org.springframework.kafka.config.TopicBuilder;
+
+@Configuration
+@Profile("local")
+public class RetryTopicsConfig {
+
+    @Bean
+    public NewTopic libraryEventsRetry1s() {
+        return topic(RetryTopic.RETRY_1S.getTopicName());
+    }
+
+    @Bean
+    public NewTopic libraryEventsRetry10s() {
+        return topic(RetryTopic.RETRY_10S.getTopicName());
+    }
+
+    @Bean
+    public NewTopic libraryEventsRetry60s() {
+        return topic(RetryTopic.RETRY_60S.getTopicName());
+    }
+
+    @Bean
+    public NewTopic libraryEventsDlt() {
+        return topic(RetryTopic.DEAD_LETTER_TOPIC);
+    }
+
+    private NewTopic topic(String name) {
+        return TopicBuilder.name(name)
+                .partitions(3)
+                .replicas(1)
+                .build();
+    }
+}
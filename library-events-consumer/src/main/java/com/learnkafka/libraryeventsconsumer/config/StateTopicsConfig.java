@@ -0,0 +1,25 @@
+package com.learnkafka.libraryeventsconsumer.config;
+
+import com.learnkafka.libraryeventsconsumer.state.LibraryEventStateStore;
+import org.apache.kafka.clients.admin.NewTopic;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.context.annotation.Profile;
+import org.springframework.kafka.config.TopicBuilder;
+
+@Configuration
+@Profile("local")
+@ConditionalOnProperty(name = "libraryevents.consumer.state.enabled", havingValue = "true")
+public class StateTopicsConfig {
+
+    //partitioned like library-events, compacted down to the latest state per key
+    @Bean
+    public NewTopic libraryEventsStateChangelog() {
+        return TopicBuilder.name(LibraryEventStateStore.CHANGELOG_TOPIC)
+                .partitions(3)
+                .replicas(1)
+                .compact()
+                .build();
+    }
+}
@@ -0,0 +1,271 @@
+package com.learnkafka.libraryeventsconsumer.consumer;
+
+import lombok.extern.slf4j.Slf4j;
+import org.apache.kafka.clients.consumer.Consumer;
+import org.apache.kafka.clients.consumer.ConsumerRecord;
+import org.apache.kafka.clients.consumer.OffsetAndMetadata;
+import org.apache.kafka.common.TopicPartition;
+import org.springframework.beans.factory.DisposableBean;
+import org.springframework.kafka.listener.ConsumerAwareRebalanceListener;
+
+import java.time.Duration;
+import java.util.ArrayDeque;
+import java.util.Collection;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.NavigableSet;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentSkipListSet;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.BiConsumer;
+
+/**
+ * Fans records polled from a partition out to a pool of workers. Records with the same key are
+ * queued behind each other and run in poll order, records with different keys run in parallel.
+ * <p>
+ * Offsets are only committed up to the lowest record that has not completed yet, so a crash never
+ * skips an unfinished record. Must be driven from the consumer thread; only completion runs on
+ * the workers.
+ * <p>
+ * Each record completes into the offsets of the assignment it was dispatched under. Once its
+ * partition is revoked or lost those offsets are dropped, so a worker that finishes late never
+ * marks an offset done for a later assignment of the same partition.
+ */
+@Slf4j
+public class KeyOrderedDispatcher<K, V> implements ConsumerAwareRebalanceListener, DisposableBean {
+
+    private static final long RECOVERY_FAILURE_BACKOFF_MILLIS = 1_000L;
+
+    private final ExecutorService workers;
+    private final int maxInFlight;
+    private final Duration revokeTimeout;
+    private final java.util.function.Consumer<ConsumerRecord<K, V>> handler;
+    private final BiConsumer<ConsumerRecord<?, ?>, Exception> recoverer;
+
+    private final Map<Object, Deque<Dispatched<K, V>>> keyQueues = new HashMap<>();
+    private final Map<TopicPartition, PartitionOffsets> offsets = new ConcurrentHashMap<>();
+    private final AtomicInteger inFlight = new AtomicInteger();
+
+    public KeyOrderedDispatcher(int workerCount, int maxInFlight, Duration revokeTimeout,
+                                java.util.function.Consumer<ConsumerRecord<K, V>> handler,
+                                BiConsumer<ConsumerRecord<?, ?>, Exception> recoverer) {
+        this.workers = Executors.newFixedThreadPool(workerCount);
+        this.maxInFlight = maxInFlight;
+        this.revokeTimeout = revokeTimeout;
+        this.handler = handler;
+        this.recoverer = recoverer;
+    }
+
+    public void dispatch(List<ConsumerRecord<K, V>> consumerRecords, Consumer<?, ?> consumer) {
+        for (ConsumerRecord<K, V> consumerRecord : consumerRecords) {
+            PartitionOffsets partitionOffsets = offsets.computeIfAbsent(new TopicPartition(consumerRecord.topic(), consumerRecord.partition()), tp -> new PartitionOffsets());
+            partitionOffsets.dispatched(consumerRecord.offset());
+            inFlight.incrementAndGet();
+            enqueue(new Dispatched<>(consumerRecord, partitionOffsets));
+        }
+        commit(consumer);
+    }
+
+    /**
+     * Commits completed offsets and pauses or resumes the assignment depending on how many
+     * records are still in flight. Called after each dispatch and when the container is idle.
+     */
+    public void commit(Consumer<?, ?> consumer) {
+        Map<TopicPartition, OffsetAndMetadata> committable = committable(consumer.assignment());
+        if (!committable.isEmpty()) {
+            consumer.commitAsync(committable, (committed, exception) -> {
+                if (exception != null) {
+                    log.warn("Failed to commit offsets={}", committed, exception);
+                }
+            });
+        }
+
+        //the in-flight limit is shared by all consumer threads, each pauses its own assignment
+        if (consumer.paused().isEmpty() && inFlight.get() >= maxInFlight) {
+            consumer.pause(consumer.assignment());
+        } else if (!consumer.paused().isEmpty() && inFlight.get() <= maxInFlight / 2) {
+            consumer.resume(consumer.paused());
+        }
+    }
+
+    public int inFlight() {
+        return inFlight.get();
+    }
+
+    @Override
+    public void onPartitionsRevokedBeforeCommit(Consumer<?, ?> consumer, Collection<TopicPartition> partitions) {
+        //let the records of revoked partitions finish so the new owner does not apply them twice
+        long deadline = System.currentTimeMillis() + revokeTimeout.toMillis();
+        for (TopicPartition partition : partitions) {
+            PartitionOffsets partitionOffsets = offsets.get(partition);
+            while (partitionOffsets != null && partitionOffsets.hasPending() && System.currentTimeMillis() < deadline) {
+                sleep(10L);
+            }
+        }
+
+        try {
+            Map<TopicPartition, OffsetAndMetadata> committable = committable(partitions);
+            if (!committable.isEmpty()) {
+                consumer.commitSync(committable);
+            }
+        } finally {
+            //records still running complete into the dropped offsets, never into the next assignment's
+            partitions.forEach(offsets::remove);
+        }
+    }
+
+    @Override
+    public void onPartitionsLost(Consumer<?, ?> consumer, Collection<TopicPartition> partitions) {
+        //the partitions already have another owner, committing for them would only fail
+        log.warn("Dropping offsets of lost partitions={}", partitions);
+        partitions.forEach(offsets::remove);
+    }
+
+    @Override
+    public void destroy() throws InterruptedException {
+        workers.shutdown();
+        if (!workers.awaitTermination(revokeTimeout.toMillis(), TimeUnit.MILLISECONDS)) {
+            workers.shutdownNow();
+        }
+    }
+
+    private Map<TopicPartition, OffsetAndMetadata> committable(Collection<TopicPartition> partitions) {
+        Map<TopicPartition, OffsetAndMetadata> committable = new HashMap<>();
+        for (TopicPartition partition : partitions) {
+            PartitionOffsets partitionOffsets = offsets.get(partition);
+            if (partitionOffsets == null)
+                continue;
+            long offset = partitionOffsets.committable();
+            if (offset > partitionOffsets.committed) {
+                committable.put(partition, new OffsetAndMetadata(offset));
+                partitionOffsets.committed = offset;
+            }
+        }
+        return committable;
+    }
+
+    private void enqueue(Dispatched<K, V> dispatched) {
+        Object key = dispatched.consumerRecord.key();
+        if (key == null) {
+            //unkeyed records have nothing to be ordered behind
+            workers.execute(() -> process(dispatched));
+            return;
+        }
+
+        synchronized (keyQueues) {
+            Deque<Dispatched<K, V>> queue = keyQueues.get(key);
+            if (queue != null) {
+                queue.add(dispatched);
+                return;
+            }
+            keyQueues.put(key, new ArrayDeque<>());
+        }
+        workers.execute(() -> drain(key, dispatched));
+    }
+
+    private void drain(Object key, Dispatched<K, V> dispatched) {
+        while (dispatched != null) {
+            process(dispatched);
+            synchronized (keyQueues) {
+                Deque<Dispatched<K, V>> queue = keyQueues.get(key);
+                dispatched = queue.poll();
+                if (dispatched == null) {
+                    keyQueues.remove(key);
+                }
+            }
+        }
+    }
+
+    private void process(Dispatched<K, V> dispatched) {
+        ConsumerRecord<K, V> consumerRecord = dispatched.consumerRecord;
+        try {
+            while (!apply(consumerRecord)) {
+                //recovery itself failed, keep the offset pending and process the record again
+                if (!sleep(RECOVERY_FAILURE_BACKOFF_MILLIS))
+                    return;
+            }
+            dispatched.partitionOffsets.completed(consumerRecord.offset());
+        } finally {
+            inFlight.decrementAndGet();
+        }
+    }
+
+    private boolean apply(ConsumerRecord<K, V> consumerRecord) {
+        try {
+            handler.accept(consumerRecord);
+            return true;
+        } catch (Exception e) {
+            try {
+                recoverer.accept(consumerRecord, e);
+                return true;
+            } catch (Exception recoveryException) {
+                log.error("Recovery failed topic={} partition={} offset={} key={}", consumerRecord.topic(), consumerRecord.partition(), consumerRecord.offset(), consumerRecord.key(), recoveryException);
+                return false;
+            }
+        }
+    }
+
+    private static boolean sleep(long millis) {
+        try {
+            Thread.sleep(millis);
+            return true;
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return false;
+        }
+    }
+
+    private static class Dispatched<K, V> {
+
+        private final ConsumerRecord<K, V> consumerRecord;
+        private final PartitionOffsets partitionOffsets;
+
+        Dispatched(ConsumerRecord<K, V> consumerRecord, PartitionOffsets partitionOffsets) {
+            this.consumerRecord = consumerRecord;
+            this.partitionOffsets = partitionOffsets;
+        }
+    }
+
+    /**
+     * Offsets of one partition for one assignment. Only the consumer thread dispatches and commits, workers only
+     * remove completed offsets from the pending set.
+     */
+    static class PartitionOffsets {
+
+        private final NavigableSet<Long> pending = new ConcurrentSkipListSet<>();
+        private long next = -1L;
+        private long committed = -1L;
+
+        void dispatched(long offset) {
+            if (next < 0) {
+                //nothing before the first polled offset needs committing
+                committed = offset;
+            }
+            pending.add(offset);
+            next = offset + 1;
+        }
+
+        void completed(long offset) {
+            pending.remove(offset);
+        }
+
+        boolean hasPending() {
+            return !pending.isEmpty();
+        }
+
+        /**
+         * Highest offset every record before which has completed.
+         */
+        long committable() {
+            long upTo = next;
+            //ceiling instead of first, a worker may empty the set concurrently
+            Long lowestPending = pending.ceiling(Long.MIN_VALUE);
+            return lowestPending != null ? lowestPending : upTo;
+        }
+    }
+}
@@ -0,0 +1,28 @@
+package com.learnkafka.libraryeventsconsumer.consumer;
+
+import com.learnkafka.libraryeventsconsumer.service.LibraryEventsService;
+import lombok.extern.slf4j.Slf4j;
+import org.apache.kafka.clients.consumer.ConsumerRecord;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.kafka.annotation.KafkaListener;
+import org.springframework.stereotype.Component;
+
+import java.util.List;
+
+@Component
+@Slf4j
+@ConditionalOnProperty(name = "libraryevents.consumer.mode", havingValue = "batch")
+public class LibraryEventsBatchConsumer {
+
+    @Autowired
+    private LibraryEventsService libraryEventsService;
+
+    @KafkaListener(topics = {"library-events"}, containerFactory = "batchKafkaListenerContainerFactory")
+    public void onMessages(List<ConsumerRecord<Integer, byte[]>> consumerRecords) {
+        if (log.isDebugEnabled()) {
+            log.debug("Consumed records size={}", consumerRecords.size());
+        }
+        libraryEventsService.processLibraryEvents(consumerRecords);
+    }
+}
@@ -1,23 +1,26 @@
 package com.learnkafka.libraryeventsconsumer.consumer;
 
-import com.fasterxml.jackson.core.JsonProcessingException;
 import com.learnkafka.libraryeventsconsumer.service.LibraryEventsService;
 import lombok.extern.slf4j.Slf4j;
 import org.apache.kafka.clients.consumer.ConsumerRecord;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
 import org.springframework.kafka.annotation.KafkaListener;
 import org.springframework.stereotype.Component;
 
 @Component
 @Slf4j
+@ConditionalOnProperty(name = "libraryevents.consumer.mode", havingValue = "record", matchIfMissing = true)
 public class LibraryEventsConsumer {
 
     @Autowired
     private LibraryEventsService libraryEventsService;
 
     @KafkaListener(topics = {"library-events"})
-    public void onMessage(ConsumerRecord<Integer, String> consumerRecord) throws JsonProcessingException {
-        System.out.println("Consumer record" + consumerRecord);
+    public void onMessage(ConsumerRecord<Integer, byte[]> consumerRecord) {
+        if (log.isInfoEnabled()) {
+            log.info("Consumed record topic={} partition={} offset={} key={}", consumerRecord.topic(), consumerRecord.partition(), consumerRecord.offset(), consumerRecord.key());
+        }
         libraryEventsService.processLibraryEvent(consumerRecord);
     }
 }
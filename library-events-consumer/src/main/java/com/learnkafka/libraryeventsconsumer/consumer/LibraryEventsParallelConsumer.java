@@ -0,0 +1,38 @@
+package com.learnkafka.libraryeventsconsumer.consumer;
+
+import lombok.extern.slf4j.Slf4j;
+import org.apache.kafka.clients.consumer.Consumer;
+import org.apache.kafka.clients.consumer.ConsumerRecord;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.context.event.EventListener;
+import org.springframework.kafka.annotation.KafkaListener;
+import org.springframework.kafka.event.ListenerContainerIdleEvent;
+import org.springframework.stereotype.Component;
+
+import java.util.List;
+
+@Component
+@Slf4j
+@ConditionalOnProperty(name = "libraryevents.consumer.mode", havingValue = "parallel")
+public class LibraryEventsParallelConsumer {
+
+    private static final String LISTENER_ID = "library-events-parallel";
+
+    @Autowired
+    private KeyOrderedDispatcher<Integer, byte[]> keyOrderedDispatcher;
+
+    @KafkaListener(id = LISTENER_ID, groupId = "library-events-listener-group", topics = {"library-events"}, containerFactory = "parallelKafkaListenerContainerFactory")
+    public void onMessages(List<ConsumerRecord<Integer, byte[]>> consumerRecords, Consumer<?, ?> consumer) {
+        if (log.isDebugEnabled()) {
+            log.debug("Consumed records size={} inFlight={}", consumerRecords.size(), keyOrderedDispatcher.inFlight());
+        }
+        keyOrderedDispatcher.dispatch(consumerRecords, consumer);
+    }
+
+    @EventListener(condition = "event.listenerId.startsWith('" + LISTENER_ID + "')")
+    public void onIdle(ListenerContainerIdleEvent event) {
+        //nothing was polled, still commit what the workers finished since the last poll
+        keyOrderedDispatcher.commit(event.getConsumer());
+    }
+}
@@ -0,0 +1,85 @@
+package com.learnkafka.libraryeventsconsumer.consumer;
+
+import com.learnkafka.libraryeventsconsumer.dedup.ProcessedOffsetIndex;
+import com.learnkafka.libraryeventsconsumer.service.LibraryEventsRetryService;
+import com.learnkafka.libraryeventsconsumer.service.LibraryEventsService;
+import com.learnkafka.libraryeventsconsumer.service.RetryNotDueException;
+import lombok.extern.slf4j.Slf4j;
+import org.apache.kafka.clients.consumer.Consumer;
+import org.apache.kafka.clients.consumer.ConsumerRecord;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.context.event.EventListener;
+import org.springframework.kafka.KafkaException;
+import org.springframework.kafka.annotation.KafkaListener;
+import org.springframework.kafka.event.ListenerContainerIdleEvent;
+import org.springframework.stereotype.Component;
+
+@Component
+@Slf4j
+public class LibraryEventsRetryConsumer {
+
+    private static final String LISTENER_ID_PREFIX = "library-events-retry";
+    private static final long FORWARD_FAILURE_BACKOFF_MILLIS = 1_000L;
+
+    @Autowired
+    private LibraryEventsService libraryEventsService;
+
+    @Autowired
+    private LibraryEventsRetryService libraryEventsRetryService;
+
+    @Autowired
+    private ProcessedOffsetIndex processedOffsetIndex;
+
+    @KafkaListener(id = "library-events-retry-1s", groupId = "library-events-retry-listener-group", topics = {"library-events-retry-1s"}, containerFactory = "retryKafkaListenerContainerFactory")
+    public void onRetry1s(ConsumerRecord<Integer, byte[]> consumerRecord, Consumer<?, ?> consumer) {
+        onRetry(consumerRecord, consumer);
+    }
+
+    @KafkaListener(id = "library-events-retry-10s", groupId = "library-events-retry-listener-group", topics = {"library-events-retry-10s"}, containerFactory = "retryKafkaListenerContainerFactory")
+    public void onRetry10s(ConsumerRecord<Integer, byte[]> consumerRecord, Consumer<?, ?> consumer) {
+        onRetry(consumerRecord, consumer);
+    }
+
+    @KafkaListener(id = "library-events-retry-60s", groupId = "library-events-retry-listener-group", topics = {"library-events-retry-60s"}, containerFactory = "retryKafkaListenerContainerFactory")
+    public void onRetry60s(ConsumerRecord<Integer, byte[]> consumerRecord, Consumer<?, ?> consumer) {
+        onRetry(consumerRecord, consumer);
+    }
+
+    @EventListener(condition = "event.listenerId.startsWith('" + LISTENER_ID_PREFIX + "')")
+    public void onIdle(ListenerContainerIdleEvent event) {
+        libraryEventsRetryService.resumeDuePartitions(event.getConsumer());
+    }
+
+    private void onRetry(ConsumerRecord<Integer, byte[]> consumerRecord, Consumer<?, ?> consumer) {
+        libraryEventsRetryService.resumeDuePartitions(consumer);
+
+        long dueAt = libraryEventsRetryService.dueAt(consumerRecord);
+        if (dueAt > System.currentTimeMillis()) {
+            //pause only this partition and let the error handler seek back to this record
+            libraryEventsRetryService.pauseUntil(consumer, consumerRecord, dueAt);
+            throw new RetryNotDueException("Retry is due at " + dueAt);
+        }
+
+        try {
+            libraryEventsService.processLibraryEventRetry(consumerRecord);
+        } catch (Exception e) {
+            forward(consumerRecord, consumer, e);
+        }
+    }
+
+    private void forward(ConsumerRecord<Integer, byte[]> consumerRecord, Consumer<?, ?> consumer, Exception exception) {
+        try {
+            if (libraryEventsRetryService.isRetryable(exception)) {
+                libraryEventsRetryService.retry(consumerRecord, exception);
+            } else {
+                libraryEventsRetryService.deadLetter(consumerRecord, exception);
+            }
+            processedOffsetIndex.processed(consumerRecord);
+        } catch (KafkaException e) {
+            //could not forward, back off on this partition and process the record again
+            long dueAt = System.currentTimeMillis() + FORWARD_FAILURE_BACKOFF_MILLIS;
+            libraryEventsRetryService.pauseUntil(consumer, consumerRecord, dueAt);
+            throw new RetryNotDueException("Retry is due at " + dueAt);
+        }
+    }
+}
@@ -0,0 +1,62 @@
+package com.learnkafka.libraryeventsconsumer.consumer;
+
+import com.learnkafka.libraryeventsconsumer.service.LibraryEventsRetryService;
+import com.learnkafka.libraryeventsconsumer.service.LibraryEventsService;
+import com.learnkafka.libraryeventsconsumer.service.LibraryEventsTransactionalProducer;
+import lombok.extern.slf4j.Slf4j;
+import org.apache.kafka.clients.consumer.ConsumerRecord;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.kafka.annotation.KafkaListener;
+import org.springframework.stereotype.Component;
+
+import java.util.List;
+
+/**
+ * Applies each record of a poll on its own and recovers failed ones inside the container's Kafka
+ * transaction, so the recovery sends and the offsets of the whole poll are committed at once.
+ * Polls hold up to batch-size records; the broker waits up to max-delay for min-bytes to arrive.
+ */
+@Component
+@Slf4j
+@ConditionalOnProperty(name = "libraryevents.consumer.mode", havingValue = "transactional")
+public class LibraryEventsTransactionalConsumer {
+
+    @Autowired
+    private LibraryEventsService libraryEventsService;
+
+    @Autowired
+    private LibraryEventsRetryService libraryEventsRetryService;
+
+    @Autowired
+    private LibraryEventsTransactionalProducer libraryEventsTransactionalProducer;
+
+    @KafkaListener(topics = {"library-events"}, containerFactory = "transactionalKafkaListenerContainerFactory",
+            properties = {"max.poll.records:${libraryevents.consumer.transactional.batch-size:500}",
+                    "fetch.max.wait.ms:${libraryevents.consumer.transactional.max-delay-ms:100}",
+                    "fetch.min.bytes:${libraryevents.consumer.transactional.min-bytes:65536}"})
+    public void onMessages(List<ConsumerRecord<Integer, byte[]>> consumerRecords) {
+        if (log.isDebugEnabled()) {
+            log.debug("Consumed records size={}", consumerRecords.size());
+        }
+        for (ConsumerRecord<Integer, byte[]> consumerRecord : consumerRecords) {
+            try {
+                libraryEventsService.processLibraryEvent(consumerRecord);
+            } catch (Exception e) {
+                recover(consumerRecord, e);
+            }
+        }
+    }
+
+    private void recover(ConsumerRecord<Integer, byte[]> consumerRecord, Exception exception) {
+        if (libraryEventsRetryService.isRetryable(exception)) {
+            //not marked as processed, when the transaction aborts the record is polled and recovered again
+            libraryEventsRetryService.retry(consumerRecord, exception, libraryEventsTransactionalProducer.getKafkaTemplate());
+        } else {
+            log.error("Dead-lettering non recoverable record topic={} partition={} offset={} key={} error={}",
+                    consumerRecord.topic(), consumerRecord.partition(), consumerRecord.offset(), consumerRecord.key(), exception.getMessage());
+            //sent in the transaction too, it fails the same way when polled again after an abort
+            libraryEventsRetryService.deadLetter(consumerRecord, exception, libraryEventsTransactionalProducer.getKafkaTemplate());
+        }
+    }
+}
@@ -0,0 +1,67 @@
+package com.learnkafka.libraryeventsconsumer.controller;
+
+import com.learnkafka.libraryeventsconsumer.domain.LibraryEventView;
+import com.learnkafka.libraryeventsconsumer.search.LibraryEventIndex;
+import com.learnkafka.libraryeventsconsumer.service.LibraryEventsQueryService;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.data.domain.Page;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.bind.annotation.GetMapping;
+import org.springframework.web.bind.annotation.PathVariable;
+import org.springframework.web.bind.annotation.RequestParam;
+import org.springframework.web.bind.annotation.RestController;
+
+import java.util.List;
+import java.util.Locale;
+
+@RestController
+public class LibraryEventsReadController {
+
+    private final LibraryEventsQueryService libraryEventsQueryService;
+    private final int maxPageSize;
+
+    public LibraryEventsReadController(LibraryEventsQueryService libraryEventsQueryService,
+                                       @Value("${libraryevents.consumer.read.max-page-size:100}") int maxPageSize) {
+        this.libraryEventsQueryService = libraryEventsQueryService;
+        this.maxPageSize = maxPageSize;
+    }
+
+    @GetMapping(value = "/v1/libraryevent/{libraryEventId}")
+    public ResponseEntity<?> getLibraryEvent(@PathVariable Integer libraryEventId) {
+        return libraryEventsQueryService.findById(libraryEventId)
+                .<ResponseEntity<?>>map(ResponseEntity::ok)
+                .orElseGet(() -> ResponseEntity.notFound().build());
+    }
+
+    @GetMapping(value = "/v1/libraryevents")
+    public ResponseEntity<?> getLibraryEvents(@RequestParam(defaultValue = "0") int page,
+                                              @RequestParam(defaultValue = "20") int size) {
+        if (page < 0 || size < 1 || size > maxPageSize)
+            return ResponseEntity.status(HttpStatus.BAD_REQUEST).body("Page must not be negative and size must be between 1 and " + maxPageSize);
+
+        Page<LibraryEventView> libraryEvents = libraryEventsQueryService.findAll(page, size);
+        return ResponseEntity.ok(libraryEvents);
+    }
+
+    @GetMapping(value = "/v1/libraryevents/search")
+    public ResponseEntity<?> searchLibraryEvents(@RequestParam String q,
+                                                 @RequestParam(defaultValue = "any") String field,
+                                                 @RequestParam(defaultValue = "exact") String match,
+                                                 @RequestParam(defaultValue = "20") int limit) {
+        if (limit < 1 || limit > maxPageSize)
+            return ResponseEntity.status(HttpStatus.BAD_REQUEST).body("Limit must be between 1 and " + maxPageSize);
+
+        LibraryEventIndex.Field searchField;
+        LibraryEventIndex.Match searchMatch;
+        try {
+            searchField = LibraryEventIndex.Field.valueOf(field.toUpperCase(Locale.ROOT));
+            searchMatch = LibraryEventIndex.Match.valueOf(match.toUpperCase(Locale.ROOT));
+        } catch (IllegalArgumentException e) {
+            return ResponseEntity.status(HttpStatus.BAD_REQUEST).body("Field must be author, title or any and match must be exact or prefix");
+        }
+
+        List<LibraryEventView> libraryEvents = libraryEventsQueryService.search(q, searchField, searchMatch, limit);
+        return ResponseEntity.ok(libraryEvents);
+    }
+}
@@ -0,0 +1,259 @@
+package com.learnkafka.libraryeventsconsumer.dedup;
+
+import com.learnkafka.libraryeventsconsumer.metrics.LibraryEventMetrics;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.apache.kafka.clients.consumer.Consumer;
+import org.apache.kafka.clients.consumer.ConsumerRecord;
+import org.apache.kafka.common.TopicPartition;
+import org.apache.kafka.common.header.Header;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.kafka.listener.ConsumerAwareRebalanceListener;
+import org.springframework.stereotype.Component;
+
+import java.nio.charset.StandardCharsets;
+import java.util.BitSet;
+import java.util.Collection;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Remembers which records this consumer has already handled, one bit per offset in a sliding
+ * window per partition. A record is handled once it is applied or handed to recovery, so
+ * redeliveries after a rebalance, and retry records read again, are skipped before they are
+ * deserialized. A bit only marks a record this instance handled itself, so the window of a revoked
+ * partition is kept for when the partition comes back; it is dropped only when the partition is
+ * lost.
+ * <p>
+ * Applied records are also remembered by their trace id header, in an {@link IdentityFilter} of
+ * the most recent ones across all topics. A copy of an applied event at another offset, sent again
+ * by the producer or republished to a retry topic, is skipped as well.
+ * <p>
+ * Offsets that fell out of the window, or were never seen, are reported as not processed and
+ * simply run again.
+ */
+@Component
+public class ProcessedOffsetIndex implements ConsumerAwareRebalanceListener {
+
+    private final int windowSize;
+    private final Map<TopicPartition, OffsetWindow> windows = new ConcurrentHashMap<>();
+    private final IdentityFilter appliedIdentities;
+    private final Counter skipped;
+
+    public ProcessedOffsetIndex(@Value("${libraryevents.consumer.dedup.window:1048576}") int windowSize,
+                                @Value("${libraryevents.consumer.dedup.identity-window:1048576}") int identityWindowSize,
+                                MeterRegistry meterRegistry) {
+        this.windowSize = windowSize;
+        this.appliedIdentities = new IdentityFilter(identityWindowSize);
+        this.skipped = Counter.builder("libraryevents.consumer.duplicates.skipped")
+                .description("Records skipped because they were already processed")
+                .register(meterRegistry);
+    }
+
+    /**
+     * Returns true and counts the record as skipped when it was already processed.
+     */
+    public boolean isDuplicate(ConsumerRecord<?, ?> consumerRecord) {
+        OffsetWindow window = windows.get(new TopicPartition(consumerRecord.topic(), consumerRecord.partition()));
+        boolean duplicate = window != null && window.contains(consumerRecord.offset());
+        if (!duplicate) {
+            UUID identity = identity(consumerRecord);
+            duplicate = identity != null && appliedIdentities.contains(identity);
+        }
+        if (!duplicate)
+            return false;
+
+        skipped.increment();
+        return true;
+    }
+
+    /**
+     * Marks a record that was handed to recovery, only its offset is remembered.
+     */
+    public void processed(ConsumerRecord<?, ?> consumerRecord) {
+        windows.computeIfAbsent(new TopicPartition(consumerRecord.topic(), consumerRecord.partition()), tp -> new OffsetWindow(windowSize))
+                .add(consumerRecord.offset());
+    }
+
+    /**
+     * Marks a record whose event is committed, any copy of it is a duplicate from now on.
+     */
+    public void applied(ConsumerRecord<?, ?> consumerRecord) {
+        processed(consumerRecord);
+        UUID identity = identity(consumerRecord);
+        if (identity != null) {
+            appliedIdentities.add(identity);
+        }
+    }
+
+    //a revoked partition keeps its window, its uncommitted tail is usually redelivered right here
+    @Override
+    public void onPartitionsLost(Consumer<?, ?> consumer, Collection<TopicPartition> partitions) {
+        partitions.forEach(windows::remove);
+    }
+
+    //records of older producers carry no trace id and are only deduplicated by offset
+    private static UUID identity(ConsumerRecord<?, ?> consumerRecord) {
+        Header traceId = consumerRecord.headers().lastHeader(LibraryEventMetrics.TRACE_ID_HEADER);
+        if (traceId == null)
+            return null;
+
+        try {
+            return UUID.fromString(new String(traceId.value(), StandardCharsets.US_ASCII));
+        } catch (IllegalArgumentException e) {
+            return null;
+        }
+    }
+
+    /**
+     * The last size identities added, the oldest one is forgotten first. Identities are kept whole
+     * in a ring of two longs each, and found through an open addressing table of ints holding an
+     * 8 bit fingerprint of the identity and its ring position. A lookup compares fingerprints and
+     * only reads the ring to confirm a matching one, so a fingerprint collision never turns a new
+     * event into a duplicate. About 24 bytes per identity, a million take 24MB.
+     */
+    static class IdentityFilter {
+
+        static final int MAX_SIZE = (1 << 24) - 2;
+
+        private static final int POSITION_MASK = 0xFF_FFFF;
+
+        private final long[] mostSignificant;
+        private final long[] leastSignificant;
+        private final int[] slots;
+        private final int slotMask;
+        private int next;
+        private int size;
+
+        IdentityFilter(int size) {
+            if (size < 1 || size > MAX_SIZE)
+                throw new IllegalArgumentException("Identity window must be between 1 and " + MAX_SIZE);
+
+            this.mostSignificant = new long[size];
+            this.leastSignificant = new long[size];
+            //at most half full, so probe sequences stay short
+            this.slots = new int[Integer.highestOneBit(size * 2 - 1) << 1];
+            this.slotMask = slots.length - 1;
+        }
+
+        synchronized boolean contains(UUID identity) {
+            return slotOf(identity) >= 0;
+        }
+
+        synchronized void add(UUID identity) {
+            if (slotOf(identity) >= 0)
+                return;
+
+            if (size == mostSignificant.length) {
+                remove(next);
+            } else {
+                size++;
+            }
+            mostSignificant[next] = identity.getMostSignificantBits();
+            leastSignificant[next] = identity.getLeastSignificantBits();
+            long hash = hash(identity.getMostSignificantBits(), identity.getLeastSignificantBits());
+            int slot = home(hash);
+            while (slots[slot] != 0) {
+                slot = (slot + 1) & slotMask;
+            }
+            slots[slot] = fingerprint(hash) << 24 | (next + 1);
+            next = next + 1 == mostSignificant.length ? 0 : next + 1;
+        }
+
+        private int slotOf(UUID identity) {
+            long most = identity.getMostSignificantBits();
+            long least = identity.getLeastSignificantBits();
+            long hash = hash(most, least);
+            int fingerprint = fingerprint(hash);
+            for (int slot = home(hash); slots[slot] != 0; slot = (slot + 1) & slotMask) {
+                int position = (slots[slot] & POSITION_MASK) - 1;
+                if (slots[slot] >>> 24 == fingerprint && mostSignificant[position] == most && leastSignificant[position] == least)
+                    return slot;
+            }
+            return -1;
+        }
+
+        //forgets the identity at the ring position, shifting back the entries probed past it
+        private void remove(int position) {
+            int slot = home(hash(mostSignificant[position], leastSignificant[position]));
+            while ((slots[slot] & POSITION_MASK) != position + 1) {
+                slot = (slot + 1) & slotMask;
+            }
+            for (int hole = slot, probe = (slot + 1) & slotMask; ; probe = (probe + 1) & slotMask) {
+                if (slots[probe] == 0) {
+                    slots[hole] = 0;
+                    return;
+                }
+                int moved = (slots[probe] & POSITION_MASK) - 1;
+                int home = home(hash(mostSignificant[moved], leastSignificant[moved]));
+                //the entry may fill the hole only if its home is not between the hole and itself
+                if (((probe - home) & slotMask) >= ((probe - hole) & slotMask)) {
+                    slots[hole] = slots[probe];
+                    hole = probe;
+                }
+            }
+        }
+
+        private int home(long hash) {
+            return (int) hash & slotMask;
+        }
+
+        private static int fingerprint(long hash) {
+            return (int) (hash >>> 56);
+        }
+
+        private static long hash(long most, long least) {
+            long hash = most * 0x9E3779B97F4A7C15L ^ least;
+            hash = (hash ^ (hash >>> 33)) * 0xFF51AFD7ED558CCDL;
+            hash = (hash ^ (hash >>> 33)) * 0xC4CEB9FE1A85EC53L;
+            return hash ^ (hash >>> 33);
+        }
+    }
+
+    /**
+     * Ring of bits covering [base, base + size). Adding an offset past the end slides the window
+     * forward and forgets the oldest offsets.
+     */
+    static class OffsetWindow {
+
+        private final int size;
+        private final BitSet bits;
+        private long base = -1L;
+
+        OffsetWindow(int size) {
+            this.size = size;
+            this.bits = new BitSet(size);
+        }
+
+        synchronized boolean contains(long offset) {
+            if (base < 0 || offset < base || offset >= base + size)
+                return false;
+            return bits.get(index(offset));
+        }
+
+        synchronized void add(long offset) {
+            if (base < 0) {
+                base = offset;
+            } else if (offset < base) {
+                //older than anything we remember, not worth sliding back for
+                return;
+            } else if (offset >= base + size) {
+                long newBase = offset - size + 1;
+                if (newBase - base >= size) {
+                    bits.clear();
+                } else {
+                    for (long forgotten = base; forgotten < newBase; forgotten++) {
+                        bits.clear(index(forgotten));
+                    }
+                }
+                base = newBase;
+            }
+            bits.set(index(offset));
+        }
+
+        private int index(long offset) {
+            return (int) (offset % size);
+        }
+    }
+}
@@ -0,0 +1,66 @@
+package com.learnkafka.libraryeventsconsumer.domain;
+
+import com.learnkafka.libraryeventsconsumer.entity.Book;
+import com.learnkafka.libraryeventsconsumer.entity.LibraryEvent;
+import com.learnkafka.libraryeventsconsumer.entity.LibraryEventType;
+
+/**
+ * Read-only view of a library event, in the shape the producer accepts it. Listings select it
+ * directly with a JPQL constructor expression instead of loading entities.
+ */
+public class LibraryEventView {
+
+    private final Integer libraryEventId;
+    private final LibraryEventType libraryEventType;
+    private final BookView book;
+
+    public LibraryEventView(Integer libraryEventId, LibraryEventType libraryEventType, Integer bookId, String bookName, String bookAuthor) {
+        this.libraryEventId = libraryEventId;
+        this.libraryEventType = libraryEventType;
+        this.book = bookId != null ? new BookView(bookId, bookName, bookAuthor) : null;
+    }
+
+    public static LibraryEventView of(LibraryEvent libraryEvent) {
+        Book book = libraryEvent.getBook();
+        return book != null
+                ? new LibraryEventView(libraryEvent.getLibraryEventId(), libraryEvent.getLibraryEventType(), book.getBookId(), book.getBookName(), book.getBookAuthor())
+                : new LibraryEventView(libraryEvent.getLibraryEventId(), libraryEvent.getLibraryEventType(), null, null, null);
+    }
+
+    public Integer getLibraryEventId() {
+        return libraryEventId;
+    }
+
+    public LibraryEventType getLibraryEventType() {
+        return libraryEventType;
+    }
+
+    public BookView getBook() {
+        return book;
+    }
+
+    public static class BookView {
+
+        private final Integer bookId;
+        private final String bookName;
+        private final String bookAuthor;
+
+        public BookView(Integer bookId, String bookName, String bookAuthor) {
+            this.bookId = bookId;
+            this.bookName = bookName;
+            this.bookAuthor = bookAuthor;
+        }
+
+        public Integer getBookId() {
+            return bookId;
+        }
+
+        public String getBookName() {
+            return bookName;
+        }
+
+        public String getBookAuthor() {
+            return bookAuthor;
+        }
+    }
+}
@@ -0,0 +1,66 @@
+package com.learnkafka.libraryeventsconsumer.entity;
+
+import com.learnkafka.libraryeventsconsumer.jpa.BlockIdOptimizer;
+import lombok.AllArgsConstructor;
+import lombok.NoArgsConstructor;
+import org.hibernate.annotations.GenericGenerator;
+import org.hibernate.annotations.Parameter;
+
+import javax.persistence.Embedded;
+import javax.persistence.Entity;
+import javax.persistence.EnumType;
+import javax.persistence.Enumerated;
+import javax.persistence.GeneratedValue;
+import javax.persistence.GenerationType;
+import javax.persistence.Id;
+import javax.persistence.Table;
+import java.io.Serializable;
+
+/**
+ * A library event and its book in one row of library_event_flat.
+ */
+@AllArgsConstructor
+@NoArgsConstructor
+@Entity
+@Table(name = "library_event_flat")
+public class FlatLibraryEvent implements Serializable {
+
+    //same sequence as LibraryEvent, so ids copied from the two-table layout never collide with new ones
+    @Id
+    @GeneratedValue(strategy = GenerationType.SEQUENCE, generator = "library_event_flat_id")
+    @GenericGenerator(name = "library_event_flat_id", strategy = "org.hibernate.id.enhanced.SequenceStyleGenerator", parameters = {
+            @Parameter(name = "sequence_name", value = "library_event_id_seq"),
+            @Parameter(name = "increment_size", value = BlockIdOptimizer.BLOCK_SIZE_PARAMETER),
+            @Parameter(name = "optimizer", value = "com.learnkafka.libraryeventsconsumer.jpa.BlockIdOptimizer")})
+    private Integer libraryEventId;
+
+    @Enumerated(EnumType.STRING)
+    private LibraryEventType libraryEventType;
+
+    @Embedded
+    private EmbeddedBook book;
+
+    public Integer getLibraryEventId() {
+        return libraryEventId;
+    }
+
+    public void setLibraryEventId(Integer libraryEventId) {
+        this.libraryEventId = libraryEventId;
+    }
+
+    public LibraryEventType getLibraryEventType() {
+        return libraryEventType;
+    }
+
+    public void setLibraryEventType(LibraryEventType libraryEventType) {
+        this.libraryEventType = libraryEventType;
+    }
+
+    public EmbeddedBook getBook() {
+        return book;
+    }
+
+    public void setBook(EmbeddedBook book) {
+        this.book = book;
+    }
+}
@@ -1,14 +1,18 @@
 package com.learnkafka.libraryeventsconsumer.entity;
 
+import com.learnkafka.libraryeventsconsumer.jpa.BlockIdOptimizer;
 import lombok.AllArgsConstructor;
 import lombok.NoArgsConstructor;
 import lombok.ToString;
+import org.hibernate.annotations.GenericGenerator;
+import org.hibernate.annotations.Parameter;
 
 import javax.persistence.CascadeType;
 import javax.persistence.Entity;
 import javax.persistence.EnumType;
 import javax.persistence.Enumerated;
 import javax.persistence.GeneratedValue;
+import javax.persistence.GenerationType;
 import javax.persistence.Id;
 import javax.persistence.OneToOne;
 import java.io.Serializable;
@@ -18,8 +22,13 @@ import java.io.Serializable;
 @Entity
 public class LibraryEvent implements Serializable {
 
+    //one sequence call reserves a block of ids, as large as a JDBC insert batch
     @Id
-    @GeneratedValue
+    @GeneratedValue(strategy = GenerationType.SEQUENCE, generator = "library_event_id")
+    @GenericGenerator(name = "library_event_id", strategy = "org.hibernate.id.enhanced.SequenceStyleGenerator", parameters = {
+            @Parameter(name = "sequence_name", value = "library_event_id_seq"),
+            @Parameter(name = "increment_size", value = BlockIdOptimizer.BLOCK_SIZE_PARAMETER),
+            @Parameter(name = "optimizer", value = "com.learnkafka.libraryeventsconsumer.jpa.BlockIdOptimizer")})
     private Integer libraryEventId;
 
     @Enumerated(EnumType.STRING)
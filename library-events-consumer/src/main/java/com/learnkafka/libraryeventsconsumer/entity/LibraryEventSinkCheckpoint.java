@@ -0,0 +1,31 @@
+package com.learnkafka.libraryeventsconsumer.entity;
+
+import lombok.AllArgsConstructor;
+import lombok.NoArgsConstructor;
+
+import javax.persistence.Entity;
+import javax.persistence.Id;
+import javax.persistence.Table;
+
+/**
+ * Highest offset of a state changelog partition whose event is in the database.
+ */
+@AllArgsConstructor
+@NoArgsConstructor
+@Entity
+@Table(name = "library_event_sink_checkpoint")
+public class LibraryEventSinkCheckpoint {
+
+    @Id
+    private Integer changelogPartition;
+
+    private Long changelogOffset;
+
+    public Integer getChangelogPartition() {
+        return changelogPartition;
+    }
+
+    public Long getChangelogOffset() {
+        return changelogOffset;
+    }
+}
@@ -0,0 +1,115 @@
+package com.learnkafka.libraryeventsconsumer.jpa;
+
+import org.hibernate.id.IdentifierGeneratorHelper;
+import org.hibernate.id.IntegralDataTypeHolder;
+import org.hibernate.id.enhanced.AccessCallback;
+import org.hibernate.id.enhanced.Optimizer;
+
+import java.io.Serializable;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Pooled-lo optimizer that hands out ids without locking. Each value read from the sequence
+ * reserves the block [value, value + incrementSize) for this instance. Listener threads take ids
+ * from the current block with an atomic increment; only the thread that finds it exhausted goes
+ * back to the database.
+ * <p>
+ * The sequence itself is incremented by the block size, so blocks of several consumer instances
+ * never overlap.
+ */
+public class BlockIdOptimizer implements Optimizer {
+
+    /**
+     * Ids reserved per sequence value, the increment_size of LibraryEvent and FlatLibraryEvent.
+     */
+    public static final int BLOCK_SIZE = 50;
+    //a constant expression, so the entities' generator parameters can refer to it
+    public static final String BLOCK_SIZE_PARAMETER = "" + BLOCK_SIZE;
+
+    //as configured on LibraryEvent and FlatLibraryEvent
+    private static final String SEQUENCE_NAME = "LIBRARY_EVENT_ID_SEQ";
+    private static final String CURRENT_VALUE = "SELECT CURRENT_VALUE FROM INFORMATION_SCHEMA.SEQUENCES WHERE SEQUENCE_NAME = ?";
+
+    private final Class returnClass;
+    private final int incrementSize;
+
+    private volatile Block block;
+    private volatile IntegralDataTypeHolder lastSourceValue;
+
+    public BlockIdOptimizer(Class returnClass, int incrementSize) {
+        if (incrementSize < 1)
+            throw new IllegalArgumentException("Block size must be positive");
+
+        this.returnClass = returnClass;
+        this.incrementSize = incrementSize;
+    }
+
+    @Override
+    public Serializable generate(AccessCallback callback) {
+        while (true) {
+            Block current = block;
+            if (current != null) {
+                long id = current.next.getAndIncrement();
+                if (id < current.end)
+                    return (Serializable) IdentifierGeneratorHelper.getIntegralDataTypeHolder(returnClass).initialize(id).makeValue();
+            }
+            reserve(current, callback);
+        }
+    }
+
+    @Override
+    public IntegralDataTypeHolder getLastSourceValue() {
+        return lastSourceValue;
+    }
+
+    @Override
+    public int getIncrementSize() {
+        return incrementSize;
+    }
+
+    @Override
+    public boolean applyIncrementSizeToSourceValues() {
+        return true;
+    }
+
+    /**
+     * End of the last block reserved from the library event id sequence by any instance. An id
+     * at or above it was never handed out, and may still be handed out to a NEW event later.
+     */
+    static long reservedIdBound(Connection connection) throws SQLException {
+        try (PreparedStatement statement = connection.prepareStatement(CURRENT_VALUE)) {
+            statement.setString(1, SEQUENCE_NAME);
+            try (ResultSet resultSet = statement.executeQuery()) {
+                if (!resultSet.next())
+                    throw new SQLException("Sequence not found " + SEQUENCE_NAME);
+                return resultSet.getLong(1) + BLOCK_SIZE;
+            }
+        }
+    }
+
+    private synchronized void reserve(Block exhausted, AccessCallback callback) {
+        //another thread may have reserved a new block while this one waited
+        if (block != exhausted)
+            return;
+
+        IntegralDataTypeHolder value = callback.getNextValue();
+        long start = IdentifierGeneratorHelper.extractLong(value);
+        lastSourceValue = value;
+        block = new Block(start, start + incrementSize);
+    }
+
+    private static class Block {
+
+        private final AtomicLong next;
+        private final long end;
+
+        Block(long start, long end) {
+            this.next = new AtomicLong(start);
+            this.end = end;
+        }
+    }
+}
@@ -0,0 +1,110 @@
+package com.learnkafka.libraryeventsconsumer.jpa;
+
+import com.learnkafka.libraryeventsconsumer.domain.LibraryEventView;
+import com.learnkafka.libraryeventsconsumer.entity.Book;
+import com.learnkafka.libraryeventsconsumer.entity.EmbeddedBook;
+import com.learnkafka.libraryeventsconsumer.entity.FlatLibraryEvent;
+import com.learnkafka.libraryeventsconsumer.entity.LibraryEvent;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.data.domain.Page;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.data.domain.Pageable;
+import org.springframework.stereotype.Component;
+
+import javax.annotation.PostConstruct;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.Optional;
+
+/**
+ * Keeps an event and its book in one row, so saving, updating and reading an event each take a
+ * single statement. The rest of the consumer keeps working with {@link LibraryEvent}.
+ * <p>
+ * With libraryevents.consumer.storage.migrate, events still in the two-table layout are copied
+ * over on startup, before any listener runs. Copying is one-way: events written in this layout
+ * are not visible to the two-table one.
+ */
+@Slf4j
+@Component
+@ConditionalOnProperty(name = "libraryevents.consumer.storage.layout", havingValue = "flat")
+public class FlatLibraryEventStore implements LibraryEventStore {
+
+    private final FlatLibraryEventsRepository flatLibraryEventsRepository;
+    private final boolean migrate;
+
+    public FlatLibraryEventStore(FlatLibraryEventsRepository flatLibraryEventsRepository,
+                                 @Value("${libraryevents.consumer.storage.migrate:true}") boolean migrate) {
+        this.flatLibraryEventsRepository = flatLibraryEventsRepository;
+        this.migrate = migrate;
+    }
+
+    @PostConstruct
+    public void migrate() {
+        if (!migrate)
+            return;
+
+        int copied = flatLibraryEventsRepository.copyFromTwoTables();
+        log.info("Copied library events to the flat layout count={}", copied);
+    }
+
+    @Override
+    public LibraryEvent save(LibraryEvent libraryEvent) {
+        libraryEvent.setLibraryEventId(flatLibraryEventsRepository.save(toRow(libraryEvent)).getLibraryEventId());
+        return libraryEvent;
+    }
+
+    @Override
+    public List<LibraryEvent> saveAll(List<LibraryEvent> libraryEvents) {
+        List<FlatLibraryEvent> rows = new ArrayList<>(libraryEvents.size());
+        libraryEvents.forEach(libraryEvent -> rows.add(toRow(libraryEvent)));
+        flatLibraryEventsRepository.saveAll(rows);
+        //ids are generated on persist, before the rows are flushed
+        for (int i = 0; i < rows.size(); i++) {
+            libraryEvents.get(i).setLibraryEventId(rows.get(i).getLibraryEventId());
+        }
+        return libraryEvents;
+    }
+
+    @Override
+    public int[] upsert(List<LibraryEvent> libraryEvents, boolean insertMissing) {
+        return flatLibraryEventsRepository.upsert(libraryEvents, insertMissing);
+    }
+
+    @Override
+    public Optional<LibraryEvent> findById(Integer libraryEventId) {
+        return flatLibraryEventsRepository.findById(libraryEventId).map(FlatLibraryEventStore::toLibraryEvent);
+    }
+
+    @Override
+    public Page<LibraryEventView> findAllViews(Pageable pageable) {
+        return flatLibraryEventsRepository.findAllViews(pageable);
+    }
+
+    @Override
+    public List<LibraryEventView> findViewsAfter(Integer afterId, int limit) {
+        return flatLibraryEventsRepository.findViewsAfter(afterId, PageRequest.of(0, limit));
+    }
+
+    @Override
+    public List<LibraryEventView> findViewsByIds(Collection<Integer> libraryEventIds) {
+        return flatLibraryEventsRepository.findViewsByIds(libraryEventIds);
+    }
+
+    private static FlatLibraryEvent toRow(LibraryEvent libraryEvent) {
+        Book book = libraryEvent.getBook();
+        EmbeddedBook embeddedBook = book != null ? new EmbeddedBook(book.getBookId(), book.getBookName(), book.getBookAuthor()) : null;
+        return new FlatLibraryEvent(libraryEvent.getLibraryEventId(), libraryEvent.getLibraryEventType(), embeddedBook);
+    }
+
+    private static LibraryEvent toLibraryEvent(FlatLibraryEvent row) {
+        LibraryEvent libraryEvent = new LibraryEvent(row.getLibraryEventId(), row.getLibraryEventType(), null);
+        EmbeddedBook book = row.getBook();
+        if (book != null) {
+            libraryEvent.setBook(new Book(book.getBookId(), book.getBookName(), book.getBookAuthor(), libraryEvent));
+        }
+        return libraryEvent;
+    }
+}
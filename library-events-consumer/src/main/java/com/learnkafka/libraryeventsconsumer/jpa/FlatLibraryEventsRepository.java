@@ -0,0 +1,28 @@
+package com.learnkafka.libraryeventsconsumer.jpa;
+
+import com.learnkafka.libraryeventsconsumer.domain.LibraryEventView;
+import com.learnkafka.libraryeventsconsumer.entity.FlatLibraryEvent;
+import org.springframework.data.domain.Page;
+import org.springframework.data.domain.Pageable;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
+import org.springframework.data.repository.CrudRepository;
+
+import java.util.Collection;
+import java.util.List;
+
+public interface FlatLibraryEventsRepository extends CrudRepository<FlatLibraryEvent, Integer>, FlatLibraryEventsRepositoryCustom {
+
+    @Query(value = "select new com.learnkafka.libraryeventsconsumer.domain.LibraryEventView(e.libraryEventId, e.libraryEventType, e.book.bookId, e.book.bookName, e.book.bookAuthor) " +
+            "from FlatLibraryEvent e",
+            countQuery = "select count(e) from FlatLibraryEvent e")
+    Page<LibraryEventView> findAllViews(Pageable pageable);
+
+    @Query("select new com.learnkafka.libraryeventsconsumer.domain.LibraryEventView(e.libraryEventId, e.libraryEventType, e.book.bookId, e.book.bookName, e.book.bookAuthor) " +
+            "from FlatLibraryEvent e where e.libraryEventId > :afterId order by e.libraryEventId")
+    List<LibraryEventView> findViewsAfter(@Param("afterId") Integer afterId, Pageable pageable);
+
+    @Query("select new com.learnkafka.libraryeventsconsumer.domain.LibraryEventView(e.libraryEventId, e.libraryEventType, e.book.bookId, e.book.bookName, e.book.bookAuthor) " +
+            "from FlatLibraryEvent e where e.libraryEventId in :ids order by e.libraryEventId")
+    List<LibraryEventView> findViewsByIds(@Param("ids") Collection<Integer> ids);
+}
@@ -0,0 +1,19 @@
+package com.learnkafka.libraryeventsconsumer.jpa;
+
+import com.learnkafka.libraryeventsconsumer.entity.LibraryEvent;
+
+import java.util.List;
+
+public interface FlatLibraryEventsRepositoryCustom {
+
+    /**
+     * Same as {@link LibraryEventsRepositoryCustom#upsert}, with one statement per event.
+     */
+    int[] upsert(List<LibraryEvent> libraryEvents, boolean insertMissing);
+
+    /**
+     * Copies events of the two-table layout that are not in library_event_flat yet. Returns the
+     * number of rows copied; running it again copies nothing.
+     */
+    int copyFromTwoTables();
+}
@@ -0,0 +1,77 @@
+package com.learnkafka.libraryeventsconsumer.jpa;
+
+import com.learnkafka.libraryeventsconsumer.entity.Book;
+import com.learnkafka.libraryeventsconsumer.entity.LibraryEvent;
+import com.learnkafka.libraryeventsconsumer.entity.LibraryEventType;
+import org.hibernate.Session;
+import org.springframework.transaction.annotation.Transactional;
+
+import javax.persistence.EntityManager;
+import javax.persistence.PersistenceContext;
+import java.sql.PreparedStatement;
+import java.sql.Types;
+import java.util.List;
+
+public class FlatLibraryEventsRepositoryImpl implements FlatLibraryEventsRepositoryCustom {
+
+    //as in the two table layout an existing event keeps its book_id, an event without a book keeps its book and an id
+    //the sequence has not handed out yet is not inserted. An UPDATE is the MERGE without its insert, the MERGE binds the
+    //reserved id bound last
+    private static final String UPDATE = "MERGE INTO library_event_flat f USING (SELECT CAST(? AS VARCHAR(255)) library_event_type, CAST(? AS BOOLEAN) has_book, " +
+            "CAST(? AS VARCHAR(255)) book_name, CAST(? AS VARCHAR(255)) book_author, CAST(? AS INT) library_event_id, CAST(? AS INT) book_id) s " +
+            "ON f.library_event_id = s.library_event_id " +
+            "WHEN MATCHED THEN UPDATE SET f.library_event_type = s.library_event_type, " +
+            "f.book_name = CASE WHEN s.has_book THEN s.book_name ELSE f.book_name END, " +
+            "f.book_author = CASE WHEN s.has_book THEN s.book_author ELSE f.book_author END";
+    private static final String MERGE = UPDATE + " " +
+            "WHEN NOT MATCHED AND s.library_event_id < ? THEN INSERT (library_event_id, library_event_type, book_id, book_name, book_author) " +
+            "VALUES (s.library_event_id, s.library_event_type, s.book_id, s.book_name, s.book_author)";
+    private static final String COPY_FROM_TWO_TABLES = "INSERT INTO library_event_flat (library_event_id, library_event_type, book_id, book_name, book_author) " +
+            "SELECT e.library_event_id, e.library_event_type, b.book_id, b.book_name, b.book_author FROM library_event e " +
+            "LEFT JOIN book b ON b.library_event_id = e.library_event_id " +
+            "WHERE NOT EXISTS (SELECT 1 FROM library_event_flat f WHERE f.library_event_id = e.library_event_id)";
+
+    @PersistenceContext
+    private EntityManager entityManager;
+
+    @Override
+    @Transactional
+    public int[] upsert(List<LibraryEvent> libraryEvents, boolean insertMissing) {
+        //events saved earlier in this transaction have to be in the table before they are updated
+        entityManager.flush();
+        return entityManager.unwrap(Session.class).doReturningWork(connection -> {
+            Long reservedIdBound = insertMissing ? BlockIdOptimizer.reservedIdBound(connection) : null;
+            try (PreparedStatement statement = connection.prepareStatement(insertMissing ? MERGE : UPDATE)) {
+                for (LibraryEvent libraryEvent : libraryEvents) {
+                    Book book = libraryEvent.getBook();
+                    statement.setString(1, LibraryEventType.UPDATE.name());
+                    statement.setBoolean(2, book != null);
+                    if (book != null) {
+                        statement.setString(3, book.getBookName());
+                        statement.setString(4, book.getBookAuthor());
+                    } else {
+                        statement.setNull(3, Types.VARCHAR);
+                        statement.setNull(4, Types.VARCHAR);
+                    }
+                    statement.setInt(5, libraryEvent.getLibraryEventId());
+                    if (book != null && book.getBookId() != null) {
+                        statement.setInt(6, book.getBookId());
+                    } else {
+                        statement.setNull(6, Types.INTEGER);
+                    }
+                    if (insertMissing) {
+                        statement.setLong(7, reservedIdBound);
+                    }
+                    statement.addBatch();
+                }
+                return statement.executeBatch();
+            }
+        });
+    }
+
+    @Override
+    @Transactional
+    public int copyFromTwoTables() {
+        return entityManager.createNativeQuery(COPY_FROM_TWO_TABLES).executeUpdate();
+    }
+}
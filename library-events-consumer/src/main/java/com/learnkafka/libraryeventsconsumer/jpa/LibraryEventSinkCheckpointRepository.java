@@ -0,0 +1,7 @@
+package com.learnkafka.libraryeventsconsumer.jpa;
+
+import com.learnkafka.libraryeventsconsumer.entity.LibraryEventSinkCheckpoint;
+import org.springframework.data.repository.CrudRepository;
+
+public interface LibraryEventSinkCheckpointRepository extends CrudRepository<LibraryEventSinkCheckpoint, Integer> {
+}
@@ -0,0 +1,45 @@
+package com.learnkafka.libraryeventsconsumer.jpa;
+
+import com.learnkafka.libraryeventsconsumer.domain.LibraryEventView;
+import com.learnkafka.libraryeventsconsumer.entity.LibraryEvent;
+import org.springframework.data.domain.Page;
+import org.springframework.data.domain.Pageable;
+
+import java.util.Collection;
+import java.util.List;
+import java.util.Optional;
+
+/**
+ * Where library events are persisted, selected with libraryevents.consumer.storage.layout:
+ * two-table (default) keeps the book in its own table, flat keeps the event and its book in one
+ * row of library_event_flat.
+ */
+public interface LibraryEventStore {
+
+    LibraryEvent save(LibraryEvent libraryEvent);
+
+    /**
+     * Returns the given events with their generated ids set.
+     */
+    List<LibraryEvent> saveAll(List<LibraryEvent> libraryEvents);
+
+    /**
+     * See {@link LibraryEventsRepositoryCustom#upsert}.
+     */
+    int[] upsert(List<LibraryEvent> libraryEvents, boolean insertMissing);
+
+    Optional<LibraryEvent> findById(Integer libraryEventId);
+
+    Page<LibraryEventView> findAllViews(Pageable pageable);
+
+    /**
+     * Up to limit views with an id greater than afterId, ordered by id. Seeks on the primary key,
+     * so reading the whole table this way stays linear where deep offsets would not.
+     */
+    List<LibraryEventView> findViewsAfter(Integer afterId, int limit);
+
+    /**
+     * Views of those of the ids that exist, in one query, ordered by id.
+     */
+    List<LibraryEventView> findViewsByIds(Collection<Integer> libraryEventIds);
+}
@@ -1,7 +1,28 @@
 package com.learnkafka.libraryeventsconsumer.jpa;
 
+import com.learnkafka.libraryeventsconsumer.domain.LibraryEventView;
 import com.learnkafka.libraryeventsconsumer.entity.LibraryEvent;
+import org.springframework.data.domain.Page;
+import org.springframework.data.domain.Pageable;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
 import org.springframework.data.repository.CrudRepository;
 
-public interface LibraryEventsRepository extends CrudRepository<LibraryEvent, Integer> {
+import java.util.Collection;
+import java.util.List;
+
+public interface LibraryEventsRepository extends CrudRepository<LibraryEvent, Integer>, LibraryEventsRepositoryCustom {
+
+    @Query(value = "select new com.learnkafka.libraryeventsconsumer.domain.LibraryEventView(e.libraryEventId, e.libraryEventType, b.bookId, b.bookName, b.bookAuthor) " +
+            "from LibraryEvent e left join e.book b",
+            countQuery = "select count(e) from LibraryEvent e")
+    Page<LibraryEventView> findAllViews(Pageable pageable);
+
+    @Query("select new com.learnkafka.libraryeventsconsumer.domain.LibraryEventView(e.libraryEventId, e.libraryEventType, b.bookId, b.bookName, b.bookAuthor) " +
+            "from LibraryEvent e left join e.book b where e.libraryEventId > :afterId order by e.libraryEventId")
+    List<LibraryEventView> findViewsAfter(@Param("afterId") Integer afterId, Pageable pageable);
+
+    @Query("select new com.learnkafka.libraryeventsconsumer.domain.LibraryEventView(e.libraryEventId, e.libraryEventType, b.bookId, b.bookName, b.bookAuthor) " +
+            "from LibraryEvent e left join e.book b where e.libraryEventId in :ids order by e.libraryEventId")
+    List<LibraryEventView> findViewsByIds(@Param("ids") Collection<Integer> ids);
 }
@@ -0,0 +1,16 @@
+package com.learnkafka.libraryeventsconsumer.jpa;
+
+import com.learnkafka.libraryeventsconsumer.entity.LibraryEvent;
+
+import java.util.List;
+
+public interface LibraryEventsRepositoryCustom {
+
+    /**
+     * Applies UPDATE events with one statement per table and event, sent as one JDBC batch per
+     * table. Returns the number of library events each statement changed, 0 for an unknown id
+     * unless insertMissing, in which case it is inserted instead. Ids the sequence has not handed out
+     * yet are never inserted, they would collide with a later NEW event.
+     */
+    int[] upsert(List<LibraryEvent> libraryEvents, boolean insertMissing);
+}
@@ -0,0 +1,87 @@
+package com.learnkafka.libraryeventsconsumer.jpa;
+
+import com.learnkafka.libraryeventsconsumer.entity.Book;
+import com.learnkafka.libraryeventsconsumer.entity.LibraryEvent;
+import com.learnkafka.libraryeventsconsumer.entity.LibraryEventType;
+import org.hibernate.Session;
+import org.springframework.transaction.annotation.Transactional;
+
+import javax.persistence.EntityManager;
+import javax.persistence.PersistenceContext;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.sql.Types;
+import java.util.List;
+
+public class LibraryEventsRepositoryImpl implements LibraryEventsRepositoryCustom {
+
+    //parameters are bound in the same order for the UPDATE and the MERGE of a table, the MERGE binds the book_id to insert
+    //and the reserved id bound last; an id the sequence has not handed out yet is not inserted, a NEW event may get it later
+    private static final String UPDATE_LIBRARY_EVENT = "UPDATE library_event SET library_event_type = ? WHERE library_event_id = ?";
+    private static final String MERGE_LIBRARY_EVENT = "MERGE INTO library_event e USING (SELECT CAST(? AS VARCHAR(255)) library_event_type, CAST(? AS INT) library_event_id) s " +
+            "ON e.library_event_id = s.library_event_id " +
+            "WHEN MATCHED THEN UPDATE SET e.library_event_type = s.library_event_type " +
+            "WHEN NOT MATCHED AND s.library_event_id < ? THEN INSERT (library_event_type, library_event_id) VALUES (s.library_event_type, s.library_event_id)";
+    //book_id is the book's primary key, an existing book keeps it and is found by its event
+    private static final String UPDATE_BOOK = "UPDATE book SET book_name = ?, book_author = ? WHERE library_event_id = ?";
+    private static final String MERGE_BOOK = "MERGE INTO book b USING (SELECT CAST(? AS VARCHAR(255)) book_name, CAST(? AS VARCHAR(255)) book_author, CAST(? AS INT) library_event_id, CAST(? AS INT) book_id) s " +
+            "ON b.library_event_id = s.library_event_id " +
+            "WHEN MATCHED THEN UPDATE SET b.book_name = s.book_name, b.book_author = s.book_author " +
+            "WHEN NOT MATCHED AND s.book_id IS NOT NULL AND s.library_event_id < ? THEN INSERT (book_id, book_name, book_author, library_event_id) VALUES (s.book_id, s.book_name, s.book_author, s.library_event_id)";
+
+    @PersistenceContext
+    private EntityManager entityManager;
+
+    @Override
+    @Transactional
+    public int[] upsert(List<LibraryEvent> libraryEvents, boolean insertMissing) {
+        //events saved earlier in this transaction have to be in the tables before they are updated
+        entityManager.flush();
+        return entityManager.unwrap(Session.class).doReturningWork(connection -> {
+            //taken once, so an event and its book are inserted together or not at all
+            Long reservedIdBound = insertMissing ? BlockIdOptimizer.reservedIdBound(connection) : null;
+            int[] updated = updateLibraryEvents(connection, reservedIdBound, libraryEvents);
+            updateBooks(connection, reservedIdBound, libraryEvents);
+            return updated;
+        });
+    }
+
+    private static int[] updateLibraryEvents(Connection connection, Long reservedIdBound, List<LibraryEvent> libraryEvents) throws SQLException {
+        try (PreparedStatement statement = connection.prepareStatement(reservedIdBound != null ? MERGE_LIBRARY_EVENT : UPDATE_LIBRARY_EVENT)) {
+            for (LibraryEvent libraryEvent : libraryEvents) {
+                statement.setString(1, LibraryEventType.UPDATE.name());
+                statement.setInt(2, libraryEvent.getLibraryEventId());
+                if (reservedIdBound != null) {
+                    statement.setLong(3, reservedIdBound);
+                }
+                statement.addBatch();
+            }
+            return statement.executeBatch();
+        }
+    }
+
+    private static void updateBooks(Connection connection, Long reservedIdBound, List<LibraryEvent> libraryEvents) throws SQLException {
+        try (PreparedStatement statement = connection.prepareStatement(reservedIdBound != null ? MERGE_BOOK : UPDATE_BOOK)) {
+            for (LibraryEvent libraryEvent : libraryEvents) {
+                Book book = libraryEvent.getBook();
+                if (book == null)
+                    continue;
+
+                statement.setString(1, book.getBookName());
+                statement.setString(2, book.getBookAuthor());
+                statement.setInt(3, libraryEvent.getLibraryEventId());
+                if (reservedIdBound != null) {
+                    if (book.getBookId() != null) {
+                        statement.setInt(4, book.getBookId());
+                    } else {
+                        statement.setNull(4, Types.INTEGER);
+                    }
+                    statement.setLong(5, reservedIdBound);
+                }
+                statement.addBatch();
+            }
+            statement.executeBatch();
+        }
+    }
+}
@@ -0,0 +1,65 @@
+package com.learnkafka.libraryeventsconsumer.jpa;
+
+import com.learnkafka.libraryeventsconsumer.domain.LibraryEventView;
+import com.learnkafka.libraryeventsconsumer.entity.LibraryEvent;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.data.domain.Page;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.data.domain.Pageable;
+import org.springframework.stereotype.Component;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.Optional;
+
+@Component
+@ConditionalOnProperty(name = "libraryevents.consumer.storage.layout", havingValue = "two-table", matchIfMissing = true)
+public class TwoTableLibraryEventStore implements LibraryEventStore {
+
+    private final LibraryEventsRepository libraryEventsRepository;
+
+    public TwoTableLibraryEventStore(LibraryEventsRepository libraryEventsRepository) {
+        this.libraryEventsRepository = libraryEventsRepository;
+    }
+
+    @Override
+    public LibraryEvent save(LibraryEvent libraryEvent) {
+        //the book owns the join column
+        libraryEvent.getBook().setLibraryEvent(libraryEvent);
+        return libraryEventsRepository.save(libraryEvent);
+    }
+
+    @Override
+    public List<LibraryEvent> saveAll(List<LibraryEvent> libraryEvents) {
+        libraryEvents.forEach(libraryEvent -> libraryEvent.getBook().setLibraryEvent(libraryEvent));
+        List<LibraryEvent> saved = new ArrayList<>(libraryEvents.size());
+        libraryEventsRepository.saveAll(libraryEvents).forEach(saved::add);
+        return saved;
+    }
+
+    @Override
+    public int[] upsert(List<LibraryEvent> libraryEvents, boolean insertMissing) {
+        return libraryEventsRepository.upsert(libraryEvents, insertMissing);
+    }
+
+    @Override
+    public Optional<LibraryEvent> findById(Integer libraryEventId) {
+        return libraryEventsRepository.findById(libraryEventId);
+    }
+
+    @Override
+    public Page<LibraryEventView> findAllViews(Pageable pageable) {
+        return libraryEventsRepository.findAllViews(pageable);
+    }
+
+    @Override
+    public List<LibraryEventView> findViewsAfter(Integer afterId, int limit) {
+        return libraryEventsRepository.findViewsAfter(afterId, PageRequest.of(0, limit));
+    }
+
+    @Override
+    public List<LibraryEventView> findViewsByIds(Collection<Integer> libraryEventIds) {
+        return libraryEventsRepository.findViewsByIds(libraryEventIds);
+    }
+}
@@ -0,0 +1,120 @@
+package com.learnkafka.libraryeventsconsumer.metrics;
+
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import org.apache.kafka.clients.consumer.ConsumerRecord;
+import org.apache.kafka.common.header.Header;
+import org.springframework.stereotype.Component;
+
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Latency of each stage between the producer and the committed row. All timers are built once,
+ * recording a sample only reads a clock and updates a histogram, so it can stay on in production.
+ */
+@Component
+public class LibraryEventMetrics {
+
+    public static final String PRODUCED_AT_HEADER = "library-events-produced-at";
+    public static final String TRACE_ID_HEADER = "library-events-trace-id";
+
+    private final Timer queueWait;
+    private final Timer deserialize;
+    private final Timer dbWrite;
+    private final Timer retryWait;
+    private final Timer endToEnd;
+    private final Timer endToEndRetried;
+
+    public LibraryEventMetrics(MeterRegistry meterRegistry) {
+        this.queueWait = stage(meterRegistry, "queue-wait");
+        this.deserialize = stage(meterRegistry, "deserialize");
+        this.dbWrite = stage(meterRegistry, "db-write");
+        this.retryWait = stage(meterRegistry, "retry");
+        this.endToEnd = endToEnd(meterRegistry, "main");
+        this.endToEndRetried = endToEnd(meterRegistry, "retry");
+    }
+
+    /**
+     * Time from the producer to this listener picking the record up.
+     */
+    public void pickedUp(ConsumerRecord<?, ?> consumerRecord) {
+        queueWait.record(sinceProduced(consumerRecord), TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * Time from a record being sent to a retry topic to the retry listener applying it, the
+     * back-off included.
+     */
+    public void retryPickedUp(ConsumerRecord<?, ?> consumerRecord) {
+        retryWait.record(Math.max(0L, System.currentTimeMillis() - consumerRecord.timestamp()), TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * Time from the producer to the committed row, retried records are kept apart since they
+     * include the retry back-off.
+     */
+    public void committed(ConsumerRecord<?, ?> consumerRecord, boolean retried) {
+        (retried ? endToEndRetried : endToEnd).record(sinceProduced(consumerRecord), TimeUnit.MILLISECONDS);
+    }
+
+    public void deserialized(long startNanos) {
+        deserialize.record(System.nanoTime() - startNanos, TimeUnit.NANOSECONDS);
+    }
+
+    public void written(long nanos) {
+        dbWrite.record(nanos, TimeUnit.NANOSECONDS);
+    }
+
+    /**
+     * Trace id the producer stamped on the record, null for records from older producers.
+     */
+    public static String traceId(ConsumerRecord<?, ?> consumerRecord) {
+        Header traceId = consumerRecord.headers().lastHeader(TRACE_ID_HEADER);
+        return traceId != null ? new String(traceId.value(), StandardCharsets.UTF_8) : null;
+    }
+
+    private static long sinceProduced(ConsumerRecord<?, ?> consumerRecord) {
+        Header producedAt = consumerRecord.headers().lastHeader(PRODUCED_AT_HEADER);
+        long produced = producedAt != null ? parseMillis(producedAt.value()) : -1L;
+        //records from older producers only carry the broker timestamp
+        if (produced < 0) {
+            produced = consumerRecord.timestamp();
+        }
+        return Math.max(0L, System.currentTimeMillis() - produced);
+    }
+
+    /**
+     * Parses the ASCII digits of the header without going through a String.
+     */
+    static long parseMillis(byte[] digits) {
+        if (digits == null || digits.length == 0 || digits.length > 19)
+            return -1L;
+
+        long millis = 0L;
+        for (byte digit : digits) {
+            if (digit < '0' || digit > '9')
+                return -1L;
+            millis = millis * 10 + (digit - '0');
+        }
+        return millis;
+    }
+
+    private static Timer stage(MeterRegistry meterRegistry, String stage) {
+        return Timer.builder("libraryevents.consumer.stage")
+                .description("Time spent in one stage of processing a library event")
+                .tag("stage", stage)
+                .publishPercentiles(0.5, 0.95, 0.99)
+                .publishPercentileHistogram()
+                .register(meterRegistry);
+    }
+
+    private static Timer endToEnd(MeterRegistry meterRegistry, String path) {
+        return Timer.builder("libraryevents.end.to.end")
+                .description("Time from the producer sending a library event to its committed row")
+                .tag("path", path)
+                .publishPercentiles(0.5, 0.95, 0.99)
+                .publishPercentileHistogram()
+                .register(meterRegistry);
+    }
+}
@@ -0,0 +1,200 @@
+package com.learnkafka.libraryeventsconsumer.redrive;
+
+import com.learnkafka.libraryeventsconsumer.metrics.LibraryEventMetrics;
+import com.learnkafka.libraryeventsconsumer.service.LibraryEventsRetryService;
+import lombok.extern.slf4j.Slf4j;
+import org.apache.kafka.clients.consumer.Consumer;
+import org.apache.kafka.clients.consumer.ConsumerConfig;
+import org.apache.kafka.clients.consumer.ConsumerRecord;
+import org.apache.kafka.clients.consumer.KafkaConsumer;
+import org.apache.kafka.clients.consumer.OffsetAndMetadata;
+import org.apache.kafka.clients.producer.KafkaProducer;
+import org.apache.kafka.clients.producer.Producer;
+import org.apache.kafka.clients.producer.ProducerConfig;
+import org.apache.kafka.clients.producer.ProducerRecord;
+import org.apache.kafka.common.KafkaException;
+import org.apache.kafka.common.TopicPartition;
+import org.apache.kafka.common.header.Header;
+import org.apache.kafka.common.header.Headers;
+import org.apache.kafka.common.header.internals.RecordHeaders;
+import org.apache.kafka.common.serialization.ByteArrayDeserializer;
+import org.apache.kafka.common.serialization.ByteArraySerializer;
+
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Properties;
+import java.util.Set;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.concurrent.locks.LockSupport;
+import java.util.stream.Collectors;
+
+/**
+ * Sends records of the dead-letter topic back to library-events, e.g. once the cause of their
+ * failure is fixed. The dead-letter topic is read in polls of up to batch-size records up to the
+ * end offsets it has when the run starts, so records that fail again are left for the next run.
+ * At most rate records are sent per second, so the live consumer keeps up with a backlog of
+ * millions next to its regular traffic.
+ * <p>
+ * Records can be filtered by the failure reason and stack hash headers the consumer adds when it
+ * dead-letters them. Progress is committed for the group after each poll has been sent, a run that
+ * is stopped continues where it left off; a poll that was not committed is sent again.
+ * <pre>
+ * mvn -f library-events-consumer/pom.xml compile exec:java \
+ *     -Dexec.mainClass=com.learnkafka.libraryeventsconsumer.redrive.DeadLetterRedrive \
+ *     -Dexec.args="--reason=IllegalArgumentException --rate=500"
+ * </pre>
+ */
+@Slf4j
+public class DeadLetterRedrive {
+
+    //set by the consumer for the records it processes, a redriven record is counted afresh
+    private static final Set<String> DROPPED_HEADERS = Set.of(
+            LibraryEventsRetryService.RETRY_ATTEMPT_HEADER,
+            LibraryEventsRetryService.RETRY_DUE_AT_HEADER,
+            LibraryEventsRetryService.EXCEPTION_MESSAGE_HEADER,
+            LibraryEventsRetryService.FAILURE_REASON_HEADER,
+            LibraryEventsRetryService.STACK_HASH_HEADER,
+            LibraryEventMetrics.PRODUCED_AT_HEADER);
+
+    private static final Duration POLL_TIMEOUT = Duration.ofMillis(500);
+    private static final int MAX_EMPTY_POLLS = 20;
+
+    private final Consumer<byte[], byte[]> consumer;
+    private final Producer<byte[], byte[]> producer;
+    private final RedriveOptions options;
+
+    DeadLetterRedrive(Consumer<byte[], byte[]> consumer, Producer<byte[], byte[]> producer, RedriveOptions options) {
+        this.consumer = consumer;
+        this.producer = producer;
+        this.options = options;
+    }
+
+    public static void main(String[] args) {
+        RedriveOptions options = new RedriveOptions(args);
+        Properties consumerProperties = new Properties();
+        consumerProperties.put(ConsumerConfig.BOOTSTRAP_SERVERS_CONFIG, options.bootstrapServers());
+        consumerProperties.put(ConsumerConfig.GROUP_ID_CONFIG, options.groupId());
+        consumerProperties.put(ConsumerConfig.ENABLE_AUTO_COMMIT_CONFIG, "false");
+        consumerProperties.put(ConsumerConfig.AUTO_OFFSET_RESET_CONFIG, "earliest");
+        //records of aborted transactional dead-lettering must not be redriven
+        consumerProperties.put(ConsumerConfig.ISOLATION_LEVEL_CONFIG, "read_committed");
+        consumerProperties.put(ConsumerConfig.MAX_POLL_RECORDS_CONFIG, options.batchSize());
+        Properties producerProperties = new Properties();
+        producerProperties.put(ProducerConfig.BOOTSTRAP_SERVERS_CONFIG, options.bootstrapServers());
+        producerProperties.put(ProducerConfig.ACKS_CONFIG, "all");
+        producerProperties.put(ProducerConfig.ENABLE_IDEMPOTENCE_CONFIG, "true");
+
+        try (Consumer<byte[], byte[]> consumer = new KafkaConsumer<>(consumerProperties, new ByteArrayDeserializer(), new ByteArrayDeserializer());
+             Producer<byte[], byte[]> producer = new KafkaProducer<>(producerProperties, new ByteArraySerializer(), new ByteArraySerializer())) {
+            new DeadLetterRedrive(consumer, producer, options).run();
+        }
+    }
+
+    /**
+     * Returns the number of records redriven, or that would have been in a dry run.
+     */
+    long run() {
+        List<TopicPartition> partitions = consumer.partitionsFor(options.deadLetterTopic()).stream()
+                .map(partitionInfo -> new TopicPartition(partitionInfo.topic(), partitionInfo.partition()))
+                .collect(Collectors.toList());
+        consumer.assign(partitions);
+        Map<TopicPartition, Long> endOffsets = consumer.endOffsets(partitions);
+        Map<TopicPartition, OffsetAndMetadata> committed = consumer.committed(Set.copyOf(partitions));
+        for (TopicPartition partition : partitions) {
+            OffsetAndMetadata offset = committed.get(partition);
+            if (offset != null) {
+                consumer.seek(partition, offset);
+            } else {
+                consumer.seekToBeginning(List.of(partition));
+            }
+        }
+
+        long startNanos = System.nanoTime();
+        long intervalNanos = options.rate() > 0 ? 1_000_000_000L / options.rate() : 0L;
+        long nextSendNanos = startNanos;
+        long read = 0;
+        long redriven = 0;
+        int emptyPolls = 0;
+        AtomicReference<Exception> sendFailure = new AtomicReference<>();
+        while (!done(endOffsets) && emptyPolls < MAX_EMPTY_POLLS && (options.maxRecords() < 0 || redriven < options.maxRecords())) {
+            Map<TopicPartition, OffsetAndMetadata> progress = new HashMap<>();
+            int polled = 0;
+            for (ConsumerRecord<byte[], byte[]> record : consumer.poll(POLL_TIMEOUT)) {
+                TopicPartition partition = new TopicPartition(record.topic(), record.partition());
+                //left for the next run, progress is only committed up to the records handled here
+                if (record.offset() >= endOffsets.getOrDefault(partition, 0L) || (options.maxRecords() >= 0 && redriven >= options.maxRecords()))
+                    continue;
+
+                polled++;
+                read++;
+                progress.put(partition, new OffsetAndMetadata(record.offset() + 1));
+                if (!matches(record))
+                    continue;
+
+                redriven++;
+                if (options.dryRun())
+                    continue;
+                if (intervalNanos > 0) {
+                    long waitNanos = nextSendNanos - System.nanoTime();
+                    if (waitNanos > 0) {
+                        LockSupport.parkNanos(waitNanos);
+                    }
+                    nextSendNanos = Math.max(nextSendNanos, System.nanoTime()) + intervalNanos;
+                }
+                producer.send(redriven(record), (metadata, exception) -> {
+                    if (exception != null) {
+                        sendFailure.compareAndSet(null, exception);
+                    }
+                });
+            }
+            emptyPolls = polled == 0 ? emptyPolls + 1 : 0;
+
+            if (!options.dryRun() && !progress.isEmpty()) {
+                producer.flush();
+                if (sendFailure.get() != null)
+                    throw new KafkaException("Failed to redrive to " + options.topic() + ", polls since the last commit are sent again on the next run", sendFailure.get());
+                consumer.commitSync(progress);
+            }
+            log.info("Redrive progress read={} {}={} ratePerSecond={}", read, options.dryRun() ? "matched" : "redriven", redriven,
+                    redriven * 1_000_000_000L / Math.max(1L, System.nanoTime() - startNanos));
+        }
+
+        log.info("Redrive finished dlt={} topic={} reason={} stackHash={} read={} {}={} tookMs={}", options.deadLetterTopic(), options.topic(),
+                options.reason(), options.stackHash(), read, options.dryRun() ? "matched" : "redriven", redriven, (System.nanoTime() - startNanos) / 1_000_000L);
+        return redriven;
+    }
+
+    private boolean done(Map<TopicPartition, Long> endOffsets) {
+        for (Map.Entry<TopicPartition, Long> endOffset : endOffsets.entrySet()) {
+            if (consumer.position(endOffset.getKey()) < endOffset.getValue())
+                return false;
+        }
+        return true;
+    }
+
+    private boolean matches(ConsumerRecord<byte[], byte[]> record) {
+        return matches(record.headers(), LibraryEventsRetryService.FAILURE_REASON_HEADER, options.reason())
+                && matches(record.headers(), LibraryEventsRetryService.STACK_HASH_HEADER, options.stackHash());
+    }
+
+    private static boolean matches(Headers headers, String name, String expected) {
+        if (expected == null)
+            return true;
+        Header header = headers.lastHeader(name);
+        return header != null && expected.equals(new String(header.value(), StandardCharsets.UTF_8));
+    }
+
+    private ProducerRecord<byte[], byte[]> redriven(ConsumerRecord<byte[], byte[]> record) {
+        Headers headers = new RecordHeaders();
+        for (Header header : record.headers()) {
+            if (!DROPPED_HEADERS.contains(header.key())) {
+                headers.add(header);
+            }
+        }
+        //the original topic, partition and offset stay, so a record that fails again still points at its first failure
+        return new ProducerRecord<>(options.topic(), null, record.key(), record.value(), headers);
+    }
+}
@@ -0,0 +1,80 @@
+package com.learnkafka.libraryeventsconsumer.redrive;
+
+import com.learnkafka.libraryeventsconsumer.service.RetryTopic;
+import org.springframework.core.env.SimpleCommandLinePropertySource;
+
+/**
+ * Options of a redrive run, given as --name=value.
+ */
+class RedriveOptions {
+
+    private final SimpleCommandLinePropertySource arguments;
+
+    RedriveOptions(String... args) {
+        this.arguments = new SimpleCommandLinePropertySource(args);
+    }
+
+    String bootstrapServers() {
+        return string("bootstrap-servers", "localhost:9092");
+    }
+
+    String deadLetterTopic() {
+        return string("dlt", RetryTopic.DEAD_LETTER_TOPIC);
+    }
+
+    String topic() {
+        return string("topic", "library-events");
+    }
+
+    /**
+     * Only records whose failure reason header equals this are redriven, all when not given.
+     */
+    String reason() {
+        return string("reason", null);
+    }
+
+    /**
+     * Only records whose stack hash header equals this are redriven, all when not given.
+     */
+    String stackHash() {
+        return string("stack-hash", null);
+    }
+
+    /**
+     * Records sent per second, 0 sends as fast as the producer allows.
+     */
+    int rate() {
+        return Integer.parseInt(string("rate", "100"));
+    }
+
+    int batchSize() {
+        return Integer.parseInt(string("batch-size", "500"));
+    }
+
+    /**
+     * Stops after this many records were redriven, -1 to redrive every matching one.
+     */
+    long maxRecords() {
+        return Long.parseLong(string("max-records", "-1"));
+    }
+
+    /**
+     * Counts the matching records without sending them or committing progress.
+     */
+    boolean dryRun() {
+        return Boolean.parseBoolean(string("dry-run", "false"));
+    }
+
+    /**
+     * Progress is committed per filter by default, so a run with one filter never skips records
+     * another filter would redrive.
+     */
+    String groupId() {
+        return string("group-id", "library-events-dlt-redrive-" + (reason() != null ? reason() : "any") + "-" + (stackHash() != null ? stackHash() : "any"));
+    }
+
+    private String string(String name, String defaultValue) {
+        String value = arguments.getProperty(name);
+        return value != null ? value : defaultValue;
+    }
+}
@@ -0,0 +1,106 @@
+package com.learnkafka.libraryeventsconsumer.search;
+
+import java.util.Comparator;
+import java.util.List;
+import java.util.PriorityQueue;
+
+/**
+ * Sorted ids read one at a time, so unions and intersections of posting lists are evaluated
+ * lazily: a search stops reading once it has enough hits instead of copying every matching list
+ * first.
+ */
+interface IdSet {
+
+    long NONE = Long.MAX_VALUE;
+
+    IdSet EMPTY = from -> NONE;
+
+    /**
+     * Smallest id at or above from, {@link #NONE} when there is none.
+     */
+    long ceiling(long from);
+
+    static IdSet union(List<? extends IdSet> sets) {
+        if (sets.isEmpty())
+            return EMPTY;
+        return sets.size() == 1 ? sets.get(0) : new Union(sets);
+    }
+
+    static IdSet intersection(List<? extends IdSet> sets) {
+        if (sets.isEmpty())
+            return EMPTY;
+        return sets.size() == 1 ? sets.get(0) : new Intersection(sets);
+    }
+
+    /**
+     * K-way merge: each set is read no further than the smallest id asked for, and only the sets
+     * behind it are advanced.
+     */
+    class Union implements IdSet {
+
+        private final PriorityQueue<Cursor> cursors = new PriorityQueue<>(Comparator.comparingLong(cursor -> cursor.current));
+
+        private Union(List<? extends IdSet> sets) {
+            for (IdSet set : sets) {
+                Cursor cursor = new Cursor(set);
+                if (cursor.current != NONE) {
+                    cursors.add(cursor);
+                }
+            }
+        }
+
+        @Override
+        public long ceiling(long from) {
+            while (!cursors.isEmpty() && cursors.peek().current < from) {
+                Cursor cursor = cursors.poll();
+                cursor.current = cursor.set.ceiling(from);
+                if (cursor.current != NONE) {
+                    cursors.add(cursor);
+                }
+            }
+            return cursors.isEmpty() ? NONE : cursors.peek().current;
+        }
+
+        private static class Cursor {
+
+            private final IdSet set;
+            private long current;
+
+            Cursor(IdSet set) {
+                this.set = set;
+                this.current = set.ceiling(Long.MIN_VALUE);
+            }
+        }
+    }
+
+    /**
+     * Leapfrog intersection: the candidate only moves forward, to the next id one of the sets
+     * holds, until all of them agree on it.
+     */
+    class Intersection implements IdSet {
+
+        private final IdSet[] sets;
+
+        private Intersection(List<? extends IdSet> sets) {
+            this.sets = sets.toArray(new IdSet[0]);
+        }
+
+        @Override
+        public long ceiling(long from) {
+            long candidate = from;
+            int agreed = 0;
+            for (int i = 0; agreed < sets.length; i = (i + 1) % sets.length) {
+                long next = sets[i].ceiling(candidate);
+                if (next == NONE)
+                    return NONE;
+                if (next == candidate) {
+                    agreed++;
+                } else {
+                    candidate = next;
+                    agreed = 1;
+                }
+            }
+            return candidate;
+        }
+    }
+}
@@ -0,0 +1,356 @@
+package com.learnkafka.libraryeventsconsumer.search;
+
+import com.learnkafka.libraryeventsconsumer.cache.LibraryEventCache;
+import com.learnkafka.libraryeventsconsumer.cache.LibraryEventCommitListener;
+import com.learnkafka.libraryeventsconsumer.domain.LibraryEventView;
+import com.learnkafka.libraryeventsconsumer.entity.LibraryEvent;
+import com.learnkafka.libraryeventsconsumer.jpa.LibraryEventStore;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.NavigableSet;
+import java.util.Optional;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentSkipListSet;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.regex.Pattern;
+
+/**
+ * In-memory inverted index over the author and title of each event's book, for exact and prefix
+ * token search. It is fed the writes {@link LibraryEventCache} publishes, so it only ever reflects
+ * committed state, and an UPDATE moves the event from its old tokens to its new ones.
+ * <p>
+ * Writes of the same id are applied one at a time and the later write wins, by the cache's write
+ * stamps. Per event only its write stamp and references to its tokens are held, the tokens
+ * themselves are the dictionary's. Hits are read from the cache, or in one query from the store,
+ * and checked against the query before they are returned, as postings may briefly lag. An
+ * invalidated event is read again from the database on a background thread, off the committing
+ * listener.
+ * <p>
+ * The posting lists of all query tokens, and of every token a prefix matches, are merged and
+ * intersected lazily in id order, so a search reads only as far as its limit needs.
+ * <p>
+ * Rebuilt from the database on startup, before any listener runs.
+ */
+@Slf4j
+@Component
+public class LibraryEventIndex implements LibraryEventCommitListener {
+
+    public enum Field {
+        AUTHOR, TITLE, ANY
+    }
+
+    public enum Match {
+        EXACT, PREFIX
+    }
+
+    private static final Pattern TOKEN_SEPARATOR = Pattern.compile("[^\\p{L}\\p{N}]+");
+    private static final int REBUILD_PAGE_SIZE = 1_000;
+
+    private final LibraryEventStore libraryEventStore;
+    private final LibraryEventCache libraryEventCache;
+    private final TransactionTemplate readTransactionTemplate;
+    private final boolean rebuildOnStartup;
+
+    private final Map<Integer, Document> documents = new ConcurrentHashMap<>();
+    //ids invalidated and not read again yet, an id is queued once however often it is invalidated
+    private final Set<Integer> reloading = ConcurrentHashMap.newKeySet();
+    private final ExecutorService reloadExecutor = Executors.newSingleThreadExecutor(runnable -> {
+        Thread thread = new Thread(runnable, "library-event-index-reload");
+        thread.setDaemon(true);
+        return thread;
+    });
+    private final Terms authors = new Terms();
+    private final Terms titles = new Terms();
+
+    public LibraryEventIndex(LibraryEventStore libraryEventStore, LibraryEventCache libraryEventCache,
+                             PlatformTransactionManager transactionManager,
+                             @Value("${libraryevents.consumer.search.rebuild-on-startup:true}") boolean rebuildOnStartup) {
+        this.libraryEventStore = libraryEventStore;
+        this.libraryEventCache = libraryEventCache;
+        this.readTransactionTemplate = new TransactionTemplate(transactionManager);
+        this.readTransactionTemplate.setReadOnly(true);
+        this.rebuildOnStartup = rebuildOnStartup;
+        libraryEventCache.addCommitListener(this);
+    }
+
+    @PostConstruct
+    public void rebuild() {
+        if (!rebuildOnStartup)
+            return;
+
+        int indexed = 0;
+        Integer afterId = Integer.MIN_VALUE;
+        while (true) {
+            Integer from = afterId;
+            List<LibraryEventView> views = readTransactionTemplate.execute(status -> libraryEventStore.findViewsAfter(from, REBUILD_PAGE_SIZE));
+            for (LibraryEventView view : views) {
+                loaded(view.getLibraryEventId(), view, libraryEventCache.readStamp(view.getLibraryEventId()));
+            }
+            indexed += views.size();
+            if (views.size() < REBUILD_PAGE_SIZE)
+                break;
+            afterId = views.get(views.size() - 1).getLibraryEventId();
+        }
+        log.info("Rebuilt the library event index count={} authorTerms={} titleTerms={}", indexed, authors.size(), titles.size());
+    }
+
+    /**
+     * Events whose book matches every token of the query in the given field, ordered by
+     * libraryEventId. With {@link Match#PREFIX} a token matches every token starting with it.
+     */
+    public List<LibraryEventView> search(String query, Field field, Match match, int limit) {
+        Set<String> queryTokens = tokens(query);
+        if (queryTokens.isEmpty())
+            return List.of();
+
+        List<IdSet> perToken = new ArrayList<>();
+        for (String queryToken : queryTokens) {
+            perToken.add(ids(queryToken, field, match));
+        }
+        IdSet candidates = IdSet.intersection(perToken);
+
+        List<LibraryEventView> found = new ArrayList<>();
+        long next = candidates.ceiling(Integer.MIN_VALUE);
+        while (next != IdSet.NONE && found.size() < limit) {
+            //a batch of the hits still missing, read from the cache or else in one query
+            List<Integer> batch = new ArrayList<>();
+            while (next != IdSet.NONE && batch.size() < limit - found.size()) {
+                if (documents.containsKey((int) next)) {
+                    batch.add((int) next);
+                }
+                next = candidates.ceiling(next + 1);
+            }
+            for (LibraryEventView view : views(batch)) {
+                if (matches(view, queryTokens, field, match) && found.size() < limit) {
+                    found.add(view);
+                }
+            }
+        }
+        return found;
+    }
+
+    @Override
+    public void committed(LibraryEvent libraryEvent, long writeStamp) {
+        LibraryEventView view = LibraryEventView.of(libraryEvent);
+        documents.compute(view.getLibraryEventId(), (id, current) -> {
+            if (current != null && current.writeStamp > writeStamp)
+                return current;
+            return replace(id, current, view, writeStamp);
+        });
+    }
+
+    @Override
+    public void invalidated(Integer libraryEventId) {
+        if (reloading.add(libraryEventId)) {
+            reloadExecutor.execute(() -> reload(libraryEventId));
+        }
+    }
+
+    @PreDestroy
+    public void close() {
+        reloadExecutor.shutdownNow();
+    }
+
+    /**
+     * Waits until the reloads queued so far are applied.
+     */
+    void awaitReloads() throws InterruptedException, ExecutionException {
+        reloadExecutor.submit(() -> { }).get();
+    }
+
+    private void reload(Integer libraryEventId) {
+        //removed first, an invalidation arriving during the read queues another one
+        reloading.remove(libraryEventId);
+        try {
+            long readStamp = libraryEventCache.readStamp(libraryEventId);
+            Optional<LibraryEvent> libraryEvent = readTransactionTemplate.execute(status -> libraryEventStore.findById(libraryEventId));
+            loaded(libraryEventId, libraryEvent.map(LibraryEventView::of).orElse(null), readStamp);
+        } catch (RuntimeException e) {
+            log.warn("Failed to read invalidated library event again libraryEventId={}", libraryEventId, e);
+        }
+    }
+
+    /**
+     * Applies a row read from the database, unless the indexed document comes from a write that
+     * completed after readStamp was taken and so may be newer than the row.
+     */
+    private void loaded(Integer libraryEventId, LibraryEventView view, long readStamp) {
+        documents.compute(libraryEventId, (id, current) -> {
+            if (current != null && current.writeStamp > readStamp)
+                return current;
+            return replace(id, current, view, readStamp);
+        });
+    }
+
+    //runs inside documents.compute, so writes of one id never interleave
+    private Document replace(int id, Document current, LibraryEventView view, long writeStamp) {
+        List<String> oldAuthors = current != null ? Arrays.asList(current.authors) : List.of();
+        List<String> oldTitles = current != null ? Arrays.asList(current.titles) : List.of();
+        Set<String> newAuthors = view != null && view.getBook() != null ? tokens(view.getBook().getBookAuthor()) : Set.of();
+        Set<String> newTitles = view != null && view.getBook() != null ? tokens(view.getBook().getBookName()) : Set.of();
+
+        //add before removing, a concurrent search then sees the event under both rather than neither
+        String[] authorTokens = newAuthors.stream().map(token -> authors.add(token, id)).toArray(String[]::new);
+        String[] titleTokens = newTitles.stream().map(token -> titles.add(token, id)).toArray(String[]::new);
+        oldAuthors.stream().filter(token -> !newAuthors.contains(token)).forEach(token -> authors.remove(token, id));
+        oldTitles.stream().filter(token -> !newTitles.contains(token)).forEach(token -> titles.remove(token, id));
+        return view != null ? new Document(writeStamp, authorTokens, titleTokens) : null;
+    }
+
+    private IdSet ids(String queryToken, Field field, Match match) {
+        switch (field) {
+            case AUTHOR:
+                return authors.ids(queryToken, match);
+            case TITLE:
+                return titles.ids(queryToken, match);
+            default:
+                return IdSet.union(List.of(authors.ids(queryToken, match), titles.ids(queryToken, match)));
+        }
+    }
+
+    //ordered by id, as the batch is
+    private List<LibraryEventView> views(List<Integer> libraryEventIds) {
+        if (libraryEventIds.isEmpty())
+            return List.of();
+
+        List<LibraryEventView> views = new ArrayList<>();
+        List<Integer> missing = new ArrayList<>();
+        for (Integer libraryEventId : libraryEventIds) {
+            LibraryEvent cached = libraryEventCache.get(libraryEventId);
+            if (cached != null) {
+                views.add(LibraryEventView.of(cached));
+            } else {
+                missing.add(libraryEventId);
+            }
+        }
+        if (!missing.isEmpty()) {
+            views.addAll(readTransactionTemplate.execute(status -> libraryEventStore.findViewsByIds(missing)));
+            views.sort(Comparator.comparing(LibraryEventView::getLibraryEventId));
+        }
+        return views;
+    }
+
+    static boolean matches(LibraryEventView view, Set<String> queryTokens, Field field, Match match) {
+        if (view.getBook() == null)
+            return false;
+
+        Set<String> authors = field != Field.TITLE ? tokens(view.getBook().getBookAuthor()) : Set.of();
+        Set<String> titles = field != Field.AUTHOR ? tokens(view.getBook().getBookName()) : Set.of();
+        for (String queryToken : queryTokens) {
+            boolean found = contains(authors, queryToken, match) || contains(titles, queryToken, match);
+            if (!found)
+                return false;
+        }
+        return true;
+    }
+
+    private static boolean contains(Set<String> tokens, String queryToken, Match match) {
+        if (match == Match.EXACT)
+            return tokens.contains(queryToken);
+        return tokens.stream().anyMatch(token -> token.startsWith(queryToken));
+    }
+
+    static Set<String> tokens(String text) {
+        if (text == null)
+            return Set.of();
+
+        Set<String> tokens = new LinkedHashSet<>();
+        for (String token : TOKEN_SEPARATOR.split(text.toLowerCase(Locale.ROOT))) {
+            if (!token.isEmpty()) {
+                tokens.add(token);
+            }
+        }
+        return tokens.isEmpty() ? Set.of() : Collections.unmodifiableSet(tokens);
+    }
+
+    /**
+     * Posting lists of one field, with the tokens also kept sorted for prefix lookups. A token's
+     * list is created and dropped inside compute, so a concurrent add never lands in a list that
+     * was just removed.
+     */
+    static class Terms {
+
+        private final Map<String, PostingList> postings = new ConcurrentHashMap<>();
+        private final NavigableSet<String> dictionary = new ConcurrentSkipListSet<>();
+
+        /**
+         * Returns the dictionary's instance of the token, which documents keep instead of their own.
+         */
+        String add(String token, int id) {
+            String[] canonical = new String[1];
+            postings.compute(token, (t, postingList) -> {
+                if (postingList == null) {
+                    postingList = new PostingList();
+                    dictionary.add(t);
+                }
+                postingList.add(id);
+                canonical[0] = t;
+                return postingList;
+            });
+            return canonical[0];
+        }
+
+        void remove(String token, int id) {
+            postings.computeIfPresent(token, (t, postingList) -> {
+                if (!postingList.remove(id))
+                    return postingList;
+                dictionary.remove(t);
+                return null;
+            });
+        }
+
+        IdSet ids(String queryToken, Match match) {
+            if (match == Match.EXACT) {
+                PostingList postingList = postings.get(queryToken);
+                return postingList != null ? postingList : IdSet.EMPTY;
+            }
+
+            List<PostingList> matching = new ArrayList<>();
+            for (String token : dictionary.subSet(queryToken, true, queryToken + Character.MAX_VALUE, false)) {
+                PostingList postingList = postings.get(token);
+                if (postingList != null) {
+                    matching.add(postingList);
+                }
+            }
+            return IdSet.union(matching);
+        }
+
+        int size() {
+            return postings.size();
+        }
+    }
+
+    /**
+     * The indexed state of one event: the stamp of the write it reflects and its tokens, needed to
+     * move it off them on the next write.
+     */
+    static class Document {
+
+        private final long writeStamp;
+        private final String[] authors;
+        private final String[] titles;
+
+        Document(long writeStamp, String[] authors, String[] titles) {
+            this.writeStamp = writeStamp;
+            this.authors = authors;
+            this.titles = titles;
+        }
+    }
+}
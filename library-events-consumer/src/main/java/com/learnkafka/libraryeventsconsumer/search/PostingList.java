@@ -0,0 +1,65 @@
+package com.learnkafka.libraryeventsconsumer.search;
+
+import java.util.Arrays;
+
+/**
+ * Ids of the events containing one token, as a sorted int array: four bytes per id instead of a
+ * boxed Integer in a set. Ids are mostly generated in increasing order, so adding one is usually
+ * an append. The array shrinks again once most of it is unused.
+ */
+class PostingList implements IdSet {
+
+    private static final int INITIAL_CAPACITY = 2;
+
+    private int[] ids = new int[INITIAL_CAPACITY];
+    private int size;
+
+    synchronized void add(int id) {
+        int index = Arrays.binarySearch(ids, 0, size, id);
+        if (index >= 0)
+            return;
+
+        int insertAt = -index - 1;
+        if (size == ids.length) {
+            ids = Arrays.copyOf(ids, size + (size >> 1) + 1);
+        }
+        System.arraycopy(ids, insertAt, ids, insertAt + 1, size - insertAt);
+        ids[insertAt] = id;
+        size++;
+    }
+
+    /**
+     * Returns true when the list is empty afterwards.
+     */
+    synchronized boolean remove(int id) {
+        int index = Arrays.binarySearch(ids, 0, size, id);
+        if (index >= 0) {
+            System.arraycopy(ids, index + 1, ids, index, size - index - 1);
+            size--;
+            if (ids.length > INITIAL_CAPACITY && size < ids.length / 4) {
+                ids = Arrays.copyOf(ids, Math.max(INITIAL_CAPACITY, size * 2));
+            }
+        }
+        return size == 0;
+    }
+
+    @Override
+    public synchronized long ceiling(long from) {
+        if (from > Integer.MAX_VALUE)
+            return NONE;
+
+        int index = Arrays.binarySearch(ids, 0, size, (int) Math.max(from, Integer.MIN_VALUE));
+        if (index < 0) {
+            index = -index - 1;
+        }
+        return index < size ? ids[index] : NONE;
+    }
+
+    synchronized int[] toArray() {
+        return Arrays.copyOf(ids, size);
+    }
+
+    synchronized int size() {
+        return size;
+    }
+}
@@ -0,0 +1,74 @@
+package com.learnkafka.libraryeventsconsumer.service;
+
+import com.learnkafka.libraryeventsconsumer.cache.LibraryEventCache;
+import com.learnkafka.libraryeventsconsumer.domain.LibraryEventView;
+import com.learnkafka.libraryeventsconsumer.entity.LibraryEvent;
+import com.learnkafka.libraryeventsconsumer.jpa.LibraryEventStore;
+import com.learnkafka.libraryeventsconsumer.search.LibraryEventIndex;
+import com.learnkafka.libraryeventsconsumer.state.LibraryEventStateStore;
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.data.domain.Page;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.data.domain.Sort;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.util.List;
+import java.util.Optional;
+
+/**
+ * Reads for the HTTP API. Lookups by id are served from {@link LibraryEventCache}, which
+ * {@link LibraryEventsService} keeps up to date as it commits events, and only go to the database
+ * on a miss. With libraryevents.consumer.state.enabled a miss is looked up in
+ * {@link LibraryEventStateStore} first, which holds UPDATEs the sink has not written yet. Database reads run in read-only transactions of their own, so they take no locks
+ * the listeners' write transactions could wait for. Searches by author and title are answered by
+ * {@link LibraryEventIndex} alone.
+ */
+@Service
+public class LibraryEventsQueryService {
+
+    private final LibraryEventStore libraryEventStore;
+    private final LibraryEventCache libraryEventCache;
+    private final LibraryEventIndex libraryEventIndex;
+    private final LibraryEventStateStore libraryEventStateStore;
+    private final TransactionTemplate readOnlyTransactionTemplate;
+
+    public LibraryEventsQueryService(LibraryEventStore libraryEventStore, LibraryEventCache libraryEventCache,
+                                     LibraryEventIndex libraryEventIndex, ObjectProvider<LibraryEventStateStore> libraryEventStateStore,
+                                     PlatformTransactionManager transactionManager) {
+        this.libraryEventStore = libraryEventStore;
+        this.libraryEventCache = libraryEventCache;
+        this.libraryEventIndex = libraryEventIndex;
+        this.libraryEventStateStore = libraryEventStateStore.getIfAvailable();
+        this.readOnlyTransactionTemplate = new TransactionTemplate(transactionManager);
+        this.readOnlyTransactionTemplate.setReadOnly(true);
+    }
+
+    public Optional<LibraryEventView> findById(Integer libraryEventId) {
+        LibraryEvent cached = libraryEventCache.get(libraryEventId);
+        if (cached != null)
+            return Optional.of(LibraryEventView.of(cached));
+
+        LibraryEvent local = libraryEventStateStore != null ? libraryEventStateStore.get(libraryEventId) : null;
+        if (local != null)
+            return Optional.of(LibraryEventView.of(local));
+
+        long readStamp = libraryEventCache.readStamp(libraryEventId);
+        Optional<LibraryEvent> libraryEvent = readOnlyTransactionTemplate.execute(status -> libraryEventStore.findById(libraryEventId));
+        libraryEvent.ifPresent(found -> libraryEventCache.loaded(found, readStamp));
+        return libraryEvent.map(LibraryEventView::of);
+    }
+
+    /**
+     * Pages ordered by libraryEventId, selected as views without loading entities.
+     */
+    public Page<LibraryEventView> findAll(int page, int size) {
+        PageRequest pageRequest = PageRequest.of(page, size, Sort.by("libraryEventId"));
+        return readOnlyTransactionTemplate.execute(status -> libraryEventStore.findAllViews(pageRequest));
+    }
+
+    public List<LibraryEventView> search(String query, LibraryEventIndex.Field field, LibraryEventIndex.Match match, int limit) {
+        return libraryEventIndex.search(query, field, match, limit);
+    }
+}
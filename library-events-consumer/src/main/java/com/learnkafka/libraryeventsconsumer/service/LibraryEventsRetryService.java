@@ -0,0 +1,191 @@
+package com.learnkafka.libraryeventsconsumer.service;
+
+import lombok.extern.slf4j.Slf4j;
+import org.apache.kafka.clients.consumer.Consumer;
+import org.apache.kafka.clients.consumer.ConsumerRecord;
+import org.apache.kafka.clients.producer.ProducerRecord;
+import org.apache.kafka.common.TopicPartition;
+import org.apache.kafka.common.header.Header;
+import org.apache.kafka.common.header.Headers;
+import org.apache.kafka.common.header.internals.RecordHeaders;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.core.NestedExceptionUtils;
+import org.springframework.dao.RecoverableDataAccessException;
+import org.springframework.kafka.KafkaException;
+import org.springframework.kafka.core.KafkaOperations;
+import org.springframework.kafka.core.KafkaTemplate;
+import org.springframework.kafka.support.SendResult;
+import org.springframework.stereotype.Service;
+
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+
+/**
+ * Moves failed records through the {@link RetryTopic} tiers and finally to the dead-letter topic.
+ * Retry listeners pause a partition while its head record is not due, so a backing-off record
+ * holds up only its own partition and never the main topic.
+ */
+@Service
+@Slf4j
+public class LibraryEventsRetryService {
+
+    public static final String RETRY_ATTEMPT_HEADER = "library-events-retry-attempt";
+    public static final String RETRY_DUE_AT_HEADER = "library-events-retry-due-at";
+    public static final String ORIGINAL_TOPIC_HEADER = "library-events-original-topic";
+    public static final String ORIGINAL_PARTITION_HEADER = "library-events-original-partition";
+    public static final String ORIGINAL_OFFSET_HEADER = "library-events-original-offset";
+    public static final String EXCEPTION_MESSAGE_HEADER = "library-events-exception-message";
+    public static final String FAILURE_REASON_HEADER = "library-events-failure-reason";
+    public static final String STACK_HASH_HEADER = "library-events-stack-hash";
+
+    @Autowired
+    KafkaTemplate<Integer, byte[]> kafkaTemplate;
+
+    private final Map<TopicPartition, Long> pausedUntil = new ConcurrentHashMap<>();
+
+    public void retry(ConsumerRecord<Integer, byte[]> record, Exception exception) {
+        retry(record, exception, kafkaTemplate);
+    }
+
+    /**
+     * Sends through the given template. When it is in a transaction the send is not awaited, a
+     * failed send fails the commit instead.
+     */
+    public void retry(ConsumerRecord<Integer, byte[]> record, Exception exception, KafkaOperations<Integer, byte[]> kafkaOperations) {
+        int attempt = intHeader(record, RETRY_ATTEMPT_HEADER, 0) + 1;
+        RetryTopic retryTopic = RetryTopic.forAttempt(attempt);
+        if (retryTopic == null) {
+            send(kafkaOperations, record, RetryTopic.DEAD_LETTER_TOPIC, intHeader(record, RETRY_ATTEMPT_HEADER, 0), null, exception);
+            return;
+        }
+
+        send(kafkaOperations, record, retryTopic.getTopicName(), attempt, System.currentTimeMillis() + retryTopic.getDelayMillis(), exception);
+    }
+
+    public void deadLetter(ConsumerRecord<Integer, byte[]> record, Exception exception) {
+        deadLetter(record, exception, kafkaTemplate);
+    }
+
+    public void deadLetter(ConsumerRecord<Integer, byte[]> record, Exception exception, KafkaOperations<Integer, byte[]> kafkaOperations) {
+        send(kafkaOperations, record, RetryTopic.DEAD_LETTER_TOPIC, intHeader(record, RETRY_ATTEMPT_HEADER, 0), null, exception);
+    }
+
+    public boolean isRetryable(Exception exception) {
+        return NestedExceptionUtils.getMostSpecificCause(exception) instanceof RecoverableDataAccessException;
+    }
+
+    private void send(KafkaOperations<Integer, byte[]> kafkaOperations, ConsumerRecord<Integer, byte[]> record, String topic, int attempt, Long dueAt, Exception exception) {
+        Headers headers = new RecordHeaders(record.headers().toArray());
+        if (headers.lastHeader(ORIGINAL_TOPIC_HEADER) == null) {
+            headers.add(ORIGINAL_TOPIC_HEADER, bytes(record.topic()));
+            headers.add(ORIGINAL_PARTITION_HEADER, bytes(String.valueOf(record.partition())));
+            headers.add(ORIGINAL_OFFSET_HEADER, bytes(String.valueOf(record.offset())));
+        }
+        replace(headers, RETRY_ATTEMPT_HEADER, String.valueOf(attempt));
+        headers.remove(RETRY_DUE_AT_HEADER);
+        if (dueAt != null) {
+            headers.add(RETRY_DUE_AT_HEADER, bytes(String.valueOf(dueAt)));
+        }
+        if (exception != null) {
+            if (exception.getMessage() != null) {
+                replace(headers, EXCEPTION_MESSAGE_HEADER, exception.getMessage());
+            }
+            replace(headers, FAILURE_REASON_HEADER, failureReason(exception));
+            replace(headers, STACK_HASH_HEADER, stackHash(exception));
+        }
+
+        ProducerRecord<Integer, byte[]> producerRecord = new ProducerRecord<>(topic, null, record.key(), record.value(), headers);
+        if (kafkaOperations.inTransaction()) {
+            kafkaOperations.send(producerRecord);
+            return;
+        }
+        try {
+            SendResult<Integer, byte[]> result = kafkaOperations.send(producerRecord).get();
+            if (log.isInfoEnabled()) {
+                log.info("Forwarded record topic={} key={} attempt={} partition={} offset={}", topic, record.key(), attempt, result.getRecordMetadata().partition(), result.getRecordMetadata().offset());
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new KafkaException("Interrupted while sending to " + topic, e);
+        } catch (ExecutionException e) {
+            throw new KafkaException("Error while sending to " + topic, e.getCause());
+        }
+    }
+
+    public long dueAt(ConsumerRecord<Integer, byte[]> record) {
+        Header dueAt = record.headers().lastHeader(RETRY_DUE_AT_HEADER);
+        if (dueAt != null)
+            return Long.parseLong(new String(dueAt.value(), StandardCharsets.UTF_8));
+
+        RetryTopic retryTopic = RetryTopic.forTopic(record.topic());
+        return record.timestamp() + (retryTopic != null ? retryTopic.getDelayMillis() : 0L);
+    }
+
+    public void pauseUntil(Consumer<?, ?> consumer, ConsumerRecord<?, ?> record, long dueAt) {
+        TopicPartition topicPartition = new TopicPartition(record.topic(), record.partition());
+        pausedUntil.put(topicPartition, dueAt);
+        consumer.pause(Collections.singleton(topicPartition));
+    }
+
+    public void resumeDuePartitions(Consumer<?, ?> consumer) {
+        if (pausedUntil.isEmpty())
+            return;
+
+        long now = System.currentTimeMillis();
+        List<TopicPartition> due = new ArrayList<>();
+        for (TopicPartition topicPartition : consumer.paused()) {
+            Long until = pausedUntil.get(topicPartition);
+            if (until != null && until <= now) {
+                pausedUntil.remove(topicPartition);
+                due.add(topicPartition);
+            }
+        }
+
+        if (!due.isEmpty())
+            consumer.resume(due);
+    }
+
+    /**
+     * Simple class name of the root cause, what a dead-lettered record is filtered by when it is
+     * redriven.
+     */
+    public static String failureReason(Throwable exception) {
+        return NestedExceptionUtils.getMostSpecificCause(exception).getClass().getSimpleName();
+    }
+
+    /**
+     * Hash of the classes and stack frames of the cause chain, leaving out the messages, so records
+     * that failed at the same place share it whatever the ids in their messages.
+     */
+    public static String stackHash(Throwable exception) {
+        int hash = 1;
+        for (Throwable cause = exception; cause != null; cause = cause.getCause() != cause ? cause.getCause() : null) {
+            hash = 31 * hash + cause.getClass().getName().hashCode();
+            for (StackTraceElement frame : cause.getStackTrace()) {
+                hash = 31 * hash + frame.getClassName().hashCode();
+                hash = 31 * hash + frame.getMethodName().hashCode();
+                hash = 31 * hash + frame.getLineNumber();
+            }
+        }
+        return String.format("%08x", hash);
+    }
+
+    private int intHeader(ConsumerRecord<?, ?> record, String name, int defaultValue) {
+        Header header = record.headers().lastHeader(name);
+        return header != null ? Integer.parseInt(new String(header.value(), StandardCharsets.UTF_8)) : defaultValue;
+    }
+
+    private void replace(Headers headers, String name, String value) {
+        headers.remove(name);
+        headers.add(name, bytes(value));
+    }
+
+    private byte[] bytes(String value) {
+        return value.getBytes(StandardCharsets.UTF_8);
+    }
+}
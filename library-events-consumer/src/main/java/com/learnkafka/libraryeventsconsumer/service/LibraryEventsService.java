@@ -1,98 +1,284 @@
 package com.learnkafka.libraryeventsconsumer.service;
 
-import com.fasterxml.jackson.core.JsonProcessingException;
-import com.fasterxml.jackson.databind.ObjectMapper;
+import com.learnkafka.libraryeventsconsumer.cache.LibraryEventCache;
+import com.learnkafka.libraryeventsconsumer.codec.LibraryEventDeserializer;
+import com.learnkafka.libraryeventsconsumer.dedup.ProcessedOffsetIndex;
 import com.learnkafka.libraryeventsconsumer.entity.LibraryEvent;
 import com.learnkafka.libraryeventsconsumer.entity.LibraryEventType;
-import com.learnkafka.libraryeventsconsumer.jpa.LibraryEventsRepository;
+import com.learnkafka.libraryeventsconsumer.jpa.LibraryEventStore;
+import com.learnkafka.libraryeventsconsumer.metrics.LibraryEventMetrics;
+import com.learnkafka.libraryeventsconsumer.state.LibraryEventStateStore;
+import com.learnkafka.libraryeventsconsumer.throttle.AdaptiveDbThrottle;
+import lombok.extern.slf4j.Slf4j;
 import org.apache.kafka.clients.consumer.ConsumerRecord;
+import org.slf4j.MDC;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.dao.RecoverableDataAccessException;
-import org.springframework.kafka.core.KafkaTemplate;
-import org.springframework.kafka.support.SendResult;
+import org.springframework.kafka.listener.BatchListenerFailedException;
 import org.springframework.stereotype.Service;
-import org.springframework.util.concurrent.ListenableFuture;
-import org.springframework.util.concurrent.ListenableFutureCallback;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
 
 @Service
+@Slf4j
 public class LibraryEventsService {
 
+    private static final String TRACE_ID_MDC_KEY = "traceId";
+
     @Autowired
-    KafkaTemplate<Integer, String> kafkaTemplate;
+    LibraryEventsRetryService libraryEventsRetryService;
 
     @Autowired
-    ObjectMapper objectMapper;
+    LibraryEventDeserializer libraryEventDeserializer;
 
     @Autowired
-    private LibraryEventsRepository libraryEventsRepository;
+    TransactionTemplate transactionTemplate;
 
-    public void processLibraryEvent(ConsumerRecord<Integer, String> consumerRecord) throws JsonProcessingException {
-        LibraryEvent libraryEvent = objectMapper.readValue(consumerRecord.value(), LibraryEvent.class);
+    @Autowired
+    LibraryEventCache libraryEventCache;
 
-        if (libraryEvent.getLibraryEventId() != null && libraryEvent.getLibraryEventId() == 000) {
-            throw new RecoverableDataAccessException("Temporary Network Issue");
+    @Autowired
+    ProcessedOffsetIndex processedOffsetIndex;
+
+    @Autowired
+    LibraryEventMetrics libraryEventMetrics;
+
+    @Autowired
+    AdaptiveDbThrottle adaptiveDbThrottle;
+
+    @Autowired
+    private LibraryEventStore libraryEventStore;
+
+    //only with libraryevents.consumer.state.enabled
+    @Autowired(required = false)
+    LibraryEventStateStore libraryEventStateStore;
+
+    //false keeps UPDATEs of unknown ids failing with "Not found library event"
+    @Value("${libraryevents.consumer.update.insert-missing:false}")
+    boolean insertMissing;
+
+    public void processLibraryEvent(ConsumerRecord<Integer, byte[]> consumerRecord) {
+        if (processedOffsetIndex.isDuplicate(consumerRecord))
+            return;
+
+        try (MDC.MDCCloseable ignored = traceId(consumerRecord)) {
+            libraryEventMetrics.pickedUp(consumerRecord);
+            applyLibraryEvent(readLibraryEvent(consumerRecord), consumerRecord.partition());
+            processedOffsetIndex.applied(consumerRecord);
+            libraryEventMetrics.committed(consumerRecord, false);
         }
+    }
+
+    public void processLibraryEventRetry(ConsumerRecord<Integer, byte[]> consumerRecord) {
+        if (processedOffsetIndex.isDuplicate(consumerRecord))
+            return;
+
+        try (MDC.MDCCloseable ignored = traceId(consumerRecord)) {
+            libraryEventMetrics.retryPickedUp(consumerRecord);
+            //retries run outside of the main assignment, they always write to the database
+            applyLibraryEvent(readLibraryEvent(consumerRecord), null);
+            processedOffsetIndex.applied(consumerRecord);
+            libraryEventMetrics.committed(consumerRecord, true);
+        }
+    }
+
+    //logs written while the record is applied carry the trace id the producer stamped on it
+    private static MDC.MDCCloseable traceId(ConsumerRecord<Integer, byte[]> consumerRecord) {
+        String traceId = LibraryEventMetrics.traceId(consumerRecord);
+        return MDC.putCloseable(TRACE_ID_MDC_KEY, traceId != null ? traceId : "");
+    }
 
+    /**
+     * sourcePartition is the library-events partition the event was consumed from, null when it
+     * must not be applied to local state.
+     */
+    private void applyLibraryEvent(LibraryEvent libraryEvent, Integer sourcePartition) {
         if (libraryEvent.getLibraryEventType().equals(LibraryEventType.NEW)) {
             save(libraryEvent);
         } else if (libraryEvent.getLibraryEventType().equals(LibraryEventType.UPDATE)) {
-            update(libraryEvent);
+            update(libraryEvent, sourcePartition);
         } else {
-            System.out.println("Invalid type!");
+            log.warn("Invalid library event type={}", libraryEvent.getLibraryEventType());
         }
     }
 
-    private void save(LibraryEvent libraryEvent) {
-        libraryEvent.getBook().setLibraryEvent(libraryEvent);
-        libraryEventsRepository.save(libraryEvent);
+    /**
+     * Applies a whole poll in a single transaction. When the record at index i fails, the
+     * transaction is rolled back, records [0, i) are applied again in a fresh transaction and a
+     * {@link BatchListenerFailedException} tells the error handler to commit up to i and retry
+     * or recover only that record. A failure the database reports for the whole batch, at a flush
+     * or at the commit, names no record, so the poll is then applied one record per transaction up
+     * to the first record that fails.
+     */
+    public void processLibraryEvents(List<ConsumerRecord<Integer, byte[]>> consumerRecords) {
+        //look duplicates up once, the failed-prefix pass below must not count them again
+        BitSet duplicates = new BitSet(consumerRecords.size());
+        for (int i = 0; i < consumerRecords.size(); i++) {
+            if (processedOffsetIndex.isDuplicate(consumerRecords.get(i))) {
+                duplicates.set(i);
+            } else {
+                libraryEventMetrics.pickedUp(consumerRecords.get(i));
+            }
+        }
+
+        try {
+            applyInTransaction(consumerRecords, duplicates);
+        } catch (BatchListenerFailedException e) {
+            if (e.getIndex() > 0) {
+                applyInTransaction(consumerRecords.subList(0, e.getIndex()), duplicates);
+            }
+            throw e;
+        } catch (RuntimeException e) {
+            log.warn("Failed to apply library events in one transaction, applying them one by one size={} cause={}",
+                    consumerRecords.size(), e.getClass().getSimpleName());
+            applyOneByOne(consumerRecords, duplicates);
+        }
     }
 
-    private void update(LibraryEvent libraryEvent) {
-        if (libraryEvent.getLibraryEventId() == null)
-            throw new IllegalArgumentException("Library event is null");
+    private void applyOneByOne(List<ConsumerRecord<Integer, byte[]>> consumerRecords, BitSet duplicates) {
+        for (int i = 0; i < consumerRecords.size(); i++) {
+            try {
+                applyInTransaction(consumerRecords.subList(i, i + 1), duplicates.get(i, i + 1));
+            } catch (BatchListenerFailedException e) {
+                throw new BatchListenerFailedException("Failed to process library event", e.getCause(), i);
+            } catch (RuntimeException e) {
+                throw new BatchListenerFailedException("Failed to process library event", e, i);
+            }
+        }
+    }
 
-        libraryEventsRepository.findById(libraryEvent.getLibraryEventId())
-                .ifPresentOrElse(
-                        updated -> {
-                            updated.setLibraryEventType(LibraryEventType.UPDATE);
-                            updated.getBook().setBookAuthor(libraryEvent.getBook().getBookAuthor());
-                            updated.getBook().setBookName(libraryEvent.getBook().getBookName());
-                            updated.getBook().setBookId(libraryEvent.getBook().getBookId());
-                            libraryEventsRepository.save(updated);
-                        }, () -> {
-                            throw new IllegalArgumentException("Not found library event");
-                        });
+    private void applyInTransaction(List<ConsumerRecord<Integer, byte[]>> consumerRecords, BitSet duplicates) {
+        adaptiveDbThrottle.acquire(consumerRecords.size() - duplicates.cardinality());
+        long start = System.nanoTime();
+        Long writeStart;
+        try {
+            writeStart = transactionTemplate.execute(status -> applyLibraryEvents(consumerRecords, duplicates));
+        } finally {
+            adaptiveDbThrottle.release(System.nanoTime() - start);
+        }
+        libraryEventMetrics.written(System.nanoTime() - writeStart);
+
+        for (int i = 0; i < consumerRecords.size(); i++) {
+            processedOffsetIndex.applied(consumerRecords.get(i));
+            if (!duplicates.get(i)) {
+                libraryEventMetrics.committed(consumerRecords.get(i), false);
+            }
+        }
     }
 
-    public void handleRecovery(ConsumerRecord<Integer, String> record) {
-        Integer key = record.key();
-        String value = record.value();
+    /**
+     * Returns when the writes started. Inserts are written before the updates of the poll, which
+     * go out as one JDBC batch.
+     */
+    private long applyLibraryEvents(List<ConsumerRecord<Integer, byte[]>> consumerRecords, BitSet duplicates) {
+        List<LibraryEvent> newLibraryEvents = new ArrayList<>(consumerRecords.size());
+        List<LibraryEvent> updatedLibraryEvents = new ArrayList<>();
+        List<Integer> updatedIndexes = new ArrayList<>();
+        for (int i = 0; i < consumerRecords.size(); i++) {
+            if (duplicates.get(i))
+                continue;
 
-        ListenableFuture<SendResult<Integer, String>> listenableFuture = kafkaTemplate.sendDefault(key, value);
-        listenableFuture.addCallback(new ListenableFutureCallback<SendResult<Integer, String>>() {
-            @Override
-            public void onFailure(Throwable ex) {
-                handleFailure(key, value, ex);
+            try {
+                LibraryEvent libraryEvent = readLibraryEvent(consumerRecords.get(i));
+                if (libraryEvent.getLibraryEventType().equals(LibraryEventType.NEW)) {
+                    newLibraryEvents.add(libraryEvent);
+                } else if (libraryEvent.getLibraryEventType().equals(LibraryEventType.UPDATE)) {
+                    if (libraryEvent.getLibraryEventId() == null)
+                        throw new IllegalArgumentException("Library event is null");
+                    updatedLibraryEvents.add(libraryEvent);
+                    updatedIndexes.add(i);
+                } else {
+                    log.warn("Invalid library event type={}", libraryEvent.getLibraryEventType());
+                }
+            } catch (Exception e) {
+                throw new BatchListenerFailedException("Failed to process library event", e, i);
             }
+        }
 
-            @Override
-            public void onSuccess(SendResult<Integer, String> result) {
-                handleSuccess(key, value, result);
+        long writeStart = System.nanoTime();
+        libraryEventStore.saveAll(newLibraryEvents).forEach(libraryEventCache::written);
+        if (!updatedLibraryEvents.isEmpty()) {
+            int[] updated = libraryEventStore.upsert(updatedLibraryEvents, insertMissing);
+            for (int i = 0; i < updated.length; i++) {
+                if (updated[i] == 0)
+                    throw new BatchListenerFailedException("Failed to process library event", new IllegalArgumentException("Not found library event"), updatedIndexes.get(i));
             }
-        });
+
+            //the cache publishes the first write of an id per transaction, so hand it the last one
+            Map<Integer, LibraryEvent> latest = new LinkedHashMap<>();
+            updatedLibraryEvents.forEach(libraryEvent -> latest.put(libraryEvent.getLibraryEventId(), libraryEvent));
+            latest.values().forEach(libraryEventCache::written);
+        }
+        return writeStart;
     }
 
-    private void handleSuccess(Integer key, String value, SendResult<Integer, String> result) {
-        System.out.println("Message sent successfully for the key: " + key + " and the value:" + value + " partition: " + result.getRecordMetadata().partition());
+    private LibraryEvent readLibraryEvent(ConsumerRecord<Integer, byte[]> consumerRecord) {
+        long start = System.nanoTime();
+        LibraryEvent libraryEvent = libraryEventDeserializer.deserialize(consumerRecord.topic(), consumerRecord.headers(), consumerRecord.value());
+        libraryEventMetrics.deserialized(start);
+
+        if (libraryEvent.getLibraryEventId() != null && libraryEvent.getLibraryEventId() == 000) {
+            throw new RecoverableDataAccessException("Temporary Network Issue");
+        }
+
+        return libraryEvent;
     }
 
-    private void handleFailure(Integer key, String value, Throwable ex) {
-        System.out.println("Error while sending the message, ex: " + ex.getMessage());
+    private void save(LibraryEvent libraryEvent) {
+        adaptiveDbThrottle.acquire(1);
+        long start = System.nanoTime();
         try {
-            throw ex;
-        } catch (Throwable throwable) {
-            System.out.println("Error on failure: " + throwable.getMessage());
+            libraryEventCache.written(libraryEventStore.save(libraryEvent));
+        } finally {
+            adaptiveDbThrottle.release(System.nanoTime() - start);
+        }
+        libraryEventMetrics.written(System.nanoTime() - start);
+        if (libraryEventStateStore != null) {
+            libraryEventStateStore.written(libraryEvent);
         }
     }
 
+    private void update(LibraryEvent libraryEvent, Integer sourcePartition) {
+        if (libraryEvent.getLibraryEventId() == null)
+            throw new IllegalArgumentException("Library event is null");
+
+        //known locally, the database is written later by the sink
+        if (sourcePartition != null && libraryEventStateStore != null && libraryEventStateStore.isLocal(sourcePartition, libraryEvent.getLibraryEventId())) {
+            libraryEventStateStore.update(libraryEvent);
+            //reads and the search index see the event now, not once the sink has written it
+            libraryEventCache.written(libraryEvent);
+            return;
+        }
+        if (libraryEventStateStore != null) {
+            libraryEventStateStore.writing(libraryEvent.getLibraryEventId());
+        }
+
+        //the event carries the whole book, so it is written as is and not read first
+        adaptiveDbThrottle.acquire(1);
+        long start = System.nanoTime();
+        int[] updated;
+        try {
+            updated = libraryEventStore.upsert(List.of(libraryEvent), insertMissing);
+        } finally {
+            adaptiveDbThrottle.release(System.nanoTime() - start);
+        }
+        if (updated[0] == 0)
+            throw new IllegalArgumentException("Not found library event");
+        libraryEventMetrics.written(System.nanoTime() - start);
+        libraryEventCache.written(libraryEvent);
+        if (libraryEventStateStore != null) {
+            libraryEventStateStore.written(libraryEvent);
+        }
+    }
+
+    public void handleRecovery(ConsumerRecord<Integer, byte[]> record, Exception exception) {
+        libraryEventsRetryService.retry(record, exception);
+        processedOffsetIndex.processed(record);
+    }
 }
@@ -0,0 +1,49 @@
+package com.learnkafka.libraryeventsconsumer.service;
+
+import org.springframework.beans.factory.DisposableBean;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.boot.autoconfigure.kafka.KafkaProperties;
+import org.springframework.kafka.core.DefaultKafkaProducerFactory;
+import org.springframework.kafka.core.KafkaTemplate;
+import org.springframework.kafka.transaction.KafkaTransactionManager;
+import org.springframework.stereotype.Component;
+
+/**
+ * Transactional producer of the transactional consumer mode. Recovery sends made through its
+ * template while the listener container's transaction is active are committed together with the
+ * offsets of the poll.
+ * <p>
+ * Not exposed as a producer factory, template or transaction manager bean, those would replace
+ * the non-transactional ones Boot configures for the retry listeners and the JPA transaction
+ * manager.
+ */
+@Component
+@ConditionalOnProperty(name = "libraryevents.consumer.mode", havingValue = "transactional")
+public class LibraryEventsTransactionalProducer implements DisposableBean {
+
+    private final DefaultKafkaProducerFactory<Integer, byte[]> producerFactory;
+    private final KafkaTemplate<Integer, byte[]> kafkaTemplate;
+    private final KafkaTransactionManager<Integer, byte[]> transactionManager;
+
+    public LibraryEventsTransactionalProducer(KafkaProperties kafkaProperties,
+                                              @Value("${libraryevents.consumer.transactional.transaction-id-prefix:library-events-consumer-tx-}") String transactionIdPrefix) {
+        this.producerFactory = new DefaultKafkaProducerFactory<>(kafkaProperties.buildProducerProperties());
+        this.producerFactory.setTransactionIdPrefix(transactionIdPrefix);
+        this.kafkaTemplate = new KafkaTemplate<>(producerFactory);
+        this.transactionManager = new KafkaTransactionManager<>(producerFactory);
+    }
+
+    public KafkaTemplate<Integer, byte[]> getKafkaTemplate() {
+        return kafkaTemplate;
+    }
+
+    public KafkaTransactionManager<Integer, byte[]> getTransactionManager() {
+        return transactionManager;
+    }
+
+    @Override
+    public void destroy() {
+        producerFactory.destroy();
+    }
+}
@@ -0,0 +1,8 @@
+package com.learnkafka.libraryeventsconsumer.service;
+
+public class RetryNotDueException extends RuntimeException {
+
+    public RetryNotDueException(String message) {
+        super(message);
+    }
+}
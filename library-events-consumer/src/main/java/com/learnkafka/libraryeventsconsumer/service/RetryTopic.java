@@ -0,0 +1,38 @@
+package com.learnkafka.libraryeventsconsumer.service;
+
+public enum RetryTopic {
+    RETRY_1S("library-events-retry-1s", 1_000L),
+    RETRY_10S("library-events-retry-10s", 10_000L),
+    RETRY_60S("library-events-retry-60s", 60_000L);
+
+    public static final String DEAD_LETTER_TOPIC = "library-events-dlt";
+
+    private final String topicName;
+    private final long delayMillis;
+
+    RetryTopic(String topicName, long delayMillis) {
+        this.topicName = topicName;
+        this.delayMillis = delayMillis;
+    }
+
+    public String getTopicName() {
+        return topicName;
+    }
+
+    public long getDelayMillis() {
+        return delayMillis;
+    }
+
+    public static RetryTopic forAttempt(int attempt) {
+        RetryTopic[] tiers = values();
+        return attempt >= 1 && attempt <= tiers.length ? tiers[attempt - 1] : null;
+    }
+
+    public static RetryTopic forTopic(String topicName) {
+        for (RetryTopic retryTopic : values()) {
+            if (retryTopic.topicName.equals(topicName))
+                return retryTopic;
+        }
+        return null;
+    }
+}
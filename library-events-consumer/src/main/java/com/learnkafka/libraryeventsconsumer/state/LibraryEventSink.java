@@ -0,0 +1,214 @@
+package com.learnkafka.libraryeventsconsumer.state;
+
+import com.learnkafka.libraryeventsconsumer.cache.LibraryEventCache;
+import com.learnkafka.libraryeventsconsumer.entity.LibraryEvent;
+import com.learnkafka.libraryeventsconsumer.entity.LibraryEventSinkCheckpoint;
+import com.learnkafka.libraryeventsconsumer.jpa.LibraryEventSinkCheckpointRepository;
+import com.learnkafka.libraryeventsconsumer.jpa.LibraryEventStore;
+import com.learnkafka.libraryeventsconsumer.throttle.AdaptiveDbThrottle;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.DisposableBean;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.time.Duration;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Collectors;
+
+/**
+ * Writes UPDATEs applied to {@link LibraryEventStateStore} to the database in the background. Only
+ * the latest state of an id is kept until the next flush, which writes everything pending with a
+ * single upsert batch.
+ * <p>
+ * Each flush also records, per changelog partition, the highest changelog offset it wrote. On
+ * restore, changelog records past that checkpoint are handed to the sink again, so a crash before
+ * a flush loses nothing. Once maxPending ids are waiting, the caller flushes itself and keeps
+ * retrying while the database is unavailable, which holds up its consumer instead of the heap.
+ * <p>
+ * Flushes take a slot of {@link AdaptiveDbThrottle} like any other database write.
+ * <p>
+ * A pending write is dropped when its id is written to the database directly, and when its
+ * partition leaves this instance, so it never overwrites a newer row.
+ */
+@Slf4j
+@Component
+@ConditionalOnProperty(name = "libraryevents.consumer.state.enabled", havingValue = "true")
+public class LibraryEventSink implements DisposableBean {
+
+    private static final long FLUSH_FAILURE_BACKOFF_MILLIS = 1_000L;
+
+    private final LibraryEventStore libraryEventStore;
+    private final LibraryEventSinkCheckpointRepository checkpointRepository;
+    private final LibraryEventCache libraryEventCache;
+    private final TransactionTemplate transactionTemplate;
+    private final AdaptiveDbThrottle adaptiveDbThrottle;
+    private final int maxPending;
+
+    private final Object flushLock = new Object();
+    private Map<Integer, PendingWrite> pending = new LinkedHashMap<>();
+    private Map<Integer, Long> pendingOffsets = new HashMap<>();
+    private final ScheduledExecutorService scheduler = Executors.newSingleThreadScheduledExecutor(runnable -> {
+        Thread thread = new Thread(runnable, "library-event-sink");
+        thread.setDaemon(true);
+        return thread;
+    });
+
+    public LibraryEventSink(LibraryEventStore libraryEventStore, LibraryEventSinkCheckpointRepository checkpointRepository,
+                            LibraryEventCache libraryEventCache, TransactionTemplate transactionTemplate,
+                            AdaptiveDbThrottle adaptiveDbThrottle,
+                            @Value("${libraryevents.consumer.state.sink.interval:200ms}") Duration interval,
+                            @Value("${libraryevents.consumer.state.sink.max-pending:5000}") int maxPending) {
+        this.libraryEventStore = libraryEventStore;
+        this.checkpointRepository = checkpointRepository;
+        this.libraryEventCache = libraryEventCache;
+        this.transactionTemplate = transactionTemplate;
+        this.adaptiveDbThrottle = adaptiveDbThrottle;
+        this.maxPending = maxPending;
+        scheduler.scheduleWithFixedDelay(this::flushQuietly, interval.toMillis(), interval.toMillis(), TimeUnit.MILLISECONDS);
+    }
+
+    public void enqueue(int changelogPartition, long changelogOffset, LibraryEvent libraryEvent) {
+        int size;
+        synchronized (this) {
+            pending.put(libraryEvent.getLibraryEventId(), new PendingWrite(changelogPartition, libraryEvent));
+            pendingOffsets.merge(changelogPartition, changelogOffset, Math::max);
+            size = pending.size();
+        }
+
+        while (size >= maxPending && !flushQuietly()) {
+            if (!sleep())
+                return;
+            synchronized (this) {
+                size = pending.size();
+            }
+        }
+    }
+
+    /**
+     * Drops the pending write of the id, to be called before the id is written to the database
+     * some other way. Waits for a flush in progress, which may be writing the id.
+     */
+    public void discard(Integer libraryEventId) {
+        synchronized (flushLock) {
+            synchronized (this) {
+                pending.remove(libraryEventId);
+            }
+        }
+    }
+
+    /**
+     * Drops everything pending for the changelog partitions. It is still in the changelog past
+     * the checkpoint, so their next owner writes it on restore.
+     */
+    public void discard(Collection<Integer> changelogPartitions) {
+        synchronized (flushLock) {
+            synchronized (this) {
+                pending.values().removeIf(pendingWrite -> changelogPartitions.contains(pendingWrite.changelogPartition));
+                pendingOffsets.keySet().removeAll(changelogPartitions);
+            }
+        }
+    }
+
+    /**
+     * Highest changelog offset of the partition that is in the database, -1 when none is.
+     */
+    public long checkpoint(int changelogPartition) {
+        return checkpointRepository.findById(changelogPartition)
+                .map(LibraryEventSinkCheckpoint::getChangelogOffset)
+                .orElse(-1L);
+    }
+
+    /**
+     * Writes everything enqueued so far. What fails to be written stays pending, behind anything
+     * enqueued for the same id meanwhile.
+     */
+    public void flush() {
+        synchronized (flushLock) {
+            Map<Integer, PendingWrite> libraryEvents;
+            Map<Integer, Long> offsets;
+            synchronized (this) {
+                if (pending.isEmpty())
+                    return;
+                libraryEvents = pending;
+                offsets = pendingOffsets;
+                pending = new LinkedHashMap<>();
+                pendingOffsets = new HashMap<>();
+            }
+
+            adaptiveDbThrottle.acquire(libraryEvents.size());
+            long start = System.nanoTime();
+            try {
+                transactionTemplate.executeWithoutResult(status -> {
+                    //ids were validated against local state, insert rather than drop one missing from the table
+                    List<LibraryEvent> written = libraryEvents.values().stream().map(PendingWrite::getLibraryEvent).collect(Collectors.toList());
+                    libraryEventStore.upsert(written, true);
+                    offsets.forEach((partition, offset) -> checkpointRepository.save(new LibraryEventSinkCheckpoint(partition, offset)));
+                    written.forEach(libraryEventCache::written);
+                });
+            } catch (RuntimeException e) {
+                synchronized (this) {
+                    libraryEvents.forEach(pending::putIfAbsent);
+                    offsets.forEach((partition, offset) -> pendingOffsets.merge(partition, offset, Math::max));
+                }
+                throw e;
+            } finally {
+                adaptiveDbThrottle.release(System.nanoTime() - start);
+            }
+        }
+    }
+
+    @Override
+    public void destroy() throws InterruptedException {
+        scheduler.shutdown();
+        scheduler.awaitTermination(FLUSH_FAILURE_BACKOFF_MILLIS, TimeUnit.MILLISECONDS);
+        flush();
+    }
+
+    private boolean flushQuietly() {
+        try {
+            flush();
+            return true;
+        } catch (RuntimeException e) {
+            log.error("Failed to flush library events to the database", e);
+            return false;
+        }
+    }
+
+    synchronized int pending() {
+        return pending.size();
+    }
+
+    private static boolean sleep() {
+        try {
+            Thread.sleep(FLUSH_FAILURE_BACKOFF_MILLIS);
+            return true;
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return false;
+        }
+    }
+
+    private static class PendingWrite {
+
+        private final int changelogPartition;
+        private final LibraryEvent libraryEvent;
+
+        PendingWrite(int changelogPartition, LibraryEvent libraryEvent) {
+            this.changelogPartition = changelogPartition;
+            this.libraryEvent = libraryEvent;
+        }
+
+        LibraryEvent getLibraryEvent() {
+            return libraryEvent;
+        }
+    }
+}
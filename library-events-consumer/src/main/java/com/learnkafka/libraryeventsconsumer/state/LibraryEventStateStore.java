@@ -0,0 +1,381 @@
+package com.learnkafka.libraryeventsconsumer.state;
+
+import com.learnkafka.libraryeventsconsumer.codec.LibraryEventDeserializer;
+import com.learnkafka.libraryeventsconsumer.codec.LibraryEventSerializer;
+import com.learnkafka.libraryeventsconsumer.entity.LibraryEvent;
+import io.micrometer.core.instrument.DistributionSummary;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import lombok.extern.slf4j.Slf4j;
+import org.apache.kafka.clients.consumer.Consumer;
+import org.apache.kafka.clients.consumer.ConsumerConfig;
+import org.apache.kafka.clients.consumer.ConsumerRecord;
+import org.apache.kafka.clients.producer.ProducerRecord;
+import org.apache.kafka.clients.producer.RecordMetadata;
+import org.apache.kafka.common.TopicPartition;
+import org.apache.kafka.common.serialization.IntegerSerializer;
+import org.apache.kafka.common.utils.Utils;
+import org.springframework.beans.factory.DisposableBean;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.kafka.KafkaException;
+import org.springframework.kafka.core.ConsumerFactory;
+import org.springframework.kafka.core.KafkaTemplate;
+import org.springframework.kafka.listener.ConsumerAwareRebalanceListener;
+import org.springframework.stereotype.Component;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
+import java.util.Properties;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Collectors;
+
+/**
+ * Latest state of every library event whose key hashes to a library-events partition this
+ * consumer is assigned, held off-heap per partition. An UPDATE of an id found here is applied to
+ * the local state and the changelog and reaches the database later through
+ * {@link LibraryEventSink}, so it costs a lookup of a few microseconds and a changelog send
+ * instead of a database round trip.
+ * <p>
+ * Every write is sent to the compacted changelog topic, to the partition with the number of the
+ * library-events partition its key maps to. On assignment a partition's state is restored from
+ * its changelog partition before any of its records is processed; on revocation pending sink
+ * writes are flushed and the state is dropped. Ids written by another instance are only picked up
+ * on restore, until then an UPDATE of them takes the database path once.
+ * <p>
+ * State is placed by the producer's default partitioner. A key that the producer's
+ * libraryevents.partitioner.overrides moves to another partition arrives where its state is not
+ * held, so its UPDATEs always take the database path; changing the override table while UPDATEs of
+ * the moved keys are pending in a sink is not supported.
+ * <p>
+ * Every snapshot interval each partition's state is caught up with its changelog and written to a
+ * snapshot file along with the changelog offset it reflects. A restore then starts from the
+ * snapshot and replays only the changelog records past that offset; without a usable snapshot it
+ * replays the whole partition.
+ * <p>
+ * Only the record listener mode is supported: every write waits for its changelog send, which
+ * the batch, parallel and transactional modes would pay once per record.
+ */
+@Slf4j
+@Component
+@ConditionalOnProperty(name = "libraryevents.consumer.state.enabled", havingValue = "true")
+public class LibraryEventStateStore implements ConsumerAwareRebalanceListener, DisposableBean {
+
+    public static final String SOURCE_TOPIC = "library-events";
+    public static final String CHANGELOG_TOPIC = "library-events-state-changelog";
+
+    private final KafkaTemplate<Integer, byte[]> kafkaTemplate;
+    private final ConsumerFactory<Object, Object> consumerFactory;
+    private final LibraryEventSink libraryEventSink;
+    private final LibraryEventDeserializer libraryEventDeserializer;
+    private final Duration restoreTimeout;
+    private final Path snapshotDir;
+    private final MeterRegistry meterRegistry;
+
+    private final LibraryEventSerializer libraryEventSerializer = new LibraryEventSerializer();
+    private final IntegerSerializer keySerializer = new IntegerSerializer();
+    private final Map<Integer, OffHeapEventLog> partitions = new ConcurrentHashMap<>();
+    private volatile int partitionCount;
+    private final ScheduledExecutorService scheduler = Executors.newSingleThreadScheduledExecutor(runnable -> {
+        Thread thread = new Thread(runnable, "library-event-state-snapshot");
+        thread.setDaemon(true);
+        return thread;
+    });
+
+    public LibraryEventStateStore(KafkaTemplate<Integer, byte[]> kafkaTemplate, ConsumerFactory<Object, Object> consumerFactory,
+                                  LibraryEventSink libraryEventSink, LibraryEventDeserializer libraryEventDeserializer,
+                                  MeterRegistry meterRegistry,
+                                  @Value("${libraryevents.consumer.mode:record}") String consumerMode,
+                                  @Value("${libraryevents.consumer.state.restore-timeout:5m}") Duration restoreTimeout,
+                                  @Value("${libraryevents.consumer.state.snapshot.dir:${java.io.tmpdir}/library-events-state}") Path snapshotDir,
+                                  @Value("${libraryevents.consumer.state.snapshot.interval:60s}") Duration snapshotInterval) throws IOException {
+        if (!"record".equals(consumerMode))
+            throw new IllegalStateException("libraryevents.consumer.state.enabled requires libraryevents.consumer.mode=record, was " + consumerMode);
+
+        this.kafkaTemplate = kafkaTemplate;
+        this.consumerFactory = consumerFactory;
+        this.libraryEventSink = libraryEventSink;
+        this.libraryEventDeserializer = libraryEventDeserializer;
+        this.meterRegistry = meterRegistry;
+        this.restoreTimeout = restoreTimeout;
+        this.snapshotDir = Files.createDirectories(snapshotDir);
+        //a zero interval turns snapshots off, every restore then replays the whole changelog partition
+        if (!snapshotInterval.isZero()) {
+            scheduler.scheduleWithFixedDelay(this::snapshotQuietly, snapshotInterval.toMillis(), snapshotInterval.toMillis(), TimeUnit.MILLISECONDS);
+        }
+    }
+
+    /**
+     * The event when its partition is assigned here and it has been written or restored, null
+     * otherwise.
+     */
+    public LibraryEvent get(Integer libraryEventId) {
+        OffHeapEventLog eventLog = partitions.get(partitionFor(libraryEventId));
+        byte[] value = eventLog != null ? eventLog.get(libraryEventId) : null;
+        return value != null ? libraryEventDeserializer.deserialize(CHANGELOG_TOPIC, value) : null;
+    }
+
+    /**
+     * Whether an UPDATE of the id consumed from the library-events partition can be applied
+     * locally: its state is held here and the record arrived on the partition the state is kept
+     * for, so no other instance writes the id meanwhile.
+     */
+    public boolean isLocal(int sourcePartition, Integer libraryEventId) {
+        int partition = partitionFor(libraryEventId);
+        OffHeapEventLog eventLog = partitions.get(partition);
+        return partition == sourcePartition && eventLog != null && eventLog.contains(libraryEventId);
+    }
+
+    /**
+     * To be called before an event is written to the database directly, a sink write still
+     * pending for it would overwrite the newer row otherwise.
+     */
+    public void writing(Integer libraryEventId) {
+        libraryEventSink.discard(libraryEventId);
+    }
+
+    /**
+     * Records an event that is already in the database.
+     */
+    public void written(LibraryEvent libraryEvent) {
+        put(libraryEvent);
+    }
+
+    /**
+     * Applies an UPDATE of a known id locally and leaves the database write to the sink. Returns
+     * once the changelog has the event.
+     */
+    public void update(LibraryEvent libraryEvent) {
+        RecordMetadata changelogRecord = put(libraryEvent);
+        libraryEventSink.enqueue(changelogRecord.partition(), changelogRecord.offset(), libraryEvent);
+    }
+
+    @Override
+    public void onPartitionsAssigned(Consumer<?, ?> consumer, Collection<TopicPartition> assigned) {
+        for (TopicPartition partition : assigned) {
+            if (SOURCE_TOPIC.equals(partition.topic())) {
+                restore(partition.partition());
+            }
+        }
+    }
+
+    @Override
+    public void onPartitionsRevokedBeforeCommit(Consumer<?, ?> consumer, Collection<TopicPartition> revoked) {
+        try {
+            libraryEventSink.flush();
+        } catch (RuntimeException e) {
+            //what is left is dropped below, the next owner writes it from the changelog
+            log.warn("Failed to flush state before revocation partitions={}", revoked, e);
+        }
+        onPartitionsLost(consumer, revoked);
+    }
+
+    @Override
+    public void onPartitionsLost(Consumer<?, ?> consumer, Collection<TopicPartition> lost) {
+        List<Integer> dropped = lost.stream()
+                .filter(partition -> SOURCE_TOPIC.equals(partition.topic()))
+                .map(TopicPartition::partition)
+                .collect(Collectors.toList());
+        //the next owner must not have its writes overwritten by ones still pending here
+        libraryEventSink.discard(dropped);
+        dropped.forEach(partitions::remove);
+    }
+
+    /**
+     * Catches every partition held here up with its changelog and snapshots it. Records of ids
+     * written by other instances are picked up on the way.
+     */
+    public void snapshot() {
+        for (Map.Entry<Integer, OffHeapEventLog> entry : partitions.entrySet()) {
+            int partition = entry.getKey();
+            OffHeapEventLog eventLog = entry.getValue();
+            try (Consumer<Object, Object> changelogConsumer = changelogConsumer("state-snapshot", partition)) {
+                replay(changelogConsumer, partition, eventLog, Long.MAX_VALUE, System.currentTimeMillis());
+            }
+            writeSnapshot(partition, eventLog);
+        }
+    }
+
+    @Override
+    public void destroy() throws InterruptedException {
+        scheduler.shutdown();
+        scheduler.awaitTermination(restoreTimeout.toMillis(), TimeUnit.MILLISECONDS);
+        //the changelog may be gone already, what is held is snapshotted as it is
+        partitions.forEach((partition, eventLog) -> {
+            try {
+                writeSnapshot(partition, eventLog);
+            } catch (UncheckedIOException e) {
+                log.error("Failed to snapshot state partition={}", partition, e);
+            }
+        });
+    }
+
+    /**
+     * The library-events partition of the key, as the producer's default partitioner picks it.
+     */
+    int partitionFor(Integer libraryEventId) {
+        if (partitionCount == 0) {
+            partitionCount = kafkaTemplate.partitionsFor(SOURCE_TOPIC).size();
+        }
+        return Utils.toPositive(Utils.murmur2(keySerializer.serialize(SOURCE_TOPIC, libraryEventId))) % partitionCount;
+    }
+
+    private RecordMetadata put(LibraryEvent libraryEvent) {
+        Integer libraryEventId = libraryEvent.getLibraryEventId();
+        int partition = partitionFor(libraryEventId);
+        byte[] value = libraryEventSerializer.serialize(CHANGELOG_TOPIC, libraryEvent);
+        RecordMetadata changelogRecord;
+        try {
+            changelogRecord = kafkaTemplate.send(new ProducerRecord<>(CHANGELOG_TOPIC, partition, libraryEventId, value)).get().getRecordMetadata();
+        } catch (ExecutionException e) {
+            throw new KafkaException("Failed to send library event to the state changelog", e.getCause());
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new KafkaException("Interrupted sending library event to the state changelog", e);
+        }
+
+        OffHeapEventLog eventLog = partitions.get(partition);
+        if (eventLog != null) {
+            eventLog.put(libraryEventId, value, changelogRecord.offset());
+        }
+        return changelogRecord;
+    }
+
+    private void restore(int partition) {
+        long start = System.currentTimeMillis();
+        long checkpoint = libraryEventSink.checkpoint(partition);
+        OffHeapEventLog eventLog = readSnapshot(partition);
+        boolean warm = eventLog != null;
+        int resent = 0;
+        if (warm) {
+            resent += resend(partition, eventLog, checkpoint);
+        } else {
+            eventLog = new OffHeapEventLog();
+        }
+
+        long replayed;
+        try (Consumer<Object, Object> restoreConsumer = changelogConsumer("state-restore", partition)) {
+            TopicPartition changelogPartition = new TopicPartition(CHANGELOG_TOPIC, partition);
+            long endOffset = restoreConsumer.endOffsets(List.of(changelogPartition)).get(changelogPartition);
+            if (warm && eventLog.position() > endOffset) {
+                //the changelog was recreated since the snapshot, its offsets no longer mean the same
+                log.warn("Discarding snapshot of state partition={} position={} endOffset={}", partition, eventLog.position(), endOffset);
+                warm = false;
+                resent = 0;
+                eventLog = new OffHeapEventLog();
+            }
+            replayed = replay(restoreConsumer, partition, eventLog, checkpoint, start);
+        }
+
+        partitions.put(partition, eventLog);
+        long tookMillis = System.currentTimeMillis() - start;
+        String startType = warm ? "warm" : "cold";
+        restoreTimer(startType).record(tookMillis, TimeUnit.MILLISECONDS);
+        replayedSummary(startType).record(replayed);
+        log.info("Restored state partition={} start={} count={} replayed={} resentFromSnapshot={} capacity={} tookMs={}",
+                partition, startType, eventLog.size(), replayed, resent, eventLog.capacity(), tookMillis);
+    }
+
+    /**
+     * Applies the changelog partition from the log's position up to its current end, and moves
+     * the position there. Records past checkpoint that win over what the log held are handed to
+     * the sink, as they were sent to the changelog but may have been lost before the sink wrote
+     * them. Returns the number of records read.
+     */
+    private long replay(Consumer<Object, Object> changelogConsumer, int partition, OffHeapEventLog eventLog, long checkpoint, long start) {
+        TopicPartition changelogPartition = new TopicPartition(CHANGELOG_TOPIC, partition);
+        changelogConsumer.assign(List.of(changelogPartition));
+        long beginningOffset = changelogConsumer.beginningOffsets(List.of(changelogPartition)).get(changelogPartition);
+        long endOffset = changelogConsumer.endOffsets(List.of(changelogPartition)).get(changelogPartition);
+        changelogConsumer.seek(changelogPartition, Math.min(Math.max(beginningOffset, eventLog.position()), endOffset));
+
+        long replayed = 0;
+        while (changelogConsumer.position(changelogPartition) < endOffset) {
+            if (System.currentTimeMillis() - start > restoreTimeout.toMillis())
+                throw new IllegalStateException("Replaying state partition=" + partition + " did not finish in " + restoreTimeout);
+
+            for (ConsumerRecord<Object, Object> changelogRecord : changelogConsumer.poll(Duration.ofMillis(100))) {
+                byte[] value = (byte[]) changelogRecord.value();
+                boolean applied = eventLog.put((Integer) changelogRecord.key(), value, changelogRecord.offset());
+                if (applied && changelogRecord.offset() > checkpoint) {
+                    libraryEventSink.enqueue(partition, changelogRecord.offset(), libraryEventDeserializer.deserialize(CHANGELOG_TOPIC, value));
+                }
+                replayed++;
+            }
+        }
+        eventLog.position(Math.max(eventLog.position(), endOffset));
+        return replayed;
+    }
+
+    //entries the snapshot has from past the checkpoint may not have reached the database either
+    private int resend(int partition, OffHeapEventLog eventLog, long checkpoint) {
+        int[] resent = new int[1];
+        eventLog.forEach((libraryEventId, offset, value) -> {
+            if (offset > checkpoint) {
+                libraryEventSink.enqueue(partition, offset, libraryEventDeserializer.deserialize(CHANGELOG_TOPIC, value));
+                resent[0]++;
+            }
+        });
+        return resent[0];
+    }
+
+    private OffHeapEventLog readSnapshot(int partition) {
+        try {
+            return OffHeapEventLog.readSnapshot(snapshotFile(partition));
+        } catch (IOException e) {
+            log.warn("Failed to read snapshot of state partition={}, replaying the whole changelog", partition, e);
+            return null;
+        }
+    }
+
+    private void writeSnapshot(int partition, OffHeapEventLog eventLog) {
+        try {
+            eventLog.writeSnapshot(snapshotFile(partition));
+        } catch (IOException e) {
+            throw new UncheckedIOException("Failed to snapshot state partition=" + partition, e);
+        }
+    }
+
+    private void snapshotQuietly() {
+        try {
+            snapshot();
+        } catch (RuntimeException e) {
+            log.error("Failed to snapshot state", e);
+        }
+    }
+
+    private Path snapshotFile(int partition) {
+        return snapshotDir.resolve(CHANGELOG_TOPIC + "-" + partition + ".snapshot");
+    }
+
+    private Consumer<Object, Object> changelogConsumer(String clientIdPrefix, int partition) {
+        Properties properties = new Properties();
+        properties.put(ConsumerConfig.ENABLE_AUTO_COMMIT_CONFIG, "false");
+        return consumerFactory.createConsumer(null, clientIdPrefix, "-" + partition, properties);
+    }
+
+    private Timer restoreTimer(String startType) {
+        return Timer.builder("libraryevents.consumer.state.restore")
+                .description("Time from a state partition being assigned to it being ready")
+                .tag("start", startType)
+                .register(meterRegistry);
+    }
+
+    private DistributionSummary replayedSummary(String startType) {
+        return DistributionSummary.builder("libraryevents.consumer.state.replayed")
+                .description("Changelog records replayed to restore a state partition")
+                .tag("start", startType)
+                .baseUnit("records")
+                .register(meterRegistry);
+    }
+}
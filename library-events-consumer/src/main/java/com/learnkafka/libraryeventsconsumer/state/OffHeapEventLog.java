@@ -0,0 +1,193 @@
+package com.learnkafka.libraryeventsconsumer.state;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Encoded events of one partition in a direct buffer, outside of the heap. Entries are appended
+ * and never overwritten in place; a heap index maps each libraryEventId to its latest entry.
+ * Each entry carries the changelog offset it was written at, and an entry older than the one held
+ * for its id is ignored, so changelog records can be applied in any order.
+ * <p>
+ * Superseded entries are reclaimed by copying the live ones into a new buffer when the buffer is
+ * full, which is also when it grows. A dropped buffer's memory is released once it is collected.
+ * <p>
+ * A snapshot file is a header (magic, version, position, entry count) followed by the live
+ * entries in the buffer layout, so loading one is a single copy out of the mapped file.
+ */
+public class OffHeapEventLog {
+
+    static final int INITIAL_CAPACITY = 64 * 1024;
+
+    private static final int SNAPSHOT_MAGIC = 0x4C455653;
+    private static final byte SNAPSHOT_VERSION = 1;
+    private static final int SNAPSHOT_HEADER_SIZE = Integer.BYTES + 1 + Long.BYTES + Integer.BYTES;
+    //offset, id, length, then the encoded event
+    private static final int ENTRY_HEADER_SIZE = Long.BYTES + Integer.BYTES + Integer.BYTES;
+    private static final int ENTRY_ID = Long.BYTES;
+    private static final int ENTRY_LENGTH = Long.BYTES + Integer.BYTES;
+
+    private ByteBuffer buffer;
+    private final Map<Integer, Integer> positions = new HashMap<>();
+    private int liveBytes;
+    private long position;
+
+    public OffHeapEventLog() {
+        this(INITIAL_CAPACITY);
+    }
+
+    OffHeapEventLog(int initialCapacity) {
+        this.buffer = ByteBuffer.allocateDirect(initialCapacity);
+    }
+
+    /**
+     * Returns false when an entry from a later changelog offset is already held.
+     */
+    public synchronized boolean put(int libraryEventId, byte[] value, long offset) {
+        int entrySize = ENTRY_HEADER_SIZE + value.length;
+        Integer previous = positions.get(libraryEventId);
+        if (previous != null) {
+            if (buffer.getLong(previous) > offset)
+                return false;
+            liveBytes -= ENTRY_HEADER_SIZE + buffer.getInt(previous + ENTRY_LENGTH);
+        }
+        if (buffer.remaining() < entrySize) {
+            //grow only when reclaiming superseded entries would leave it more than half full
+            int needed = liveBytes + entrySize;
+            int capacity = needed <= buffer.capacity() / 2 ? buffer.capacity() : Math.max(buffer.capacity() * 2, needed * 2);
+            compact(capacity, previous != null ? libraryEventId : null);
+        }
+
+        positions.put(libraryEventId, buffer.position());
+        buffer.putLong(offset).putInt(libraryEventId).putInt(value.length).put(value);
+        liveBytes += entrySize;
+        return true;
+    }
+
+    public synchronized byte[] get(int libraryEventId) {
+        Integer entry = positions.get(libraryEventId);
+        if (entry == null)
+            return null;
+
+        byte[] value = new byte[buffer.getInt(entry + ENTRY_LENGTH)];
+        buffer.duplicate().position(entry + ENTRY_HEADER_SIZE).get(value);
+        return value;
+    }
+
+    public synchronized boolean contains(int libraryEventId) {
+        return positions.containsKey(libraryEventId);
+    }
+
+    /**
+     * Changelog offset up to which, exclusive, every record of the partition is reflected.
+     * Entries written since may go beyond it.
+     */
+    public synchronized long position() {
+        return position;
+    }
+
+    public synchronized void position(long position) {
+        this.position = position;
+    }
+
+    public synchronized void forEach(EntryConsumer entryConsumer) {
+        for (Map.Entry<Integer, Integer> entry : positions.entrySet()) {
+            int at = entry.getValue();
+            byte[] value = new byte[buffer.getInt(at + ENTRY_LENGTH)];
+            buffer.duplicate().position(at + ENTRY_HEADER_SIZE).get(value);
+            entryConsumer.accept(entry.getKey(), buffer.getLong(at), value);
+        }
+    }
+
+    public synchronized int size() {
+        return positions.size();
+    }
+
+    synchronized int capacity() {
+        return buffer.capacity();
+    }
+
+    /**
+     * Writes the live entries and the position to a temporary file next to the target, which
+     * then replaces the target, so a crash never leaves a partial snapshot behind.
+     */
+    public synchronized void writeSnapshot(Path file) throws IOException {
+        Path temporary = Files.createTempFile(file.getParent(), file.getFileName().toString(), ".tmp");
+        try (FileChannel channel = FileChannel.open(temporary, StandardOpenOption.CREATE, StandardOpenOption.TRUNCATE_EXISTING,
+                StandardOpenOption.READ, StandardOpenOption.WRITE)) {
+            MappedByteBuffer mapped = channel.map(FileChannel.MapMode.READ_WRITE, 0, SNAPSHOT_HEADER_SIZE + liveBytes);
+            mapped.putInt(SNAPSHOT_MAGIC).put(SNAPSHOT_VERSION).putLong(position).putInt(positions.size());
+            for (int at : positions.values()) {
+                int entrySize = ENTRY_HEADER_SIZE + buffer.getInt(at + ENTRY_LENGTH);
+                mapped.put(buffer.duplicate().position(at).limit(at + entrySize));
+            }
+            mapped.force();
+        }
+        Files.move(temporary, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+    }
+
+    /**
+     * The log saved in the snapshot, or null when there is none or it is not readable.
+     */
+    public static OffHeapEventLog readSnapshot(Path file) throws IOException {
+        if (!Files.isRegularFile(file) || Files.size(file) < SNAPSHOT_HEADER_SIZE)
+            return null;
+
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            MappedByteBuffer mapped = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+            if (mapped.getInt() != SNAPSHOT_MAGIC || mapped.get() != SNAPSHOT_VERSION)
+                return null;
+            long position = mapped.getLong();
+            int count = mapped.getInt();
+
+            int entriesSize = mapped.remaining();
+            OffHeapEventLog eventLog = new OffHeapEventLog(Math.max(INITIAL_CAPACITY, entriesSize * 2));
+            eventLog.buffer.put(mapped);
+            for (int at = 0; at < entriesSize; ) {
+                if (entriesSize - at < ENTRY_HEADER_SIZE)
+                    return null;
+                int entrySize = ENTRY_HEADER_SIZE + eventLog.buffer.getInt(at + ENTRY_LENGTH);
+                if (entrySize < ENTRY_HEADER_SIZE || entrySize > entriesSize - at)
+                    return null;
+                eventLog.positions.put(eventLog.buffer.getInt(at + ENTRY_ID), at);
+                at += entrySize;
+            }
+            if (eventLog.positions.size() != count)
+                return null;
+
+            eventLog.liveBytes = entriesSize;
+            eventLog.position = position;
+            return eventLog;
+        }
+    }
+
+    /**
+     * Copies the live entries, except the one of skipId that is about to be replaced.
+     */
+    private void compact(int capacity, Integer skipId) {
+        if (skipId != null) {
+            positions.remove(skipId);
+        }
+        ByteBuffer compacted = ByteBuffer.allocateDirect(capacity);
+        for (Map.Entry<Integer, Integer> entry : positions.entrySet()) {
+            int at = entry.getValue();
+            int entrySize = ENTRY_HEADER_SIZE + buffer.getInt(at + ENTRY_LENGTH);
+            entry.setValue(compacted.position());
+            compacted.put(buffer.duplicate().position(at).limit(at + entrySize));
+        }
+        buffer = compacted;
+    }
+
+    public interface EntryConsumer {
+
+        void accept(int libraryEventId, long offset, byte[] value);
+    }
+}
@@ -0,0 +1,233 @@
+package com.learnkafka.libraryeventsconsumer.throttle;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.DisposableBean;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.time.Duration;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Limits how many database writes of library events run at once, adapting the limit to the
+ * database's latency: every interval the write time per record of that interval is compared with
+ * two thresholds. Above high-latency the limit is multiplied by decrease-factor, below low-latency
+ * it grows by one, in between it holds (AIMD).
+ * <p>
+ * The interval is evaluated on a timer of its own, so a database that hangs is backed off from
+ * before any write completes: the time per record is the larger of the completed writes' mean and
+ * the age of the oldest running write. A decrease starts from the writes that actually ran or
+ * waited at once in the interval, not from a limit that was never reached, so the first slow
+ * interval already throttles a few listener threads.
+ * <p>
+ * A listener thread or worker waits for a free slot before it writes, so a shrinking limit slows
+ * the record listeners' polling down directly, and in parallel mode fills the dispatcher's
+ * in-flight limit, which pauses the assigned partitions until the database catches up.
+ */
+@Slf4j
+@Component
+public class AdaptiveDbThrottle implements DisposableBean {
+
+    private final boolean enabled;
+    private final long intervalNanos;
+    private final long lowLatencyNanos;
+    private final long highLatencyNanos;
+    private final int minConcurrency;
+    private final int maxConcurrency;
+    private final double decreaseFactor;
+
+    private final Timer waits;
+    private final Counter increases;
+    private final Counter decreases;
+    private final Counter holds;
+
+    private final ScheduledExecutorService scheduler;
+
+    private double limit;
+    private int inFlight;
+    private int waiting;
+    private int peakDemand;
+    private final Map<Thread, RunningWrite> running = new HashMap<>();
+    private long windowNanos;
+    private long windowRecords;
+    private volatile double lastLatencyMillis;
+
+    public AdaptiveDbThrottle(MeterRegistry meterRegistry,
+                              @Value("${libraryevents.consumer.throttle.enabled:false}") boolean enabled,
+                              @Value("${libraryevents.consumer.throttle.interval:1s}") Duration interval,
+                              @Value("${libraryevents.consumer.throttle.low-latency:20ms}") Duration lowLatency,
+                              @Value("${libraryevents.consumer.throttle.high-latency:100ms}") Duration highLatency,
+                              @Value("${libraryevents.consumer.throttle.min-concurrency:1}") int minConcurrency,
+                              @Value("${libraryevents.consumer.throttle.max-concurrency:16}") int maxConcurrency,
+                              @Value("${libraryevents.consumer.throttle.decrease-factor:0.5}") double decreaseFactor) {
+        if (minConcurrency < 1 || maxConcurrency < minConcurrency)
+            throw new IllegalArgumentException("Throttle concurrency must satisfy 1 <= min-concurrency <= max-concurrency");
+        if (decreaseFactor <= 0 || decreaseFactor >= 1)
+            throw new IllegalArgumentException("Throttle decrease-factor must be between 0 and 1");
+
+        this.enabled = enabled;
+        this.intervalNanos = interval.toNanos();
+        this.lowLatencyNanos = lowLatency.toNanos();
+        this.highLatencyNanos = highLatency.toNanos();
+        this.minConcurrency = minConcurrency;
+        this.maxConcurrency = maxConcurrency;
+        this.decreaseFactor = decreaseFactor;
+        this.limit = maxConcurrency;
+
+        Gauge.builder("libraryevents.consumer.throttle.limit", this, AdaptiveDbThrottle::limit)
+                .description("Database writes of library events allowed to run at once")
+                .register(meterRegistry);
+        Gauge.builder("libraryevents.consumer.throttle.in.flight", this, AdaptiveDbThrottle::inFlight)
+                .description("Database writes of library events running")
+                .register(meterRegistry);
+        Gauge.builder("libraryevents.consumer.throttle.latency", this, throttle -> throttle.lastLatencyMillis)
+                .description("Mean database write time per record of the last interval")
+                .baseUnit("milliseconds")
+                .register(meterRegistry);
+        this.waits = Timer.builder("libraryevents.consumer.throttle.wait")
+                .description("Time waiting for the throttle before a database write")
+                .register(meterRegistry);
+        this.increases = decisions(meterRegistry, "increase");
+        this.decreases = decisions(meterRegistry, "decrease");
+        this.holds = decisions(meterRegistry, "hold");
+
+        //a zero interval leaves the evaluation to the caller
+        if (enabled && intervalNanos > 0) {
+            this.scheduler = Executors.newSingleThreadScheduledExecutor(runnable -> {
+                Thread thread = new Thread(runnable, "library-events-db-throttle");
+                thread.setDaemon(true);
+                return thread;
+            });
+            scheduler.scheduleAtFixedRate(this::evaluate, intervalNanos, intervalNanos, TimeUnit.NANOSECONDS);
+        } else {
+            this.scheduler = null;
+        }
+    }
+
+    /**
+     * Waits until fewer writes than the limit are running, then takes a slot for a write of records.
+     * Every acquire must be followed by a {@link #release} on the same thread, also when the write
+     * failed.
+     */
+    public void acquire(int records) {
+        if (!enabled)
+            return;
+
+        long start = System.nanoTime();
+        synchronized (this) {
+            boolean interrupted = false;
+            waiting++;
+            peakDemand = Math.max(peakDemand, inFlight + waiting);
+            while (inFlight >= (int) limit) {
+                try {
+                    wait();
+                } catch (InterruptedException e) {
+                    //the write still has to happen, the slot is taken once one is free
+                    interrupted = true;
+                }
+            }
+            waiting--;
+            inFlight++;
+            running.put(Thread.currentThread(), new RunningWrite(System.nanoTime(), Math.max(1, records)));
+            if (interrupted) {
+                Thread.currentThread().interrupt();
+            }
+        }
+        waits.record(System.nanoTime() - start, TimeUnit.NANOSECONDS);
+    }
+
+    /**
+     * Frees the slot and records how long the write took. A failed write is recorded too, a
+     * timing-out database is the case to back off from.
+     */
+    public void release(long dbNanos) {
+        if (!enabled)
+            return;
+
+        synchronized (this) {
+            RunningWrite write = running.remove(Thread.currentThread());
+            inFlight--;
+            windowNanos += dbNanos;
+            windowRecords += write != null ? write.records : 1;
+            notifyAll();
+        }
+    }
+
+    /**
+     * Decides on the limit from the interval that just ended and starts the next one. An interval
+     * without a completed or running write leaves the limit as it is.
+     */
+    synchronized void evaluate() {
+        long now = System.nanoTime();
+        long latencyNanos = windowRecords > 0 ? windowNanos / windowRecords : 0L;
+        for (RunningWrite write : running.values()) {
+            latencyNanos = Math.max(latencyNanos, (now - write.start) / write.records);
+        }
+        if (windowRecords > 0 || !running.isEmpty()) {
+            adjust(latencyNanos);
+        }
+        windowNanos = 0L;
+        windowRecords = 0L;
+        peakDemand = inFlight + waiting;
+        notifyAll();
+    }
+
+    public synchronized int limit() {
+        return (int) limit;
+    }
+
+    synchronized int inFlight() {
+        return inFlight;
+    }
+
+    //runs holding the lock
+    private void adjust(long latencyNanos) {
+        lastLatencyMillis = latencyNanos / 1_000_000.0;
+        int previous = (int) limit;
+        if (latencyNanos >= highLatencyNanos) {
+            limit = Math.max(minConcurrency, Math.min(limit, peakDemand) * decreaseFactor);
+            decreases.increment();
+        } else if (latencyNanos <= lowLatencyNanos) {
+            limit = Math.min(maxConcurrency, limit + 1);
+            increases.increment();
+        } else {
+            holds.increment();
+        }
+        if ((int) limit != previous) {
+            log.info("Adjusted database write concurrency limit={} previous={} latencyMs={}", (int) limit, previous, lastLatencyMillis);
+        }
+    }
+
+    @Override
+    public void destroy() {
+        if (scheduler != null) {
+            scheduler.shutdownNow();
+        }
+    }
+
+    private static Counter decisions(MeterRegistry meterRegistry, String decision) {
+        return Counter.builder("libraryevents.consumer.throttle.decisions")
+                .description("Adjustments of the database write concurrency limit")
+                .tag("decision", decision)
+                .register(meterRegistry);
+    }
+
+    private static class RunningWrite {
+
+        private final long start;
+        private final int records;
+
+        RunningWrite(long start, int records) {
+            this.start = start;
+            this.records = records;
+        }
+    }
+}
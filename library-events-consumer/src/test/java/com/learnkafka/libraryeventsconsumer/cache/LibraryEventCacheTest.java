@@ -0,0 +1,180 @@
+package com.learnkafka.libraryeventsconsumer.cache;
+
+import com.learnkafka.libraryeventsconsumer.entity.Book;
+import com.learnkafka.libraryeventsconsumer.entity.LibraryEvent;
+import com.learnkafka.libraryeventsconsumer.entity.LibraryEventType;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import java.time.Duration;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertNotSame;
+import static org.junit.jupiter.api.Assertions.assertNull;
+
+class LibraryEventCacheTest {
+
+    SimpleMeterRegistry meterRegistry = new SimpleMeterRegistry();
+
+    LibraryEventCache libraryEventCache = new LibraryEventCache(100, Duration.ofMinutes(10), meterRegistry);
+
+    @AfterEach
+    void tearDown() {
+        if (TransactionSynchronizationManager.isSynchronizationActive()) {
+            complete(TransactionSynchronization.STATUS_ROLLED_BACK);
+        }
+    }
+
+    @Test
+    void should_return_copies_of_written_event() {
+        // given
+        LibraryEvent libraryEvent = libraryEvent(1, "Learn Kafka");
+        libraryEventCache.written(libraryEvent);
+        libraryEvent.getBook().setBookName("Changed after write");
+
+        // when
+        LibraryEvent first = libraryEventCache.get(1);
+        LibraryEvent second = libraryEventCache.get(1);
+
+        // then
+        assertEquals("Learn Kafka", first.getBook().getBookName());
+        assertNotSame(first, second);
+        assertNotSame(first.getBook(), second.getBook());
+        assertEquals(first, first.getBook().getLibraryEvent());
+        assertEquals(2.0, meterRegistry.get("cache.gets").tag("result", "hit").functionCounter().count());
+    }
+
+    @Test
+    void should_publish_only_after_commit() {
+        // given
+        TransactionSynchronizationManager.initSynchronization();
+        libraryEventCache.written(libraryEvent(1, "Learn Kafka"));
+
+        // when
+        assertNull(libraryEventCache.get(1));
+        complete(TransactionSynchronization.STATUS_COMMITTED);
+
+        // then
+        assertNotNull(libraryEventCache.get(1));
+    }
+
+    @Test
+    void should_invalidate_on_rollback() {
+        // given
+        libraryEventCache.written(libraryEvent(1, "Learn Kafka"));
+        TransactionSynchronizationManager.initSynchronization();
+        libraryEventCache.written(libraryEvent(1, "Rolled back"));
+
+        // when
+        complete(TransactionSynchronization.STATUS_ROLLED_BACK);
+
+        // then
+        assertNull(libraryEventCache.get(1));
+    }
+
+    @Test
+    void should_invalidate_on_concurrent_writes() throws Exception {
+        // given
+        TransactionSynchronizationManager.initSynchronization();
+        libraryEventCache.written(libraryEvent(1, "Learn Kafka"));
+
+        // when
+        Thread other = new Thread(() -> libraryEventCache.written(libraryEvent(1, "Written meanwhile")));
+        other.start();
+        other.join();
+        complete(TransactionSynchronization.STATUS_COMMITTED);
+
+        // then
+        assertNull(libraryEventCache.get(1));
+    }
+
+    @Test
+    void should_cache_event_read_without_concurrent_write() {
+        // given
+        long readStamp = libraryEventCache.readStamp(1);
+
+        // when
+        libraryEventCache.loaded(libraryEvent(1, "Learn Kafka"), readStamp);
+
+        // then
+        assertEquals("Learn Kafka", libraryEventCache.get(1).getBook().getBookName());
+    }
+
+    @Test
+    void should_not_cache_event_read_before_a_write_completed() {
+        // given
+        long readStamp = libraryEventCache.readStamp(1);
+        libraryEventCache.written(libraryEvent(1, "Written meanwhile"));
+        libraryEventCache.invalidate(1);
+
+        // when
+        libraryEventCache.loaded(libraryEvent(1, "Read before the write"), readStamp);
+
+        // then
+        assertNull(libraryEventCache.get(1));
+    }
+
+    @Test
+    void should_not_cache_event_read_while_being_written() {
+        // given
+        TransactionSynchronizationManager.initSynchronization();
+        libraryEventCache.written(libraryEvent(1, "Being written"));
+        long readStamp = libraryEventCache.readStamp(1);
+
+        // when
+        libraryEventCache.loaded(libraryEvent(1, "Read before the commit"), readStamp);
+
+        // then
+        assertNull(libraryEventCache.get(1));
+    }
+
+    @Test
+    void should_notify_listeners_after_commit_and_on_concurrent_writes() throws Exception {
+        // given
+        List<String> notifications = new CopyOnWriteArrayList<>();
+        libraryEventCache.addCommitListener(new LibraryEventCommitListener() {
+            @Override
+            public void committed(LibraryEvent libraryEvent, long writeStamp) {
+                notifications.add("committed " + libraryEvent.getBook().getBookName());
+            }
+
+            @Override
+            public void invalidated(Integer libraryEventId) {
+                notifications.add("invalidated " + libraryEventId);
+            }
+        });
+        libraryEventCache.written(libraryEvent(1, "Learn Kafka"));
+
+        // when
+        TransactionSynchronizationManager.initSynchronization();
+        libraryEventCache.written(libraryEvent(2, "Rolled back"));
+        complete(TransactionSynchronization.STATUS_ROLLED_BACK);
+        TransactionSynchronizationManager.initSynchronization();
+        libraryEventCache.written(libraryEvent(3, "Learn Kafka"));
+        Thread other = new Thread(() -> libraryEventCache.written(libraryEvent(3, "Written meanwhile")));
+        other.start();
+        other.join();
+        complete(TransactionSynchronization.STATUS_COMMITTED);
+
+        // then
+        assertEquals(List.of("committed Learn Kafka", "invalidated 3", "invalidated 3"), notifications);
+    }
+
+    private void complete(int status) {
+        List<TransactionSynchronization> synchronizations = TransactionSynchronizationManager.getSynchronizations();
+        TransactionSynchronizationManager.clearSynchronization();
+        synchronizations.forEach(synchronization -> synchronization.afterCompletion(status));
+    }
+
+    private LibraryEvent libraryEvent(Integer libraryEventId, String bookName) {
+        LibraryEvent libraryEvent = new LibraryEvent(libraryEventId, LibraryEventType.NEW, null);
+        libraryEvent.setBook(new Book(123, bookName, "Gürkan Demir", libraryEvent));
+        return libraryEvent;
+    }
+}
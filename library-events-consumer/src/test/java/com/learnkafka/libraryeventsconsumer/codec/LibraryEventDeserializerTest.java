@@ -0,0 +1,112 @@
+package com.learnkafka.libraryeventsconsumer.codec;
+
+import com.learnkafka.libraryeventsconsumer.entity.Book;
+import com.learnkafka.libraryeventsconsumer.entity.LibraryEvent;
+import com.learnkafka.libraryeventsconsumer.entity.LibraryEventType;
+import org.apache.kafka.common.errors.SerializationException;
+import org.junit.jupiter.api.Test;
+
+import java.nio.charset.StandardCharsets;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+class LibraryEventDeserializerTest {
+
+    // version 1 payload the producer's LibraryEventSerializerTest writes
+    static final String PRODUCER_PAYLOAD = "ca01080210011a1e08f601120b4c6561726e204b61666b611a0c4775726b616e2044656d6972";
+
+    LibraryEventDeserializer deserializer = new LibraryEventDeserializer();
+
+    @Test
+    void should_read_producer_binary_payload() {
+        // given
+        byte[] payload = fromHex(PRODUCER_PAYLOAD);
+
+        // when
+        LibraryEvent libraryEvent = deserializer.deserialize("library-events", payload);
+
+        // then
+        assertEquals(1, libraryEvent.getLibraryEventId());
+        assertEquals(LibraryEventType.NEW, libraryEvent.getLibraryEventType());
+        assertEquals(123, libraryEvent.getBook().getBookId());
+        assertEquals("Learn Kafka", libraryEvent.getBook().getBookName());
+        assertEquals("Gurkan Demir", libraryEvent.getBook().getBookAuthor());
+    }
+
+    @Test
+    void should_write_same_payload_as_producer() {
+        // given
+        LibraryEvent libraryEvent = new LibraryEvent(1, LibraryEventType.NEW, null);
+        libraryEvent.setBook(new Book(123, "Learn Kafka", "Gurkan Demir", libraryEvent));
+
+        // when
+        byte[] payload = new LibraryEventSerializer().serialize("library-events", libraryEvent);
+
+        // then
+        assertArrayEquals(fromHex(PRODUCER_PAYLOAD), payload);
+    }
+
+    @Test
+    void should_reject_other_versions() {
+        // given
+        byte[] older = fromHex(PRODUCER_PAYLOAD);
+        older[1] = 0;
+        byte[] newer = fromHex(PRODUCER_PAYLOAD);
+        newer[1] = 2;
+
+        // when / then
+        assertThrows(SerializationException.class, () -> deserializer.deserialize("library-events", older));
+        assertThrows(SerializationException.class, () -> deserializer.deserialize("library-events", newer));
+    }
+
+    @Test
+    void should_read_json_payload() {
+        // given
+        String json = "{\"libraryEventId\":1,\"book\":{\"bookId\":123,\"bookName\":\"Learn Kafka\",\"bookAuthor\":\"Gürkan Demir\"},\"libraryEventType\":\"UPDATE\"}";
+
+        // when
+        LibraryEvent libraryEvent = deserializer.deserialize("library-events", json.getBytes(StandardCharsets.UTF_8));
+
+        // then
+        assertEquals(1, libraryEvent.getLibraryEventId());
+        assertEquals(LibraryEventType.UPDATE, libraryEvent.getLibraryEventType());
+        assertEquals("Gürkan Demir", libraryEvent.getBook().getBookAuthor());
+    }
+
+    @Test
+    void should_skip_unknown_json_fields() {
+        // given
+        String json = "{\"extra\":{\"nested\":[1,2,{\"a\":null}]},\"libraryEventId\":\"5\",\"libraryEventType\":null,"
+                + "\"book\":{\"bookId\":123,\"bookName\":\"Learn Kafka\",\"bookAuthor\":null,\"libraryEvent\":null}}";
+
+        // when
+        LibraryEvent libraryEvent = deserializer.deserialize("library-events", json.getBytes(StandardCharsets.UTF_8));
+
+        // then
+        assertEquals(5, libraryEvent.getLibraryEventId());
+        assertNull(libraryEvent.getLibraryEventType());
+        assertEquals("Learn Kafka", libraryEvent.getBook().getBookName());
+        assertNull(libraryEvent.getBook().getBookAuthor());
+    }
+
+    @Test
+    void should_reject_malformed_json() {
+        // given
+        byte[] json = "{\"libraryEventId\":1,\"libraryEventType\":\"DELETE\"}".getBytes(StandardCharsets.UTF_8);
+
+        // when / then
+        assertThrows(SerializationException.class, () -> deserializer.deserialize("library-events", json));
+        assertThrows(SerializationException.class, () -> deserializer.deserialize("library-events", "[1]".getBytes(StandardCharsets.UTF_8)));
+    }
+
+    private byte[] fromHex(String hex) {
+        byte[] bytes = new byte[hex.length() / 2];
+        for (int i = 0; i < bytes.length; i++) {
+            bytes[i] = (byte) Integer.parseInt(hex.substring(2 * i, 2 * i + 2), 16);
+        }
+        return bytes;
+    }
+}
@@ -0,0 +1,246 @@
+package com.learnkafka.libraryeventsconsumer.consumer;
+
+import org.apache.kafka.clients.consumer.CommitFailedException;
+import org.apache.kafka.clients.consumer.ConsumerRecord;
+import org.apache.kafka.clients.consumer.MockConsumer;
+import org.apache.kafka.clients.consumer.OffsetAndMetadata;
+import org.apache.kafka.clients.consumer.OffsetResetStrategy;
+import org.apache.kafka.common.TopicPartition;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.dao.RecoverableDataAccessException;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Collectors;
+import java.util.stream.LongStream;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class KeyOrderedDispatcherTest {
+
+    TopicPartition partition = new TopicPartition("library-events", 0);
+
+    MockConsumer<Integer, byte[]> consumer = new MockConsumer<>(OffsetResetStrategy.EARLIEST);
+
+    List<Long> processed = Collections.synchronizedList(new ArrayList<>());
+
+    List<Long> recovered = Collections.synchronizedList(new ArrayList<>());
+
+    CountDownLatch release = new CountDownLatch(1);
+
+    CountDownLatch releaseReassigned = new CountDownLatch(1);
+
+    KeyOrderedDispatcher<Integer, byte[]> keyOrderedDispatcher = new KeyOrderedDispatcher<>(4, 100, Duration.ofSeconds(5),
+            record -> {
+                if (record.key() == 1 && record.offset() == 0L) {
+                    await(release);
+                }
+                if (record.key() == 4) {
+                    await(releaseReassigned);
+                }
+                if (record.key() == 3) {
+                    throw new RecoverableDataAccessException("Temporary Network Issue");
+                }
+                processed.add(record.offset());
+            },
+            (record, exception) -> recovered.add(record.offset()));
+
+    @BeforeEach
+    void setUp() {
+        consumer.assign(List.of(partition));
+    }
+
+    @AfterEach
+    void tearDown() throws InterruptedException {
+        release.countDown();
+        releaseReassigned.countDown();
+        keyOrderedDispatcher.destroy();
+    }
+
+    @Test
+    void should_run_other_keys_while_one_key_is_blocked() throws InterruptedException {
+        // given
+        List<ConsumerRecord<Integer, byte[]>> records = List.of(record(0L, 1), record(1L, 1), record(2L, 2));
+
+        // when
+        keyOrderedDispatcher.dispatch(records, consumer);
+        waitFor(() -> processed.contains(2L));
+        keyOrderedDispatcher.commit(consumer);
+
+        // then
+        assertEquals(List.of(2L), processed);
+        assertNull(committed());
+
+        // when
+        release.countDown();
+        waitFor(() -> keyOrderedDispatcher.inFlight() == 0);
+        keyOrderedDispatcher.commit(consumer);
+
+        // then
+        assertEquals(List.of(2L, 0L, 1L), processed);
+        assertEquals(3L, committed().offset());
+    }
+
+    @Test
+    void should_keep_poll_order_per_key() throws InterruptedException {
+        // given
+        release.countDown();
+        List<ConsumerRecord<Integer, byte[]>> records = LongStream.range(0, 100)
+                .mapToObj(offset -> record(offset, (int) (offset % 2) * 2))
+                .collect(Collectors.toList());
+
+        // when
+        keyOrderedDispatcher.dispatch(records, consumer);
+        waitFor(() -> keyOrderedDispatcher.inFlight() == 0);
+        keyOrderedDispatcher.commit(consumer);
+
+        // then
+        List<Long> even = processed.stream().filter(offset -> offset % 2 == 0).collect(Collectors.toList());
+        List<Long> odd = processed.stream().filter(offset -> offset % 2 == 1).collect(Collectors.toList());
+        assertEquals(LongStream.range(0, 50).map(i -> i * 2).boxed().collect(Collectors.toList()), even);
+        assertEquals(LongStream.range(0, 50).map(i -> i * 2 + 1).boxed().collect(Collectors.toList()), odd);
+        assertEquals(100L, committed().offset());
+    }
+
+    @Test
+    void should_recover_failed_records_and_commit_past_them() throws InterruptedException {
+        // given
+        release.countDown();
+
+        // when
+        keyOrderedDispatcher.dispatch(List.of(record(0L, 3), record(1L, 2)), consumer);
+        waitFor(() -> keyOrderedDispatcher.inFlight() == 0);
+        keyOrderedDispatcher.commit(consumer);
+
+        // then
+        assertEquals(List.of(0L), recovered);
+        assertEquals(List.of(1L), processed);
+        assertEquals(2L, committed().offset());
+    }
+
+    @Test
+    void should_pause_assignment_above_in_flight_limit() {
+        // given
+        List<ConsumerRecord<Integer, byte[]>> records = LongStream.range(0, 100)
+                .mapToObj(offset -> record(offset, 1))
+                .collect(Collectors.toList());
+
+        // when
+        keyOrderedDispatcher.dispatch(records, consumer);
+
+        // then
+        assertEquals(Set.of(partition), consumer.paused());
+
+        // when
+        release.countDown();
+        waitFor(() -> keyOrderedDispatcher.inFlight() == 0);
+        keyOrderedDispatcher.commit(consumer);
+
+        // then
+        assertTrue(consumer.paused().isEmpty());
+    }
+
+    @Test
+    void should_drop_offsets_of_lost_partitions_without_committing() throws InterruptedException {
+        // given
+        keyOrderedDispatcher.dispatch(List.of(record(0L, 1), record(1L, 2)), consumer);
+        waitFor(() -> processed.contains(1L));
+
+        // when
+        keyOrderedDispatcher.onPartitionsLost(consumer, List.of(partition));
+
+        // then
+        assertNull(committed());
+
+        // when
+        release.countDown();
+        waitFor(() -> keyOrderedDispatcher.inFlight() == 0);
+        keyOrderedDispatcher.commit(consumer);
+
+        // then
+        assertNull(committed());
+    }
+
+    @Test
+    void should_not_complete_offsets_of_a_later_assignment_from_a_late_worker() throws InterruptedException {
+        // given
+        keyOrderedDispatcher.dispatch(List.of(record(0L, 1)), consumer);
+        keyOrderedDispatcher.onPartitionsLost(consumer, List.of(partition));
+        keyOrderedDispatcher.dispatch(List.of(record(0L, 4)), consumer);
+
+        // when
+        release.countDown();
+        waitFor(() -> keyOrderedDispatcher.inFlight() == 1);
+        keyOrderedDispatcher.commit(consumer);
+
+        // then
+        assertNull(committed());
+
+        // when
+        releaseReassigned.countDown();
+        waitFor(() -> keyOrderedDispatcher.inFlight() == 0);
+        keyOrderedDispatcher.commit(consumer);
+
+        // then
+        assertEquals(1L, committed().offset());
+    }
+
+    @Test
+    void should_drop_offsets_on_revoke_even_when_the_commit_fails() {
+        // given
+        keyOrderedDispatcher.dispatch(List.of(record(0L, 1)), consumer);
+        //completed only after dispatch committed, so the offset is left for the revoke to commit
+        release.countDown();
+        waitFor(() -> keyOrderedDispatcher.inFlight() == 0);
+        MockConsumer<Integer, byte[]> failingConsumer = new MockConsumer<>(OffsetResetStrategy.EARLIEST) {
+            @Override
+            public synchronized void commitSync(Map<TopicPartition, OffsetAndMetadata> offsets) {
+                throw new CommitFailedException();
+            }
+        };
+
+        // when
+        assertThrows(CommitFailedException.class, () -> keyOrderedDispatcher.onPartitionsRevokedBeforeCommit(failingConsumer, List.of(partition)));
+        keyOrderedDispatcher.dispatch(List.of(record(5L, 2)), consumer);
+        waitFor(() -> keyOrderedDispatcher.inFlight() == 0);
+        keyOrderedDispatcher.commit(consumer);
+
+        // then
+        assertEquals(6L, committed().offset());
+    }
+
+    private OffsetAndMetadata committed() {
+        return consumer.committed(Set.of(partition)).get(partition);
+    }
+
+    private ConsumerRecord<Integer, byte[]> record(long offset, Integer key) {
+        return new ConsumerRecord<>(partition.topic(), partition.partition(), offset, key, new byte[0]);
+    }
+
+    private static void waitFor(java.util.function.BooleanSupplier condition) {
+        long deadline = System.currentTimeMillis() + 5_000L;
+        while (!condition.getAsBoolean()) {
+            assertTrue(System.currentTimeMillis() < deadline, "condition not met in time");
+            Thread.onSpinWait();
+        }
+    }
+
+    private static void await(CountDownLatch latch) {
+        try {
+            latch.await(5, TimeUnit.SECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+}
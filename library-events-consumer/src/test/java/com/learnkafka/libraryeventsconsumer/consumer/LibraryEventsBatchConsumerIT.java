@@ -0,0 +1,142 @@
+package com.learnkafka.libraryeventsconsumer.consumer;
+
+import com.learnkafka.libraryeventsconsumer.entity.LibraryEvent;
+import com.learnkafka.libraryeventsconsumer.jpa.LibraryEventsRepository;
+import com.learnkafka.libraryeventsconsumer.service.LibraryEventsService;
+import org.apache.kafka.clients.consumer.ConsumerRecord;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.boot.test.mock.mockito.SpyBean;
+import org.springframework.kafka.config.KafkaListenerEndpointRegistry;
+import org.springframework.kafka.core.KafkaTemplate;
+import org.springframework.kafka.listener.MessageListenerContainer;
+import org.springframework.kafka.test.EmbeddedKafkaBroker;
+import org.springframework.kafka.test.context.EmbeddedKafka;
+import org.springframework.kafka.test.utils.ContainerTestUtils;
+import org.springframework.test.context.TestPropertySource;
+
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.mockito.ArgumentMatchers.isA;
+import static org.mockito.Mockito.atLeast;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+
+@SpringBootTest
+@EmbeddedKafka(topics = {"library-events"}, partitions = 3)
+@TestPropertySource(properties = {"spring.kafka.consumer.bootstrap-servers=${spring.embedded.kafka.brokers}",
+        "spring.kafka.producer.bootstrap-servers=${spring.embedded.kafka.brokers}",
+        "libraryevents.consumer.mode=batch"})
+class LibraryEventsBatchConsumerIT {
+
+    @Autowired
+    EmbeddedKafkaBroker embeddedKafkaBroker;
+
+    @Autowired
+    KafkaTemplate<Integer, String> kafkaTemplate;
+
+    @Autowired
+    KafkaListenerEndpointRegistry kafkaListenerEndpointRegistry;
+
+    @Autowired
+    LibraryEventsRepository libraryEventsRepository;
+
+    @SpyBean
+    LibraryEventsBatchConsumer libraryEventsBatchConsumer;
+
+    @SpyBean
+    LibraryEventsService libraryEventsService;
+
+    @BeforeEach
+    void setUp() {
+        for (MessageListenerContainer messageListenerContainer : kafkaListenerEndpointRegistry.getAllListenerContainers()) {
+            ContainerTestUtils.waitForAssignment(messageListenerContainer, embeddedKafkaBroker.getPartitionsPerTopic());
+        }
+    }
+
+    @AfterEach
+    void tearDown() {
+        libraryEventsRepository.deleteAll();
+    }
+
+    @Test
+    public void publishNewLibraryEvents() throws ExecutionException, InterruptedException {
+        // given
+        for (int i = 1; i <= 5; i++) {
+            String json = "{\"libraryEventId\":null,\"book\":{\"bookId\":" + i + ",\"bookName\":\"Learn Kafka\",\"bookAuthor\":\"Gürkan Demir\"},\"libraryEventType\":\"NEW\"}";
+            kafkaTemplate.send("library-events", 0, null, json);
+        }
+        kafkaTemplate.flush();
+
+        // when
+        CountDownLatch latch = new CountDownLatch(1);
+        latch.await(3, TimeUnit.SECONDS);
+
+        // then
+        verify(libraryEventsBatchConsumer, atLeast(1)).onMessages(isA(List.class));
+        verify(libraryEventsService, never()).handleRecovery(isA(ConsumerRecord.class), isA(Exception.class));
+
+        List<LibraryEvent> all = (List<LibraryEvent>) libraryEventsRepository.findAll();
+        assertEquals(5, all.size());
+    }
+
+    @Test
+    public void shouldSkipOnlyFailedRecordInBatch() throws ExecutionException, InterruptedException {
+        // given
+        String first = "{\"libraryEventId\":null,\"book\":{\"bookId\":1,\"bookName\":\"Learn Kafka\",\"bookAuthor\":\"Gürkan Demir\"},\"libraryEventType\":\"NEW\"}";
+        String invalid = "{\"libraryEventId\":12345,\"book\":{\"bookId\":2,\"bookName\":\"Learn Kafka\",\"bookAuthor\":\"Gürkan Demir\"},\"libraryEventType\":\"UPDATE\"}";
+        String last = "{\"libraryEventId\":null,\"book\":{\"bookId\":3,\"bookName\":\"Learn Kafka\",\"bookAuthor\":\"Gürkan Demir\"},\"libraryEventType\":\"NEW\"}";
+        kafkaTemplate.send("library-events", 0, null, first);
+        kafkaTemplate.send("library-events", 0, null, invalid);
+        kafkaTemplate.send("library-events", 0, null, last).get();
+
+        // when
+        CountDownLatch latch = new CountDownLatch(1);
+        latch.await(5, TimeUnit.SECONDS);
+
+        // then
+        List<LibraryEvent> all = (List<LibraryEvent>) libraryEventsRepository.findAll();
+        assertEquals(2, all.size());
+    }
+
+    @Test
+    public void shouldFindFailedRecordWhenDatabaseRejectsBatch() throws ExecutionException, InterruptedException {
+        // given
+        String first = "{\"libraryEventId\":null,\"book\":{\"bookId\":1,\"bookName\":\"Learn Kafka\",\"bookAuthor\":\"Gürkan Demir\"},\"libraryEventType\":\"NEW\"}";
+        String tooLong = "{\"libraryEventId\":null,\"book\":{\"bookId\":2,\"bookName\":\"" + "x".repeat(300) + "\",\"bookAuthor\":\"Gürkan Demir\"},\"libraryEventType\":\"NEW\"}";
+        String last = "{\"libraryEventId\":null,\"book\":{\"bookId\":3,\"bookName\":\"Learn Kafka\",\"bookAuthor\":\"Gürkan Demir\"},\"libraryEventType\":\"NEW\"}";
+        kafkaTemplate.send("library-events", 0, null, first);
+        kafkaTemplate.send("library-events", 0, null, tooLong);
+        kafkaTemplate.send("library-events", 0, null, last).get();
+
+        // when
+        CountDownLatch latch = new CountDownLatch(1);
+        latch.await(5, TimeUnit.SECONDS);
+
+        // then
+        List<LibraryEvent> all = (List<LibraryEvent>) libraryEventsRepository.findAll();
+        assertEquals(2, all.size());
+    }
+
+    @Test
+    public void shouldRecoverFailedRecordInBatch() throws ExecutionException, InterruptedException {
+        // given
+        String json = "{\"libraryEventId\":0,\"book\":{\"bookId\":1,\"bookName\":\"Learn Kafka\",\"bookAuthor\":\"Gürkan Demir\"},\"libraryEventType\":\"UPDATE\"}";
+        kafkaTemplate.sendDefault(0, json).get();
+
+        // when
+        CountDownLatch latch = new CountDownLatch(1);
+        latch.await(5, TimeUnit.SECONDS);
+
+        // then
+        verify(libraryEventsService, atLeast(1)).handleRecovery(isA(ConsumerRecord.class), isA(Exception.class));
+    }
+}
@@ -6,6 +6,7 @@ import com.learnkafka.libraryeventsconsumer.entity.Book;
 import com.learnkafka.libraryeventsconsumer.entity.LibraryEvent;
 import com.learnkafka.libraryeventsconsumer.entity.LibraryEventType;
 import com.learnkafka.libraryeventsconsumer.jpa.LibraryEventsRepository;
+import com.learnkafka.libraryeventsconsumer.service.LibraryEventsRetryService;
 import com.learnkafka.libraryeventsconsumer.service.LibraryEventsService;
 import org.apache.kafka.clients.consumer.ConsumerRecord;
 import org.junit.jupiter.api.AfterEach;
@@ -63,6 +64,9 @@ class LibraryEventsConsumerIT {
     @SpyBean
     LibraryEventsService libraryEventsService;
 
+    @SpyBean
+    LibraryEventsRetryService libraryEventsRetryService;
+
     @BeforeEach
     void setUp() {
         for (MessageListenerContainer messageListenerContainer : kafkaListenerEndpointRegistry.getAllListenerContainers()) {
@@ -182,6 +186,7 @@ class LibraryEventsConsumerIT {
         latch.await(3, TimeUnit.SECONDS);
 
         // then
-        verify(libraryEventsService, times(1)).handleRecovery(isA(ConsumerRecord.class));
+        verify(libraryEventsService, times(1)).handleRecovery(isA(ConsumerRecord.class), isA(Exception.class));
+        verify(libraryEventsRetryService, times(1)).retry(isA(ConsumerRecord.class), isA(Exception.class));
     }
 }
\ No newline at end of file
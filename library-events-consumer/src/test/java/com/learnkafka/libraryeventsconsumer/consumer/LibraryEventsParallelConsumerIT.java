@@ -0,0 +1,111 @@
+package com.learnkafka.libraryeventsconsumer.consumer;
+
+import com.learnkafka.libraryeventsconsumer.entity.Book;
+import com.learnkafka.libraryeventsconsumer.entity.LibraryEvent;
+import com.learnkafka.libraryeventsconsumer.entity.LibraryEventType;
+import com.learnkafka.libraryeventsconsumer.jpa.LibraryEventsRepository;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.boot.test.mock.mockito.SpyBean;
+import org.springframework.kafka.config.KafkaListenerEndpointRegistry;
+import org.springframework.kafka.core.KafkaTemplate;
+import org.springframework.kafka.listener.MessageListenerContainer;
+import org.springframework.kafka.test.EmbeddedKafkaBroker;
+import org.springframework.kafka.test.context.EmbeddedKafka;
+import org.springframework.kafka.test.utils.ContainerTestUtils;
+import org.springframework.test.context.TestPropertySource;
+
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.isA;
+import static org.mockito.Mockito.atLeast;
+import static org.mockito.Mockito.verify;
+
+@SpringBootTest
+@EmbeddedKafka(topics = {"library-events"}, partitions = 3)
+@TestPropertySource(properties = {"spring.kafka.consumer.bootstrap-servers=${spring.embedded.kafka.brokers}",
+        "spring.kafka.producer.bootstrap-servers=${spring.embedded.kafka.brokers}",
+        "libraryevents.consumer.mode=parallel"})
+class LibraryEventsParallelConsumerIT {
+
+    @Autowired
+    EmbeddedKafkaBroker embeddedKafkaBroker;
+
+    @Autowired
+    KafkaTemplate<Integer, String> kafkaTemplate;
+
+    @Autowired
+    KafkaListenerEndpointRegistry kafkaListenerEndpointRegistry;
+
+    @Autowired
+    LibraryEventsRepository libraryEventsRepository;
+
+    @Autowired
+    KeyOrderedDispatcher<Integer, byte[]> keyOrderedDispatcher;
+
+    @SpyBean
+    LibraryEventsParallelConsumer libraryEventsParallelConsumer;
+
+    @BeforeEach
+    void setUp() {
+        for (MessageListenerContainer messageListenerContainer : kafkaListenerEndpointRegistry.getAllListenerContainers()) {
+            ContainerTestUtils.waitForAssignment(messageListenerContainer, embeddedKafkaBroker.getPartitionsPerTopic());
+        }
+    }
+
+    @AfterEach
+    void tearDown() {
+        libraryEventsRepository.deleteAll();
+    }
+
+    @Test
+    public void publishNewLibraryEvents() throws InterruptedException {
+        // given
+        for (int i = 1; i <= 5; i++) {
+            String json = "{\"libraryEventId\":null,\"book\":{\"bookId\":" + i + ",\"bookName\":\"Learn Kafka\",\"bookAuthor\":\"Gürkan Demir\"},\"libraryEventType\":\"NEW\"}";
+            kafkaTemplate.send("library-events", 0, null, json);
+        }
+        kafkaTemplate.flush();
+
+        // when
+        CountDownLatch latch = new CountDownLatch(1);
+        latch.await(3, TimeUnit.SECONDS);
+
+        // then
+        verify(libraryEventsParallelConsumer, atLeast(1)).onMessages(isA(List.class), any());
+        assertEquals(0, keyOrderedDispatcher.inFlight());
+
+        List<LibraryEvent> all = (List<LibraryEvent>) libraryEventsRepository.findAll();
+        assertEquals(5, all.size());
+    }
+
+    @Test
+    public void applyUpdatesOfOneKeyInOrder() throws ExecutionException, InterruptedException {
+        // given
+        LibraryEvent libraryEvent = new LibraryEvent(null, LibraryEventType.NEW, null);
+        libraryEvent.setBook(new Book(123, "Learn Kafka", "Gürkan Demir", libraryEvent));
+        Integer libraryEventId = libraryEventsRepository.save(libraryEvent).getLibraryEventId();
+
+        for (int i = 1; i <= 20; i++) {
+            String json = "{\"libraryEventId\":" + libraryEventId + ",\"book\":{\"bookId\":123,\"bookName\":\"Learn Kafka " + i + "\",\"bookAuthor\":\"Gürkan Demir\"},\"libraryEventType\":\"UPDATE\"}";
+            kafkaTemplate.sendDefault(libraryEventId, json);
+        }
+        kafkaTemplate.flush();
+
+        // when
+        CountDownLatch latch = new CountDownLatch(1);
+        latch.await(3, TimeUnit.SECONDS);
+
+        // then
+        LibraryEvent updated = libraryEventsRepository.findById(libraryEventId).get();
+        assertEquals("Learn Kafka 20", updated.getBook().getBookName());
+    }
+}
@@ -0,0 +1,118 @@
+package com.learnkafka.libraryeventsconsumer.controller;
+
+import com.learnkafka.libraryeventsconsumer.domain.LibraryEventView;
+import com.learnkafka.libraryeventsconsumer.entity.LibraryEventType;
+import com.learnkafka.libraryeventsconsumer.search.LibraryEventIndex;
+import com.learnkafka.libraryeventsconsumer.service.LibraryEventsQueryService;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.web.servlet.AutoConfigureMockMvc;
+import org.springframework.boot.test.autoconfigure.web.servlet.WebMvcTest;
+import org.springframework.boot.test.mock.mockito.MockBean;
+import org.springframework.data.domain.PageImpl;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.test.web.servlet.MockMvc;
+
+import java.util.List;
+import java.util.Optional;
+
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyInt;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.get;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.jsonPath;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.status;
+
+@WebMvcTest(LibraryEventsReadController.class)
+@AutoConfigureMockMvc
+class LibraryEventsReadControllerTest {
+
+    @Autowired
+    MockMvc mockMvc;
+
+    @MockBean
+    LibraryEventsQueryService libraryEventsQueryService;
+
+    @Test
+    void should_get_library_event() throws Exception {
+        // given
+        when(libraryEventsQueryService.findById(1)).thenReturn(Optional.of(new LibraryEventView(1, LibraryEventType.UPDATE, 123, "Learn Kafka", "Gürkan Demir")));
+
+        // when
+        mockMvc.perform(get("/v1/libraryevent/1"))
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$.libraryEventId").value(1))
+                .andExpect(jsonPath("$.libraryEventType").value("UPDATE"))
+                .andExpect(jsonPath("$.book.bookName").value("Learn Kafka"));
+
+        // then
+    }
+
+    @Test
+    void should_not_find_unknown_library_event() throws Exception {
+        // given
+        when(libraryEventsQueryService.findById(2)).thenReturn(Optional.empty());
+
+        // when
+        mockMvc.perform(get("/v1/libraryevent/2"))
+                .andExpect(status().isNotFound());
+
+        // then
+    }
+
+    @Test
+    void should_get_page_of_library_events() throws Exception {
+        // given
+        List<LibraryEventView> libraryEvents = List.of(new LibraryEventView(3, LibraryEventType.NEW, 123, "Learn Kafka", "Gürkan Demir"));
+        when(libraryEventsQueryService.findAll(1, 1)).thenReturn(new PageImpl<>(libraryEvents, PageRequest.of(1, 1), 5));
+
+        // when
+        mockMvc.perform(get("/v1/libraryevents").param("page", "1").param("size", "1"))
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$.content[0].libraryEventId").value(3))
+                .andExpect(jsonPath("$.totalElements").value(5));
+
+        // then
+    }
+
+    @Test
+    void should_reject_page_larger_than_max_page_size() throws Exception {
+        // given
+
+        // when
+        mockMvc.perform(get("/v1/libraryevents").param("size", "101"))
+                .andExpect(status().isBadRequest());
+
+        // then
+        verify(libraryEventsQueryService, never()).findAll(anyInt(), anyInt());
+    }
+
+    @Test
+    void should_search_library_events() throws Exception {
+        // given
+        List<LibraryEventView> libraryEvents = List.of(new LibraryEventView(3, LibraryEventType.NEW, 123, "Learn Kafka", "Gürkan Demir"));
+        when(libraryEventsQueryService.search("kaf", LibraryEventIndex.Field.TITLE, LibraryEventIndex.Match.PREFIX, 20)).thenReturn(libraryEvents);
+
+        // when
+        mockMvc.perform(get("/v1/libraryevents/search").param("q", "kaf").param("field", "title").param("match", "prefix"))
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$[0].libraryEventId").value(3))
+                .andExpect(jsonPath("$[0].book.bookAuthor").value("Gürkan Demir"));
+
+        // then
+    }
+
+    @Test
+    void should_reject_unknown_search_field() throws Exception {
+        // given
+
+        // when
+        mockMvc.perform(get("/v1/libraryevents/search").param("q", "kafka").param("field", "isbn"))
+                .andExpect(status().isBadRequest());
+
+        // then
+        verify(libraryEventsQueryService, never()).search(any(), any(), any(), anyInt());
+    }
+}
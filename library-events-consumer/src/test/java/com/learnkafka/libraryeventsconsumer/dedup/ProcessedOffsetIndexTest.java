@@ -0,0 +1,177 @@
+package com.learnkafka.libraryeventsconsumer.dedup;
+
+import com.learnkafka.libraryeventsconsumer.metrics.LibraryEventMetrics;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.apache.kafka.clients.consumer.ConsumerRecord;
+import org.apache.kafka.common.TopicPartition;
+import org.junit.jupiter.api.Test;
+
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.UUID;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class ProcessedOffsetIndexTest {
+
+    SimpleMeterRegistry meterRegistry = new SimpleMeterRegistry();
+
+    ProcessedOffsetIndex processedOffsetIndex = new ProcessedOffsetIndex(8, 2, meterRegistry);
+
+    @Test
+    void should_skip_redelivered_records() {
+        // given
+        processedOffsetIndex.processed(record("library-events", 0, 10L));
+        processedOffsetIndex.processed(record("library-events", 0, 12L));
+
+        // when
+        boolean redelivered = processedOffsetIndex.isDuplicate(record("library-events", 0, 10L));
+        boolean gap = processedOffsetIndex.isDuplicate(record("library-events", 0, 11L));
+        boolean otherPartition = processedOffsetIndex.isDuplicate(record("library-events", 1, 10L));
+        boolean otherTopic = processedOffsetIndex.isDuplicate(record("library-events-retry-1s", 0, 10L));
+
+        // then
+        assertTrue(redelivered);
+        assertFalse(gap);
+        assertFalse(otherPartition);
+        assertFalse(otherTopic);
+        assertEquals(1.0, meterRegistry.get("libraryevents.consumer.duplicates.skipped").counter().count());
+    }
+
+    @Test
+    void should_forget_offsets_that_slide_out_of_the_window() {
+        // given
+        for (long offset = 0; offset < 10; offset++) {
+            processedOffsetIndex.processed(record("library-events", 0, offset));
+        }
+
+        // when
+        boolean forgotten = processedOffsetIndex.isDuplicate(record("library-events", 0, 1L));
+        boolean remembered = processedOffsetIndex.isDuplicate(record("library-events", 0, 2L));
+        boolean next = processedOffsetIndex.isDuplicate(record("library-events", 0, 10L));
+
+        // then
+        assertFalse(forgotten);
+        assertTrue(remembered);
+        assertFalse(next);
+    }
+
+    @Test
+    void should_not_reuse_bits_after_a_jump_past_the_window() {
+        // given
+        processedOffsetIndex.processed(record("library-events", 0, 3L));
+
+        // when
+        processedOffsetIndex.processed(record("library-events", 0, 100L));
+
+        // then
+        assertFalse(processedOffsetIndex.isDuplicate(record("library-events", 0, 99L)));
+        assertFalse(processedOffsetIndex.isDuplicate(record("library-events", 0, 3L)));
+        assertTrue(processedOffsetIndex.isDuplicate(record("library-events", 0, 100L)));
+    }
+
+    @Test
+    void should_skip_copy_of_applied_event_at_another_offset() {
+        // given
+        String traceId = UUID.randomUUID().toString();
+        processedOffsetIndex.applied(record("library-events", 0, 5L, traceId));
+
+        // when
+        boolean resent = processedOffsetIndex.isDuplicate(record("library-events", 0, 6L, traceId));
+        boolean republished = processedOffsetIndex.isDuplicate(record("library-events-retry-1s", 2, 0L, traceId));
+        boolean other = processedOffsetIndex.isDuplicate(record("library-events", 0, 7L, UUID.randomUUID().toString()));
+
+        // then
+        assertTrue(resent);
+        assertTrue(republished);
+        assertFalse(other);
+    }
+
+    @Test
+    void should_not_skip_retry_of_recovered_event() {
+        // given
+        String traceId = UUID.randomUUID().toString();
+        processedOffsetIndex.processed(record("library-events", 0, 5L, traceId));
+
+        // when
+        boolean retry = processedOffsetIndex.isDuplicate(record("library-events-retry-1s", 0, 0L, traceId));
+
+        // then
+        assertFalse(retry);
+    }
+
+    @Test
+    void should_forget_oldest_identities() {
+        // given
+        String first = UUID.randomUUID().toString();
+        processedOffsetIndex.applied(record("library-events", 0, 1L, first));
+        processedOffsetIndex.applied(record("library-events", 0, 2L, UUID.randomUUID().toString()));
+
+        // when
+        processedOffsetIndex.applied(record("library-events", 0, 3L, UUID.randomUUID().toString()));
+
+        // then
+        assertFalse(processedOffsetIndex.isDuplicate(record("library-events", 1, 1L, first)));
+    }
+
+    @Test
+    void should_keep_window_of_revoked_partition_for_its_redeliveries() {
+        // given
+        processedOffsetIndex.processed(record("library-events", 0, 10L));
+
+        // when
+        processedOffsetIndex.onPartitionsRevokedAfterCommit(null, List.of(new TopicPartition("library-events", 0)));
+
+        // then
+        assertTrue(processedOffsetIndex.isDuplicate(record("library-events", 0, 10L)));
+    }
+
+    @Test
+    void should_drop_window_of_lost_partition() {
+        // given
+        processedOffsetIndex.processed(record("library-events", 0, 10L));
+        processedOffsetIndex.processed(record("library-events", 1, 10L));
+
+        // when
+        processedOffsetIndex.onPartitionsLost(null, List.of(new TopicPartition("library-events", 0)));
+
+        // then
+        assertFalse(processedOffsetIndex.isDuplicate(record("library-events", 0, 10L)));
+        assertTrue(processedOffsetIndex.isDuplicate(record("library-events", 1, 10L)));
+    }
+
+    @Test
+    void should_remember_exactly_the_last_identities_of_a_large_window() {
+        // given
+        int size = 100_000;
+        ProcessedOffsetIndex.IdentityFilter identityFilter = new ProcessedOffsetIndex.IdentityFilter(size);
+        List<UUID> identities = new ArrayList<>();
+        for (int i = 0; i < size + size / 2; i++) {
+            identities.add(UUID.randomUUID());
+        }
+
+        // when
+        identities.forEach(identityFilter::add);
+
+        // then
+        for (int i = 0; i < identities.size(); i++) {
+            assertEquals(i >= size / 2, identityFilter.contains(identities.get(i)));
+        }
+        for (int i = 0; i < size; i++) {
+            assertFalse(identityFilter.contains(UUID.randomUUID()));
+        }
+    }
+
+    private ConsumerRecord<Integer, byte[]> record(String topic, int partition, long offset, String traceId) {
+        ConsumerRecord<Integer, byte[]> record = record(topic, partition, offset);
+        record.headers().add(LibraryEventMetrics.TRACE_ID_HEADER, traceId.getBytes(StandardCharsets.UTF_8));
+        return record;
+    }
+
+    private ConsumerRecord<Integer, byte[]> record(String topic, int partition, long offset) {
+        return new ConsumerRecord<>(topic, partition, offset, 1, new byte[0]);
+    }
+}
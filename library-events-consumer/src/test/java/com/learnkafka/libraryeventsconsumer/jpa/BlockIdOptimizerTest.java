@@ -0,0 +1,83 @@
+package com.learnkafka.libraryeventsconsumer.jpa;
+
+import org.hibernate.id.IdentifierGeneratorHelper;
+import org.hibernate.id.IntegralDataTypeHolder;
+import org.hibernate.id.enhanced.AccessCallback;
+import org.junit.jupiter.api.Test;
+
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class BlockIdOptimizerTest {
+
+    @Test
+    void should_hand_out_a_block_per_sequence_call() {
+        // given
+        SequenceCallback sequence = new SequenceCallback(50);
+        BlockIdOptimizer optimizer = new BlockIdOptimizer(Integer.class, 50);
+
+        // when
+        for (int i = 1; i <= 120; i++) {
+            assertEquals(i, optimizer.generate(sequence));
+        }
+
+        // then
+        assertEquals(3, sequence.calls.get());
+    }
+
+    @Test
+    void should_not_repeat_ids_across_threads() throws InterruptedException {
+        // given
+        SequenceCallback sequence = new SequenceCallback(50);
+        BlockIdOptimizer optimizer = new BlockIdOptimizer(Integer.class, 50);
+        Set<Object> ids = ConcurrentHashMap.newKeySet();
+        ExecutorService executor = Executors.newFixedThreadPool(8);
+
+        // when
+        for (int thread = 0; thread < 8; thread++) {
+            executor.execute(() -> {
+                for (int i = 0; i < 1_000; i++) {
+                    ids.add(optimizer.generate(sequence));
+                }
+            });
+        }
+        executor.shutdown();
+        assertTrue(executor.awaitTermination(10, TimeUnit.SECONDS));
+
+        // then
+        assertEquals(8_000, ids.size());
+        assertEquals(160, sequence.calls.get());
+    }
+
+    /**
+     * Sequence that starts at 1 and is incremented by the block size, like the one Hibernate creates.
+     */
+    private static class SequenceCallback implements AccessCallback {
+
+        private final AtomicLong value = new AtomicLong(1);
+        private final AtomicLong calls = new AtomicLong();
+        private final int incrementSize;
+
+        SequenceCallback(int incrementSize) {
+            this.incrementSize = incrementSize;
+        }
+
+        @Override
+        public IntegralDataTypeHolder getNextValue() {
+            calls.incrementAndGet();
+            return IdentifierGeneratorHelper.getIntegralDataTypeHolder(Long.class).initialize(value.getAndAdd(incrementSize));
+        }
+
+        @Override
+        public String getTenantIdentifier() {
+            return null;
+        }
+    }
+}
@@ -0,0 +1,168 @@
+package com.learnkafka.libraryeventsconsumer.jpa;
+
+import com.learnkafka.libraryeventsconsumer.domain.LibraryEventView;
+import com.learnkafka.libraryeventsconsumer.entity.Book;
+import com.learnkafka.libraryeventsconsumer.entity.LibraryEvent;
+import com.learnkafka.libraryeventsconsumer.entity.LibraryEventType;
+import org.hibernate.SessionFactory;
+import org.hibernate.stat.Statistics;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.orm.jpa.DataJpaTest;
+import org.springframework.data.domain.Page;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.data.domain.Sort;
+import org.springframework.context.annotation.Import;
+
+import javax.persistence.EntityManager;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+
+@DataJpaTest(properties = {"libraryevents.consumer.storage.layout=flat",
+        "libraryevents.consumer.storage.migrate=false",
+        "spring.jpa.properties.hibernate.generate_statistics=true"})
+@Import(FlatLibraryEventStore.class)
+class FlatLibraryEventStoreTest {
+
+    @Autowired
+    LibraryEventStore libraryEventStore;
+
+    @Autowired
+    LibraryEventsRepository libraryEventsRepository;
+
+    @Autowired
+    FlatLibraryEventsRepository flatLibraryEventsRepository;
+
+    @Autowired
+    EntityManager entityManager;
+
+    Statistics statistics;
+
+    @BeforeEach
+    void setUp() {
+        statistics = entityManager.getEntityManagerFactory().unwrap(SessionFactory.class).getStatistics();
+        statistics.clear();
+    }
+
+    @Test
+    void should_write_and_read_event_with_one_statement_each() {
+        // given
+        LibraryEvent libraryEvent = libraryEvent(null, 1, "Learn Kafka");
+
+        // when
+        Integer libraryEventId = libraryEventStore.save(libraryEvent).getLibraryEventId();
+        entityManager.flush();
+        entityManager.clear();
+        long inserts = statistics.getEntityInsertCount();
+        LibraryEvent found = libraryEventStore.findById(libraryEventId).get();
+
+        // then
+        assertEquals(1, inserts);
+        assertEquals(1, statistics.getEntityLoadCount());
+        assertEquals(LibraryEventType.NEW, found.getLibraryEventType());
+        assertEquals("Learn Kafka", found.getBook().getBookName());
+    }
+
+    @Test
+    void should_update_event_in_its_row() {
+        // given
+        Integer libraryEventId = libraryEventStore.save(libraryEvent(null, 2, "Learn Kafka")).getLibraryEventId();
+
+        // when
+        int[] updated = libraryEventStore.upsert(List.of(libraryEvent(libraryEventId, 2, "Learn Kafka 2"), libraryEvent(1000, 3, "Learn Spring")), false);
+        entityManager.clear();
+
+        // then
+        assertArrayEquals(new int[]{1, 0}, updated);
+        LibraryEvent found = libraryEventStore.findById(libraryEventId).get();
+        assertEquals(LibraryEventType.UPDATE, found.getLibraryEventType());
+        assertEquals("Learn Kafka 2", found.getBook().getBookName());
+        assertFalse(libraryEventStore.findById(1000).isPresent());
+    }
+
+    @Test
+    void should_keep_book_id_of_event_merged_into_its_row() {
+        // given
+        Integer libraryEventId = libraryEventStore.save(libraryEvent(null, 2, "Learn Kafka")).getLibraryEventId();
+
+        // when
+        int[] updated = libraryEventStore.upsert(List.of(libraryEvent(libraryEventId, 3, "Learn Kafka 2")), true);
+        entityManager.clear();
+
+        // then
+        assertArrayEquals(new int[]{1}, updated);
+        LibraryEvent found = libraryEventStore.findById(libraryEventId).get();
+        assertEquals(2, found.getBook().getBookId());
+        assertEquals("Learn Kafka 2", found.getBook().getBookName());
+    }
+
+    @Test
+    void should_keep_book_of_event_updated_without_one() {
+        // given
+        Integer libraryEventId = libraryEventStore.save(libraryEvent(null, 5, "Learn Kafka")).getLibraryEventId();
+        LibraryEvent withoutBook = new LibraryEvent(libraryEventId, LibraryEventType.UPDATE, null);
+
+        // when
+        int[] updated = libraryEventStore.upsert(List.of(withoutBook), false);
+        int[] merged = libraryEventStore.upsert(List.of(withoutBook), true);
+        entityManager.clear();
+
+        // then
+        assertArrayEquals(new int[]{1}, updated);
+        assertArrayEquals(new int[]{1}, merged);
+        LibraryEvent found = libraryEventStore.findById(libraryEventId).get();
+        assertEquals(LibraryEventType.UPDATE, found.getLibraryEventType());
+        assertEquals(5, found.getBook().getBookId());
+        assertEquals("Learn Kafka", found.getBook().getBookName());
+        assertEquals("Gürkan Demir", found.getBook().getBookAuthor());
+    }
+
+    @Test
+    void should_copy_two_table_events_once() {
+        // given
+        LibraryEvent libraryEvent = libraryEvent(null, 4, "Learn Kafka");
+        libraryEvent.getBook().setLibraryEvent(libraryEvent);
+        Integer libraryEventId = libraryEventsRepository.save(libraryEvent).getLibraryEventId();
+        entityManager.flush();
+
+        // when
+        int copied = flatLibraryEventsRepository.copyFromTwoTables();
+        int copiedAgain = flatLibraryEventsRepository.copyFromTwoTables();
+        entityManager.clear();
+
+        // then
+        assertEquals(1, copied);
+        assertEquals(0, copiedAgain);
+        LibraryEvent found = libraryEventStore.findById(libraryEventId).get();
+        assertEquals(4, found.getBook().getBookId());
+        assertEquals("Learn Kafka", found.getBook().getBookName());
+    }
+
+    @Test
+    void should_page_views_ordered_by_id() {
+        // given
+        for (int i = 0; i < 3; i++) {
+            libraryEventStore.save(libraryEvent(null, 20 + i, "Learn Kafka " + i));
+        }
+        entityManager.flush();
+        entityManager.clear();
+
+        // when
+        Page<LibraryEventView> page = libraryEventStore.findAllViews(PageRequest.of(1, 2, Sort.by("libraryEventId")));
+
+        // then
+        assertEquals(3, page.getTotalElements());
+        assertEquals(1, page.getContent().size());
+        assertEquals("Learn Kafka 2", page.getContent().get(0).getBook().getBookName());
+    }
+
+    private static LibraryEvent libraryEvent(Integer libraryEventId, int bookId, String bookName) {
+        LibraryEvent libraryEvent = new LibraryEvent(libraryEventId, libraryEventId == null ? LibraryEventType.NEW : LibraryEventType.UPDATE, null);
+        libraryEvent.setBook(new Book(bookId, bookName, "Gürkan Demir", null));
+        return libraryEvent;
+    }
+}
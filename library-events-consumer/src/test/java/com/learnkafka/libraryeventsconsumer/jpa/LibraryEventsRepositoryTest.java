@@ -0,0 +1,193 @@
+package com.learnkafka.libraryeventsconsumer.jpa;
+
+import com.learnkafka.libraryeventsconsumer.domain.LibraryEventView;
+import com.learnkafka.libraryeventsconsumer.entity.Book;
+import com.learnkafka.libraryeventsconsumer.entity.LibraryEvent;
+import com.learnkafka.libraryeventsconsumer.entity.LibraryEventType;
+import org.hibernate.SessionFactory;
+import org.hibernate.stat.Statistics;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.orm.jpa.DataJpaTest;
+import org.springframework.data.domain.Page;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.data.domain.Sort;
+
+import javax.persistence.EntityManager;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+@DataJpaTest(properties = "spring.jpa.properties.hibernate.generate_statistics=true")
+class LibraryEventsRepositoryTest {
+
+    @Autowired
+    LibraryEventsRepository libraryEventsRepository;
+
+    @Autowired
+    EntityManager entityManager;
+
+    @Test
+    void should_update_existing_events_in_one_batch() {
+        // given
+        Integer first = libraryEventsRepository.save(libraryEvent(null, 1, "Learn Kafka")).getLibraryEventId();
+        Integer second = libraryEventsRepository.save(libraryEvent(null, 2, "Learn Spring")).getLibraryEventId();
+
+        // when
+        int[] updated = libraryEventsRepository.upsert(List.of(libraryEvent(first, 1, "Learn Kafka 2"), libraryEvent(second, 2, "Learn Spring 2")), false);
+        entityManager.clear();
+
+        // then
+        assertArrayEquals(new int[]{1, 1}, updated);
+        LibraryEvent libraryEvent = libraryEventsRepository.findById(first).get();
+        assertEquals(LibraryEventType.UPDATE, libraryEvent.getLibraryEventType());
+        assertEquals("Learn Kafka 2", libraryEvent.getBook().getBookName());
+        assertEquals("Learn Spring 2", libraryEventsRepository.findById(second).get().getBook().getBookName());
+    }
+
+    @Test
+    void should_keep_book_id_of_updated_event() {
+        // given
+        Integer libraryEventId = libraryEventsRepository.save(libraryEvent(null, 5, "Learn Kafka")).getLibraryEventId();
+
+        // when
+        libraryEventsRepository.upsert(List.of(libraryEvent(libraryEventId, 6, "Learn Kafka 2")), false);
+        libraryEventsRepository.upsert(List.of(libraryEvent(libraryEventId, 7, "Learn Kafka 3")), true);
+        entityManager.clear();
+
+        // then
+        LibraryEvent libraryEvent = libraryEventsRepository.findById(libraryEventId).get();
+        assertEquals(5, libraryEvent.getBook().getBookId());
+        assertEquals("Learn Kafka 3", libraryEvent.getBook().getBookName());
+    }
+
+    @Test
+    void should_update_book_without_book_id_when_insert_missing() {
+        // given
+        Integer libraryEventId = libraryEventsRepository.save(libraryEvent(null, 10, "Learn Kafka")).getLibraryEventId();
+        LibraryEvent withoutBookId = libraryEvent(libraryEventId, 10, "Learn Kafka 2");
+        withoutBookId.getBook().setBookId(null);
+
+        // when
+        int[] updated = libraryEventsRepository.upsert(List.of(withoutBookId), true);
+        entityManager.clear();
+
+        // then
+        assertArrayEquals(new int[]{1}, updated);
+        LibraryEvent libraryEvent = libraryEventsRepository.findById(libraryEventId).get();
+        assertEquals(10, libraryEvent.getBook().getBookId());
+        assertEquals("Learn Kafka 2", libraryEvent.getBook().getBookName());
+    }
+
+    @Test
+    void should_report_unknown_event_without_inserting() {
+        // given
+
+        // when
+        int[] updated = libraryEventsRepository.upsert(List.of(libraryEvent(1000, 3, "Learn Kafka")), false);
+        entityManager.clear();
+
+        // then
+        assertArrayEquals(new int[]{0}, updated);
+        assertFalse(libraryEventsRepository.findById(1000).isPresent());
+    }
+
+    @Test
+    void should_insert_unknown_event_when_insert_missing() {
+        // given
+        LibraryEvent lost = libraryEventsRepository.save(libraryEvent(null, 4, "Learn Kafka"));
+        libraryEventsRepository.delete(lost);
+        entityManager.flush();
+
+        // when
+        int[] updated = libraryEventsRepository.upsert(List.of(libraryEvent(lost.getLibraryEventId(), 4, "Learn Kafka 2")), true);
+        entityManager.clear();
+
+        // then
+        assertArrayEquals(new int[]{1}, updated);
+        LibraryEvent libraryEvent = libraryEventsRepository.findById(lost.getLibraryEventId()).get();
+        assertEquals(4, libraryEvent.getBook().getBookId());
+        assertEquals("Learn Kafka 2", libraryEvent.getBook().getBookName());
+    }
+
+    @Test
+    void should_not_insert_event_whose_id_was_never_handed_out() {
+        // given
+        Integer libraryEventId = libraryEventsRepository.save(libraryEvent(null, 8, "Learn Kafka")).getLibraryEventId();
+
+        // when
+        int[] updated = libraryEventsRepository.upsert(List.of(libraryEvent(libraryEventId + 1_000_000, 9, "Learn Kafka")), true);
+        entityManager.clear();
+
+        // then
+        assertArrayEquals(new int[]{0}, updated);
+        assertFalse(libraryEventsRepository.findById(libraryEventId + 1_000_000).isPresent());
+    }
+
+    @Test
+    void should_insert_new_events_with_one_sequence_call_per_block() {
+        // given
+        List<LibraryEvent> libraryEvents = new ArrayList<>();
+        for (int i = 0; i < 1_000; i++) {
+            libraryEvents.add(libraryEvent(null, 10_000 + i, "Learn Kafka"));
+        }
+        Statistics statistics = entityManager.getEntityManagerFactory().unwrap(SessionFactory.class).getStatistics();
+        statistics.clear();
+
+        // when
+        libraryEventsRepository.saveAll(libraryEvents);
+        entityManager.flush();
+
+        // then
+        //a sequence call per block of 50 ids, a partly used block left by another test, one batched insert per table
+        assertEquals(2 * 1_000, statistics.getEntityInsertCount());
+        assertTrue(statistics.getPrepareStatementCount() <= 1_000 / 50 + 1 + 2);
+    }
+
+    @Test
+    void should_page_views_ordered_by_id() {
+        // given
+        for (int i = 0; i < 3; i++) {
+            libraryEventsRepository.save(libraryEvent(null, 20 + i, "Learn Kafka " + i));
+        }
+        entityManager.flush();
+        entityManager.clear();
+
+        // when
+        Page<LibraryEventView> page = libraryEventsRepository.findAllViews(PageRequest.of(1, 2, Sort.by("libraryEventId")));
+
+        // then
+        assertEquals(3, page.getTotalElements());
+        assertEquals(1, page.getContent().size());
+        assertEquals("Learn Kafka 2", page.getContent().get(0).getBook().getBookName());
+    }
+
+    @Test
+    void should_seek_views_after_id() {
+        // given
+        List<Integer> ids = new ArrayList<>();
+        for (int i = 0; i < 3; i++) {
+            ids.add(libraryEventsRepository.save(libraryEvent(null, 30 + i, "Learn Kafka " + i)).getLibraryEventId());
+        }
+        entityManager.flush();
+        entityManager.clear();
+
+        // when
+        List<LibraryEventView> views = libraryEventsRepository.findViewsAfter(ids.get(0), PageRequest.of(0, 1));
+
+        // then
+        assertEquals(1, views.size());
+        assertEquals(ids.get(1), views.get(0).getLibraryEventId());
+        assertEquals("Learn Kafka 1", views.get(0).getBook().getBookName());
+    }
+
+    private static LibraryEvent libraryEvent(Integer libraryEventId, int bookId, String bookName) {
+        LibraryEvent libraryEvent = new LibraryEvent(libraryEventId, libraryEventId == null ? LibraryEventType.NEW : LibraryEventType.UPDATE, null);
+        libraryEvent.setBook(new Book(bookId, bookName, "Gürkan Demir", libraryEvent));
+        return libraryEvent;
+    }
+}
@@ -0,0 +1,80 @@
+package com.learnkafka.libraryeventsconsumer.metrics;
+
+import io.micrometer.core.instrument.Timer;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.apache.kafka.clients.consumer.ConsumerRecord;
+import org.apache.kafka.common.record.TimestampType;
+import org.junit.jupiter.api.Test;
+
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class LibraryEventMetricsTest {
+
+    SimpleMeterRegistry meterRegistry = new SimpleMeterRegistry();
+
+    LibraryEventMetrics libraryEventMetrics = new LibraryEventMetrics(meterRegistry);
+
+    @Test
+    void should_measure_from_produced_at_header() {
+        // given
+        ConsumerRecord<Integer, byte[]> record = new ConsumerRecord<>("library-events", 0, 0L, 1, new byte[0]);
+        long producedAt = System.currentTimeMillis() - 5_000L;
+        record.headers().add(LibraryEventMetrics.PRODUCED_AT_HEADER, String.valueOf(producedAt).getBytes(StandardCharsets.UTF_8));
+
+        // when
+        libraryEventMetrics.pickedUp(record);
+        libraryEventMetrics.committed(record, true);
+
+        // then
+        Timer queueWait = meterRegistry.get("libraryevents.consumer.stage").tag("stage", "queue-wait").timer();
+        Timer retried = meterRegistry.get("libraryevents.end.to.end").tag("path", "retry").timer();
+        Timer main = meterRegistry.get("libraryevents.end.to.end").tag("path", "main").timer();
+        assertEquals(1, queueWait.count());
+        assertTrue(queueWait.totalTime(TimeUnit.MILLISECONDS) >= 5_000);
+        assertEquals(1, retried.count());
+        assertEquals(0, main.count());
+    }
+
+    @Test
+    void should_measure_retry_stage_from_record_timestamp() {
+        // given
+        long sentToRetry = System.currentTimeMillis() - 1_000L;
+        ConsumerRecord<Integer, byte[]> record = new ConsumerRecord<>("library-events-retry-1s", 0, 0L, sentToRetry,
+                TimestampType.CREATE_TIME, 0L, 0, 0, 1, new byte[0]);
+
+        // when
+        libraryEventMetrics.retryPickedUp(record);
+
+        // then
+        Timer retry = meterRegistry.get("libraryevents.consumer.stage").tag("stage", "retry").timer();
+        assertEquals(1, retry.count());
+        assertTrue(retry.totalTime(TimeUnit.MILLISECONDS) >= 1_000);
+    }
+
+    @Test
+    void should_read_trace_id_header() {
+        // given
+        ConsumerRecord<Integer, byte[]> record = new ConsumerRecord<>("library-events", 0, 0L, 1, new byte[0]);
+        ConsumerRecord<Integer, byte[]> untraced = new ConsumerRecord<>("library-events", 0, 1L, 1, new byte[0]);
+        record.headers().add(LibraryEventMetrics.TRACE_ID_HEADER, "3f2c1a9e-1b7d-4c55-9a0e-2f7b8c6d5e41".getBytes(StandardCharsets.UTF_8));
+
+        // when
+        String traceId = LibraryEventMetrics.traceId(record);
+
+        // then
+        assertEquals("3f2c1a9e-1b7d-4c55-9a0e-2f7b8c6d5e41", traceId);
+        assertNull(LibraryEventMetrics.traceId(untraced));
+    }
+
+    @Test
+    void should_parse_only_ascii_digits() {
+        assertEquals(1602345678901L, LibraryEventMetrics.parseMillis("1602345678901".getBytes(StandardCharsets.UTF_8)));
+        assertEquals(-1L, LibraryEventMetrics.parseMillis("16023x".getBytes(StandardCharsets.UTF_8)));
+        assertEquals(-1L, LibraryEventMetrics.parseMillis(new byte[0]));
+    }
+}
@@ -0,0 +1,90 @@
+package com.learnkafka.libraryeventsconsumer.redrive;
+
+import com.learnkafka.libraryeventsconsumer.service.LibraryEventsRetryService;
+import com.learnkafka.libraryeventsconsumer.service.RetryTopic;
+import org.apache.kafka.clients.consumer.ConsumerRecord;
+import org.apache.kafka.clients.consumer.MockConsumer;
+import org.apache.kafka.clients.consumer.OffsetAndMetadata;
+import org.apache.kafka.clients.consumer.OffsetResetStrategy;
+import org.apache.kafka.clients.producer.MockProducer;
+import org.apache.kafka.clients.producer.ProducerRecord;
+import org.apache.kafka.common.Node;
+import org.apache.kafka.common.PartitionInfo;
+import org.apache.kafka.common.TopicPartition;
+import org.apache.kafka.common.serialization.ByteArraySerializer;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class DeadLetterRedriveTest {
+
+    TopicPartition deadLetterPartition = new TopicPartition(RetryTopic.DEAD_LETTER_TOPIC, 0);
+
+    MockConsumer<byte[], byte[]> consumer = new MockConsumer<>(OffsetResetStrategy.EARLIEST);
+
+    MockProducer<byte[], byte[]> producer = new MockProducer<>(true, new ByteArraySerializer(), new ByteArraySerializer());
+
+    @BeforeEach
+    void setUp() {
+        consumer.updatePartitions(RetryTopic.DEAD_LETTER_TOPIC, List.of(new PartitionInfo(RetryTopic.DEAD_LETTER_TOPIC, 0, Node.noNode(), new Node[0], new Node[0])));
+        consumer.updateBeginningOffsets(Map.of(deadLetterPartition, 0L));
+        consumer.updateEndOffsets(Map.of(deadLetterPartition, 3L));
+        consumer.schedulePollTask(() -> {
+            consumer.addRecord(deadLettered(0L, "IllegalArgumentException"));
+            consumer.addRecord(deadLettered(1L, "NullPointerException"));
+            consumer.addRecord(deadLettered(2L, "IllegalArgumentException"));
+        });
+    }
+
+    @Test
+    void should_redrive_records_with_failure_reason_and_commit_progress() {
+        // given
+        DeadLetterRedrive deadLetterRedrive = new DeadLetterRedrive(consumer, producer, new RedriveOptions("--reason=IllegalArgumentException", "--rate=0"));
+
+        // when
+        long redriven = deadLetterRedrive.run();
+
+        // then
+        assertEquals(2, redriven);
+        List<ProducerRecord<byte[], byte[]>> sent = producer.history();
+        assertEquals(2, sent.size());
+        for (ProducerRecord<byte[], byte[]> record : sent) {
+            assertEquals("library-events", record.topic());
+            assertNull(record.headers().lastHeader(LibraryEventsRetryService.RETRY_ATTEMPT_HEADER));
+            assertNull(record.headers().lastHeader(LibraryEventsRetryService.FAILURE_REASON_HEADER));
+            assertEquals("library-events", new String(record.headers().lastHeader(LibraryEventsRetryService.ORIGINAL_TOPIC_HEADER).value(), StandardCharsets.UTF_8));
+        }
+        Map<TopicPartition, OffsetAndMetadata> committed = consumer.committed(Set.of(deadLetterPartition));
+        assertEquals(3L, committed.get(deadLetterPartition).offset());
+    }
+
+    @Test
+    void should_only_count_matching_records_in_dry_run() {
+        // given
+        DeadLetterRedrive deadLetterRedrive = new DeadLetterRedrive(consumer, producer, new RedriveOptions("--reason=NullPointerException", "--dry-run=true"));
+
+        // when
+        long matched = deadLetterRedrive.run();
+
+        // then
+        assertEquals(1, matched);
+        assertTrue(producer.history().isEmpty());
+        assertNull(consumer.committed(Set.of(deadLetterPartition)).get(deadLetterPartition));
+    }
+
+    private ConsumerRecord<byte[], byte[]> deadLettered(long offset, String failureReason) {
+        ConsumerRecord<byte[], byte[]> record = new ConsumerRecord<>(RetryTopic.DEAD_LETTER_TOPIC, 0, offset, new byte[]{0, 0, 0, 1}, "{}".getBytes(StandardCharsets.UTF_8));
+        record.headers().add(LibraryEventsRetryService.ORIGINAL_TOPIC_HEADER, "library-events".getBytes(StandardCharsets.UTF_8));
+        record.headers().add(LibraryEventsRetryService.RETRY_ATTEMPT_HEADER, "3".getBytes(StandardCharsets.UTF_8));
+        record.headers().add(LibraryEventsRetryService.FAILURE_REASON_HEADER, failureReason.getBytes(StandardCharsets.UTF_8));
+        return record;
+    }
+}
@@ -0,0 +1,252 @@
+package com.learnkafka.libraryeventsconsumer.search;
+
+import com.learnkafka.libraryeventsconsumer.cache.LibraryEventCache;
+import com.learnkafka.libraryeventsconsumer.domain.LibraryEventView;
+import com.learnkafka.libraryeventsconsumer.entity.Book;
+import com.learnkafka.libraryeventsconsumer.entity.LibraryEvent;
+import com.learnkafka.libraryeventsconsumer.entity.LibraryEventType;
+import com.learnkafka.libraryeventsconsumer.jpa.LibraryEventStore;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.Test;
+import org.springframework.transaction.PlatformTransactionManager;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.stream.Collectors;
+import java.util.stream.IntStream;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyInt;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+class LibraryEventIndexTest {
+
+    LibraryEventStore libraryEventStore = mock(LibraryEventStore.class);
+
+    LibraryEventCache libraryEventCache = new LibraryEventCache(100, Duration.ofMinutes(10), new SimpleMeterRegistry());
+
+    LibraryEventIndex libraryEventIndex = new LibraryEventIndex(libraryEventStore, libraryEventCache, mock(PlatformTransactionManager.class), true);
+
+    @Test
+    void should_find_written_event_by_author_and_title_tokens() {
+        // given
+        libraryEventCache.written(libraryEvent(1, "Kafka Using Spring Boot", "Dilip Sundarraj"));
+        libraryEventCache.written(libraryEvent(2, "Learn Kafka", "Gürkan Demir"));
+
+        // when
+        List<Integer> byTitle = ids(libraryEventIndex.search("kafka", LibraryEventIndex.Field.TITLE, LibraryEventIndex.Match.EXACT, 10));
+        List<Integer> byAuthor = ids(libraryEventIndex.search("GÜRKAN", LibraryEventIndex.Field.AUTHOR, LibraryEventIndex.Match.EXACT, 10));
+        List<Integer> byBoth = ids(libraryEventIndex.search("spring dilip", LibraryEventIndex.Field.ANY, LibraryEventIndex.Match.EXACT, 10));
+
+        // then
+        assertEquals(List.of(1, 2), byTitle);
+        assertEquals(List.of(2), byAuthor);
+        assertEquals(List.of(1), byBoth);
+    }
+
+    @Test
+    void should_match_token_prefixes() {
+        // given
+        libraryEventCache.written(libraryEvent(1, "Kafka Streams", "Gürkan Demir"));
+        libraryEventCache.written(libraryEvent(2, "Kafka Connect", "Gürkan Demir"));
+        libraryEventCache.written(libraryEvent(3, "Streaming Systems", "Tyler Akidau"));
+
+        // when
+        List<Integer> exact = ids(libraryEventIndex.search("stream", LibraryEventIndex.Field.TITLE, LibraryEventIndex.Match.EXACT, 10));
+        List<Integer> prefix = ids(libraryEventIndex.search("stream", LibraryEventIndex.Field.TITLE, LibraryEventIndex.Match.PREFIX, 10));
+        List<Integer> limited = ids(libraryEventIndex.search("ka", LibraryEventIndex.Field.ANY, LibraryEventIndex.Match.PREFIX, 1));
+
+        // then
+        assertEquals(List.of(), exact);
+        assertEquals(List.of(1, 3), prefix);
+        assertEquals(List.of(1), limited);
+    }
+
+    @Test
+    void should_move_updated_event_to_its_new_tokens() {
+        // given
+        libraryEventCache.written(libraryEvent(1, "Learn Kafka", "Gürkan Demir"));
+
+        // when
+        libraryEventCache.written(libraryEvent(1, "Learn Pulsar", "Someone Else"));
+
+        // then
+        assertEquals(List.of(), ids(libraryEventIndex.search("kafka", LibraryEventIndex.Field.ANY, LibraryEventIndex.Match.EXACT, 10)));
+        assertEquals(List.of(), ids(libraryEventIndex.search("demir", LibraryEventIndex.Field.AUTHOR, LibraryEventIndex.Match.EXACT, 10)));
+        assertEquals(List.of(1), ids(libraryEventIndex.search("pulsar else", LibraryEventIndex.Field.ANY, LibraryEventIndex.Match.EXACT, 10)));
+        assertEquals(List.of(1), ids(libraryEventIndex.search("learn", LibraryEventIndex.Field.TITLE, LibraryEventIndex.Match.EXACT, 10)));
+    }
+
+    @Test
+    void should_ignore_write_older_than_the_indexed_one() {
+        // given
+        stored(libraryEvent(1, "Newer", "Gürkan Demir"));
+        libraryEventIndex.committed(libraryEvent(1, "Newer", "Gürkan Demir"), 2L);
+
+        // when
+        libraryEventIndex.committed(libraryEvent(1, "Older", "Gürkan Demir"), 1L);
+
+        // then
+        assertEquals(List.of(1), ids(libraryEventIndex.search("newer", LibraryEventIndex.Field.TITLE, LibraryEventIndex.Match.EXACT, 10)));
+        assertEquals(List.of(), ids(libraryEventIndex.search("older", LibraryEventIndex.Field.TITLE, LibraryEventIndex.Match.EXACT, 10)));
+    }
+
+    @Test
+    void should_read_invalidated_event_again() throws Exception {
+        // given
+        libraryEventCache.written(libraryEvent(1, "Learn Kafka", "Gürkan Demir"));
+        when(libraryEventStore.findById(1)).thenReturn(Optional.of(libraryEvent(1, "Committed Last", "Gürkan Demir")));
+        stored(libraryEvent(1, "Committed Last", "Gürkan Demir"));
+
+        // when
+        libraryEventCache.invalidate(1);
+        libraryEventIndex.invalidated(1);
+        libraryEventIndex.awaitReloads();
+
+        // then
+        assertEquals(List.of(1), ids(libraryEventIndex.search("last", LibraryEventIndex.Field.TITLE, LibraryEventIndex.Match.EXACT, 10)));
+        assertEquals(List.of(), ids(libraryEventIndex.search("kafka", LibraryEventIndex.Field.TITLE, LibraryEventIndex.Match.EXACT, 10)));
+    }
+
+    @Test
+    void should_read_invalidated_event_again_after_write_of_another_id_in_its_stripe() throws Exception {
+        // given
+        libraryEventCache.written(libraryEvent(1, "Learn Kafka", "Gürkan Demir"));
+        when(libraryEventStore.findById(1)).thenAnswer(invocation -> {
+            //1025 shares the write stamp stripe of 1
+            libraryEventCache.written(libraryEvent(1_025, "Other Book", "Gürkan Demir"));
+            return Optional.of(libraryEvent(1, "Committed Last", "Gürkan Demir"));
+        });
+        stored(libraryEvent(1, "Committed Last", "Gürkan Demir"));
+
+        // when
+        libraryEventCache.invalidate(1);
+        libraryEventIndex.invalidated(1);
+        libraryEventIndex.awaitReloads();
+
+        // then
+        assertEquals(List.of(1), ids(libraryEventIndex.search("last", LibraryEventIndex.Field.TITLE, LibraryEventIndex.Match.EXACT, 10)));
+    }
+
+    @Test
+    void should_rebuild_from_store_page_by_page() {
+        // given
+        List<LibraryEventView> firstPage = IntStream.rangeClosed(1, 1_000)
+                .mapToObj(id -> new LibraryEventView(id, LibraryEventType.NEW, id, "Book " + id, "Author"))
+                .collect(Collectors.toList());
+        when(libraryEventStore.findViewsAfter(any(), anyInt())).thenReturn(List.of());
+        when(libraryEventStore.findViewsAfter(Integer.MIN_VALUE, 1_000)).thenReturn(firstPage);
+        when(libraryEventStore.findViewsAfter(1_000, 1_000)).thenReturn(List.of(new LibraryEventView(1_001, LibraryEventType.NEW, 1, "Learn Kafka", "Gürkan Demir")));
+        List<LibraryEventView> rows = new ArrayList<>(firstPage);
+        rows.add(new LibraryEventView(1_001, LibraryEventType.NEW, 1, "Learn Kafka", "Gürkan Demir"));
+        stored(rows);
+
+        // when
+        libraryEventIndex.rebuild();
+
+        // then
+        assertEquals(1_000, libraryEventIndex.search("author", LibraryEventIndex.Field.AUTHOR, LibraryEventIndex.Match.EXACT, 5_000).size());
+        assertEquals(List.of(1_001), ids(libraryEventIndex.search("kafka", LibraryEventIndex.Field.TITLE, LibraryEventIndex.Match.EXACT, 10)));
+    }
+
+    @Test
+    void should_read_hits_missing_from_the_cache_in_one_query_up_to_the_limit() {
+        // given
+        List<LibraryEventView> rows = IntStream.rangeClosed(1, 200)
+                .mapToObj(id -> new LibraryEventView(id, LibraryEventType.NEW, id, "Kafka Volume" + id, "Author"))
+                .collect(Collectors.toList());
+        rows.forEach(row -> libraryEventIndex.committed(libraryEvent(row.getLibraryEventId(), row.getBook().getBookName(), "Author"), 1L));
+        stored(rows);
+
+        // when
+        List<Integer> found = ids(libraryEventIndex.search("kafka volume", LibraryEventIndex.Field.TITLE, LibraryEventIndex.Match.PREFIX, 3));
+
+        // then
+        assertEquals(List.of(1, 2, 3), found);
+        verify(libraryEventStore, times(1)).findViewsByIds(List.of(1, 2, 3));
+    }
+
+    @Test
+    void should_intersect_and_union_sorted_ids_lazily() {
+        // given
+        PostingList left = postingList(1, 3, 5, 7);
+        PostingList right = postingList(3, 4, 5, 8);
+
+        // when
+        List<Long> both = read(IdSet.intersection(List.of(left, right)));
+        List<Long> either = read(IdSet.union(List.of(left, right)));
+        long firstAfterFour = IdSet.union(List.of(left, right)).ceiling(5);
+
+        // then
+        assertEquals(List.of(3L, 5L), both);
+        assertEquals(List.of(1L, 3L, 4L, 5L, 7L, 8L), either);
+        assertEquals(5L, firstAfterFour);
+        assertEquals(IdSet.NONE, left.ceiling(8));
+    }
+
+    @Test
+    void should_keep_posting_list_sorted_and_shrink_it() {
+        // given
+        PostingList postingList = new PostingList();
+        for (int id = 100; id > 0; id--) {
+            postingList.add(id);
+        }
+
+        // when
+        for (int id = 1; id < 100; id++) {
+            postingList.remove(id);
+        }
+
+        // then
+        assertArrayEquals(new int[]{100}, postingList.toArray());
+        assertTrue(postingList.remove(100));
+    }
+
+    private void stored(LibraryEvent... libraryEvents) {
+        stored(Arrays.stream(libraryEvents).map(LibraryEventView::of).collect(Collectors.toList()));
+    }
+
+    private void stored(List<LibraryEventView> rows) {
+        Map<Integer, LibraryEventView> byId = rows.stream().collect(Collectors.toMap(LibraryEventView::getLibraryEventId, row -> row));
+        when(libraryEventStore.findViewsByIds(any())).thenAnswer(invocation -> invocation.<Collection<Integer>>getArgument(0).stream()
+                .filter(byId::containsKey)
+                .sorted()
+                .map(byId::get)
+                .collect(Collectors.toList()));
+    }
+
+    private static PostingList postingList(int... ids) {
+        PostingList postingList = new PostingList();
+        Arrays.stream(ids).forEach(postingList::add);
+        return postingList;
+    }
+
+    private static List<Long> read(IdSet idSet) {
+        List<Long> ids = new ArrayList<>();
+        for (long id = idSet.ceiling(Long.MIN_VALUE); id != IdSet.NONE; id = idSet.ceiling(id + 1)) {
+            ids.add(id);
+        }
+        return ids;
+    }
+
+    private static List<Integer> ids(List<LibraryEventView> views) {
+        return views.stream().map(LibraryEventView::getLibraryEventId).collect(Collectors.toList());
+    }
+
+    private static LibraryEvent libraryEvent(Integer libraryEventId, String bookName, String bookAuthor) {
+        LibraryEvent libraryEvent = new LibraryEvent(libraryEventId, LibraryEventType.NEW, null);
+        libraryEvent.setBook(new Book(123, bookName, bookAuthor, libraryEvent));
+        return libraryEvent;
+    }
+}
@@ -0,0 +1,166 @@
+package com.learnkafka.libraryeventsconsumer.service;
+
+import org.apache.kafka.clients.consumer.ConsumerRecord;
+import org.apache.kafka.clients.consumer.MockConsumer;
+import org.apache.kafka.clients.consumer.OffsetResetStrategy;
+import org.apache.kafka.clients.producer.ProducerRecord;
+import org.apache.kafka.clients.producer.RecordMetadata;
+import org.apache.kafka.common.TopicPartition;
+import org.apache.kafka.common.header.Header;
+import org.apache.kafka.common.header.Headers;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.mockito.ArgumentCaptor;
+import org.springframework.dao.RecoverableDataAccessException;
+import org.springframework.kafka.core.KafkaTemplate;
+import org.springframework.kafka.listener.ListenerExecutionFailedException;
+import org.springframework.kafka.support.SendResult;
+import org.springframework.util.concurrent.SettableListenableFuture;
+
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+import java.util.Set;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNotEquals;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+class LibraryEventsRetryServiceTest {
+
+    LibraryEventsRetryService libraryEventsRetryService = new LibraryEventsRetryService();
+
+    KafkaTemplate<Integer, byte[]> kafkaTemplate = mock(KafkaTemplate.class);
+
+    @BeforeEach
+    void setUp() {
+        libraryEventsRetryService.kafkaTemplate = kafkaTemplate;
+        SettableListenableFuture<SendResult<Integer, byte[]>> future = new SettableListenableFuture<>();
+        future.set(new SendResult<>(null, new RecordMetadata(new TopicPartition("library-events-retry-1s", 0), 0L, 0L, 0L, 0L, 0, 0)));
+        when(kafkaTemplate.send(any(ProducerRecord.class))).thenReturn(future);
+    }
+
+    @Test
+    void should_send_first_failure_to_first_tier() {
+        // given
+        ConsumerRecord<Integer, byte[]> record = new ConsumerRecord<>("library-events", 2, 42L, 1, "{}".getBytes());
+
+        // when
+        libraryEventsRetryService.retry(record, new RecoverableDataAccessException("Temporary Network Issue"));
+
+        // then
+        ProducerRecord<Integer, byte[]> sent = captureSent();
+        assertEquals("library-events-retry-1s", sent.topic());
+        assertEquals("1", header(sent.headers(), LibraryEventsRetryService.RETRY_ATTEMPT_HEADER));
+        assertEquals("library-events", header(sent.headers(), LibraryEventsRetryService.ORIGINAL_TOPIC_HEADER));
+        assertEquals("2", header(sent.headers(), LibraryEventsRetryService.ORIGINAL_PARTITION_HEADER));
+        assertEquals("42", header(sent.headers(), LibraryEventsRetryService.ORIGINAL_OFFSET_HEADER));
+        assertEquals("Temporary Network Issue", header(sent.headers(), LibraryEventsRetryService.EXCEPTION_MESSAGE_HEADER));
+        assertTrue(Long.parseLong(header(sent.headers(), LibraryEventsRetryService.RETRY_DUE_AT_HEADER)) > System.currentTimeMillis());
+    }
+
+    @Test
+    void should_send_exhausted_retries_to_dead_letter_topic() {
+        // given
+        ConsumerRecord<Integer, byte[]> record = new ConsumerRecord<>("library-events-retry-60s", 0, 7L, 1, "{}".getBytes());
+        record.headers().add(LibraryEventsRetryService.RETRY_ATTEMPT_HEADER, "3".getBytes(StandardCharsets.UTF_8));
+        record.headers().add(LibraryEventsRetryService.ORIGINAL_TOPIC_HEADER, "library-events".getBytes(StandardCharsets.UTF_8));
+
+        // when
+        libraryEventsRetryService.retry(record, new RecoverableDataAccessException("Temporary Network Issue"));
+
+        // then
+        ProducerRecord<Integer, byte[]> sent = captureSent();
+        assertEquals(RetryTopic.DEAD_LETTER_TOPIC, sent.topic());
+        assertEquals("library-events", header(sent.headers(), LibraryEventsRetryService.ORIGINAL_TOPIC_HEADER));
+        assertNull(sent.headers().lastHeader(LibraryEventsRetryService.RETRY_DUE_AT_HEADER));
+    }
+
+    @Test
+    void should_send_non_recoverable_failure_to_dead_letter_topic_with_reason_and_stack_hash() {
+        // given
+        ConsumerRecord<Integer, byte[]> record = new ConsumerRecord<>("library-events", 1, 9L, 1, "{}".getBytes());
+        IllegalArgumentException exception = new IllegalArgumentException("Invalid Library Event Type");
+
+        // when
+        libraryEventsRetryService.deadLetter(record, exception);
+
+        // then
+        ProducerRecord<Integer, byte[]> sent = captureSent();
+        assertEquals(RetryTopic.DEAD_LETTER_TOPIC, sent.topic());
+        assertEquals("1", header(sent.headers(), LibraryEventsRetryService.ORIGINAL_PARTITION_HEADER));
+        assertEquals("9", header(sent.headers(), LibraryEventsRetryService.ORIGINAL_OFFSET_HEADER));
+        assertEquals("IllegalArgumentException", header(sent.headers(), LibraryEventsRetryService.FAILURE_REASON_HEADER));
+        assertEquals(LibraryEventsRetryService.stackHash(exception), header(sent.headers(), LibraryEventsRetryService.STACK_HASH_HEADER));
+    }
+
+    @Test
+    void should_tag_recovered_listener_failure_with_reason_of_its_cause() {
+        // given
+        ConsumerRecord<Integer, byte[]> record = new ConsumerRecord<>("library-events", 0, 3L, 1, "{}".getBytes());
+        RecoverableDataAccessException cause = new RecoverableDataAccessException("Temporary Network Issue");
+
+        // when
+        libraryEventsRetryService.retry(record, new ListenerExecutionFailedException("Listener failed", cause));
+
+        // then
+        ProducerRecord<Integer, byte[]> sent = captureSent();
+        assertEquals("library-events-retry-1s", sent.topic());
+        assertEquals("RecoverableDataAccessException", header(sent.headers(), LibraryEventsRetryService.FAILURE_REASON_HEADER));
+        assertNotNull(sent.headers().lastHeader(LibraryEventsRetryService.STACK_HASH_HEADER));
+    }
+
+    @Test
+    void should_hash_stacks_without_their_messages() {
+        // given
+        Exception[] exceptions = new Exception[2];
+        for (int i = 0; i < exceptions.length; i++) {
+            exceptions[i] = new IllegalArgumentException("Not a valid library event id " + i);
+        }
+
+        // when
+        String first = LibraryEventsRetryService.stackHash(exceptions[0]);
+        String second = LibraryEventsRetryService.stackHash(exceptions[1]);
+
+        // then
+        assertEquals(first, second);
+        assertNotEquals(first, LibraryEventsRetryService.stackHash(new IllegalStateException("Not a valid library event id 0")));
+    }
+
+    @Test
+    void should_resume_only_due_partitions() {
+        // given
+        MockConsumer<Integer, byte[]> consumer = new MockConsumer<>(OffsetResetStrategy.EARLIEST);
+        TopicPartition due = new TopicPartition("library-events-retry-1s", 0);
+        TopicPartition notDue = new TopicPartition("library-events-retry-1s", 1);
+        consumer.assign(List.of(due, notDue));
+        long now = System.currentTimeMillis();
+        libraryEventsRetryService.pauseUntil(consumer, new ConsumerRecord<>(due.topic(), due.partition(), 0L, 1, new byte[0]), now - 1);
+        libraryEventsRetryService.pauseUntil(consumer, new ConsumerRecord<>(notDue.topic(), notDue.partition(), 0L, 1, new byte[0]), now + 60_000);
+
+        // when
+        libraryEventsRetryService.resumeDuePartitions(consumer);
+
+        // then
+        Set<TopicPartition> paused = consumer.paused();
+        assertFalse(paused.contains(due));
+        assertTrue(paused.contains(notDue));
+    }
+
+    private ProducerRecord<Integer, byte[]> captureSent() {
+        ArgumentCaptor<ProducerRecord<Integer, byte[]>> captor = ArgumentCaptor.forClass(ProducerRecord.class);
+        verify(kafkaTemplate).send(captor.capture());
+        return captor.getValue();
+    }
+
+    private String header(Headers headers, String name) {
+        Header header = headers.lastHeader(name);
+        return new String(header.value(), StandardCharsets.UTF_8);
+    }
+}
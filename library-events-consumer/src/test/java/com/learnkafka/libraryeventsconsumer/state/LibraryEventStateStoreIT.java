@@ -0,0 +1,224 @@
+package com.learnkafka.libraryeventsconsumer.state;
+
+import com.learnkafka.libraryeventsconsumer.entity.Book;
+import com.learnkafka.libraryeventsconsumer.entity.LibraryEvent;
+import com.learnkafka.libraryeventsconsumer.entity.LibraryEventType;
+import com.learnkafka.libraryeventsconsumer.jpa.LibraryEventsRepository;
+import com.learnkafka.libraryeventsconsumer.service.LibraryEventsQueryService;
+import com.learnkafka.libraryeventsconsumer.service.LibraryEventsService;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.apache.kafka.clients.consumer.Consumer;
+import org.apache.kafka.clients.consumer.ConsumerConfig;
+import org.apache.kafka.clients.consumer.ConsumerRecord;
+import org.apache.kafka.clients.consumer.ConsumerRecords;
+import org.apache.kafka.common.TopicPartition;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.kafka.config.KafkaListenerEndpointRegistry;
+import org.springframework.kafka.core.ConsumerFactory;
+import org.springframework.kafka.core.KafkaTemplate;
+import org.springframework.kafka.listener.MessageListenerContainer;
+import org.springframework.kafka.test.EmbeddedKafkaBroker;
+import org.springframework.kafka.test.context.EmbeddedKafka;
+import org.springframework.kafka.test.utils.ContainerTestUtils;
+import org.springframework.kafka.test.utils.KafkaTestUtils;
+import org.springframework.test.context.TestPropertySource;
+
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+import java.util.Properties;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Collectors;
+import java.util.stream.IntStream;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+@SpringBootTest
+@EmbeddedKafka(topics = {"library-events", LibraryEventStateStore.CHANGELOG_TOPIC}, partitions = 3)
+@TestPropertySource(properties = {"spring.kafka.consumer.bootstrap-servers=${spring.embedded.kafka.brokers}",
+        "spring.kafka.producer.bootstrap-servers=${spring.embedded.kafka.brokers}",
+        "libraryevents.consumer.state.enabled=true",
+        "libraryevents.consumer.state.sink.interval=1h",
+        "libraryevents.consumer.state.snapshot.dir=${java.io.tmpdir}/library-events-state-it-${random.uuid}",
+        "libraryevents.consumer.state.snapshot.interval=0s"})
+class LibraryEventStateStoreIT {
+
+    @Autowired
+    EmbeddedKafkaBroker embeddedKafkaBroker;
+
+    @Autowired
+    KafkaTemplate<Integer, String> kafkaTemplate;
+
+    @Autowired
+    KafkaListenerEndpointRegistry kafkaListenerEndpointRegistry;
+
+    @Autowired
+    LibraryEventsRepository libraryEventsRepository;
+
+    @Autowired
+    LibraryEventStateStore libraryEventStateStore;
+
+    @Autowired
+    LibraryEventSink libraryEventSink;
+
+    @Autowired
+    LibraryEventsService libraryEventsService;
+
+    @Autowired
+    LibraryEventsQueryService libraryEventsQueryService;
+
+    @Autowired
+    ConsumerFactory<Object, Object> consumerFactory;
+
+    @Autowired
+    MeterRegistry meterRegistry;
+
+    @BeforeEach
+    void setUp() {
+        for (MessageListenerContainer messageListenerContainer : kafkaListenerEndpointRegistry.getAllListenerContainers()) {
+            ContainerTestUtils.waitForAssignment(messageListenerContainer, embeddedKafkaBroker.getPartitionsPerTopic());
+        }
+    }
+
+    @AfterEach
+    void tearDown() {
+        libraryEventsRepository.deleteAll();
+    }
+
+    @Test
+    void should_apply_update_to_local_state_and_sink_it_to_the_database() throws Exception {
+        // given
+        kafkaTemplate.sendDefault("{\"libraryEventId\":null,\"book\":{\"bookId\":123,\"bookName\":\"Learn Kafka\",\"bookAuthor\":\"Gürkan Demir\"},\"libraryEventType\":\"NEW\"}").get();
+        new CountDownLatch(1).await(3, TimeUnit.SECONDS);
+        Integer libraryEventId = ((List<LibraryEvent>) libraryEventsRepository.findAll()).get(0).getLibraryEventId();
+        assertNotNull(libraryEventStateStore.get(libraryEventId));
+
+        // when
+        kafkaTemplate.sendDefault(libraryEventId, "{\"libraryEventId\":" + libraryEventId + ",\"book\":{\"bookId\":123,\"bookName\":\"KFL 2015\",\"bookAuthor\":\"Cansu Dogan\"},\"libraryEventType\":\"UPDATE\"}").get();
+        new CountDownLatch(1).await(3, TimeUnit.SECONDS);
+        String readBeforeSink = libraryEventsQueryService.findById(libraryEventId).get().getBook().getBookName();
+        libraryEventSink.flush();
+
+        // then
+        assertEquals("KFL 2015", readBeforeSink);
+        assertEquals("KFL 2015", libraryEventStateStore.get(libraryEventId).getBook().getBookName());
+        LibraryEvent stored = libraryEventsRepository.findById(libraryEventId).get();
+        assertEquals(LibraryEventType.UPDATE, stored.getLibraryEventType());
+        assertEquals("Cansu Dogan", stored.getBook().getBookAuthor());
+        assertEquals(2, changelogCount(libraryEventId));
+    }
+
+    @Test
+    void should_not_overwrite_direct_database_write_with_pending_sink_write() {
+        // given
+        LibraryEvent libraryEvent = written(321, "Written");
+        Integer libraryEventId = libraryEvent.getLibraryEventId();
+        libraryEventStateStore.update(updated(libraryEventId, 321, "Pending"));
+
+        // when
+        libraryEventsService.processLibraryEventRetry(new ConsumerRecord<>("library-events-retry-1s", 0, 1_000_000L, libraryEventId,
+                updateJson(libraryEventId, 321, "Retried").getBytes(StandardCharsets.UTF_8)));
+        libraryEventSink.flush();
+
+        // then
+        assertEquals("Retried", libraryEventsRepository.findById(libraryEventId).get().getBook().getBookName());
+    }
+
+    @Test
+    void should_write_update_to_the_database_when_it_arrives_off_its_state_partition() throws Exception {
+        // given
+        LibraryEvent libraryEvent = written(654, "Written");
+        Integer libraryEventId = libraryEvent.getLibraryEventId();
+        int otherPartition = (libraryEventStateStore.partitionFor(libraryEventId) + 1) % 3;
+
+        // when
+        kafkaTemplate.send("library-events", otherPartition, libraryEventId, updateJson(libraryEventId, 654, "Overridden")).get();
+        new CountDownLatch(1).await(3, TimeUnit.SECONDS);
+
+        // then
+        assertEquals("Overridden", libraryEventsRepository.findById(libraryEventId).get().getBook().getBookName());
+    }
+
+    @Test
+    void should_restore_partition_state_from_changelog() throws Exception {
+        // given
+        LibraryEvent libraryEvent = new LibraryEvent(null, LibraryEventType.NEW, null);
+        libraryEvent.setBook(new Book(456, "Restored", "Gürkan Demir", libraryEvent));
+        libraryEventsRepository.save(libraryEvent);
+        libraryEventStateStore.written(libraryEvent);
+        List<TopicPartition> partitions = IntStream.range(0, 3)
+                .mapToObj(partition -> new TopicPartition(LibraryEventStateStore.SOURCE_TOPIC, partition))
+                .collect(Collectors.toList());
+
+        // when
+        libraryEventStateStore.onPartitionsLost(null, partitions);
+        boolean droppedOnRevoke = libraryEventStateStore.get(libraryEvent.getLibraryEventId()) == null;
+        libraryEventStateStore.onPartitionsAssigned(null, partitions);
+
+        // then
+        assertTrue(droppedOnRevoke);
+        assertEquals("Restored", libraryEventStateStore.get(libraryEvent.getLibraryEventId()).getBook().getBookName());
+    }
+
+    @Test
+    void should_restore_partition_state_from_snapshot_and_changelog_tail() {
+        // given
+        LibraryEvent snapshotted = written(789, "Snapshotted");
+        libraryEventStateStore.snapshot();
+        LibraryEvent tail = written(790, "Tail");
+        List<TopicPartition> partitions = IntStream.range(0, 3)
+                .mapToObj(partition -> new TopicPartition(LibraryEventStateStore.SOURCE_TOPIC, partition))
+                .collect(Collectors.toList());
+
+        // when
+        libraryEventStateStore.onPartitionsLost(null, partitions);
+        libraryEventStateStore.onPartitionsAssigned(null, partitions);
+
+        // then
+        assertEquals("Snapshotted", libraryEventStateStore.get(snapshotted.getLibraryEventId()).getBook().getBookName());
+        assertEquals("Tail", libraryEventStateStore.get(tail.getLibraryEventId()).getBook().getBookName());
+        assertEquals(3, meterRegistry.get("libraryevents.consumer.state.restore").tag("start", "warm").timer().count());
+        assertEquals(1.0, meterRegistry.get("libraryevents.consumer.state.replayed").tag("start", "warm").summary().totalAmount());
+    }
+
+    private LibraryEvent written(int bookId, String bookName) {
+        LibraryEvent libraryEvent = new LibraryEvent(null, LibraryEventType.NEW, null);
+        libraryEvent.setBook(new Book(bookId, bookName, "Gürkan Demir", libraryEvent));
+        libraryEventsRepository.save(libraryEvent);
+        libraryEventStateStore.written(libraryEvent);
+        return libraryEvent;
+    }
+
+    private LibraryEvent updated(Integer libraryEventId, int bookId, String bookName) {
+        LibraryEvent libraryEvent = new LibraryEvent(libraryEventId, LibraryEventType.UPDATE, null);
+        libraryEvent.setBook(new Book(bookId, bookName, "Gürkan Demir", libraryEvent));
+        return libraryEvent;
+    }
+
+    private String updateJson(Integer libraryEventId, int bookId, String bookName) {
+        return "{\"libraryEventId\":" + libraryEventId + ",\"book\":{\"bookId\":" + bookId + ",\"bookName\":\"" + bookName
+                + "\",\"bookAuthor\":\"Gürkan Demir\"},\"libraryEventType\":\"UPDATE\"}";
+    }
+
+    private int changelogCount(Integer libraryEventId) {
+        Properties properties = new Properties();
+        properties.put(ConsumerConfig.AUTO_OFFSET_RESET_CONFIG, "earliest");
+        try (Consumer<Object, Object> consumer = consumerFactory.createConsumer("state-it", null, null, properties)) {
+            embeddedKafkaBroker.consumeFromAnEmbeddedTopic(consumer, LibraryEventStateStore.CHANGELOG_TOPIC);
+            ConsumerRecords<Object, Object> records = KafkaTestUtils.getRecords(consumer, 2_000L);
+            int count = 0;
+            for (ConsumerRecord<Object, Object> record : records) {
+                if (libraryEventId.equals(record.key())) {
+                    count++;
+                }
+            }
+            return count;
+        }
+    }
+}
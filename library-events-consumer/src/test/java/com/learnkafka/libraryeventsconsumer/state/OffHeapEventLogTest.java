@@ -0,0 +1,128 @@
+package com.learnkafka.libraryeventsconsumer.state;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class OffHeapEventLogTest {
+
+    @Test
+    void should_return_latest_value_per_id() {
+        // given
+        OffHeapEventLog eventLog = new OffHeapEventLog();
+        eventLog.put(1, bytes("first"), 0);
+        eventLog.put(2, bytes("other"), 1);
+
+        // when
+        eventLog.put(1, bytes("second"), 2);
+
+        // then
+        assertArrayEquals(bytes("second"), eventLog.get(1));
+        assertArrayEquals(bytes("other"), eventLog.get(2));
+        assertNull(eventLog.get(3));
+        assertTrue(eventLog.contains(2));
+        assertFalse(eventLog.contains(3));
+        assertEquals(2, eventLog.size());
+    }
+
+    @Test
+    void should_reclaim_superseded_entries_before_growing() {
+        // given
+        OffHeapEventLog eventLog = new OffHeapEventLog(128);
+
+        // when
+        for (int i = 0; i < 1_000; i++) {
+            eventLog.put(i % 2, bytes("value " + i), i);
+        }
+
+        // then
+        assertEquals(128, eventLog.capacity());
+        assertArrayEquals(bytes("value 998"), eventLog.get(0));
+        assertArrayEquals(bytes("value 999"), eventLog.get(1));
+    }
+
+    @Test
+    void should_grow_when_live_entries_fill_the_buffer() {
+        // given
+        OffHeapEventLog eventLog = new OffHeapEventLog(64);
+
+        // when
+        for (int i = 0; i < 100; i++) {
+            eventLog.put(i, bytes("value " + i), i);
+        }
+
+        // then
+        assertEquals(100, eventLog.size());
+        assertTrue(eventLog.capacity() >= 100 * (Long.BYTES + 2 * Integer.BYTES + "value 99".length()));
+        for (int i = 0; i < 100; i++) {
+            assertArrayEquals(bytes("value " + i), eventLog.get(i));
+        }
+    }
+
+    @Test
+    void should_ignore_entries_older_than_the_one_held() {
+        // given
+        OffHeapEventLog eventLog = new OffHeapEventLog();
+        eventLog.put(1, bytes("newer"), 5);
+
+        // when
+        boolean applied = eventLog.put(1, bytes("older"), 3);
+
+        // then
+        assertFalse(applied);
+        assertArrayEquals(bytes("newer"), eventLog.get(1));
+    }
+
+    @Test
+    void should_restore_entries_and_position_from_snapshot(@TempDir Path directory) throws IOException {
+        // given
+        OffHeapEventLog eventLog = new OffHeapEventLog(128);
+        for (int i = 0; i < 100; i++) {
+            eventLog.put(i % 10, bytes("value " + i), i);
+        }
+        eventLog.position(100);
+        Path file = directory.resolve("partition-0.snapshot");
+
+        // when
+        eventLog.writeSnapshot(file);
+        OffHeapEventLog restored = OffHeapEventLog.readSnapshot(file);
+
+        // then
+        assertEquals(100, restored.position());
+        assertEquals(10, restored.size());
+        for (int i = 0; i < 10; i++) {
+            assertArrayEquals(bytes("value " + (90 + i)), restored.get(i));
+        }
+        assertFalse(restored.put(0, bytes("older"), 89));
+        assertTrue(restored.put(0, bytes("newer"), 100));
+    }
+
+    @Test
+    void should_not_restore_from_missing_or_invalid_snapshot(@TempDir Path directory) throws IOException {
+        // given
+        Path missing = directory.resolve("missing.snapshot");
+        Path invalid = Files.write(directory.resolve("invalid.snapshot"), bytes("not a snapshot of the state"));
+
+        // when
+        OffHeapEventLog fromMissing = OffHeapEventLog.readSnapshot(missing);
+        OffHeapEventLog fromInvalid = OffHeapEventLog.readSnapshot(invalid);
+
+        // then
+        assertNull(fromMissing);
+        assertNull(fromInvalid);
+    }
+
+    private static byte[] bytes(String value) {
+        return value.getBytes(StandardCharsets.UTF_8);
+    }
+}
@@ -0,0 +1,198 @@
+package com.learnkafka.libraryeventsconsumer.throttle;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.Test;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class AdaptiveDbThrottleTest {
+
+    private static final long SLOW = TimeUnit.MILLISECONDS.toNanos(200);
+    private static final long FAST = TimeUnit.MILLISECONDS.toNanos(1);
+    private static final long NORMAL = TimeUnit.MILLISECONDS.toNanos(50);
+
+    SimpleMeterRegistry meterRegistry = new SimpleMeterRegistry();
+
+    @Test
+    void should_decrease_limit_multiplicatively_from_peak_demand_down_to_min_while_latency_is_high() throws InterruptedException {
+        // given
+        AdaptiveDbThrottle throttle = throttle(true, 1, 16);
+
+        // when
+        concurrentWrites(throttle, 8, SLOW);
+        throttle.evaluate();
+        int afterFirst = throttle.limit();
+        for (int i = 0; i < 5; i++) {
+            write(throttle, SLOW);
+            throttle.evaluate();
+        }
+
+        // then
+        assertEquals(4, afterFirst);
+        assertEquals(1, throttle.limit());
+        assertEquals(6.0, meterRegistry.get("libraryevents.consumer.throttle.decisions").tag("decision", "decrease").counter().count());
+        assertEquals(1.0, meterRegistry.get("libraryevents.consumer.throttle.limit").gauge().value());
+    }
+
+    @Test
+    void should_increase_limit_additively_up_to_max_once_latency_recovers() {
+        // given
+        AdaptiveDbThrottle throttle = throttle(true, 1, 4);
+        write(throttle, SLOW);
+        throttle.evaluate();
+
+        // when
+        write(throttle, FAST);
+        throttle.evaluate();
+        int afterFirst = throttle.limit();
+        for (int i = 0; i < 5; i++) {
+            write(throttle, FAST);
+            throttle.evaluate();
+        }
+
+        // then
+        assertEquals(2, afterFirst);
+        assertEquals(4, throttle.limit());
+    }
+
+    @Test
+    void should_hold_limit_between_thresholds() throws InterruptedException {
+        // given
+        AdaptiveDbThrottle throttle = throttle(true, 1, 4);
+        concurrentWrites(throttle, 4, SLOW);
+        throttle.evaluate();
+
+        // when
+        write(throttle, NORMAL);
+        throttle.evaluate();
+
+        // then
+        assertEquals(2, throttle.limit());
+        assertEquals(1.0, meterRegistry.get("libraryevents.consumer.throttle.decisions").tag("decision", "hold").counter().count());
+    }
+
+    @Test
+    void should_decrease_limit_while_a_write_hangs() throws InterruptedException {
+        // given
+        AdaptiveDbThrottle throttle = throttle(true, 1, 4);
+        CountDownLatch acquired = new CountDownLatch(1);
+        CountDownLatch done = new CountDownLatch(1);
+        Thread hanging = new Thread(() -> {
+            throttle.acquire(1);
+            acquired.countDown();
+            awaitQuietly(done);
+            throttle.release(SLOW);
+        });
+        hanging.start();
+        acquired.await();
+        Thread.sleep(150);
+
+        // when
+        throttle.evaluate();
+
+        // then
+        assertEquals(1, throttle.limit());
+        assertEquals(1.0, meterRegistry.get("libraryevents.consumer.throttle.decisions").tag("decision", "decrease").counter().count());
+        done.countDown();
+        hanging.join();
+    }
+
+    @Test
+    void should_not_decide_on_an_interval_without_writes() {
+        // given
+        AdaptiveDbThrottle throttle = throttle(true, 1, 4);
+
+        // when
+        throttle.evaluate();
+
+        // then
+        assertEquals(4, throttle.limit());
+        assertEquals(0.0, meterRegistry.get("libraryevents.consumer.throttle.decisions").tag("decision", "hold").counter().count());
+        assertEquals(0.0, meterRegistry.get("libraryevents.consumer.throttle.decisions").tag("decision", "increase").counter().count());
+        assertEquals(0.0, meterRegistry.get("libraryevents.consumer.throttle.decisions").tag("decision", "decrease").counter().count());
+    }
+
+    @Test
+    void should_wait_for_a_free_slot_at_the_limit() throws InterruptedException {
+        // given
+        AdaptiveDbThrottle throttle = throttle(true, 1, 1);
+        throttle.acquire(1);
+        CountDownLatch acquired = new CountDownLatch(1);
+        Thread other = new Thread(() -> {
+            throttle.acquire(1);
+            acquired.countDown();
+        });
+
+        // when
+        other.start();
+        boolean acquiredWhileTaken = acquired.await(200, TimeUnit.MILLISECONDS);
+        throttle.release(NORMAL);
+
+        // then
+        assertFalse(acquiredWhileTaken);
+        assertTrue(acquired.await(5, TimeUnit.SECONDS));
+        assertEquals(1, throttle.inFlight());
+    }
+
+    @Test
+    void should_never_wait_when_disabled() {
+        // given
+        AdaptiveDbThrottle throttle = throttle(false, 1, 1);
+
+        // when
+        throttle.acquire(1);
+        throttle.acquire(1);
+
+        // then
+        assertEquals(0, throttle.inFlight());
+    }
+
+    private AdaptiveDbThrottle throttle(boolean enabled, int minConcurrency, int maxConcurrency) {
+        //a zero interval leaves evaluating the limit to the test
+        return new AdaptiveDbThrottle(meterRegistry, enabled, Duration.ZERO, Duration.ofMillis(20), Duration.ofMillis(100),
+                minConcurrency, maxConcurrency, 0.5);
+    }
+
+    private static void write(AdaptiveDbThrottle throttle, long dbNanos) {
+        throttle.acquire(1);
+        throttle.release(dbNanos);
+    }
+
+    //writes that all run at once before any of them completes
+    private static void concurrentWrites(AdaptiveDbThrottle throttle, int writes, long dbNanos) throws InterruptedException {
+        CountDownLatch acquired = new CountDownLatch(writes);
+        CountDownLatch done = new CountDownLatch(1);
+        List<Thread> threads = new ArrayList<>();
+        for (int i = 0; i < writes; i++) {
+            Thread thread = new Thread(() -> {
+                throttle.acquire(1);
+                acquired.countDown();
+                awaitQuietly(done);
+                throttle.release(dbNanos);
+            });
+            thread.start();
+            threads.add(thread);
+        }
+        acquired.await();
+        done.countDown();
+        for (Thread thread : threads) {
+            thread.join();
+        }
+    }
+
+    private static void awaitQuietly(CountDownLatch latch) {
+        try {
+            latch.await();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+}
@@ -0,0 +1,45 @@
+package com.learnkafka.libraryeventsloadtest;
+
+import com.learnkafka.libraryeventsproducer.producer.LibraryEventProducer;
+import org.apache.kafka.clients.producer.ProducerInterceptor;
+import org.apache.kafka.clients.producer.ProducerRecord;
+import org.apache.kafka.clients.producer.RecordMetadata;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Map;
+
+/**
+ * Added to the producer's Kafka producer so end-to-end latency starts at the load generator: a
+ * record sent while a request carrying {@link #SENT_AT_HEADER} is handled gets that time as its
+ * produced-at header instead of the producer's own. Records sent off the request thread, like
+ * coalesced updates, keep the producer's time.
+ */
+public class ClientSentAtInterceptor implements ProducerInterceptor<Object, Object> {
+
+    static final String SENT_AT_HEADER = "X-Load-Test-Sent-At";
+
+    //set by LoadTestProducerConfig for the request being handled
+    static final ThreadLocal<String> SENT_AT = new ThreadLocal<>();
+
+    @Override
+    public ProducerRecord<Object, Object> onSend(ProducerRecord<Object, Object> record) {
+        String sentAt = SENT_AT.get();
+        if (sentAt != null) {
+            record.headers().remove(LibraryEventProducer.PRODUCED_AT_HEADER)
+                    .add(LibraryEventProducer.PRODUCED_AT_HEADER, sentAt.getBytes(StandardCharsets.UTF_8));
+        }
+        return record;
+    }
+
+    @Override
+    public void onAcknowledgement(RecordMetadata metadata, Exception exception) {
+    }
+
+    @Override
+    public void close() {
+    }
+
+    @Override
+    public void configure(Map<String, ?> configs) {
+    }
+}
@@ -0,0 +1,49 @@
+package com.learnkafka.libraryeventsloadtest;
+
+import org.apache.kafka.clients.admin.AdminClient;
+import org.apache.kafka.clients.admin.AdminClientConfig;
+import org.apache.kafka.clients.admin.ListOffsetsResult;
+import org.apache.kafka.clients.admin.OffsetSpec;
+import org.apache.kafka.clients.consumer.OffsetAndMetadata;
+import org.apache.kafka.common.TopicPartition;
+
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutionException;
+
+/**
+ * Records of a topic not yet committed by a consumer group, summed over all partitions.
+ */
+class ConsumerLagProbe implements AutoCloseable {
+
+    private final AdminClient adminClient;
+    private final String topic;
+    private final String groupId;
+
+    ConsumerLagProbe(String bootstrapServers, String topic, String groupId) {
+        this.adminClient = AdminClient.create(Map.of(AdminClientConfig.BOOTSTRAP_SERVERS_CONFIG, bootstrapServers));
+        this.topic = topic;
+        this.groupId = groupId;
+    }
+
+    long lag() throws ExecutionException, InterruptedException {
+        Map<TopicPartition, OffsetSpec> latest = new HashMap<>();
+        adminClient.describeTopics(List.of(topic)).all().get().get(topic).partitions()
+                .forEach(partition -> latest.put(new TopicPartition(topic, partition.partition()), OffsetSpec.latest()));
+        Map<TopicPartition, ListOffsetsResult.ListOffsetsResultInfo> endOffsets = adminClient.listOffsets(latest).all().get();
+        Map<TopicPartition, OffsetAndMetadata> committed = adminClient.listConsumerGroupOffsets(groupId).partitionsToOffsetAndMetadata().get();
+
+        long lag = 0L;
+        for (Map.Entry<TopicPartition, ListOffsetsResult.ListOffsetsResultInfo> endOffset : endOffsets.entrySet()) {
+            OffsetAndMetadata offset = committed.get(endOffset.getKey());
+            lag += endOffset.getValue().offset() - (offset != null ? offset.offset() : 0L);
+        }
+        return lag;
+    }
+
+    @Override
+    public void close() {
+        adminClient.close();
+    }
+}
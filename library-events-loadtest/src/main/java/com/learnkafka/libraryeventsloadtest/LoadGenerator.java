@@ -0,0 +1,126 @@
+package com.learnkafka.libraryeventsloadtest;
+
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Sends a mix of POSTs and PUTs to the producer, either at a fixed rate or as fast as the
+ * in-flight limit allows. Requests are paced against their intended send time, so a slow
+ * response does not lower the offered rate, it only uses up in-flight permits.
+ * <p>
+ * PUTs carry the book id the event was created with, the consumer rejects updates that change it.
+ * <p>
+ * Every request carries the time it was due in {@link ClientSentAtInterceptor#SENT_AT_HEADER}: at a
+ * fixed rate its slot in the schedule, otherwise the time the loop reached it. A request sent late
+ * because the loop or the in-flight limit held it up is timed from when it should have gone out,
+ * so end-to-end latency does not hide the stall (coordinated omission).
+ */
+class LoadGenerator {
+
+    private final HttpClient httpClient = HttpClient.newBuilder()
+            .version(HttpClient.Version.HTTP_1_1)
+            .connectTimeout(Duration.ofSeconds(5))
+            .build();
+    private final URI uri;
+    private final Semaphore inFlight;
+    private final double putRatio;
+    private final String bookName;
+
+    private final List<int[]> updatable = new ArrayList<>();
+    private final AtomicInteger nextBookId = new AtomicInteger();
+    private final AtomicLong sent = new AtomicLong();
+    private final AtomicLong failed = new AtomicLong();
+
+    LoadGenerator(URI uri, int concurrency, double putRatio, int payloadSize) {
+        this.uri = uri;
+        this.inFlight = new Semaphore(concurrency);
+        this.putRatio = putRatio;
+        this.bookName = "x".repeat(payloadSize);
+    }
+
+    /**
+     * Events PUTs are sent for, as pairs of libraryEventId and bookId.
+     */
+    void updatable(List<int[]> libraryEvents) {
+        updatable.addAll(libraryEvents);
+    }
+
+    CompletableFuture<Void> post(long dueMillis) throws InterruptedException {
+        int bookId = nextBookId.incrementAndGet();
+        return send("POST", dueMillis, "{\"libraryEventId\":null,\"book\":{\"bookId\":" + bookId
+                + ",\"bookName\":\"" + bookName + "\",\"bookAuthor\":\"Jack London\"}}");
+    }
+
+    void run(Duration duration, int rate) throws InterruptedException {
+        long startMillis = System.currentTimeMillis();
+        long start = System.nanoTime();
+        long end = start + duration.toNanos();
+        for (long n = 0; ; n++) {
+            long dueMillis;
+            if (rate > 0) {
+                long due = start + n * 1_000_000_000L / rate;
+                while (System.nanoTime() < due) {
+                    LockSupport.parkNanos(due - System.nanoTime());
+                }
+                //the schedule runs on nanoTime, the header needs wall-clock time
+                dueMillis = startMillis + TimeUnit.NANOSECONDS.toMillis(due - start);
+            } else {
+                dueMillis = System.currentTimeMillis();
+            }
+            if (System.nanoTime() >= end)
+                break;
+
+            if (!updatable.isEmpty() && ThreadLocalRandom.current().nextDouble() < putRatio) {
+                put(dueMillis);
+            } else {
+                post(dueMillis);
+            }
+        }
+    }
+
+    long sent() {
+        return sent.get();
+    }
+
+    long failed() {
+        return failed.get();
+    }
+
+    private CompletableFuture<Void> put(long dueMillis) throws InterruptedException {
+        int[] libraryEvent = updatable.get(ThreadLocalRandom.current().nextInt(updatable.size()));
+        return send("PUT", dueMillis, "{\"libraryEventId\":" + libraryEvent[0] + ",\"book\":{\"bookId\":" + libraryEvent[1]
+                + ",\"bookName\":\"" + bookName + "\",\"bookAuthor\":\"Jack London\"}}");
+    }
+
+    private CompletableFuture<Void> send(String method, long dueMillis, String body) throws InterruptedException {
+        inFlight.acquire();
+        HttpRequest request = HttpRequest.newBuilder(uri)
+                .header("Content-Type", "application/json")
+                .header(ClientSentAtInterceptor.SENT_AT_HEADER, String.valueOf(dueMillis))
+                .timeout(Duration.ofSeconds(30))
+                .method(method, HttpRequest.BodyPublishers.ofString(body))
+                .build();
+        return httpClient.sendAsync(request, HttpResponse.BodyHandlers.discarding())
+                .handle((response, exception) -> {
+                    inFlight.release();
+                    if (exception == null && response.statusCode() < 300) {
+                        sent.incrementAndGet();
+                    } else {
+                        failed.incrementAndGet();
+                    }
+                    return null;
+                });
+    }
+}
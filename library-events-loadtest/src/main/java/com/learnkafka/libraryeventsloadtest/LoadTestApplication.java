@@ -0,0 +1,215 @@
+package com.learnkafka.libraryeventsloadtest;
+
+import com.learnkafka.libraryeventsconsumer.LibraryEventsConsumerApplication;
+import com.learnkafka.libraryeventsconsumer.entity.Book;
+import com.learnkafka.libraryeventsconsumer.entity.LibraryEvent;
+import com.learnkafka.libraryeventsconsumer.entity.LibraryEventType;
+import com.learnkafka.libraryeventsconsumer.jpa.LibraryEventStore;
+import com.learnkafka.libraryeventsproducer.LibraryEventsProducerApplication;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import io.micrometer.core.instrument.distribution.ValueAtPercentile;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.boot.builder.SpringApplicationBuilder;
+import org.springframework.boot.web.context.WebServerApplicationContext;
+import org.springframework.context.ConfigurableApplicationContext;
+import org.springframework.kafka.test.EmbeddedKafkaBroker;
+
+import java.net.URI;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Starts an embedded broker, the consumer and the producer in one JVM, drives the producer's REST
+ * API and reports throughput, consumer lag and end-to-end latency. End-to-end latency is the
+ * consumer's libraryevents.end.to.end timer, from the load generator sending the HTTP request to
+ * the row being committed: {@link ClientSentAtInterceptor} replaces the producer's produced-at
+ * header with the time the request was sent.
+ * <p>
+ * Exits with 1 when a --max-p99-ms or --min-events-per-second threshold is not met, so a run can
+ * gate a rollout.
+ */
+@Slf4j
+public class LoadTestApplication {
+
+    private static final String TOPIC = "library-events";
+
+    public static void main(String[] args) throws Exception {
+        LoadTestOptions options = new LoadTestOptions(args);
+        EmbeddedKafkaBroker embeddedKafkaBroker = new EmbeddedKafkaBroker(1, false, 3, TOPIC);
+        embeddedKafkaBroker.afterPropertiesSet();
+
+        int exitCode;
+        String brokers = embeddedKafkaBroker.getBrokersAsString();
+        try (ConfigurableApplicationContext consumer = startConsumer(options, brokers);
+             ConfigurableApplicationContext producer = startProducer(options, brokers)) {
+            exitCode = run(options, brokers, consumer, producer);
+        } finally {
+            embeddedKafkaBroker.destroy();
+        }
+        System.exit(exitCode);
+    }
+
+    private static ConfigurableApplicationContext startConsumer(LoadTestOptions options, String brokers) {
+        List<String> args = new ArrayList<>(List.of(
+                "--spring.config.location=file:" + options.appsDir() + "/library-events-consumer/src/main/resources/application.yml",
+                "--spring.main.banner-mode=off",
+                "--spring.main.log-startup-info=false",
+                "--server.port=0",
+                "--spring.kafka.bootstrap-servers=" + brokers,
+                "--spring.kafka.consumer.bootstrap-servers=" + brokers,
+                "--spring.kafka.producer.bootstrap-servers=" + brokers,
+                //the producer may send before the listeners are assigned their partitions
+                "--spring.kafka.consumer.auto-offset-reset=earliest"));
+        args.addAll(options.applicationArgs("consumer"));
+        return new SpringApplicationBuilder(LibraryEventsConsumerApplication.class, LoadTestMetricsConfig.class)
+                .run(args.toArray(new String[0]));
+    }
+
+    private static ConfigurableApplicationContext startProducer(LoadTestOptions options, String brokers) {
+        List<String> args = new ArrayList<>(List.of(
+                "--spring.config.location=file:" + options.appsDir() + "/library-events-producer/src/main/resources/application.yml",
+                "--spring.main.banner-mode=off",
+                "--spring.main.log-startup-info=false",
+                "--server.port=0",
+                "--spring.kafka.bootstrap-servers=" + brokers,
+                "--spring.kafka.producer.bootstrap-servers=" + brokers,
+                "--spring.kafka.admin.properties.bootstrap.servers=" + brokers,
+                "--spring.kafka.producer.properties.interceptor.classes=" + ClientSentAtInterceptor.class.getName(),
+                //the consumer's JPA classes are on the classpath too, the producer has no database
+                "--spring.autoconfigure.exclude=org.springframework.boot.autoconfigure.jdbc.DataSourceAutoConfiguration,"
+                        + "org.springframework.boot.autoconfigure.orm.jpa.HibernateJpaAutoConfiguration"));
+        args.addAll(options.applicationArgs("producer"));
+        return new SpringApplicationBuilder(LibraryEventsProducerApplication.class, LoadTestProducerConfig.class)
+                .run(args.toArray(new String[0]));
+    }
+
+    private static int run(LoadTestOptions options, String brokers, ConfigurableApplicationContext consumer,
+                           ConfigurableApplicationContext producer) throws Exception {
+        int port = ((WebServerApplicationContext) producer).getWebServer().getPort();
+        LoadGenerator loadGenerator = new LoadGenerator(URI.create("http://localhost:" + port + "/v1/libraryevent"),
+                options.concurrency(), options.putRatio(), options.payloadSize());
+        loadGenerator.updatable(seed(consumer.getBean(LibraryEventStore.class), options.seedEvents(), options.payloadSize()));
+
+        MeterRegistry meterRegistry = consumer.getBean(MeterRegistry.class);
+        Timer endToEnd = meterRegistry.get(LoadTestMetricsConfig.END_TO_END).tag("path", "main").timer();
+        String groupId = consumer.getEnvironment().getProperty("spring.kafka.consumer.group-id");
+
+        log.info("Load test started duration={} rate={} concurrency={} putRatio={} payloadSize={}",
+                options.duration(), options.rate() > 0 ? options.rate() : "max", options.concurrency(), options.putRatio(), options.payloadSize());
+        ScheduledExecutorService reporter = Executors.newSingleThreadScheduledExecutor();
+        try (ConsumerLagProbe consumerLagProbe = new ConsumerLagProbe(brokers, TOPIC, groupId)) {
+            long start = System.nanoTime();
+            Interval interval = new Interval(start);
+            long reportMillis = options.reportInterval().toMillis();
+            reporter.scheduleAtFixedRate(() -> interval.report(loadGenerator, committed(meterRegistry), endToEnd, consumerLagProbe),
+                    reportMillis, reportMillis, TimeUnit.MILLISECONDS);
+
+            loadGenerator.run(options.duration(), options.rate());
+            boolean drained = drain(consumerLagProbe, options.drainTimeout());
+            reporter.shutdownNow();
+
+            double seconds = (System.nanoTime() - start) / 1e9;
+            double eventsPerSecond = committed(meterRegistry) / seconds;
+            double p50 = percentile(endToEnd, 0.5);
+            double p99 = percentile(endToEnd, 0.99);
+            double p999 = percentile(endToEnd, 0.999);
+            log.info("Load test finished seconds={} sent={} failed={} committed={} eventsPerSecond={} p50Ms={} p99Ms={} p999Ms={} drained={}",
+                    format(seconds), loadGenerator.sent(), loadGenerator.failed(), committed(meterRegistry), format(eventsPerSecond),
+                    format(p50), format(p99), format(p999), drained);
+
+            if (options.maxP99Millis() >= 0 && p99 > options.maxP99Millis()) {
+                log.error("p99 of {}ms is above the limit of {}ms", format(p99), options.maxP99Millis());
+                return 1;
+            }
+            if (options.minEventsPerSecond() >= 0 && eventsPerSecond < options.minEventsPerSecond()) {
+                log.error("{} events per second is below the limit of {}", format(eventsPerSecond), options.minEventsPerSecond());
+                return 1;
+            }
+            return 0;
+        } finally {
+            reporter.shutdownNow();
+        }
+    }
+
+    /**
+     * Inserts the events PUTs are sent for straight into the consumer's database, so seeding adds
+     * no records to the measured latencies.
+     */
+    private static List<int[]> seed(LibraryEventStore libraryEventStore, int seedEvents, int payloadSize) {
+        List<LibraryEvent> libraryEvents = new ArrayList<>(seedEvents);
+        for (int i = 0; i < seedEvents; i++) {
+            LibraryEvent libraryEvent = new LibraryEvent(null, LibraryEventType.NEW, null);
+            //negative book ids never collide with the ones POSTs create
+            libraryEvent.setBook(new Book(-(i + 1), "x".repeat(payloadSize), "Jack London", libraryEvent));
+            libraryEvents.add(libraryEvent);
+        }
+
+        List<int[]> updatable = new ArrayList<>(seedEvents);
+        libraryEventStore.saveAll(libraryEvents)
+                .forEach(libraryEvent -> updatable.add(new int[]{libraryEvent.getLibraryEventId(), libraryEvent.getBook().getBookId()}));
+        return updatable;
+    }
+
+    private static boolean drain(ConsumerLagProbe consumerLagProbe, Duration timeout) throws Exception {
+        long deadline = System.nanoTime() + timeout.toNanos();
+        while (System.nanoTime() < deadline) {
+            if (consumerLagProbe.lag() == 0)
+                return true;
+            Thread.sleep(200L);
+        }
+        return false;
+    }
+
+    private static long committed(MeterRegistry meterRegistry) {
+        return meterRegistry.get(LoadTestMetricsConfig.END_TO_END).timers().stream().mapToLong(Timer::count).sum();
+    }
+
+    private static double percentile(Timer timer, double percentile) {
+        for (ValueAtPercentile valueAtPercentile : timer.takeSnapshot().percentileValues()) {
+            if (valueAtPercentile.percentile() == percentile)
+                return valueAtPercentile.value(TimeUnit.MILLISECONDS);
+        }
+        return Double.NaN;
+    }
+
+    private static String format(double value) {
+        return String.format("%.1f", value);
+    }
+
+    /**
+     * Rates since the previous report.
+     */
+    private static class Interval {
+
+        private final long start;
+        private long last;
+        private long lastSent;
+        private long lastCommitted;
+
+        Interval(long start) {
+            this.start = start;
+            this.last = start;
+        }
+
+        void report(LoadGenerator loadGenerator, long committed, Timer endToEnd, ConsumerLagProbe consumerLagProbe) {
+            try {
+                long now = System.nanoTime();
+                double seconds = (now - last) / 1e9;
+                long sent = loadGenerator.sent();
+                log.info("elapsedSeconds={} sentPerSecond={} committedPerSecond={} failed={} lag={} p99Ms={}",
+                        format((now - start) / 1e9), format((sent - lastSent) / seconds), format((committed - lastCommitted) / seconds),
+                        loadGenerator.failed(), consumerLagProbe.lag(), format(percentile(endToEnd, 0.99)));
+                last = now;
+                lastSent = sent;
+                lastCommitted = committed;
+            } catch (Exception e) {
+                log.warn("Failed to report interval", e);
+            }
+        }
+    }
+}
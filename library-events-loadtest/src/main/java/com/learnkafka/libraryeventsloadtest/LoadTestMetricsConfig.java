@@ -0,0 +1,37 @@
+package com.learnkafka.libraryeventsloadtest;
+
+import io.micrometer.core.instrument.Meter;
+import io.micrometer.core.instrument.config.MeterFilter;
+import io.micrometer.core.instrument.distribution.DistributionStatisticConfig;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+
+import java.time.Duration;
+
+/**
+ * Added to the consumer so its end-to-end percentiles include p999 and cover the whole run
+ * instead of the last couple of minutes.
+ */
+@Configuration
+public class LoadTestMetricsConfig {
+
+    static final String END_TO_END = "libraryevents.end.to.end";
+
+    @Bean
+    public MeterFilter endToEndForWholeRun() {
+        return new MeterFilter() {
+            @Override
+            public DistributionStatisticConfig configure(Meter.Id id, DistributionStatisticConfig config) {
+                if (!id.getName().equals(END_TO_END))
+                    return config;
+
+                return DistributionStatisticConfig.builder()
+                        .percentiles(0.5, 0.99, 0.999)
+                        .expiry(Duration.ofDays(1))
+                        .bufferLength(1)
+                        .build()
+                        .merge(config);
+            }
+        };
+    }
+}
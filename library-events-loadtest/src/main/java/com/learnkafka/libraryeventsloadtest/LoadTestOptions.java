@@ -0,0 +1,114 @@
+package com.learnkafka.libraryeventsloadtest;
+
+import org.springframework.boot.convert.DurationStyle;
+import org.springframework.core.env.SimpleCommandLinePropertySource;
+
+import java.net.URISyntaxException;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Options of a load test run, given as --name=value. Options prefixed with producer. or consumer.
+ * are passed to that application, e.g. --consumer.libraryevents.consumer.mode=batch.
+ */
+class LoadTestOptions {
+
+    private final SimpleCommandLinePropertySource arguments;
+
+    LoadTestOptions(String[] args) {
+        this.arguments = new SimpleCommandLinePropertySource(args);
+    }
+
+    /**
+     * Checkout holding the applications' source trees, by default the one this class was compiled
+     * in, so the run does not depend on the working directory.
+     */
+    String appsDir() {
+        String appsDir = arguments.getProperty("apps-dir");
+        return appsDir != null ? appsDir : defaultAppsDir();
+    }
+
+    Duration duration() {
+        return duration("duration", "60s");
+    }
+
+    Duration reportInterval() {
+        return duration("report-interval", "5s");
+    }
+
+    Duration drainTimeout() {
+        return duration("drain-timeout", "60s");
+    }
+
+    /**
+     * Requests per second, 0 sends as fast as the in-flight limit allows.
+     */
+    int rate() {
+        return Integer.parseInt(string("rate", "0"));
+    }
+
+    int concurrency() {
+        return Integer.parseInt(string("concurrency", "64"));
+    }
+
+    /**
+     * Share of PUT requests, the rest are POSTs.
+     */
+    double putRatio() {
+        return Double.parseDouble(string("put-ratio", "0.2"));
+    }
+
+    int seedEvents() {
+        return Integer.parseInt(string("seed-events", "1000"));
+    }
+
+    int payloadSize() {
+        return Integer.parseInt(string("payload-size", "32"));
+    }
+
+    /**
+     * Run fails when the end-to-end p99 in milliseconds is above this, -1 to not check.
+     */
+    double maxP99Millis() {
+        return Double.parseDouble(string("max-p99-ms", "-1"));
+    }
+
+    /**
+     * Run fails when fewer events per second were committed, -1 to not check.
+     */
+    double minEventsPerSecond() {
+        return Double.parseDouble(string("min-events-per-second", "-1"));
+    }
+
+    List<String> applicationArgs(String application) {
+        String prefix = application + ".";
+        List<String> applicationArgs = new ArrayList<>();
+        for (String name : arguments.getPropertyNames()) {
+            if (name.startsWith(prefix)) {
+                applicationArgs.add("--" + name.substring(prefix.length()) + "=" + arguments.getProperty(name));
+            }
+        }
+        return applicationArgs;
+    }
+
+    //library-events-loadtest/target/classes
+    private static String defaultAppsDir() {
+        try {
+            Path classes = Path.of(LoadTestOptions.class.getProtectionDomain().getCodeSource().getLocation().toURI());
+            return classes.getParent().getParent().getParent().toString();
+        } catch (URISyntaxException e) {
+            throw new IllegalStateException("Cannot locate the load test classes", e);
+        }
+    }
+
+    private Duration duration(String name, String defaultValue) {
+        return DurationStyle.detectAndParse(string(name, defaultValue));
+    }
+
+    private String string(String name, String defaultValue) {
+        String value = arguments.getProperty(name);
+        return value != null ? value : defaultValue;
+    }
+}
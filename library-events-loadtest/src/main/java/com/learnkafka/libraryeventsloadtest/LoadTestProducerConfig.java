@@ -0,0 +1,35 @@
+package com.learnkafka.libraryeventsloadtest;
+
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.web.filter.OncePerRequestFilter;
+
+import javax.servlet.FilterChain;
+import javax.servlet.ServletException;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+import java.io.IOException;
+
+/**
+ * Added to the producer so {@link ClientSentAtInterceptor} sees the time the load generator sent
+ * the request being handled.
+ */
+@Configuration
+public class LoadTestProducerConfig {
+
+    @Bean
+    public OncePerRequestFilter clientSentAtFilter() {
+        return new OncePerRequestFilter() {
+            @Override
+            protected void doFilterInternal(HttpServletRequest request, HttpServletResponse response, FilterChain filterChain)
+                    throws ServletException, IOException {
+                ClientSentAtInterceptor.SENT_AT.set(request.getHeader(ClientSentAtInterceptor.SENT_AT_HEADER));
+                try {
+                    filterChain.doFilter(request, response);
+                } finally {
+                    ClientSentAtInterceptor.SENT_AT.remove();
+                }
+            }
+        };
+    }
+}
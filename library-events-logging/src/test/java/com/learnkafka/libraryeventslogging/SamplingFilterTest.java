@@ -0,0 +1,147 @@
+package com.learnkafka.libraryeventslogging;
+
+import ch.qos.logback.classic.Level;
+import ch.qos.logback.classic.spi.LoggingEvent;
+import ch.qos.logback.core.spi.FilterReply;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.BrokenBarrierException;
+import java.util.concurrent.CyclicBarrier;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+class SamplingFilterTest {
+
+    private static final String CATEGORY = "com.learnkafka.libraryeventsconsumer.consumer";
+    private static final long SECOND = 1_700_000_000_000L;
+
+    @Test
+    void should_keep_one_in_sample_rate_events() {
+        // given
+        SamplingFilter filter = filter(4, Integer.MAX_VALUE);
+
+        // when
+        int kept = kept(filter, 100, Level.INFO, CATEGORY + ".LibraryEventsConsumer", SECOND);
+
+        // then
+        assertEquals(25, kept);
+    }
+
+    @Test
+    void should_keep_at_most_max_per_second() {
+        // given
+        SamplingFilter filter = filter(1, 10);
+
+        // when
+        int kept = kept(filter, 100, Level.INFO, CATEGORY + ".LibraryEventsConsumer", SECOND);
+
+        // then
+        assertEquals(10, kept);
+    }
+
+    @Test
+    void should_start_counting_again_in_the_next_second() {
+        // given
+        SamplingFilter filter = filter(1, 10);
+        kept(filter, 100, Level.INFO, CATEGORY + ".LibraryEventsConsumer", SECOND);
+
+        // when
+        int kept = kept(filter, 100, Level.INFO, CATEGORY + ".LibraryEventsConsumer", SECOND + 1_000L);
+        int late = kept(filter, 100, Level.INFO, CATEGORY + ".LibraryEventsConsumer", SECOND + 999L);
+
+        // then
+        assertEquals(10, kept);
+        assertEquals(0, late);
+    }
+
+    @Test
+    void should_keep_exactly_max_per_second_across_threads() throws InterruptedException {
+        // given
+        SamplingFilter filter = filter(1, 1_000);
+        AtomicInteger keptFirst = new AtomicInteger();
+        AtomicInteger keptNext = new AtomicInteger();
+        CyclicBarrier barrier = new CyclicBarrier(8);
+        List<Thread> threads = new ArrayList<>();
+        for (int i = 0; i < 8; i++) {
+            Thread thread = new Thread(() -> {
+                awaitQuietly(barrier);
+                keptFirst.addAndGet(kept(filter, 500, Level.INFO, CATEGORY + ".LibraryEventsConsumer", SECOND));
+                //all threads cross into the next second together
+                awaitQuietly(barrier);
+                keptNext.addAndGet(kept(filter, 500, Level.INFO, CATEGORY + ".LibraryEventsConsumer", SECOND + 1_000L));
+            });
+            thread.start();
+            threads.add(thread);
+        }
+
+        // when
+        for (Thread thread : threads) {
+            thread.join();
+        }
+
+        // then
+        assertEquals(1_000, keptFirst.get());
+        assertEquals(1_000, keptNext.get());
+    }
+
+    @Test
+    void should_never_drop_warnings() {
+        // given
+        SamplingFilter filter = filter(4, 1);
+
+        // when
+        int kept = kept(filter, 100, Level.WARN, CATEGORY + ".LibraryEventsConsumer", SECOND);
+
+        // then
+        assertEquals(100, kept);
+    }
+
+    @Test
+    void should_not_filter_other_categories() {
+        // given
+        SamplingFilter filter = filter(4, 1);
+
+        // when
+        int kept = kept(filter, 100, Level.INFO, "com.learnkafka.libraryeventsconsumer.jpa.BlockIdOptimizer", SECOND);
+
+        // then
+        assertEquals(100, kept);
+    }
+
+    private static SamplingFilter filter(int sampleRate, int maxPerSecond) {
+        SamplingFilter filter = new SamplingFilter();
+        filter.setCategory(CATEGORY);
+        filter.setSampleRate(sampleRate);
+        filter.setMaxPerSecond(maxPerSecond);
+        filter.start();
+        return filter;
+    }
+
+    private static int kept(SamplingFilter filter, int events, Level level, String loggerName, long timeStamp) {
+        LoggingEvent event = new LoggingEvent();
+        event.setLevel(level);
+        event.setLoggerName(loggerName);
+        event.setTimeStamp(timeStamp);
+
+        int kept = 0;
+        for (int i = 0; i < events; i++) {
+            if (filter.decide(event) == FilterReply.NEUTRAL) {
+                kept++;
+            }
+        }
+        return kept;
+    }
+
+    private static void awaitQuietly(CyclicBarrier barrier) {
+        try {
+            barrier.await();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } catch (BrokenBarrierException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+}
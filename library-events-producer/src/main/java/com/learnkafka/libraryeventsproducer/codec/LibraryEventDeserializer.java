@@ -0,0 +1,97 @@
+package com.learnkafka.libraryeventsproducer.codec;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.learnkafka.libraryeventsproducer.domain.Book;
+import com.learnkafka.libraryeventsproducer.domain.LibraryEvent;
+import com.learnkafka.libraryeventsproducer.domain.LibraryEventType;
+import org.apache.kafka.common.errors.SerializationException;
+import org.apache.kafka.common.serialization.Deserializer;
+
+import java.io.IOException;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+
+import static com.learnkafka.libraryeventscodec.LibraryEventWireFormat.*;
+
+public class LibraryEventDeserializer implements Deserializer<LibraryEvent> {
+
+    private final ObjectMapper objectMapper;
+
+    public LibraryEventDeserializer() {
+        this(new ObjectMapper());
+    }
+
+    public LibraryEventDeserializer(ObjectMapper objectMapper) {
+        this.objectMapper = objectMapper;
+    }
+
+    @Override
+    public LibraryEvent deserialize(String topic, byte[] data) {
+        if (data == null)
+            return null;
+
+        try {
+            if (isBinary(data))
+                return readBinary(ByteBuffer.wrap(data));
+            return objectMapper.readValue(data, LibraryEvent.class);
+        } catch (IOException | BufferUnderflowException | IllegalArgumentException | IndexOutOfBoundsException e) {
+            throw new SerializationException("Error deserializing library event", e);
+        }
+    }
+
+    private LibraryEvent readBinary(ByteBuffer buffer) {
+        buffer.get();
+        byte version = buffer.get();
+        if (version != VERSION)
+            throw new SerializationException("Unsupported library event version " + version);
+
+        LibraryEvent libraryEvent = new LibraryEvent();
+        while (buffer.hasRemaining()) {
+            int tag = readVarint(buffer);
+            int fieldNumber = tag >>> 3;
+            int wireType = tag & 0x7;
+            if (fieldNumber == LIBRARY_EVENT_ID && wireType == WIRE_VARINT) {
+                libraryEvent.setLibraryEventId(readZigZag(buffer));
+            } else if (fieldNumber == LIBRARY_EVENT_TYPE && wireType == WIRE_VARINT) {
+                int type = readVarint(buffer);
+                libraryEvent.setLibraryEventType(type == TYPE_NEW ? LibraryEventType.NEW : type == TYPE_UPDATE ? LibraryEventType.UPDATE : null);
+            } else if (fieldNumber == BOOK && wireType == WIRE_LENGTH_DELIMITED) {
+                int length = readVarint(buffer);
+                ByteBuffer bookBuffer = buffer.slice();
+                bookBuffer.limit(length);
+                libraryEvent.setBook(readBook(bookBuffer));
+                buffer.position(buffer.position() + length);
+            } else {
+                skip(buffer, wireType);
+            }
+        }
+        return libraryEvent;
+    }
+
+    private Book readBook(ByteBuffer buffer) {
+        Book book = new Book();
+        while (buffer.hasRemaining()) {
+            int tag = readVarint(buffer);
+            int fieldNumber = tag >>> 3;
+            int wireType = tag & 0x7;
+            if (fieldNumber == BOOK_ID && wireType == WIRE_VARINT) {
+                book.setBookId(readZigZag(buffer));
+            } else if (fieldNumber == BOOK_NAME && wireType == WIRE_LENGTH_DELIMITED) {
+                book.setBookName(readString(buffer));
+            } else if (fieldNumber == BOOK_AUTHOR && wireType == WIRE_LENGTH_DELIMITED) {
+                book.setBookAuthor(readString(buffer));
+            } else {
+                skip(buffer, wireType);
+            }
+        }
+        return book;
+    }
+
+    private String readString(ByteBuffer buffer) {
+        int length = readVarint(buffer);
+        String value = new String(buffer.array(), buffer.arrayOffset() + buffer.position(), length, StandardCharsets.UTF_8);
+        buffer.position(buffer.position() + length);
+        return value;
+    }
+}
@@ -0,0 +1,47 @@
+package com.learnkafka.libraryeventsproducer.config;
+
+import com.learnkafka.libraryeventsproducer.partition.LibraryEventPartitioner;
+import com.learnkafka.libraryeventsproducer.partition.PartitionLoadTracker;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.apache.kafka.clients.producer.ProducerConfig;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.kafka.KafkaProperties;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.kafka.core.DefaultKafkaProducerFactory;
+
+import java.util.Map;
+
+@Configuration
+public class PartitionerConfig {
+
+    @Bean
+    public PartitionLoadTracker partitionLoadTracker(MeterRegistry meterRegistry,
+                                                     @Value("${libraryevents.producer.partitioner.sketch-width:1024}") int sketchWidth,
+                                                     @Value("${libraryevents.producer.partitioner.sample-size:10000}") int sampleSize,
+                                                     @Value("${libraryevents.producer.partitioner.hot-key-share:0.1}") double hotKeyShare,
+                                                     @Value("${libraryevents.producer.partitioner.max-hot-keys:16}") int maxHotKeys) {
+        return new PartitionLoadTracker(sketchWidth, sampleSize, hotKeyShare, maxHotKeys, meterRegistry);
+    }
+
+    /**
+     * Replaces the auto-configured producer factory to plug in {@link LibraryEventPartitioner}. The
+     * producer creates the partitioner itself, the tracker bean reaches it through the configs.
+     */
+    @Bean
+    public DefaultKafkaProducerFactory<?, ?> kafkaProducerFactory(KafkaProperties kafkaProperties,
+                                                                  PartitionLoadTracker partitionLoadTracker,
+                                                                  @Value("${libraryevents.producer.partitioner.overrides:}") String overrides) {
+        Map<String, Object> configs = kafkaProperties.buildProducerProperties();
+        configs.put(ProducerConfig.PARTITIONER_CLASS_CONFIG, LibraryEventPartitioner.class);
+        configs.put(LibraryEventPartitioner.OVERRIDES_CONFIG, overrides);
+        configs.put(LibraryEventPartitioner.LOAD_TRACKER_CONFIG, partitionLoadTracker);
+
+        DefaultKafkaProducerFactory<?, ?> factory = new DefaultKafkaProducerFactory<>(configs);
+        String transactionIdPrefix = kafkaProperties.getProducer().getTransactionIdPrefix();
+        if (transactionIdPrefix != null) {
+            factory.setTransactionIdPrefix(transactionIdPrefix);
+        }
+        return factory;
+    }
+}
@@ -0,0 +1,63 @@
+package com.learnkafka.libraryeventsproducer.controller;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.learnkafka.libraryeventsproducer.domain.LibraryEvent;
+import com.learnkafka.libraryeventsproducer.domain.LibraryEventType;
+import com.learnkafka.libraryeventsproducer.producer.InFlightLimitExceededException;
+import com.learnkafka.libraryeventsproducer.producer.LibraryEventProducer;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.ResponseEntity;
+import org.springframework.kafka.KafkaException;
+import org.springframework.web.bind.annotation.ExceptionHandler;
+import org.springframework.web.bind.annotation.PostMapping;
+import org.springframework.web.bind.annotation.PutMapping;
+import org.springframework.web.bind.annotation.RequestBody;
+import org.springframework.web.bind.annotation.RestController;
+
+import java.util.concurrent.CompletableFuture;
+
+/**
+ * Answers only after the broker acknowledged the event, without holding a request thread while
+ * waiting. Enabled with {@code libraryevents.producer.response-mode=acked}.
+ */
+@RestController
+@ConditionalOnProperty(name = "libraryevents.producer.response-mode", havingValue = "acked")
+public class LibraryEventsAckedController {
+
+    private final LibraryEventProducer libraryEventProducer;
+
+    public LibraryEventsAckedController(LibraryEventProducer libraryEventProducer) {
+        this.libraryEventProducer = libraryEventProducer;
+    }
+
+    @PostMapping(value = "/v1/libraryevent")
+    public CompletableFuture<ResponseEntity<?>> postLibraryEvent(@RequestBody LibraryEvent libraryEvent) throws JsonProcessingException {
+        libraryEvent.setLibraryEventType(LibraryEventType.NEW);
+        return libraryEventProducer.sendLibraryEventAcked(libraryEvent)
+                .thenApply(result -> ResponseEntity.status(HttpStatus.CREATED).body(libraryEvent));
+    }
+
+    @PutMapping(value = "/v1/libraryevent")
+    public CompletableFuture<ResponseEntity<?>> putLibraryEvent(@RequestBody LibraryEvent libraryEvent) throws JsonProcessingException {
+        if (libraryEvent.getLibraryEventId() == null)
+            return CompletableFuture.completedFuture(ResponseEntity.status(HttpStatus.BAD_REQUEST).body("Please pass the id"));
+
+        libraryEvent.setLibraryEventType(LibraryEventType.UPDATE);
+        return libraryEventProducer.sendLibraryEventAcked(libraryEvent)
+                .thenApply(result -> ResponseEntity.status(HttpStatus.OK).body(libraryEvent));
+    }
+
+    @ExceptionHandler(InFlightLimitExceededException.class)
+    public ResponseEntity<String> onInFlightLimitExceeded(InFlightLimitExceededException e) {
+        return ResponseEntity.status(HttpStatus.TOO_MANY_REQUESTS)
+                .header(HttpHeaders.RETRY_AFTER, "1")
+                .body(e.getMessage());
+    }
+
+    @ExceptionHandler(KafkaException.class)
+    public ResponseEntity<String> onSendFailure(KafkaException e) {
+        return ResponseEntity.status(HttpStatus.SERVICE_UNAVAILABLE).body(e.getMessage());
+    }
+}
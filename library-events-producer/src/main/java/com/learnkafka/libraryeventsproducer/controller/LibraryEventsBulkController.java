@@ -0,0 +1,31 @@
+package com.learnkafka.libraryeventsproducer.controller;
+
+import com.learnkafka.libraryeventsproducer.domain.BulkIngestSummary;
+import com.learnkafka.libraryeventsproducer.producer.LibraryEventBulkIngester;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.bind.annotation.PostMapping;
+import org.springframework.web.bind.annotation.RestController;
+
+import javax.servlet.http.HttpServletRequest;
+import java.io.IOException;
+
+@RestController
+public class LibraryEventsBulkController {
+
+    public static final String APPLICATION_NDJSON_VALUE = "application/x-ndjson";
+
+    private final LibraryEventBulkIngester libraryEventBulkIngester;
+
+    public LibraryEventsBulkController(LibraryEventBulkIngester libraryEventBulkIngester) {
+        this.libraryEventBulkIngester = libraryEventBulkIngester;
+    }
+
+    @PostMapping(value = "/v1/libraryevents:bulk", consumes = {APPLICATION_NDJSON_VALUE, MediaType.TEXT_PLAIN_VALUE})
+    public ResponseEntity<BulkIngestSummary> postLibraryEvents(HttpServletRequest request) throws IOException, InterruptedException {
+        //stream the body, never buffer it
+        BulkIngestSummary summary = libraryEventBulkIngester.ingest(request.getInputStream());
+        return ResponseEntity.status(HttpStatus.OK).body(summary);
+    }
+}
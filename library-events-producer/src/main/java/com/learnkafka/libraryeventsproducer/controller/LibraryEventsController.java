@@ -4,6 +4,7 @@ import com.fasterxml.jackson.core.JsonProcessingException;
 import com.learnkafka.libraryeventsproducer.domain.LibraryEvent;
 import com.learnkafka.libraryeventsproducer.domain.LibraryEventType;
 import com.learnkafka.libraryeventsproducer.producer.LibraryEventProducer;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
 import org.springframework.http.HttpStatus;
 import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.PostMapping;
@@ -14,6 +15,7 @@ import org.springframework.web.bind.annotation.RestController;
 import java.util.concurrent.ExecutionException;
 
 @RestController
+@ConditionalOnProperty(name = "libraryevents.producer.response-mode", havingValue = "immediate", matchIfMissing = true)
 public class LibraryEventsController {
 
     private final LibraryEventProducer libraryEventProducer;
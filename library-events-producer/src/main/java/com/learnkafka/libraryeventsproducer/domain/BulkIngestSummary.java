@@ -0,0 +1,79 @@
+package com.learnkafka.libraryeventsproducer.domain;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicLong;
+
+public class BulkIngestSummary {
+
+    public static final int MAX_REPORTED_ERRORS = 100;
+
+    private final AtomicLong accepted = new AtomicLong();
+    private final AtomicLong rejected = new AtomicLong();
+    private final AtomicLong failed = new AtomicLong();
+    private final List<LineError> errors = Collections.synchronizedList(new ArrayList<>());
+
+    public void accepted() {
+        accepted.incrementAndGet();
+    }
+
+    public void rejected(long line, String message) {
+        rejected.incrementAndGet();
+        addError(line, "REJECTED", message);
+    }
+
+    public void failed(long line, String message) {
+        failed.incrementAndGet();
+        addError(line, "FAILED", message);
+    }
+
+    private void addError(long line, String status, String message) {
+        if (errors.size() < MAX_REPORTED_ERRORS) {
+            errors.add(new LineError(line, status, message));
+        }
+    }
+
+    public long getAccepted() {
+        return accepted.get();
+    }
+
+    public long getRejected() {
+        return rejected.get();
+    }
+
+    public long getFailed() {
+        return failed.get();
+    }
+
+    public List<LineError> getErrors() {
+        synchronized (errors) {
+            return new ArrayList<>(errors);
+        }
+    }
+
+    public static class LineError {
+
+        private final long line;
+        private final String status;
+        private final String message;
+
+        public LineError(long line, String status, String message) {
+            this.line = line;
+            this.status = status;
+            this.message = message;
+        }
+
+        public long getLine() {
+            return line;
+        }
+
+        public String getStatus() {
+            return status;
+        }
+
+        public String getMessage() {
+            return message;
+        }
+    }
+}
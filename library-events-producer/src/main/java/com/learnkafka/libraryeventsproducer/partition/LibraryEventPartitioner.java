@@ -0,0 +1,76 @@
+package com.learnkafka.libraryeventsproducer.partition;
+
+import org.apache.kafka.clients.producer.Partitioner;
+import org.apache.kafka.clients.producer.internals.DefaultPartitioner;
+import org.apache.kafka.common.Cluster;
+
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Partitions like the default partitioner unless the key has an entry in the override table, and
+ * reports every decision to a {@link PartitionLoadTracker}. An overridden key always goes to the
+ * same partition, so its records stay in order as long as the table does not change.
+ */
+public class LibraryEventPartitioner implements Partitioner {
+
+    public static final String OVERRIDES_CONFIG = "libraryevents.partitioner.overrides";
+    public static final String LOAD_TRACKER_CONFIG = "libraryevents.partitioner.load-tracker";
+
+    private final DefaultPartitioner defaultPartitioner = new DefaultPartitioner();
+    private Map<Integer, Integer> overrides = Map.of();
+    private PartitionLoadTracker partitionLoadTracker;
+
+    @Override
+    public void configure(Map<String, ?> configs) {
+        defaultPartitioner.configure(configs);
+        overrides = parseOverrides((String) configs.get(OVERRIDES_CONFIG));
+
+        Object tracker = configs.get(LOAD_TRACKER_CONFIG);
+        partitionLoadTracker = tracker instanceof PartitionLoadTracker ? (PartitionLoadTracker) tracker
+                : new PartitionLoadTracker(1024, 10_000, 0.1, 16, null);
+    }
+
+    @Override
+    public int partition(String topic, Object key, byte[] keyBytes, Object value, byte[] valueBytes, Cluster cluster) {
+        int numPartitions = cluster.partitionsForTopic(topic).size();
+        Integer libraryEventId = key instanceof Integer ? (Integer) key : null;
+
+        Integer override = libraryEventId != null ? overrides.get(libraryEventId) : null;
+        int partition = override != null && override < numPartitions ? override
+                : defaultPartitioner.partition(topic, key, keyBytes, value, valueBytes, cluster);
+
+        partitionLoadTracker.record(libraryEventId, partition, numPartitions);
+        return partition;
+    }
+
+    @Override
+    public void onNewBatch(String topic, Cluster cluster, int prevPartition) {
+        defaultPartitioner.onNewBatch(topic, cluster, prevPartition);
+    }
+
+    @Override
+    public void close() {
+        defaultPartitioner.close();
+    }
+
+    /**
+     * Parses "libraryEventId:partition" pairs separated by commas, e.g. "42:1,77:2".
+     */
+    static Map<Integer, Integer> parseOverrides(String overrides) {
+        Map<Integer, Integer> parsed = new HashMap<>();
+        if (overrides == null || overrides.isBlank())
+            return parsed;
+
+        for (String entry : overrides.split(",")) {
+            String[] keyAndPartition = entry.trim().split(":");
+            if (keyAndPartition.length != 2)
+                throw new IllegalArgumentException("Invalid partition override: " + entry);
+            int partition = Integer.parseInt(keyAndPartition[1].trim());
+            if (partition < 0)
+                throw new IllegalArgumentException("Invalid partition override: " + entry);
+            parsed.put(Integer.parseInt(keyAndPartition[0].trim()), partition);
+        }
+        return parsed;
+    }
+}
@@ -0,0 +1,201 @@
+package com.learnkafka.libraryeventsproducer.partition;
+
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import lombok.extern.slf4j.Slf4j;
+
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Tracks how records spread over the partitions of library-events and which keys are hot. Key
+ * frequencies live in a count-min sketch of fixed size, so memory does not grow with the number
+ * of distinct keys. Every sampleSize records all counters are halved, so the numbers describe
+ * recent traffic.
+ * <p>
+ * Every send passes through {@link #record}, so it takes no lock: sketch cells are atomic,
+ * partition and record counts are {@link LongAdder}s, and only one thread at a time halves the
+ * counters while the others keep counting. Counts are therefore approximate while records are
+ * sent concurrently, which is all the sketch promises anyway.
+ */
+@Slf4j
+public class PartitionLoadTracker {
+
+    private static final int DEPTH = 4;
+    private static final long[] SEEDS = {0x9E3779B97F4A7C15L, 0xC2B2AE3D27D4EB4FL, 0x165667B19E3779F9L, 0x27D4EB2F165667C5L};
+    private static final int MIN_RECORDS = 100;
+
+    private final int width;
+    //DEPTH rows of width cells
+    private final AtomicLongArray sketch;
+    private final int sampleSize;
+    private final double hotKeyShare;
+    private final int maxHotKeys;
+    private final MeterRegistry meterRegistry;
+
+    private final LongAdder recorded = new LongAdder();
+    private volatile LongAdder[] partitionRecords = new LongAdder[0];
+    private final Set<Integer> hotKeys = ConcurrentHashMap.newKeySet();
+    private final AtomicBoolean aging = new AtomicBoolean();
+
+    public PartitionLoadTracker(int width, int sampleSize, double hotKeyShare, int maxHotKeys, MeterRegistry meterRegistry) {
+        this.width = Integer.highestOneBit(Math.max(width, 16));
+        this.sketch = new AtomicLongArray(DEPTH * this.width);
+        this.sampleSize = sampleSize;
+        this.hotKeyShare = hotKeyShare;
+        this.maxHotKeys = maxHotKeys;
+        this.meterRegistry = meterRegistry;
+
+        if (meterRegistry != null) {
+            Gauge.builder("libraryevents.producer.partition.skew", this, PartitionLoadTracker::skew)
+                    .description("Records on the busiest partition divided by the average per partition")
+                    .register(meterRegistry);
+            Gauge.builder("libraryevents.producer.hot.keys", this, tracker -> tracker.hotKeys.size())
+                    .description("Keys currently above the hot key share")
+                    .register(meterRegistry);
+        }
+    }
+
+    public void record(Integer key, int partition, int numPartitions) {
+        LongAdder[] partitionRecords = this.partitionRecords;
+        if (partitionRecords.length < numPartitions) {
+            partitionRecords = growPartitions(numPartitions);
+        }
+        partitionRecords[partition].increment();
+        recorded.increment();
+        long total = recorded.sum();
+
+        if (key != null) {
+            long estimate = increment(key);
+            if (total >= MIN_RECORDS && estimate >= hotKeyShare * total && !hotKeys.contains(key)) {
+                markHot(key, estimate, partition, total);
+            }
+        }
+
+        if (total >= sampleSize && aging.compareAndSet(false, true)) {
+            try {
+                //another thread may have aged between the sum and the flag
+                if (recorded.sum() >= sampleSize) {
+                    age();
+                }
+            } finally {
+                aging.set(false);
+            }
+        }
+    }
+
+    public long estimate(Integer key) {
+        long estimate = Long.MAX_VALUE;
+        for (int row = 0; row < DEPTH; row++) {
+            estimate = Math.min(estimate, sketch.get(index(key, row)));
+        }
+        return estimate;
+    }
+
+    /**
+     * Busiest partition relative to the average, 1.0 when evenly spread. NaN before any record.
+     */
+    public double skew() {
+        long[] counts = partitionCounts();
+        if (recorded.sum() == 0 || counts.length == 0)
+            return Double.NaN;
+
+        long max = Arrays.stream(counts).max().getAsLong();
+        double mean = (double) Arrays.stream(counts).sum() / counts.length;
+        return mean == 0 ? Double.NaN : max / mean;
+    }
+
+    public double partitionShare(int partition) {
+        long[] counts = partitionCounts();
+        long total = Arrays.stream(counts).sum();
+        if (total == 0 || partition >= counts.length)
+            return 0.0;
+        return (double) counts[partition] / total;
+    }
+
+    public Map<Integer, Long> hotKeys() {
+        Map<Integer, Long> estimates = new HashMap<>();
+        for (Integer key : hotKeys) {
+            estimates.put(key, estimate(key));
+        }
+        return estimates;
+    }
+
+    private long increment(Integer key) {
+        long estimate = Long.MAX_VALUE;
+        for (int row = 0; row < DEPTH; row++) {
+            estimate = Math.min(estimate, sketch.incrementAndGet(index(key, row)));
+        }
+        return estimate;
+    }
+
+    //only reached the first time a key crosses the share, not on every record of a hot key
+    private synchronized void markHot(Integer key, long estimate, int partition, long total) {
+        if (hotKeys.size() >= maxHotKeys || !hotKeys.add(key))
+            return;
+
+        if (log.isWarnEnabled()) {
+            log.warn("Hot key detected key={} partition={} share={}", key, partition, String.format("%.2f", (double) estimate / total));
+        }
+    }
+
+    //runs on one thread at a time, records keep being counted meanwhile
+    private void age() {
+        for (int i = 0; i < sketch.length(); i++) {
+            sketch.getAndUpdate(i, count -> count >>> 1);
+        }
+        for (LongAdder partitionRecord : partitionRecords) {
+            halve(partitionRecord);
+        }
+        halve(recorded);
+        //keys that cooled down drop out, their halved counts no longer reach the share
+        long total = recorded.sum();
+        synchronized (this) {
+            hotKeys.removeIf(key -> estimate(key) < hotKeyShare * total);
+        }
+    }
+
+    private synchronized LongAdder[] growPartitions(int numPartitions) {
+        LongAdder[] known = partitionRecords;
+        if (known.length >= numPartitions)
+            return known;
+
+        //the counters already handed out are kept, increments on them are not lost
+        LongAdder[] grown = Arrays.copyOf(known, numPartitions);
+        for (int partition = known.length; partition < numPartitions; partition++) {
+            grown[partition] = new LongAdder();
+        }
+        partitionRecords = grown;
+        if (meterRegistry != null) {
+            for (int partition = known.length; partition < numPartitions; partition++) {
+                int tagged = partition;
+                Gauge.builder("libraryevents.producer.partition.share", this, tracker -> tracker.partitionShare(tagged))
+                        .description("Share of recent records sent to the partition")
+                        .tag("partition", String.valueOf(partition))
+                        .register(meterRegistry);
+            }
+        }
+        return grown;
+    }
+
+    private long[] partitionCounts() {
+        return Arrays.stream(partitionRecords).mapToLong(LongAdder::sum).toArray();
+    }
+
+    private static void halve(LongAdder adder) {
+        //subtracting keeps increments made since the sum, none of them is lost
+        long sum = adder.sum();
+        adder.add((sum >>> 1) - sum);
+    }
+
+    private int index(Integer key, int row) {
+        long hash = (key + SEEDS[row]) * SEEDS[(row + 1) % DEPTH];
+        return row * width + ((int) (hash >>> 32) & (width - 1));
+    }
+}
@@ -0,0 +1,8 @@
+package com.learnkafka.libraryeventsproducer.producer;
+
+public class InFlightLimitExceededException extends RuntimeException {
+
+    public InFlightLimitExceededException(int maxInFlight) {
+        super("More than " + maxInFlight + " library events are waiting for the broker");
+    }
+}
@@ -0,0 +1,109 @@
+package com.learnkafka.libraryeventsproducer.producer;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.ObjectReader;
+import com.learnkafka.libraryeventsproducer.domain.BulkIngestSummary;
+import com.learnkafka.libraryeventsproducer.domain.LibraryEvent;
+import com.learnkafka.libraryeventsproducer.domain.LibraryEventType;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.kafka.support.SendResult;
+import org.springframework.stereotype.Component;
+import org.springframework.util.concurrent.ListenableFuture;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.Semaphore;
+
+/**
+ * Reads newline-delimited JSON one line at a time and hands every parsed event to
+ * {@link LibraryEventProducer}. Sends in flight are capped so neither the request body nor the
+ * producer buffer grows with the size of the upload.
+ */
+@Component
+public class LibraryEventBulkIngester {
+
+    private final LibraryEventProducer libraryEventProducer;
+    private final ObjectReader libraryEventReader;
+    private final int maxInFlight;
+
+    public LibraryEventBulkIngester(LibraryEventProducer libraryEventProducer,
+                                    ObjectMapper objectMapper,
+                                    @Value("${libraryevents.producer.bulk.max-in-flight:1000}") int maxInFlight) {
+        this.libraryEventProducer = libraryEventProducer;
+        this.libraryEventReader = objectMapper.readerFor(LibraryEvent.class);
+        this.maxInFlight = maxInFlight;
+    }
+
+    public BulkIngestSummary ingest(InputStream inputStream) throws IOException, InterruptedException {
+        BulkIngestSummary summary = new BulkIngestSummary();
+        Semaphore inFlight = new Semaphore(maxInFlight);
+
+        try (BufferedReader reader = new BufferedReader(new InputStreamReader(inputStream, StandardCharsets.UTF_8))) {
+            String line;
+            long lineNumber = 0;
+            while ((line = reader.readLine()) != null) {
+                lineNumber++;
+                if (line.isBlank())
+                    continue;
+
+                LibraryEvent libraryEvent;
+                try {
+                    libraryEvent = libraryEventReader.readValue(line);
+                } catch (JsonProcessingException e) {
+                    summary.rejected(lineNumber, e.getOriginalMessage());
+                    continue;
+                }
+
+                String validationError = validate(libraryEvent);
+                if (validationError != null) {
+                    summary.rejected(lineNumber, validationError);
+                    continue;
+                }
+
+                inFlight.acquire();
+                send(libraryEvent, lineNumber, summary, inFlight);
+            }
+        } finally {
+            inFlight.acquire(maxInFlight);
+            inFlight.release(maxInFlight);
+        }
+
+        return summary;
+    }
+
+    private String validate(LibraryEvent libraryEvent) {
+        if (libraryEvent.getBook() == null)
+            return "Please pass the book";
+
+        if (libraryEvent.getLibraryEventType() == null)
+            libraryEvent.setLibraryEventType(LibraryEventType.NEW);
+
+        if (libraryEvent.getLibraryEventType() == LibraryEventType.UPDATE && libraryEvent.getLibraryEventId() == null)
+            return "Please pass the id";
+
+        return null;
+    }
+
+    private void send(LibraryEvent libraryEvent, long lineNumber, BulkIngestSummary summary, Semaphore inFlight) {
+        ListenableFuture<SendResult<Integer, byte[]>> listenableFuture;
+        try {
+            listenableFuture = libraryEventProducer.sendLibraryEventAsync(libraryEvent);
+        } catch (Exception e) {
+            inFlight.release();
+            summary.failed(lineNumber, e.getMessage());
+            return;
+        }
+
+        listenableFuture.addCallback(result -> {
+            summary.accepted();
+            inFlight.release();
+        }, ex -> {
+            summary.failed(lineNumber, ex.getMessage());
+            inFlight.release();
+        });
+    }
+}
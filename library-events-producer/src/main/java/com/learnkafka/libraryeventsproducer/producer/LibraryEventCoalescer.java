@@ -0,0 +1,110 @@
+package com.learnkafka.libraryeventsproducer.producer;
+
+import com.learnkafka.libraryeventsproducer.domain.LibraryEvent;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Consumer;
+
+/**
+ * Holds UPDATEs for a short window and sends only the latest state per libraryEventId. An UPDATE
+ * carries the whole book, so the last one received replaces the ones before it.
+ * <p>
+ * The window starts with the first held UPDATE of a key and is not extended by later ones, so no
+ * event waits longer than the window. When maxPending keys are held, UPDATEs for other keys are
+ * sent right away.
+ * <p>
+ * Events of a key sent without the coalescer have to {@link #flush} it first, the held UPDATE
+ * would follow them and overwrite a newer state otherwise. A held UPDATE is taken out of the map
+ * and sent under a lock striped by key, never under the map's own locks, so a send blocked on the
+ * producer's buffer only holds up keys of its stripe.
+ */
+class LibraryEventCoalescer {
+
+    private static final int LOCK_STRIPES = 64;
+
+    private final Duration window;
+    private final int maxPending;
+    private final Consumer<LibraryEvent> sender;
+
+    private final Map<Integer, LibraryEvent> pending = new ConcurrentHashMap<>();
+    private final Object[] locks = new Object[LOCK_STRIPES];
+    private final ScheduledExecutorService scheduler = Executors.newSingleThreadScheduledExecutor(runnable -> {
+        Thread thread = new Thread(runnable, "library-event-coalescer");
+        thread.setDaemon(true);
+        return thread;
+    });
+
+    LibraryEventCoalescer(Duration window, int maxPending, Consumer<LibraryEvent> sender) {
+        this.window = window;
+        this.maxPending = maxPending;
+        this.sender = sender;
+        for (int i = 0; i < LOCK_STRIPES; i++) {
+            locks[i] = new Object();
+        }
+    }
+
+    void submit(LibraryEvent libraryEvent) {
+        Integer key = libraryEvent.getLibraryEventId();
+        boolean[] held = {false};
+        pending.compute(key, (id, current) -> {
+            if (current != null) {
+                held[0] = true;
+                return libraryEvent;
+            }
+            if (pending.size() >= maxPending)
+                return null;
+
+            try {
+                scheduler.schedule(() -> flush(id), window.toMillis(), TimeUnit.MILLISECONDS);
+            } catch (RejectedExecutionException e) {
+                //closed, nothing would flush it anymore
+                return null;
+            }
+            held[0] = true;
+            return libraryEvent;
+        });
+
+        if (!held[0]) {
+            //a flush of the key may still be sending the UPDATE it took out, this one goes after it
+            synchronized (lock(key)) {
+                sender.accept(libraryEvent);
+            }
+        }
+    }
+
+    /**
+     * Sends everything still held. Called on shutdown, after which UPDATEs are sent right away.
+     */
+    void close() throws InterruptedException {
+        scheduler.shutdownNow();
+        scheduler.awaitTermination(window.toMillis() + 1_000L, TimeUnit.MILLISECONDS);
+        List<Integer> keys = new ArrayList<>(pending.keySet());
+        keys.forEach(this::flush);
+    }
+
+    /**
+     * Sends the UPDATE held for the key, if any. Returns once it is handed to the sender, also when
+     * the window of the key is being flushed concurrently.
+     */
+    void flush(Integer key) {
+        //a caller flushing the same key waits on the lock until the held UPDATE is ahead of its own send
+        synchronized (lock(key)) {
+            LibraryEvent libraryEvent = pending.remove(key);
+            if (libraryEvent != null) {
+                sender.accept(libraryEvent);
+            }
+        }
+    }
+
+    private Object lock(Integer key) {
+        return locks[Math.floorMod(key.hashCode(), LOCK_STRIPES)];
+    }
+}
@@ -2,63 +2,96 @@ package com.learnkafka.libraryeventsproducer.producer;
 
 import com.fasterxml.jackson.core.JsonProcessingException;
 import com.fasterxml.jackson.databind.ObjectMapper;
+import com.learnkafka.libraryeventsproducer.codec.LibraryEventSerializer;
 import com.learnkafka.libraryeventsproducer.domain.LibraryEvent;
+import com.learnkafka.libraryeventsproducer.domain.LibraryEventType;
 import lombok.extern.slf4j.Slf4j;
 import org.apache.kafka.clients.producer.ProducerRecord;
 import org.apache.kafka.common.header.Header;
 import org.apache.kafka.common.header.internals.RecordHeader;
+import org.springframework.beans.factory.DisposableBean;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.kafka.core.KafkaTemplate;
 import org.springframework.kafka.support.SendResult;
 import org.springframework.stereotype.Component;
 import org.springframework.util.concurrent.ListenableFuture;
 import org.springframework.util.concurrent.ListenableFutureCallback;
 
+import java.time.Duration;
+import java.nio.charset.StandardCharsets;
 import java.util.List;
+import java.util.UUID;
+import java.util.concurrent.CompletableFuture;
 import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Semaphore;
 
 @Component
 @Slf4j
-public class LibraryEventProducer {
+public class LibraryEventProducer implements DisposableBean {
 
-    private final KafkaTemplate<Integer, String> kafkaTemplate;
+    public enum WireFormat {
+        JSON,
+        BINARY
+    }
+
+    public static final String PRODUCED_AT_HEADER = "library-events-produced-at";
+    public static final String TRACE_ID_HEADER = "library-events-trace-id";
+
+    private final KafkaTemplate<Integer, byte[]> kafkaTemplate;
     private final ObjectMapper objectMapper;
+    private final LibraryEventSerializer libraryEventSerializer = new LibraryEventSerializer();
+    private final WireFormat wireFormat;
+    private final LibraryEventCoalescer updateCoalescer;
+    private final int ackedMaxInFlight;
+    private final Semaphore ackedSendPermits;
     private final String TOPIC_NAME = "library-events";
 
-    public LibraryEventProducer(KafkaTemplate<Integer, String> kafkaTemplate,
-                                ObjectMapper objectMapper) {
+    public LibraryEventProducer(KafkaTemplate<Integer, byte[]> kafkaTemplate,
+                                ObjectMapper objectMapper,
+                                @Value("${libraryevents.producer.wire-format:json}") WireFormat wireFormat,
+                                @Value("${libraryevents.producer.coalesce.window:0ms}") Duration coalesceWindow,
+                                @Value("${libraryevents.producer.coalesce.max-pending:10000}") int coalesceMaxPending,
+                                @Value("${libraryevents.producer.acked.max-in-flight:10000}") int ackedMaxInFlight) {
         this.kafkaTemplate = kafkaTemplate;
         this.objectMapper = objectMapper;
+        this.wireFormat = wireFormat;
+        this.updateCoalescer = coalesceWindow.isZero() ? null
+                : new LibraryEventCoalescer(coalesceWindow, coalesceMaxPending, this::sendCoalesced);
+        this.ackedMaxInFlight = ackedMaxInFlight;
+        this.ackedSendPermits = new Semaphore(ackedMaxInFlight);
     }
 
     public void sendLibraryEvent(LibraryEvent libraryEvent) throws JsonProcessingException {
         Integer key = libraryEvent.getLibraryEventId();
-        String value = objectMapper.writeValueAsString(libraryEvent);
+        byte[] value = encode(libraryEvent);
+        flushHeld(key);
 
-        ListenableFuture<SendResult<Integer, String>> listenableFuture = kafkaTemplate.sendDefault(key, value);
-        listenableFuture.addCallback(new ListenableFutureCallback<SendResult<Integer, String>>() {
+        ListenableFuture<SendResult<Integer, byte[]>> listenableFuture = kafkaTemplate.sendDefault(key, value);
+        listenableFuture.addCallback(new ListenableFutureCallback<SendResult<Integer, byte[]>>() {
             @Override
             public void onFailure(Throwable ex) {
                 handleFailure(key, value, ex);
             }
 
             @Override
-            public void onSuccess(SendResult<Integer, String> result) {
+            public void onSuccess(SendResult<Integer, byte[]> result) {
                 handleSuccess(key, value, result);
             }
         });
     }
 
-    public SendResult<Integer, String> sendLibraryEventSync(LibraryEvent libraryEvent) throws JsonProcessingException, ExecutionException, InterruptedException {
+    public SendResult<Integer, byte[]> sendLibraryEventSync(LibraryEvent libraryEvent) throws JsonProcessingException, ExecutionException, InterruptedException {
         Integer key = libraryEvent.getLibraryEventId();
-        String value = objectMapper.writeValueAsString(libraryEvent);
-        SendResult<Integer, String> result = null;
+        byte[] value = encode(libraryEvent);
+        flushHeld(key);
+        SendResult<Integer, byte[]> result = null;
         try {
             result = kafkaTemplate.sendDefault(key, value).get();
         } catch (ExecutionException | InterruptedException e) {
-            System.out.println("Execution/Interrupted Exception " + e.getMessage());
+            log.error("Failed to send key={}", key, e);
             throw e;
         } catch (Exception e) {
-            System.out.println("Exception " + e.getMessage());
+            log.error("Failed to send key={}", key, e);
             throw e;
         }
 
@@ -66,11 +99,51 @@ public class LibraryEventProducer {
     }
 
     public void sendLibraryEventApproach2(LibraryEvent libraryEvent) throws JsonProcessingException {
-        Integer key = libraryEvent.getLibraryEventId();
-        String value = objectMapper.writeValueAsString(libraryEvent);
+        if (updateCoalescer != null && libraryEvent.getLibraryEventType() == LibraryEventType.UPDATE) {
+            //encode up front so a bad payload still fails the request
+            encode(libraryEvent);
+            updateCoalescer.submit(libraryEvent);
+            return;
+        }
+        sendLibraryEventAsync(libraryEvent);
+    }
 
-        ProducerRecord<Integer, String> record = buildProducerRecord(TOPIC_NAME, key, value);
-        ListenableFuture<SendResult<Integer, String>> listenableFuture = kafkaTemplate.send(record);
+    public ListenableFuture<SendResult<Integer, byte[]>> sendLibraryEventAsync(LibraryEvent libraryEvent) throws JsonProcessingException {
+        byte[] value = encode(libraryEvent);
+        flushHeld(libraryEvent.getLibraryEventId());
+        return send(libraryEvent.getLibraryEventId(), value);
+    }
+
+    /**
+     * Sends the event and completes when the broker acknowledged it. Fails right away with
+     * {@link InFlightLimitExceededException} instead of queueing when too many sends are pending.
+     */
+    public CompletableFuture<SendResult<Integer, byte[]>> sendLibraryEventAcked(LibraryEvent libraryEvent) throws JsonProcessingException {
+        if (!ackedSendPermits.tryAcquire())
+            throw new InFlightLimitExceededException(ackedMaxInFlight);
+
+        ListenableFuture<SendResult<Integer, byte[]>> listenableFuture;
+        try {
+            listenableFuture = sendLibraryEventAsync(libraryEvent);
+        } catch (JsonProcessingException | RuntimeException e) {
+            ackedSendPermits.release();
+            throw e;
+        }
+        listenableFuture.addCallback(result -> ackedSendPermits.release(), ex -> ackedSendPermits.release());
+        return listenableFuture.completable();
+    }
+
+    @Override
+    public void destroy() throws InterruptedException {
+        if (updateCoalescer != null) {
+            updateCoalescer.close();
+            kafkaTemplate.flush();
+        }
+    }
+
+    private ListenableFuture<SendResult<Integer, byte[]>> send(Integer key, byte[] value) {
+        ProducerRecord<Integer, byte[]> record = buildProducerRecord(TOPIC_NAME, key, value);
+        ListenableFuture<SendResult<Integer, byte[]>> listenableFuture = kafkaTemplate.send(record);
         listenableFuture.addCallback(new ListenableFutureCallback<>() {
             @Override
             public void onFailure(Throwable ex) {
@@ -78,27 +151,50 @@ public class LibraryEventProducer {
             }
 
             @Override
-            public void onSuccess(SendResult<Integer, String> result) {
+            public void onSuccess(SendResult<Integer, byte[]> result) {
                 handleSuccess(key, value, result);
             }
         });
+        return listenableFuture;
     }
 
-    private void handleSuccess(Integer key, String value, SendResult<Integer, String> result) {
-        System.out.println("Message sent successfully for the key: " + key + " and the value:" + value + " partition: " + result.getRecordMetadata().partition());
+    //the held UPDATE of the key is older than the event about to be sent, so it goes first
+    private void flushHeld(Integer key) {
+        if (updateCoalescer != null && key != null) {
+            updateCoalescer.flush(key);
+        }
     }
 
-    private void handleFailure(Integer key, String value, Throwable ex) {
-        System.out.println("Error while sending the message, ex: " + ex.getMessage());
+    private void sendCoalesced(LibraryEvent libraryEvent) {
         try {
-            throw ex;
-        } catch (Throwable throwable) {
-            System.out.println("Error on failure: " + throwable.getMessage());
+            send(libraryEvent.getLibraryEventId(), encode(libraryEvent));
+        } catch (JsonProcessingException e) {
+            log.error("Failed to encode coalesced key={}", libraryEvent.getLibraryEventId(), e);
+        }
+    }
+
+    private void handleSuccess(Integer key, byte[] value, SendResult<Integer, byte[]> result) {
+        if (log.isInfoEnabled()) {
+            log.info("Message sent key={} valueSize={} partition={} offset={}", key, value.length, result.getRecordMetadata().partition(), result.getRecordMetadata().offset());
         }
     }
 
-    private ProducerRecord<Integer, String> buildProducerRecord(String topic, Integer key, String value) {
-        List<Header> recordHeaders = List.of(new RecordHeader("event-source", "scanner".getBytes()));
+    private void handleFailure(Integer key, byte[] value, Throwable ex) {
+        log.error("Failed to send key={} valueSize={}", key, value.length, ex);
+    }
+
+    private byte[] encode(LibraryEvent libraryEvent) throws JsonProcessingException {
+        if (wireFormat == WireFormat.BINARY)
+            return libraryEventSerializer.serialize(TOPIC_NAME, libraryEvent);
+        return objectMapper.writeValueAsBytes(libraryEvent);
+    }
+
+    private ProducerRecord<Integer, byte[]> buildProducerRecord(String topic, Integer key, byte[] value) {
+        List<Header> recordHeaders = List.of(
+                new RecordHeader("event-source", "scanner".getBytes()),
+                //lets the consumer measure the whole trip from here to the committed row
+                new RecordHeader(PRODUCED_AT_HEADER, String.valueOf(System.currentTimeMillis()).getBytes(StandardCharsets.UTF_8)),
+                new RecordHeader(TRACE_ID_HEADER, UUID.randomUUID().toString().getBytes(StandardCharsets.UTF_8)));
         return new ProducerRecord<>(
                 topic,
                 null,
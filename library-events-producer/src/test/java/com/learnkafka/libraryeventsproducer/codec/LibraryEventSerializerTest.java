@@ -0,0 +1,162 @@
+package com.learnkafka.libraryeventsproducer.codec;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.learnkafka.libraryeventsproducer.domain.Book;
+import com.learnkafka.libraryeventsproducer.domain.LibraryEvent;
+import com.learnkafka.libraryeventsproducer.domain.LibraryEventType;
+import org.apache.kafka.common.errors.SerializationException;
+import org.junit.jupiter.api.Test;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class LibraryEventSerializerTest {
+
+    // version 1 payload the consumer's LibraryEventDeserializerTest reads
+    static final String CONSUMER_PAYLOAD = "ca01080210011a1e08f601120b4c6561726e204b61666b611a0c4775726b616e2044656d6972";
+
+    LibraryEventSerializer serializer = new LibraryEventSerializer();
+
+    LibraryEventDeserializer deserializer = new LibraryEventDeserializer();
+
+    ObjectMapper objectMapper = new ObjectMapper();
+
+    @Test
+    void should_round_trip_library_event() {
+        // given
+        LibraryEvent libraryEvent = libraryEvent(-42, LibraryEventType.UPDATE);
+
+        // when
+        LibraryEvent decoded = deserializer.deserialize("library-events", serializer.serialize("library-events", libraryEvent));
+
+        // then
+        assertEquals(-42, decoded.getLibraryEventId());
+        assertEquals(LibraryEventType.UPDATE, decoded.getLibraryEventType());
+        assertEquals(123, decoded.getBook().getBookId());
+        assertEquals("Learn Kafka", decoded.getBook().getBookName());
+        assertEquals("Gürkan Demir", decoded.getBook().getBookAuthor());
+    }
+
+    @Test
+    void should_write_the_payload_the_consumer_reads() {
+        // given
+        Book book = new Book();
+        book.setBookId(123);
+        book.setBookName("Learn Kafka");
+        book.setBookAuthor("Gurkan Demir");
+        LibraryEvent libraryEvent = new LibraryEvent(1, book, LibraryEventType.NEW);
+
+        // when
+        byte[] payload = serializer.serialize("library-events", libraryEvent);
+
+        // then
+        assertArrayEquals(fromHex(CONSUMER_PAYLOAD), payload);
+    }
+
+    @Test
+    void should_keep_null_fields_null() {
+        // given
+        LibraryEvent libraryEvent = new LibraryEvent();
+        libraryEvent.setBook(new Book());
+
+        // when
+        LibraryEvent decoded = deserializer.deserialize("library-events", serializer.serialize("library-events", libraryEvent));
+
+        // then
+        assertNull(decoded.getLibraryEventId());
+        assertNull(decoded.getLibraryEventType());
+        assertNull(decoded.getBook().getBookId());
+        assertNull(decoded.getBook().getBookName());
+    }
+
+    @Test
+    void should_skip_unknown_fields() {
+        // given
+        byte[] encoded = serializer.serialize("library-events", libraryEvent(1, LibraryEventType.NEW));
+        byte[] withUnknownFields = Arrays.copyOf(encoded, encoded.length + 5);
+        // field 9 varint 300, field 10 length-delimited of one byte
+        withUnknownFields[encoded.length] = (byte) (9 << 3);
+        withUnknownFields[encoded.length + 1] = (byte) 0xAC;
+        withUnknownFields[encoded.length + 2] = (byte) 0x02;
+        withUnknownFields[encoded.length + 3] = (byte) ((10 << 3) | 2);
+        withUnknownFields[encoded.length + 4] = (byte) 0x00;
+
+        // when
+        LibraryEvent decoded = deserializer.deserialize("library-events", withUnknownFields);
+
+        // then
+        assertEquals(1, decoded.getLibraryEventId());
+        assertEquals("Learn Kafka", decoded.getBook().getBookName());
+    }
+
+    @Test
+    void should_fall_back_to_json() throws Exception {
+        // given
+        byte[] json = objectMapper.writeValueAsBytes(libraryEvent(7, LibraryEventType.NEW));
+
+        // when
+        LibraryEvent decoded = deserializer.deserialize("library-events", json);
+
+        // then
+        assertEquals(7, decoded.getLibraryEventId());
+        assertEquals("Gürkan Demir", decoded.getBook().getBookAuthor());
+    }
+
+    @Test
+    void should_reject_truncated_payload() {
+        // given
+        byte[] encoded = serializer.serialize("library-events", libraryEvent(1, LibraryEventType.NEW));
+
+        // when / then
+        assertThrows(SerializationException.class,
+                () -> deserializer.deserialize("library-events", Arrays.copyOf(encoded, encoded.length - 3)));
+    }
+
+    @Test
+    void should_reject_other_versions() {
+        // given
+        byte[] older = serializer.serialize("library-events", libraryEvent(1, LibraryEventType.NEW));
+        older[1] = 0;
+        byte[] newer = serializer.serialize("library-events", libraryEvent(1, LibraryEventType.NEW));
+        newer[1] = 2;
+
+        // when / then
+        assertThrows(SerializationException.class, () -> deserializer.deserialize("library-events", older));
+        assertThrows(SerializationException.class, () -> deserializer.deserialize("library-events", newer));
+    }
+
+    @Test
+    void should_be_smaller_than_json() throws Exception {
+        // given
+        LibraryEvent libraryEvent = libraryEvent(123456, LibraryEventType.UPDATE);
+
+        // when
+        byte[] binary = serializer.serialize("library-events", libraryEvent);
+        byte[] json = objectMapper.writeValueAsString(libraryEvent).getBytes(StandardCharsets.UTF_8);
+
+        // then
+        assertTrue(binary.length * 3 < json.length, "binary " + binary.length + " bytes, json " + json.length + " bytes");
+    }
+
+    private LibraryEvent libraryEvent(Integer libraryEventId, LibraryEventType libraryEventType) {
+        Book book = new Book();
+        book.setBookId(123);
+        book.setBookName("Learn Kafka");
+        book.setBookAuthor("Gürkan Demir");
+        return new LibraryEvent(libraryEventId, book, libraryEventType);
+    }
+
+    private byte[] fromHex(String hex) {
+        byte[] bytes = new byte[hex.length() / 2];
+        for (int i = 0; i < bytes.length; i++) {
+            bytes[i] = (byte) Integer.parseInt(hex.substring(2 * i, 2 * i + 2), 16);
+        }
+        return bytes;
+    }
+}
@@ -0,0 +1,108 @@
+package com.learnkafka.libraryeventsproducer.controller;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.learnkafka.libraryeventsproducer.domain.Book;
+import com.learnkafka.libraryeventsproducer.domain.LibraryEvent;
+import com.learnkafka.libraryeventsproducer.producer.InFlightLimitExceededException;
+import com.learnkafka.libraryeventsproducer.producer.LibraryEventProducer;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.web.servlet.AutoConfigureMockMvc;
+import org.springframework.boot.test.autoconfigure.web.servlet.WebMvcTest;
+import org.springframework.boot.test.mock.mockito.MockBean;
+import org.springframework.http.MediaType;
+import org.springframework.kafka.core.KafkaProducerException;
+import org.springframework.kafka.support.SendResult;
+import org.springframework.test.context.TestPropertySource;
+import org.springframework.test.web.servlet.MockMvc;
+import org.springframework.test.web.servlet.MvcResult;
+
+import java.util.concurrent.CompletableFuture;
+
+import static org.mockito.ArgumentMatchers.isA;
+import static org.mockito.Mockito.when;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.asyncDispatch;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.post;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.put;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.header;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.request;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.status;
+
+@WebMvcTest(LibraryEventsAckedController.class)
+@AutoConfigureMockMvc
+@TestPropertySource(properties = "libraryevents.producer.response-mode=acked")
+class LibraryEventsAckedControllerTest {
+
+    @Autowired
+    MockMvc mockMvc;
+
+    @MockBean
+    LibraryEventProducer libraryEventProducer;
+
+    ObjectMapper objectMapper = new ObjectMapper();
+
+    @Test
+    void should_answer_created_after_broker_ack() throws Exception {
+        // given
+        CompletableFuture<SendResult<Integer, byte[]>> ack = new CompletableFuture<>();
+        when(libraryEventProducer.sendLibraryEventAcked(isA(LibraryEvent.class))).thenReturn(ack);
+
+        // when
+        MvcResult mvcResult = mockMvc.perform(post("/v1/libraryevent")
+                .contentType(MediaType.APPLICATION_JSON)
+                .content(json(null)))
+                .andExpect(request().asyncStarted())
+                .andReturn();
+        ack.complete(null);
+
+        // then
+        mockMvc.perform(asyncDispatch(mvcResult))
+                .andExpect(status().isCreated());
+    }
+
+    @Test
+    void should_answer_service_unavailable_when_send_fails() throws Exception {
+        // given
+        CompletableFuture<SendResult<Integer, byte[]>> ack = new CompletableFuture<>();
+        when(libraryEventProducer.sendLibraryEventAcked(isA(LibraryEvent.class))).thenReturn(ack);
+
+        // when
+        MvcResult mvcResult = mockMvc.perform(put("/v1/libraryevent")
+                .contentType(MediaType.APPLICATION_JSON)
+                .content(json(1)))
+                .andExpect(request().asyncStarted())
+                .andReturn();
+        ack.completeExceptionally(new KafkaProducerException(null, "Failed to send", new RuntimeException("broker down")));
+
+        // then
+        mockMvc.perform(asyncDispatch(mvcResult))
+                .andExpect(status().isServiceUnavailable());
+    }
+
+    @Test
+    void should_answer_too_many_requests_when_limit_is_reached() throws Exception {
+        // given
+        when(libraryEventProducer.sendLibraryEventAcked(isA(LibraryEvent.class))).thenThrow(new InFlightLimitExceededException(1));
+
+        // when
+        mockMvc.perform(post("/v1/libraryevent")
+                .contentType(MediaType.APPLICATION_JSON)
+                .content(json(null)))
+                .andExpect(status().isTooManyRequests())
+                .andExpect(header().string("Retry-After", "1"));
+
+        // then
+    }
+
+    private String json(Integer libraryEventId) throws Exception {
+        Book book = new Book();
+        book.setBookId(123);
+        book.setBookAuthor("Gürkan Demir");
+        book.setBookName("Learn Kafka");
+
+        LibraryEvent libraryEvent = new LibraryEvent();
+        libraryEvent.setBook(book);
+        libraryEvent.setLibraryEventId(libraryEventId);
+        return objectMapper.writeValueAsString(libraryEvent);
+    }
+}
@@ -0,0 +1,69 @@
+package com.learnkafka.libraryeventsproducer.controller;
+
+import com.learnkafka.libraryeventsproducer.domain.LibraryEvent;
+import com.learnkafka.libraryeventsproducer.producer.LibraryEventBulkIngester;
+import com.learnkafka.libraryeventsproducer.producer.LibraryEventProducer;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.web.servlet.AutoConfigureMockMvc;
+import org.springframework.boot.test.autoconfigure.web.servlet.WebMvcTest;
+import org.springframework.boot.test.mock.mockito.MockBean;
+import org.springframework.context.annotation.Import;
+import org.springframework.kafka.support.SendResult;
+import org.springframework.test.web.servlet.MockMvc;
+import org.springframework.util.concurrent.SettableListenableFuture;
+
+import static org.mockito.ArgumentMatchers.argThat;
+import static org.mockito.ArgumentMatchers.isA;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.post;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.jsonPath;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.status;
+
+@WebMvcTest(LibraryEventsBulkController.class)
+@Import(LibraryEventBulkIngester.class)
+@AutoConfigureMockMvc
+class LibraryEventsBulkControllerTest {
+
+    @Autowired
+    MockMvc mockMvc;
+
+    @MockBean
+    LibraryEventProducer libraryEventProducer;
+
+    @Test
+    void should_post_library_events_in_bulk() throws Exception {
+        // given
+        String body = "{\"libraryEventId\":null,\"book\":{\"bookId\":1,\"bookName\":\"Learn Kafka\",\"bookAuthor\":\"Gürkan Demir\"}}\n"
+                + "not a json\n"
+                + "\n"
+                + "{\"libraryEventId\":null,\"book\":{\"bookId\":2,\"bookName\":\"Learn Kafka\",\"bookAuthor\":\"Gürkan Demir\"},\"libraryEventType\":\"UPDATE\"}\n"
+                + "{\"libraryEventId\":3,\"book\":{\"bookId\":3,\"bookName\":\"Learn Kafka\",\"bookAuthor\":\"Gürkan Demir\"},\"libraryEventType\":\"UPDATE\"}\n"
+                + "{\"libraryEventId\":4,\"book\":{\"bookId\":4,\"bookName\":\"Learn Kafka\",\"bookAuthor\":\"Gürkan Demir\"},\"libraryEventType\":\"UPDATE\"}";
+
+        SettableListenableFuture<SendResult<Integer, byte[]>> acked = new SettableListenableFuture<>();
+        acked.set(null);
+        SettableListenableFuture<SendResult<Integer, byte[]>> failed = new SettableListenableFuture<>();
+        failed.setException(new RuntimeException("Broker is not available"));
+        when(libraryEventProducer.sendLibraryEventAsync(isA(LibraryEvent.class))).thenReturn(acked, acked, failed);
+
+        // when
+        mockMvc.perform(post("/v1/libraryevents:bulk")
+                .contentType(LibraryEventsBulkController.APPLICATION_NDJSON_VALUE)
+                .content(body))
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$.accepted").value(2))
+                .andExpect(jsonPath("$.rejected").value(2))
+                .andExpect(jsonPath("$.failed").value(1))
+                .andExpect(jsonPath("$.errors[0].line").value(2))
+                .andExpect(jsonPath("$.errors[1].line").value(4))
+                .andExpect(jsonPath("$.errors[2].line").value(6));
+
+        // then
+        verify(libraryEventProducer, times(3)).sendLibraryEventAsync(isA(LibraryEvent.class));
+        verify(libraryEventProducer, times(1)).sendLibraryEventAsync(argThat(event -> event.getBook().getBookId() == 1
+                && event.getLibraryEventType() != null));
+    }
+}
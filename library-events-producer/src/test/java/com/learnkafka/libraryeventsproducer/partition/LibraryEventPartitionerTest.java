@@ -0,0 +1,61 @@
+package com.learnkafka.libraryeventsproducer.partition;
+
+import org.apache.kafka.clients.producer.internals.DefaultPartitioner;
+import org.apache.kafka.common.Cluster;
+import org.apache.kafka.common.Node;
+import org.apache.kafka.common.PartitionInfo;
+import org.apache.kafka.common.serialization.IntegerSerializer;
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+class LibraryEventPartitionerTest {
+
+    Node node = new Node(0, "localhost", 9092);
+
+    Cluster cluster = new Cluster("cluster", List.of(node), List.of(
+            new PartitionInfo("library-events", 0, node, new Node[]{node}, new Node[]{node}),
+            new PartitionInfo("library-events", 1, node, new Node[]{node}, new Node[]{node}),
+            new PartitionInfo("library-events", 2, node, new Node[]{node}, new Node[]{node})),
+            Set.of(), Set.of());
+
+    PartitionLoadTracker partitionLoadTracker = new PartitionLoadTracker(1024, 10_000, 0.1, 16, null);
+
+    @Test
+    void should_route_overridden_keys_and_hash_the_rest() {
+        // given
+        LibraryEventPartitioner partitioner = new LibraryEventPartitioner();
+        partitioner.configure(Map.of(
+                LibraryEventPartitioner.OVERRIDES_CONFIG, "42:2, 77:5",
+                LibraryEventPartitioner.LOAD_TRACKER_CONFIG, partitionLoadTracker));
+        DefaultPartitioner defaultPartitioner = new DefaultPartitioner();
+
+        // when
+        int overridden = partition(partitioner, 42);
+        int outOfRange = partition(partitioner, 77);
+        int hashed = partition(partitioner, 7);
+
+        // then
+        assertEquals(2, overridden);
+        assertEquals(partition(defaultPartitioner, 77), outOfRange);
+        assertEquals(partition(defaultPartitioner, 7), hashed);
+        assertEquals(1, partitionLoadTracker.estimate(42));
+        assertEquals(1.0 / 3, partitionLoadTracker.partitionShare(2), 0.34);
+    }
+
+    @Test
+    void should_reject_malformed_overrides() {
+        assertThrows(IllegalArgumentException.class, () -> LibraryEventPartitioner.parseOverrides("42-2"));
+        assertThrows(IllegalArgumentException.class, () -> LibraryEventPartitioner.parseOverrides("42:-1"));
+    }
+
+    private int partition(org.apache.kafka.clients.producer.Partitioner partitioner, Integer key) {
+        byte[] keyBytes = new IntegerSerializer().serialize("library-events", key);
+        return partitioner.partition("library-events", key, keyBytes, null, new byte[0], cluster);
+    }
+}
@@ -0,0 +1,86 @@
+package com.learnkafka.libraryeventsproducer.partition;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Set;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class PartitionLoadTrackerTest {
+
+    SimpleMeterRegistry meterRegistry = new SimpleMeterRegistry();
+
+    PartitionLoadTracker partitionLoadTracker = new PartitionLoadTracker(1024, 10_000, 0.1, 4, meterRegistry);
+
+    @Test
+    void should_detect_hot_key_and_skew() {
+        // given
+        for (int i = 0; i < 3_000; i++) {
+            int key = i % 2 == 0 ? 42 : 1_000 + i;
+            int partition = key == 42 ? 0 : i % 3;
+            partitionLoadTracker.record(key, partition, 3);
+        }
+
+        // when
+        double skew = meterRegistry.get("libraryevents.producer.partition.skew").gauge().value();
+
+        // then
+        assertEquals(1, partitionLoadTracker.hotKeys().size());
+        assertTrue(partitionLoadTracker.hotKeys().containsKey(42));
+        assertTrue(partitionLoadTracker.estimate(42) >= 1_000);
+        assertEquals(2.0, skew, 0.1);
+        assertEquals(1.0, meterRegistry.get("libraryevents.producer.hot.keys").gauge().value());
+        assertEquals(partitionLoadTracker.partitionShare(0),
+                meterRegistry.get("libraryevents.producer.partition.share").tag("partition", "0").gauge().value());
+    }
+
+    @Test
+    void should_forget_keys_that_cooled_down() {
+        // given
+        for (int i = 0; i < 2_000; i++) {
+            partitionLoadTracker.record(42, 0, 3);
+        }
+        assertTrue(partitionLoadTracker.hotKeys().containsKey(42));
+
+        // when
+        for (int i = 0; i < 60_000; i++) {
+            partitionLoadTracker.record(1_000 + i, i % 3, 3);
+        }
+
+        // then
+        assertFalse(partitionLoadTracker.hotKeys().containsKey(42));
+        assertTrue(partitionLoadTracker.skew() < 1.1);
+    }
+
+    @Test
+    void should_count_every_record_sent_concurrently() throws InterruptedException {
+        // given
+        PartitionLoadTracker unaged = new PartitionLoadTracker(1024, Integer.MAX_VALUE, 0.1, 4, null);
+        List<Thread> threads = new ArrayList<>();
+        for (int t = 0; t < 4; t++) {
+            Thread thread = new Thread(() -> {
+                for (int i = 0; i < 10_000; i++) {
+                    unaged.record(i % 2 == 0 ? 42 : 1_000 + i, i % 2, 2);
+                }
+            });
+            threads.add(thread);
+        }
+
+        // when
+        threads.forEach(Thread::start);
+        for (Thread thread : threads) {
+            thread.join();
+        }
+
+        // then
+        assertTrue(unaged.estimate(42) >= 20_000);
+        assertEquals(0.5, unaged.partitionShare(0));
+        assertEquals(1.0, unaged.skew());
+        assertEquals(Set.of(42), unaged.hotKeys().keySet());
+    }
+}
@@ -0,0 +1,138 @@
+package com.learnkafka.libraryeventsproducer.producer;
+
+import com.learnkafka.libraryeventsproducer.domain.Book;
+import com.learnkafka.libraryeventsproducer.domain.LibraryEvent;
+import com.learnkafka.libraryeventsproducer.domain.LibraryEventType;
+import org.junit.jupiter.api.Test;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class LibraryEventCoalescerTest {
+
+    List<LibraryEvent> sent = Collections.synchronizedList(new ArrayList<>());
+
+    @Test
+    void should_send_only_latest_update_per_key() throws InterruptedException {
+        // given
+        LibraryEventCoalescer coalescer = new LibraryEventCoalescer(Duration.ofMillis(100), 10, sent::add);
+
+        // when
+        coalescer.submit(update(1, "Learn Kafka 1"));
+        coalescer.submit(update(1, "Learn Kafka 2"));
+        coalescer.submit(update(2, "Learn Spring"));
+        coalescer.submit(update(1, "Learn Kafka 3"));
+        assertTrue(sent.isEmpty());
+        waitForSent(2);
+
+        // then
+        assertEquals(2, sent.size());
+        assertEquals("Learn Kafka 3", bookName(sent, 1));
+        assertEquals("Learn Spring", bookName(sent, 2));
+    }
+
+    @Test
+    void should_send_right_away_when_too_many_keys_are_held() {
+        // given
+        LibraryEventCoalescer coalescer = new LibraryEventCoalescer(Duration.ofMinutes(1), 1, sent::add);
+
+        // when
+        coalescer.submit(update(1, "Learn Kafka"));
+        coalescer.submit(update(2, "Learn Spring"));
+
+        // then
+        assertEquals(1, sent.size());
+        assertEquals("Learn Spring", bookName(sent, 2));
+    }
+
+    @Test
+    void should_flush_held_updates_on_close() throws InterruptedException {
+        // given
+        LibraryEventCoalescer coalescer = new LibraryEventCoalescer(Duration.ofMinutes(1), 10, sent::add);
+        coalescer.submit(update(1, "Learn Kafka 1"));
+        coalescer.submit(update(1, "Learn Kafka 2"));
+
+        // when
+        coalescer.close();
+        coalescer.submit(update(2, "Learn Spring"));
+
+        // then
+        assertEquals(2, sent.size());
+        assertEquals("Learn Kafka 2", bookName(sent, 1));
+        assertEquals("Learn Spring", bookName(sent, 2));
+    }
+
+    @Test
+    void should_not_hold_up_other_keys_while_a_send_blocks() throws InterruptedException {
+        // given
+        CountDownLatch sending = new CountDownLatch(1);
+        CountDownLatch unblock = new CountDownLatch(1);
+        LibraryEventCoalescer coalescer = new LibraryEventCoalescer(Duration.ofMinutes(1), 10, libraryEvent -> {
+            if (libraryEvent.getLibraryEventId() == 1) {
+                sending.countDown();
+                awaitQuietly(unblock);
+            }
+            sent.add(libraryEvent);
+        });
+        coalescer.submit(update(1, "Learn Kafka"));
+        Thread blocked = new Thread(() -> coalescer.flush(1));
+        blocked.start();
+        sending.await();
+
+        // when
+        //17 shares a hash bin with 1 in a small map
+        coalescer.submit(update(17, "Learn Spring"));
+        coalescer.flush(17);
+
+        // then
+        assertEquals(1, sent.size());
+        assertEquals("Learn Spring", bookName(sent, 17));
+        unblock.countDown();
+        blocked.join();
+        assertEquals(2, sent.size());
+    }
+
+    private static void awaitQuietly(CountDownLatch latch) {
+        try {
+            latch.await();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private void waitForSent(int count) throws InterruptedException {
+        long deadline = System.currentTimeMillis() + 5_000L;
+        while (sent.size() < count && System.currentTimeMillis() < deadline) {
+            Thread.sleep(10L);
+        }
+        //a late duplicate would show up here
+        Thread.sleep(200L);
+    }
+
+    private String bookName(List<LibraryEvent> libraryEvents, Integer libraryEventId) {
+        return libraryEvents.stream()
+                .filter(libraryEvent -> libraryEvent.getLibraryEventId().equals(libraryEventId))
+                .findFirst()
+                .map(libraryEvent -> libraryEvent.getBook().getBookName())
+                .orElse(null);
+    }
+
+    private LibraryEvent update(Integer libraryEventId, String bookName) {
+        Book book = new Book();
+        book.setBookId(123);
+        book.setBookAuthor("Gürkan Demir");
+        book.setBookName(bookName);
+
+        LibraryEvent libraryEvent = new LibraryEvent();
+        libraryEvent.setLibraryEventId(libraryEventId);
+        libraryEvent.setLibraryEventType(LibraryEventType.UPDATE);
+        libraryEvent.setBook(book);
+        return libraryEvent;
+    }
+}
@@ -0,0 +1,93 @@
+package com.learnkafka.libraryeventsproducer.producer;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.learnkafka.libraryeventsproducer.domain.Book;
+import com.learnkafka.libraryeventsproducer.domain.LibraryEvent;
+import com.learnkafka.libraryeventsproducer.domain.LibraryEventType;
+import org.apache.kafka.clients.producer.ProducerRecord;
+import org.junit.jupiter.api.Test;
+import org.mockito.ArgumentCaptor;
+import org.springframework.kafka.core.KafkaTemplate;
+import org.springframework.kafka.support.SendResult;
+import org.springframework.util.concurrent.SettableListenableFuture;
+
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.util.concurrent.CompletableFuture;
+
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+class LibraryEventProducerTest {
+
+    KafkaTemplate<Integer, byte[]> kafkaTemplate = mock(KafkaTemplate.class);
+
+    LibraryEventProducer libraryEventProducer = new LibraryEventProducer(kafkaTemplate, new ObjectMapper(),
+            LibraryEventProducer.WireFormat.JSON, Duration.ZERO, 10, 1);
+
+    @Test
+    void should_reject_acked_sends_above_limit_until_one_completes() throws Exception {
+        // given
+        SettableListenableFuture<SendResult<Integer, byte[]>> first = new SettableListenableFuture<>();
+        SettableListenableFuture<SendResult<Integer, byte[]>> second = new SettableListenableFuture<>();
+        when(kafkaTemplate.send(any(ProducerRecord.class))).thenReturn(first, second);
+
+        // when
+        CompletableFuture<SendResult<Integer, byte[]>> acked = libraryEventProducer.sendLibraryEventAcked(libraryEvent());
+
+        // then
+        assertFalse(acked.isDone());
+        assertThrows(InFlightLimitExceededException.class, () -> libraryEventProducer.sendLibraryEventAcked(libraryEvent()));
+
+        // when
+        first.setException(new RuntimeException("broker down"));
+
+        // then
+        assertTrue(acked.isCompletedExceptionally());
+        assertFalse(libraryEventProducer.sendLibraryEventAcked(libraryEvent()).isDone());
+    }
+
+    @Test
+    void should_send_held_update_before_a_direct_send_of_its_key() throws Exception {
+        // given
+        LibraryEventProducer coalescingProducer = new LibraryEventProducer(kafkaTemplate, new ObjectMapper(),
+                LibraryEventProducer.WireFormat.JSON, Duration.ofMinutes(1), 10, 10);
+        when(kafkaTemplate.send(any(ProducerRecord.class))).thenReturn(new SettableListenableFuture<>());
+        coalescingProducer.sendLibraryEventApproach2(update(1, "Held"));
+
+        // when
+        coalescingProducer.sendLibraryEventAcked(update(1, "Acked"));
+
+        // then
+        ArgumentCaptor<ProducerRecord<Integer, byte[]>> captor = ArgumentCaptor.forClass(ProducerRecord.class);
+        verify(kafkaTemplate, times(2)).send(captor.capture());
+        assertTrue(new String(captor.getAllValues().get(0).value(), StandardCharsets.UTF_8).contains("Held"));
+        assertTrue(new String(captor.getAllValues().get(1).value(), StandardCharsets.UTF_8).contains("Acked"));
+    }
+
+    private LibraryEvent update(Integer libraryEventId, String bookName) {
+        LibraryEvent libraryEvent = libraryEvent();
+        libraryEvent.setLibraryEventId(libraryEventId);
+        libraryEvent.setLibraryEventType(LibraryEventType.UPDATE);
+        libraryEvent.getBook().setBookName(bookName);
+        return libraryEvent;
+    }
+
+    private LibraryEvent libraryEvent() {
+        Book book = new Book();
+        book.setBookId(123);
+        book.setBookAuthor("Gürkan Demir");
+        book.setBookName("Learn Kafka");
+
+        LibraryEvent libraryEvent = new LibraryEvent();
+        libraryEvent.setLibraryEventType(LibraryEventType.NEW);
+        libraryEvent.setBook(book);
+        return libraryEvent;
+    }
+}